@@ -0,0 +1,314 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Role: Runs benchmarks the way JMH does, without needing JMH: each
+ * operation is first run for some warmup iterations that aren't counted
+ * (so the database's caches are full and the code is compiled), then for
+ * the measured iterations. Each iteration runs the operation a number of
+ * times, and its score is the average time of one operation. The results
+ * can be written as JSON, one file per run, so runs can be compared to
+ * find regressions. </br></br>
+ *
+ * It only uses plain Java, so it works the same on a phone, in the
+ * instrumentation tests, and on a computer. </br></br>
+ *
+ * Example call: </br>
+ * Benchmark bench = new Benchmark("persistence", 3, 5); </br>
+ * bench.measure("getById", params, 100, new Benchmark.Operation() { </br>
+ * 		public void run(int i) { storyMan.getById(ids.get(i)); } </br>
+ * }); </br>
+ * bench.write(new File(folder, "persistence.json")); </br></br>
+ *
+ * Output of toString() would be like: </br>
+ * "getById {stories=100}: 412.3 us/op +- 12.1 (5 x 100 ops)"
+ *
+ * @author Stephanie Gil
+ *
+ * @see BenchmarkPersistence
+ */
+public class Benchmark {
+	private final String suite;
+	private final int warmup;
+	private final int iterations;
+	private final Map<String, String> environment =
+			new TreeMap<String, String>();
+	private final ArrayList<Result> results = new ArrayList<Result>();
+
+	/**
+	 * Something measured by a benchmark.
+	 */
+	public interface Operation {
+		/**
+		 * Runs the operation once.
+		 *
+		 * @param i
+		 * 			How many times it has run before, so each run can use
+		 * 			different data.
+		 */
+		public void run(int i) throws Exception;
+	}
+
+	/**
+	 * The score of one operation with one set of parameters.
+	 */
+	public static class Result {
+		private final String name;
+		private final Map<String, Object> params;
+		private final int ops;
+		private final double[] samples;
+
+		Result(String name, Map<String, Object> params, int ops,
+				double[] samples) {
+			this.name = name;
+			this.params = new TreeMap<String, Object>(params);
+			this.ops = ops;
+			this.samples = samples;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the average time of one operation in each iteration, in
+		 * nanoseconds.
+		 */
+		public double[] getSamples() {
+			return samples.clone();
+		}
+
+		/**
+		 * Returns the average time of one operation over every iteration,
+		 * in nanoseconds.
+		 */
+		public double getScore() {
+			double sum = 0;
+			for (double sample : samples) {
+				sum += sample;
+			}
+			return sum / samples.length;
+		}
+
+		/**
+		 * Returns the standard deviation of the iterations, in
+		 * nanoseconds.
+		 */
+		public double getError() {
+			if (samples.length < 2) {
+				return 0;
+			}
+			double score = getScore();
+			double sum = 0;
+			for (double sample : samples) {
+				sum += (sample - score) * (sample - score);
+			}
+			return Math.sqrt(sum / (samples.length - 1));
+		}
+
+		JsonObject toJson() {
+			JsonObject json = new JsonObject();
+			json.addProperty("benchmark", name);
+			JsonObject values = new JsonObject();
+			for (Map.Entry<String, Object> param : params.entrySet()) {
+				if (param.getValue() instanceof Number) {
+					values.addProperty(param.getKey(),
+							(Number) param.getValue());
+				} else {
+					values.addProperty(param.getKey(),
+							String.valueOf(param.getValue()));
+				}
+			}
+			json.add("params", values);
+			json.addProperty("mode", "avgt");
+			json.addProperty("unit", "ns/op");
+			json.addProperty("opsPerIteration", ops);
+			json.addProperty("score", Math.round(getScore()));
+			json.addProperty("scoreError", Math.round(getError()));
+			double[] sorted = getSamples();
+			Arrays.sort(sorted);
+			json.addProperty("min", Math.round(sorted[0]));
+			json.addProperty("max", Math.round(sorted[sorted.length - 1]));
+			JsonArray raw = new JsonArray();
+			for (double sample : samples) {
+				raw.add(new JsonPrimitive(Math.round(sample)));
+			}
+			json.add("samples", raw);
+			return json;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s %s: %.1f us/op +- %.1f (%d x %d ops)",
+					name, params, getScore() / 1000, getError() / 1000,
+					samples.length, ops);
+		}
+	}
+
+	/**
+	 * Initializes a new Benchmark.
+	 *
+	 * @param suite
+	 * 			Name of what is being measured, such as "persistence".
+	 * @param warmup
+	 * 			Number of iterations run before measuring.
+	 * @param iterations
+	 * 			Number of iterations measured.
+	 */
+	public Benchmark(String suite, int warmup, int iterations) {
+		this.suite = suite;
+		this.warmup = warmup;
+		this.iterations = iterations;
+		environment.put("java.vm.name", System.getProperty("java.vm.name"));
+		environment.put("java.version", System.getProperty("java.version"));
+		environment.put("os.arch", System.getProperty("os.arch"));
+	}
+
+	/**
+	 * Adds something about where the benchmark ran, such as the model of
+	 * the phone, to the results.
+	 */
+	public void setEnvironment(String key, String value) {
+		environment.put(key, value);
+	}
+
+	/**
+	 * Runs the operation ops times in every iteration, and keeps its
+	 * result. The i given to the operation keeps counting up through the
+	 * warmup and the measured iterations, so an operation that changes
+	 * things (like inserting new stories) never repeats itself.
+	 *
+	 * @param name
+	 * 			Name of the operation, such as "getById".
+	 * @param params
+	 * 			What the operation was run with, such as the size of the
+	 * 			corpus.
+	 * @param ops
+	 * 			Number of times the operation is run in each iteration.
+	 * @param op
+	 * 			The operation.
+	 */
+	public Result measure(String name, Map<String, Object> params, int ops,
+			Operation op) throws Exception {
+		int i = 0;
+		for (int w = 0; w < warmup; ++w) {
+			for (int n = 0; n < ops; ++n) {
+				op.run(i++);
+			}
+		}
+		double[] samples = new double[iterations];
+		for (int it = 0; it < iterations; ++it) {
+			long start = System.nanoTime();
+			for (int n = 0; n < ops; ++n) {
+				op.run(i++);
+			}
+			samples[it] = (System.nanoTime() - start) / (double) ops;
+		}
+		Result result = new Result(name, params, ops, samples);
+		results.add(result);
+		System.out.println(suite + ": " + result);
+		return result;
+	}
+
+	/**
+	 * Keeps the time something took that can only be done once, like
+	 * loading the whole corpus, as a result with one iteration.
+	 *
+	 * @param ops
+	 * 			How many things were done in that time.
+	 * @param startNanos
+	 * 			Value of System.nanoTime() when it started.
+	 */
+	public Result record(String name, Map<String, Object> params, int ops,
+			long startNanos) {
+		double sample = (System.nanoTime() - startNanos) / (double) ops;
+		Result result = new Result(name, params, ops, new double[] { sample });
+		results.add(result);
+		System.out.println(suite + ": " + result);
+		return result;
+	}
+
+	public ArrayList<Result> getResults() {
+		return results;
+	}
+
+	/**
+	 * Returns every result, with the settings and the environment they
+	 * were measured in.
+	 */
+	public JsonObject toJson() {
+		JsonObject json = new JsonObject();
+		json.addProperty("suite", suite);
+		json.addProperty("timestamp", System.currentTimeMillis());
+		json.addProperty("warmupIterations", warmup);
+		json.addProperty("measurementIterations", iterations);
+		JsonObject env = new JsonObject();
+		for (Map.Entry<String, String> entry : environment.entrySet()) {
+			env.addProperty(entry.getKey(), entry.getValue());
+		}
+		json.add("environment", env);
+		JsonArray all = new JsonArray();
+		for (Result result : results) {
+			all.add(result.toJson());
+		}
+		json.add("results", all);
+		return json;
+	}
+
+	/**
+	 * Writes toJson() to the given file, replacing it.
+	 */
+	public void write(File file) throws IOException {
+		File folder = file.getParentFile();
+		if (folder != null) {
+			folder.mkdirs();
+		}
+		Writer out = new OutputStreamWriter(new FileOutputStream(file),
+				"UTF-8");
+		try {
+			new GsonBuilder().setPrettyPrinting().create().toJson(toJson(),
+					out);
+		} finally {
+			out.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder out = new StringBuilder();
+		for (Result result : results) {
+			out.append(result).append("\n");
+		}
+		return out.toString();
+	}
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import android.os.Build;
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.StoryCorpusGenerator;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ESStoryRepository;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.GzipEntity;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.StoryEntity;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.StoryQuery;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Measures what compressing the traffic with the server costs and saves,
+ * on stories made by a StoryCorpusGenerator with a fixed seed, with and
+ * without images: </br></br>
+ *
+ * "search" downloads a search response holding every story of the corpus,
+ * through ESClient and an ESStoryRepository, from a stub server running on
+ * the phone that sends it either as it is or gzipped. "publish" writes
+ * every story of the corpus the way it is sent to the server, as it is or
+ * through a GzipEntity. </br></br>
+ *
+ * The number of bytes sent for each is kept in the "bytes" parameter of
+ * its results, so the sizes can be compared along with the times. Like
+ * BenchmarkPersistence, the results are printed to the logcat and written
+ * as JSON to "benchmarks/" in the application's folder on the SD card.
+ * The stub is on the same phone, so the times leave out the network; on a
+ * real connection fewer bytes count for much more. </br></br>
+ *
+ * Results of a run on the JVM are kept in the project's "benchmarks/"
+ * folder. The byte counts only depend on the seed, but the images there
+ * are JPEGs rather than WebP, so a phone's sizes with images differ.
+ *
+ * @author Stephanie Gil
+ *
+ * @see Benchmark
+ * @see TestCompression
+ */
+public class BenchmarkCompression extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	/**
+	 * Number of stories in each corpus measured.
+	 */
+	static final int[] SIZES = { 10, 50 };
+	/**
+	 * Average number of images in a chapter, for each corpus.
+	 */
+	static final double[] IMAGES = { 0, 0.5 };
+	static final int IMAGE_SIZE = 128;
+	static final int WARMUP = 2;
+	static final int ITERATIONS = 5;
+	static final int CHAPTERS = 3;
+	static final int CHOICES = 2;
+	private static final String[] ENCODINGS = { "identity", "gzip" };
+
+	private final Gson gson = new Gson();
+	private StubServer stub;
+
+	public BenchmarkCompression() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		stub = new StubServer();
+		stub.start();
+	}
+
+	protected void tearDown() throws Exception {
+		stub.close();
+		super.tearDown();
+	}
+
+	/**
+	 * Measures downloading a search response, as it is and gzipped.
+	 */
+	public void testSearch() throws Exception {
+		Benchmark bench = newBenchmark("compression.search");
+		final ESStoryRepository repository = new ESStoryRepository(
+				"http://127.0.0.1:" + stub.getPort() + "/stories/");
+		final StoryQuery query = new StoryQuery(null);
+
+		for (double images : IMAGES) {
+			for (final int size : SIZES) {
+				byte[] body = searchResponse(newGenerator(images)
+						.generate(size));
+				byte[] gzipped = gzip(body);
+				for (String encoding : ENCODINGS) {
+					boolean gzip = encoding.equals("gzip");
+					stub.setBody(gzip ? gzipped : body, gzip);
+					Map<String, Object> params = params(size, images,
+							encoding, gzip ? gzipped.length : body.length);
+					bench.measure("search", params, 5,
+							new Benchmark.Operation() {
+						@Override
+						public void run(int i) throws Exception {
+							assertEquals(repository.search(query).size(),
+									size);
+						}
+					});
+				}
+			}
+		}
+		finish(bench);
+	}
+
+	/**
+	 * Measures writing the stories as they are published, as they are and
+	 * gzipped. Compressing requests is off by default (see
+	 * ESClient.setCompressRequests()), so this is what turning it on
+	 * costs the phone.
+	 */
+	public void testPublish() throws Exception {
+		Benchmark bench = newBenchmark("compression.publish");
+
+		for (double images : IMAGES) {
+			for (int size : SIZES) {
+				final ArrayList<Story> corpus = newGenerator(images)
+						.generate(size);
+				for (String encoding : ENCODINGS) {
+					final boolean gzip = encoding.equals("gzip");
+					Map<String, Object> params = params(size, images,
+							encoding, publish(corpus, gzip));
+					bench.measure("publish", params, 5,
+							new Benchmark.Operation() {
+						@Override
+						public void run(int i) throws Exception {
+							publish(corpus, gzip);
+						}
+					});
+				}
+			}
+		}
+		finish(bench);
+	}
+
+	private StoryCorpusGenerator newGenerator(double images) {
+		StoryCorpusGenerator generator = new StoryCorpusGenerator(42);
+		generator.setChapters(CHAPTERS, CHAPTERS);
+		generator.setBranching(CHOICES, CHOICES);
+		generator.setWords(200, 0.6);
+		generator.setImages(images, IMAGE_SIZE);
+		return generator;
+	}
+
+	private static Map<String, Object> params(int size, double images,
+			String encoding, long bytes) {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("stories", size);
+		params.put("imagesPerChapter", images);
+		params.put("encoding", encoding);
+		params.put("bytes", bytes);
+		return params;
+	}
+
+	/**
+	 * Returns the body of a search response from the server holding the
+	 * whole of every story.
+	 */
+	private byte[] searchResponse(ArrayList<Story> stories) throws Exception {
+		JsonArray hits = new JsonArray();
+		for (Story story : stories) {
+			JsonObject hit = new JsonObject();
+			hit.addProperty("_id", story.getId().toString());
+			hit.add("_source", gson.toJsonTree(story));
+			hits.add(hit);
+		}
+		JsonObject inner = new JsonObject();
+		inner.addProperty("total", stories.size());
+		inner.add("hits", hits);
+		JsonObject response = new JsonObject();
+		response.add("hits", inner);
+		return response.toString().getBytes("UTF-8");
+	}
+
+	private static byte[] gzip(byte[] body) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+		gzip.write(body);
+		gzip.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes every story the way ESUpdates sends it, and returns how many
+	 * bytes that was.
+	 */
+	private long publish(ArrayList<Story> corpus, boolean gzip)
+			throws IOException {
+		CountingStream out = new CountingStream();
+		for (Story story : corpus) {
+			StoryEntity entity = new StoryEntity(story, gson);
+			if (gzip) {
+				new GzipEntity(entity).writeTo(out);
+			} else {
+				entity.writeTo(out);
+			}
+		}
+		return out.count;
+	}
+
+	private Benchmark newBenchmark(String suite) {
+		Benchmark bench = new Benchmark(suite, WARMUP, ITERATIONS);
+		bench.setEnvironment("device", Build.MANUFACTURER + " " + Build.MODEL);
+		bench.setEnvironment("sdk", String.valueOf(Build.VERSION.SDK_INT));
+		return bench;
+	}
+
+	/**
+	 * Checks every operation was measured, and writes the results.
+	 */
+	private void finish(Benchmark bench) throws Exception {
+		for (Benchmark.Result result : bench.getResults()) {
+			assertTrue(result.getName(), result.getScore() > 0);
+		}
+		File folder = getActivity().getExternalFilesDir(null);
+		if (folder == null) {
+			folder = getActivity().getFilesDir();
+		}
+		File file = new File(new File(folder, "benchmarks"), bench.toJson()
+				.get("suite").getAsString() + "-" + System.currentTimeMillis()
+				+ ".json");
+		bench.write(file);
+		assertTrue(file.length() > 0);
+		System.out.println("Benchmark results written to " + file);
+	}
+
+	/**
+	 * Throws away what is written, counting the bytes.
+	 */
+	private static class CountingStream extends OutputStream {
+		long count = 0;
+
+		@Override
+		public void write(int b) {
+			++count;
+		}
+
+		@Override
+		public void write(byte[] buffer, int offset, int length) {
+			count += length;
+		}
+	}
+
+	/**
+	 * Answers every request with the same body, like the server answering
+	 * the same search, one request per connection.
+	 */
+	private static class StubServer extends Thread {
+		private final ServerSocket server;
+		private volatile byte[] body = new byte[0];
+		private volatile boolean gzip = false;
+
+		StubServer() throws IOException {
+			server = new ServerSocket(0);
+			setDaemon(true);
+		}
+
+		int getPort() {
+			return server.getLocalPort();
+		}
+
+		/**
+		 * Sets the body sent from now on, and whether it is gzipped.
+		 */
+		void setBody(byte[] body, boolean gzip) {
+			this.body = body;
+			this.gzip = gzip;
+		}
+
+		void close() throws IOException {
+			server.close();
+		}
+
+		@Override
+		public void run() {
+			while (!server.isClosed()) {
+				try {
+					Socket socket = server.accept();
+					try {
+						answer(socket);
+					} finally {
+						socket.close();
+					}
+				} catch (IOException e) {
+					if (!server.isClosed()) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+
+		private void answer(Socket socket) throws IOException {
+			// the request (a search is plain ASCII) is read before answering
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream(), "UTF-8"));
+			int length = 0;
+			String line;
+			while ((line = in.readLine()) != null && line.length() > 0) {
+				if (line.toLowerCase().startsWith("content-length:")) {
+					length = Integer.parseInt(line.substring(15).trim());
+				}
+			}
+			char[] request = new char[length];
+			for (int read = 0; read < length;) {
+				int n = in.read(request, read, length - read);
+				if (n == -1) {
+					break;
+				}
+				read += n;
+			}
+
+			byte[] sent = body;
+			OutputStream out = socket.getOutputStream();
+			out.write(("HTTP/1.1 200 OK\r\n"
+					+ "Content-Type: application/json; charset=UTF-8\r\n"
+					+ (gzip ? "Content-Encoding: gzip\r\n" : "")
+					+ "Content-Length: " + sent.length + "\r\n"
+					+ "Connection: close\r\n\r\n").getBytes("UTF-8"));
+			out.write(sent);
+			out.flush();
+		}
+	}
+}
@@ -0,0 +1,283 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import android.os.Build;
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Choice;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ChapterManager;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ChoiceManager;
+import ca.ualberta.cmput301f13t13.storyhoard.local.DBContract;
+import ca.ualberta.cmput301f13t13.storyhoard.local.DBHelper;
+import ca.ualberta.cmput301f13t13.storyhoard.local.StoryCorpusGenerator;
+import ca.ualberta.cmput301f13t13.storyhoard.local.StoryIndex;
+import ca.ualberta.cmput301f13t13.storyhoard.local.StoryManager;
+import ca.ualberta.cmput301f13t13.storyhoard.local.Syncher;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.InMemoryStoryRepository;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.StoryQuery;
+
+/**
+ * Measures how long the persistence layer takes, for corpora of several
+ * sizes: inserting, updating and syncing stories, getting them by id,
+ * getting the chapters of a story, reading a whole story back (hydration),
+ * and searching by keyword, on the phone's database and on an
+ * InMemoryStoryRepository standing in for the server. The stories are made
+ * by a StoryCorpusGenerator with a fixed seed, so every run measures the
+ * same data. </br></br>
+ *
+ * The results are printed to the logcat and written as JSON to
+ * "benchmarks/" in the application's folder on the SD card, from where
+ * they can be pulled with adb and compared with earlier runs. Only small
+ * corpora are used by default, so the whole test suite still runs in a
+ * reasonable time; change SIZES to measure larger ones.
+ * TestStoryCorpusGenerator.testStress() checks that a corpus of 10000
+ * stories loads and can be searched, when asked to.
+ *
+ * @author Stephanie Gil
+ *
+ * @see Benchmark
+ */
+public class BenchmarkPersistence extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	/**
+	 * Number of stories in each corpus measured.
+	 */
+	static final int[] SIZES = { 10, 100, 500 };
+	static final int WARMUP = 2;
+	static final int ITERATIONS = 5;
+	static final int CHAPTERS = 3;
+	static final int CHOICES = 2;
+	private static final String[] WORDS = { "cow", "dragon", "castle",
+			"river", "forest", "king", "ship", "moon", "winter", "garden",
+			"thief", "tower", "storm", "island", "wolf", "lantern" };
+
+	private Random random;
+	private StoryCorpusGenerator generator;
+
+	public BenchmarkPersistence() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		random = new Random(42);
+		generator = new StoryCorpusGenerator(42);
+		generator.setChapters(CHAPTERS, CHAPTERS);
+		generator.setBranching(CHOICES, CHOICES);
+		generator.setWords(200, 0.6);
+	}
+
+	protected void tearDown() throws Exception {
+		clearDatabase();
+		super.tearDown();
+	}
+
+	/**
+	 * Measures the phone's database, through the managers and the Syncher.
+	 */
+	public void testDatabase() throws Exception {
+		final StoryManager storyMan = StoryManager.getInstance(getActivity());
+		final ChapterManager chapMan = ChapterManager
+				.getInstance(getActivity());
+		final Syncher syncher = Syncher.getInstance(getActivity());
+		final StoryIndex index = StoryIndex.getInstance(getActivity());
+		Benchmark bench = newBenchmark("persistence");
+
+		for (int size : SIZES) {
+			clearDatabase();
+			final ArrayList<Story> corpus = generator.generate(size);
+			Map<String, Object> params = new HashMap<String, Object>();
+			params.put("stories", size);
+
+			// in transactions, the way the generator loads large corpora
+			long start = System.nanoTime();
+			int batch = StoryCorpusGenerator.BATCH_SIZE;
+			for (int i = 0; i < size; i += batch) {
+				generator.loadIntoDatabase(getActivity(), corpus.subList(i,
+						Math.min(size, i + batch)));
+			}
+			bench.record("load", params, size, start);
+
+			// one story at a time, the way the application inserts them
+			bench.measure("insert", params, 10, new Benchmark.Operation() {
+				@Override
+				public void run(int i) {
+					insert(generator.nextStory());
+				}
+			});
+			bench.measure("update", params, 20, new Benchmark.Operation() {
+				@Override
+				public void run(int i) {
+					Story story = pick(corpus);
+					story.setDescription("updated " + i);
+					storyMan.update(story);
+				}
+			});
+			bench.measure("sync", params, 10, new Benchmark.Operation() {
+				@Override
+				public void run(int i) {
+					syncher.syncStoryFromMemory(pick(corpus));
+				}
+			});
+			bench.measure("getById", params, 50, new Benchmark.Operation() {
+				@Override
+				public void run(int i) {
+					assertNotNull(storyMan.getById(pick(corpus).getId()));
+				}
+			});
+			bench.measure("getChaptersByStory", params, 50,
+					new Benchmark.Operation() {
+				@Override
+				public void run(int i) {
+					assertEquals(chapMan.getChaptersByStory(
+							pick(corpus).getId()).size(), CHAPTERS);
+				}
+			});
+			bench.measure("hydrate", params, 20, new Benchmark.Operation() {
+				@Override
+				public void run(int i) {
+					Story story = storyMan.getById(pick(corpus).getId());
+					story.setChapters(syncher.syncChaptersFromDb(
+							story.getId()));
+				}
+			});
+			bench.measure("search.db", params, 20, new Benchmark.Operation() {
+				@Override
+				public void run(int i) {
+					storyMan.searchCachedStories(pickWord());
+				}
+			});
+			bench.measure("search.index", params, 20,
+					new Benchmark.Operation() {
+				@Override
+				public void run(int i) {
+					index.search(pickWord(), false, 20);
+				}
+			});
+		}
+		finish(bench);
+	}
+
+	/**
+	 * Measures the InMemoryStoryRepository, which is what ServerManager
+	 * does without the network.
+	 */
+	public void testRepository() throws Exception {
+		Benchmark bench = newBenchmark("repository");
+
+		for (int size : SIZES) {
+			final InMemoryStoryRepository repository =
+					new InMemoryStoryRepository(42);
+			final ArrayList<Story> corpus = generator.generate(size);
+			Map<String, Object> params = new HashMap<String, Object>();
+			params.put("stories", size);
+
+			long start = System.nanoTime();
+			for (Story story : corpus) {
+				repository.put(story, null);
+			}
+			bench.record("load", params, size, start);
+
+			bench.measure("put", params, 20, new Benchmark.Operation() {
+				@Override
+				public void run(int i) throws Exception {
+					repository.put(pick(corpus), null);
+				}
+			});
+			bench.measure("getById", params, 50, new Benchmark.Operation() {
+				@Override
+				public void run(int i) throws Exception {
+					assertNotNull(repository.getById(pick(corpus).getId()
+							.toString(), null));
+				}
+			});
+			bench.measure("search", params, 20, new Benchmark.Operation() {
+				@Override
+				public void run(int i) throws Exception {
+					StoryQuery query = new StoryQuery(pickWord());
+					query.setFields(StoryQuery.HEADER_FIELDS);
+					repository.search(query);
+				}
+			});
+		}
+		finish(bench);
+	}
+
+	private Benchmark newBenchmark(String suite) {
+		Benchmark bench = new Benchmark(suite, WARMUP, ITERATIONS);
+		bench.setEnvironment("device", Build.MANUFACTURER + " " + Build.MODEL);
+		bench.setEnvironment("sdk", String.valueOf(Build.VERSION.SDK_INT));
+		return bench;
+	}
+
+	/**
+	 * Checks every operation was measured, and writes the results.
+	 */
+	private void finish(Benchmark bench) throws Exception {
+		for (Benchmark.Result result : bench.getResults()) {
+			assertTrue(result.getName(), result.getScore() > 0);
+		}
+		File folder = getActivity().getExternalFilesDir(null);
+		if (folder == null) {
+			folder = getActivity().getFilesDir();
+		}
+		File file = new File(new File(folder, "benchmarks"), bench.toJson()
+				.get("suite").getAsString() + "-" + System.currentTimeMillis()
+				+ ".json");
+		bench.write(file);
+		assertTrue(file.length() > 0);
+		System.out.println("Benchmark results written to " + file);
+	}
+
+	/**
+	 * Inserts a story and all of its parts into the database.
+	 */
+	private void insert(Story story) {
+		StoryManager.getInstance(getActivity()).insert(story);
+		ChapterManager chapMan = ChapterManager.getInstance(getActivity());
+		ChoiceManager choiceMan = ChoiceManager.getInstance(getActivity());
+		for (Chapter chap : story.getChapters()) {
+			chapMan.insert(chap);
+			for (Choice choice : chap.getChoices()) {
+				choiceMan.insert(choice);
+			}
+		}
+	}
+
+	private Story pick(ArrayList<Story> corpus) {
+		return corpus.get(random.nextInt(corpus.size()));
+	}
+
+	private String pickWord() {
+		return WORDS[random.nextInt(WORDS.length)];
+	}
+
+	private void clearDatabase() {
+		DBHelper.getInstance(getActivity()).close();
+		getActivity().deleteDatabase(DBContract.DATABASE_NAME);
+		StoryIndex.getInstance(getActivity()).invalidate();
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.CircuitBreaker;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.CircuitBreaker.State;
+
+/**
+ * Tests the CircuitBreaker class, which refuses requests while the server is
+ * down. The breaker is given a clock the test moves forward itself.
+ *
+ * @author Stephanie Gil
+ *
+ * @see CircuitBreaker
+ */
+public class TestCircuitBreaker extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	private long time;
+	private CircuitBreaker breaker;
+
+	public TestCircuitBreaker() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		time = 1000;
+		breaker = new CircuitBreaker(3, 500) {
+			@Override
+			protected long now() {
+				return time;
+			}
+		};
+	}
+
+	/**
+	 * Tests that the breaker only opens after enough failures in a row.
+	 */
+	public void testOpens() throws Exception {
+		breaker.recordFailure();
+		breaker.recordFailure();
+		breaker.recordSuccess();
+		breaker.recordFailure();
+		breaker.recordFailure();
+		assertEquals(breaker.getState(), State.CLOSED);
+		breaker.allowRequest();
+
+		breaker.recordFailure();
+		assertEquals(breaker.getState(), State.OPEN);
+		assertFalse(breaker.isAvailable());
+		try {
+			breaker.allowRequest();
+			fail("should have been refused");
+		} catch (CircuitBreaker.ServerUnavailableException e) {
+			// expected
+		}
+	}
+
+	/**
+	 * Tests that once open, a single request is let through after a while,
+	 * and that it decides whether the breaker closes or opens again.
+	 */
+	public void testHalfOpen() throws Exception {
+		for (int i = 0; i < 3; ++i) {
+			breaker.recordFailure();
+		}
+		time += 499;
+		assertEquals(breaker.getState(), State.OPEN);
+		time += 1;
+		assertEquals(breaker.getState(), State.HALF_OPEN);
+		assertTrue(breaker.isAvailable());
+
+		// the first request tries the server, the others still wait
+		breaker.allowRequest();
+		assertEquals(breaker.getState(), State.OPEN);
+		try {
+			breaker.allowRequest();
+			fail("only one request should be let through");
+		} catch (CircuitBreaker.ServerUnavailableException e) {
+			// expected
+		}
+
+		// it failed, so the breaker opens for a while again
+		breaker.recordFailure();
+		assertEquals(breaker.getState(), State.OPEN);
+		time += 500;
+		breaker.allowRequest();
+		breaker.recordSuccess();
+		assertEquals(breaker.getState(), State.CLOSED);
+		breaker.allowRequest();
+	}
+
+	/**
+	 * Tests that a cancelled request lets another one try the server.
+	 */
+	public void testIgnored() throws Exception {
+		for (int i = 0; i < 3; ++i) {
+			breaker.recordFailure();
+		}
+		time += 500;
+		breaker.allowRequest();
+		breaker.recordIgnored();
+		assertEquals(breaker.getState(), State.HALF_OPEN);
+		breaker.allowRequest();
+	}
+}
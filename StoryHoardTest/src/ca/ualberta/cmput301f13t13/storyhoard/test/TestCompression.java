@@ -0,0 +1,165 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ESClient;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.GzipEntity;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.InflatingEntity;
+
+/**
+ * Tests the compression of requests to and responses from the server,
+ * against a stub server running on the phone.
+ *
+ * @author Stephanie Gil
+ *
+ * @see ESClient
+ * @see GzipEntity
+ * @see InflatingEntity
+ */
+public class TestCompression extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	private static final String TEXT = "{\"title\":\"The Cow\",\"text\":\""
+			+ "moo moo moo moo moo moo moo moo moo moo moo moo moo moo\"}";
+
+	public TestCompression() {
+		super(InfoActivity.class);
+	}
+
+	protected void tearDown() throws Exception {
+		ESClient.setCompressRequests(false);
+		super.tearDown();
+	}
+
+	/**
+	 * Tests that a body compressed by GzipEntity reads back the same through
+	 * InflatingEntity, and is smaller.
+	 */
+	public void testGzipRoundTrip() throws Exception {
+		GzipEntity gzip = new GzipEntity(new StringEntity(TEXT, "UTF-8"));
+		assertEquals(gzip.getContentEncoding().getValue(), "gzip");
+		assertTrue(gzip.isChunked());
+		ByteArrayOutputStream sent = new ByteArrayOutputStream();
+		gzip.writeTo(sent);
+		assertTrue(sent.size() < TEXT.length());
+
+		assertEquals(EntityUtils.toString(new InflatingEntity(
+				entity(sent.toByteArray()), true), "UTF-8"), TEXT);
+	}
+
+	/**
+	 * Tests that deflate is read both with and without the zlib header.
+	 */
+	public void testDeflate() throws Exception {
+		for (boolean raw : new boolean[] { false, true }) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DeflaterOutputStream deflate = new DeflaterOutputStream(bytes,
+					new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+			deflate.write(TEXT.getBytes("UTF-8"));
+			deflate.close();
+			assertEquals(EntityUtils.toString(new InflatingEntity(
+					entity(bytes.toByteArray()), false), "UTF-8"), TEXT);
+		}
+	}
+
+	/**
+	 * Tests that the shared client asks for compressed responses, and
+	 * decompresses them without the caller seeing it.
+	 */
+	public void testClient() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+		gzip.write(TEXT.getBytes("UTF-8"));
+		gzip.close();
+		final byte[] body = bytes.toByteArray();
+		final String[] accepted = { null };
+
+		final ServerSocket server = new ServerSocket(0);
+		Thread stub = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Socket socket = server.accept();
+					BufferedReader in = new BufferedReader(
+							new InputStreamReader(socket.getInputStream()));
+					String line;
+					while ((line = in.readLine()) != null && line.length() > 0) {
+						if (line.toLowerCase().startsWith("accept-encoding:")) {
+							accepted[0] = line.substring(16).trim();
+						}
+					}
+					OutputStream out = socket.getOutputStream();
+					out.write(("HTTP/1.1 200 OK\r\nContent-Encoding: gzip\r\n"
+							+ "Content-Length: " + body.length
+							+ "\r\nConnection: close\r\n\r\n").getBytes("UTF-8"));
+					out.write(body);
+					out.close();
+					socket.close();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		stub.start();
+		try {
+			HttpResponse response = ESClient.getHttpClient().execute(
+					new HttpGet("http://127.0.0.1:" + server.getLocalPort()
+							+ "/stories/_search"));
+			assertEquals(EntityUtils.toString(response.getEntity(), "UTF-8"),
+					TEXT);
+			stub.join(5000);
+			assertNotNull(accepted[0]);
+			assertTrue(accepted[0].contains("gzip"));
+		} finally {
+			server.close();
+		}
+	}
+
+	/**
+	 * Tests that request bodies are only compressed when asked for.
+	 */
+	public void testCompressRequests() throws Exception {
+		StringEntity plain = new StringEntity(TEXT, "UTF-8");
+		assertSame(ESClient.compress(plain), plain);
+		ESClient.setCompressRequests(true);
+		assertTrue(ESClient.compress(plain) instanceof GzipEntity);
+	}
+
+	private static BasicHttpEntity entity(byte[] bytes) {
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContent(new ByteArrayInputStream(bytes));
+		return entity;
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.util.UUID;
+
+import android.graphics.Bitmap;
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.BogoPicGen;
+import ca.ualberta.cmput301f13t13.storyhoard.local.CoverCache;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImagePolicy;
+import ca.ualberta.cmput301f13t13.storyhoard.local.MediaManager;
+import ca.ualberta.cmput301f13t13.storyhoard.local.Utilities;
+
+/**
+ * Tests the CoverCache class.
+ *
+ * @author Stephanie Gil
+ *
+ * @see CoverCache
+ */
+public class TestCoverCache extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	private CoverCache covers;
+
+	public TestCoverCache() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		covers = CoverCache.getInstance(getActivity());
+	}
+
+	/**
+	 * Tests that a story from the server gets its cover from the
+	 * bitmapString of its first illustration, and that it is then in memory.
+	 */
+	public void testCoverFromServerStory() {
+		Story story = new Story("title", "author", "desc",
+				Utilities.getPhoneId(getActivity()));
+		Chapter chap = new Chapter(story.getId(), "chapter");
+		Media ill = new Media(chap.getId(), null, Media.ILLUSTRATION, "");
+		ImagePolicy.PUBLISH.encode(BogoPicGen.generateBitmap(300, 200), ill);
+		chap.getIllustrations().add(ill);
+		story.setFirstChapterId(chap.getId());
+		story.getChapters().add(chap);
+
+		Bitmap cover = covers.get(story, 100);
+		assertNotNull(cover);
+		assertEquals(cover.getWidth(), 100);
+		assertEquals(cover.getHeight(), 100);
+		assertSame(covers.getFromMemory(story), cover);
+
+		covers.forget(story.getId());
+		assertNull(covers.getFromMemory(story));
+	}
+
+	/**
+	 * Tests that a story on the phone gets its cover from the database, and
+	 * that a story without illustrations has none, which is remembered until
+	 * the story is forgotten.
+	 */
+	public void testCoverFromLocalStory() {
+		Story story = new Story("title", "author", "desc",
+				Utilities.getPhoneId(getActivity()));
+		UUID chapId = UUID.randomUUID();
+		story.setFirstChapterId(chapId);
+		assertFalse(covers.hasNoCover(story));
+		assertNull(covers.get(story, 100));
+		assertTrue(covers.hasNoCover(story));
+
+		String path = Utilities.saveImageToSD(BogoPicGen.generateBitmap(200,
+				300));
+		Media ill = new Media(chapId, path, Media.ILLUSTRATION, "");
+		MediaManager.getInstance(getActivity()).insert(ill);
+		assertNull(covers.get(story, 100));
+		covers.forget(story.getId());
+		assertFalse(covers.hasNoCover(story));
+
+		Bitmap cover = covers.get(story, 100);
+		assertNotNull(cover);
+		assertEquals(cover.getWidth(), 100);
+	}
+}
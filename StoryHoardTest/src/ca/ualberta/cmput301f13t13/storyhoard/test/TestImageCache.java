@@ -0,0 +1,115 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.UUID;
+
+import android.graphics.Bitmap;
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.BogoPicGen;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImageCache;
+
+/**
+ * Tests the ImageCache class.
+ * 
+ * @author Stephanie Gil
+ * 
+ * @see ImageCache
+ */
+public class TestImageCache extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	private ImageCache cache;
+
+	public TestImageCache() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		cache = ImageCache.getInstance(getActivity());
+		cache.clearMemory();
+	}
+
+	/**
+	 * Tests that an image is decoded once, then found in memory, and then
+	 * found on disk once memory is cleared. Also checks the image is cropped
+	 * to exactly the size asked for.
+	 * @throws Exception 
+	 */
+	public void testMemoryAndDiskHits() throws Exception {
+		File file = new File(getActivity().getCacheDir(), "cacheme.jpg");
+		Media media = makeMedia(file);
+		
+		Bitmap first = cache.get(media, 250, 250);
+		assertNotNull(first);
+		assertEquals(first.getHeight(), 250);
+		assertEquals(first.getWidth(), 250);
+		assertEquals(cache.getMisses(), 1);
+		
+		assertSame(cache.get(media, 250, 250), first);
+		assertEquals(cache.getMemoryHits(), 1);
+		
+		cache.clearMemory();
+		assertNull(cache.getFromMemory(media, 250, 250));
+		assertNotNull(cache.get(media, 250, 250));
+		assertEquals(cache.getDiskHits(), 1);
+		assertEquals(cache.getMisses(), 0);
+		assertEquals(cache.getHitRate(), 1.0);
+		
+		file.delete();
+	}
+
+	/**
+	 * Tests that a bitmap still in use is not reused when it leaves the
+	 * memory cache, but is once it has been released.
+	 * @throws Exception 
+	 */
+	public void testReleaseReusesMemory() throws Exception {
+		File file = new File(getActivity().getCacheDir(), "reuseme.jpg");
+		Media media = makeMedia(file);
+		
+		Bitmap bitmap = cache.get(media, 250, 250);
+		assertNotNull(bitmap);
+		int reusable = cache.getReusableCount();
+		
+		cache.clearMemory();
+		assertEquals(cache.getReusableCount(), reusable);
+		assertFalse(bitmap.isRecycled());
+		
+		cache.release(bitmap);
+		assertEquals(cache.getReusableCount(), reusable + 1);
+		
+		// decoded from disk into the released bitmap
+		assertSame(cache.get(media, 250, 250), bitmap);
+		assertEquals(cache.getReusableCount(), reusable);
+		
+		file.delete();
+	}
+	
+	private Media makeMedia(File file) throws Exception {
+		Bitmap bmp = BogoPicGen.generateBitmap(1000, 600);
+		FileOutputStream out = new FileOutputStream(file);
+		bmp.compress(Bitmap.CompressFormat.JPEG, 85, out);
+		out.close();
+		bmp.recycle();
+		return new Media(UUID.randomUUID(), file.getAbsolutePath(), 
+				Media.ILLUSTRATION, "");
+	}
+}
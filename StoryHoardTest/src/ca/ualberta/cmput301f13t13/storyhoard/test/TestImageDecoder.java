@@ -0,0 +1,141 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImageDecoder;
+
+/**
+ * Tests the ImageDecoder class, and compares it with decoding images at
+ * full size.
+ *
+ * @author Stephanie Gil
+ *
+ * @see ImageDecoder
+ */
+public class TestImageDecoder extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	private TestImages images;
+
+	public TestImageDecoder() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		images = new TestImages(getActivity().getCacheDir());
+	}
+
+	protected void tearDown() throws Exception {
+		images.deleteAll();
+		super.tearDown();
+	}
+
+	/**
+	 * Tests that a decoded image fits inside the size asked for, keeps its
+	 * width to height ratio, and is never made bigger.
+	 * @throws Exception
+	 */
+	public void testDecodeFitting() throws Exception {
+		String path = images.makeImage("wide.jpg", 1000, 500);
+		Bitmap bitmap = ImageDecoder.decodeFitting(path, 200, 200);
+		assertEquals(bitmap.getWidth(), 200);
+		assertEquals(bitmap.getHeight(), 100);
+
+		bitmap = ImageDecoder.decodeFitting(path, 2000, 2000);
+		assertEquals(bitmap.getWidth(), 1000);
+		assertEquals(bitmap.getHeight(), 500);
+	}
+
+	/**
+	 * Tests that an image stored sideways with an EXIF tag comes out the
+	 * right way up.
+	 * @throws Exception
+	 */
+	public void testOrientation() throws Exception {
+		String path = images.makeImage("sideways.jpg", 1000, 500);
+		ExifInterface exif = new ExifInterface(path);
+		exif.setAttribute(ExifInterface.TAG_ORIENTATION,
+				String.valueOf(ExifInterface.ORIENTATION_ROTATE_90));
+		exif.saveAttributes();
+		assertEquals(ImageDecoder.getOrientation(path), 90);
+
+		Bitmap bitmap = ImageDecoder.decodeFitting(path, 200, 200);
+		assertEquals(bitmap.getWidth(), 100);
+		assertEquals(bitmap.getHeight(), 200);
+
+		bitmap = ImageDecoder.decodeCropped(path, 250, 250,
+				new BitmapFactory.Options(), null);
+		assertEquals(bitmap.getWidth(), 250);
+		assertEquals(bitmap.getHeight(), 250);
+	}
+
+	/**
+	 * Decodes a set of large images to thumbnails, once at full size and
+	 * then scaled down like Media.getBitmap() used to, and once with the
+	 * ImageDecoder. Prints out the time taken and the largest bitmap each
+	 * way needed.
+	 * @throws Exception
+	 */
+	public void testBenchmark() throws Exception {
+		int[][] sizes = { { 2048, 1536 }, { 1536, 2048 }, { 2592, 1456 } };
+		ArrayList<String> paths = new ArrayList<String>();
+		for (int i = 0; i < sizes.length; ++i) {
+			paths.add(images.makeImage("large" + i + ".jpg", sizes[i][0],
+					sizes[i][1]));
+		}
+
+		long fullBytes = 0;
+		long start = System.nanoTime();
+		for (String path : paths) {
+			Bitmap full = BitmapFactory.decodeFile(path);
+			fullBytes = Math.max(fullBytes, full.getByteCount());
+			Bitmap thumb = Bitmap.createScaledBitmap(full, 200, 200, false);
+			full.recycle();
+			thumb.recycle();
+		}
+		double fullMillis = (System.nanoTime() - start) / 1e6;
+
+		long sampledBytes = 0;
+		start = System.nanoTime();
+		for (String path : paths) {
+			BitmapFactory.Options options = new BitmapFactory.Options();
+			options.inJustDecodeBounds = true;
+			BitmapFactory.decodeFile(path, options);
+			int sampleSize = ImageDecoder.calculateInSampleSize(Math.min(
+					200f / options.outWidth, 200f / options.outHeight));
+			sampledBytes = Math.max(sampledBytes, 4L
+					* (options.outWidth / sampleSize)
+					* (options.outHeight / sampleSize));
+
+			Bitmap thumb = ImageDecoder.decodeFitting(path, 200, 200);
+			assertTrue(thumb.getWidth() <= 200 && thumb.getHeight() <= 200);
+			thumb.recycle();
+		}
+		double sampledMillis = (System.nanoTime() - start) / 1e6;
+
+		System.out.println(String.format("TestImageDecoder: full size %.1fms, "
+				+ "%d bytes max; subsampled %.1fms, %d bytes max", fullMillis,
+				fullBytes, sampledMillis, sampledBytes));
+		assertTrue(sampledBytes * 16 <= fullBytes);
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Base64;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.BogoPicGen;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImagePolicy;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImageStore;
+
+/**
+ * Tests the ImagePolicy class, and the encoding of images sent to the
+ * server with it.
+ *
+ * @author Stephanie Gil
+ *
+ * @see ImagePolicy
+ */
+public class TestImagePolicy extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	private TestImages images;
+
+	public TestImagePolicy() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		images = new TestImages(getActivity().getCacheDir());
+	}
+
+	protected void tearDown() throws Exception {
+		images.deleteAll();
+		super.tearDown();
+	}
+
+	/**
+	 * Tests that an image is encoded in the policy's format and size, and
+	 * that encoding an image already in that format and size gives the 
+	 * same file.
+	 * @throws Exception
+	 */
+	public void testEncodeImage() throws Exception {
+		ImageStore store = ImageStore.getInstance(getActivity());
+		String big = images.makeImage("big.jpg", 2000, 1000);
+		ImagePolicy policy = new ImagePolicy(800, 75, Media.WEBP, false);
+
+		String path = store.putRendition(big, policy);
+		assertNotNull(path);
+		images.track(new File(path));
+		assertTrue(path.endsWith(".webp"));
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(path, options);
+		assertEquals(options.outMimeType, "image/webp");
+		assertEquals(options.outWidth, 800);
+		assertEquals(options.outHeight, 400);
+
+		// already encoded
+		assertEquals(store.putRendition(path, policy), path);
+	}
+
+	/**
+	 * Tests that encode() records the format it used, and that
+	 * media from the server without a format are taken to be JPEGs.
+	 */
+	public void testMediaFormat() {
+		Media media = new Media(null, null, Media.PHOTO, "");
+		assertEquals(media.getFormat(), Media.JPEG);
+		ImagePolicy.PUBLISH.encode(BogoPicGen.generateBitmap(100, 100), media);
+		assertEquals(media.getFormat(), ImagePolicy.PUBLISH.getFormat());
+		assertNotNull(media.getBitmapFromString());
+
+		media.setFormat(null);
+		assertEquals(media.getFormat(), Media.JPEG);
+	}
+
+	/**
+	 * Encodes the sample images in the test project's assets for the
+	 * server, once like Media.getStringFromBitmap() used to (full size,
+	 * JPEG at quality 100) and once for each of a few policies. Prints out
+	 * the size of the base 64 payload, and the time taken to encode and
+	 * decode the images, each way. The samples are photos and scans, since
+	 * noise from BogoPicGen barely compresses and would make every codec
+	 * look about the same.
+	 * @throws Exception
+	 */
+	public void testBenchmark() throws Exception {
+		ArrayList<Bitmap> bitmaps = TestImages.loadSamples(
+				getInstrumentation().getContext().getAssets());
+		assertFalse(bitmaps.isEmpty());
+
+		long original = benchmark("full size JPEG 100", bitmaps,
+				new ImagePolicy(4096, 100, Media.JPEG, false));
+		long jpeg = benchmark("JPEG 85", bitmaps, new ImagePolicy(1024, 85,
+				Media.JPEG, false));
+		benchmark("WebP 75", bitmaps, new ImagePolicy(1024, 75, Media.WEBP,
+				false));
+		long publish = benchmark("PUBLISH", bitmaps, ImagePolicy.PUBLISH);
+
+		for (Bitmap bitmap : bitmaps) {
+			bitmap.recycle();
+		}
+		assertTrue(jpeg < original);
+		assertTrue(publish < original);
+	}
+
+	/**
+	 * Encodes and decodes the bitmaps as the policy says, and returns the
+	 * total length of their base 64 strings.
+	 */
+	private long benchmark(String name, ArrayList<Bitmap> bitmaps,
+			ImagePolicy policy) {
+		long payload = 0;
+		long encodeNanos = 0;
+		long decodeNanos = 0;
+		for (Bitmap bitmap : bitmaps) {
+			int max = policy.getMaxDimension();
+			float scale = Math.min(1f, Math.min((float) max / bitmap.getWidth(),
+					(float) max / bitmap.getHeight()));
+			long start = System.nanoTime();
+			Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+					Math.round(bitmap.getWidth() * scale),
+					Math.round(bitmap.getHeight() * scale), true);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			scaled.compress(policy.getCompressFormat(), policy.getQuality(),
+					out);
+			String base64 = Base64.encodeToString(out.toByteArray(),
+					Base64.DEFAULT);
+			encodeNanos += System.nanoTime() - start;
+			if (scaled != bitmap) {
+				scaled.recycle();
+			}
+			payload += base64.length();
+
+			start = System.nanoTime();
+			byte[] data = Base64.decode(base64, Base64.DEFAULT);
+			Bitmap decoded = BitmapFactory.decodeByteArray(data, 0,
+					data.length);
+			decodeNanos += System.nanoTime() - start;
+			assertNotNull(decoded);
+			decoded.recycle();
+		}
+		System.out.println(String.format("TestImagePolicy: %s, %d bytes, "
+				+ "encode %.1fms, decode %.1fms", name, payload,
+				encodeNanos / 1e6, decodeNanos / 1e6));
+		return payload;
+	}
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.UUID;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Base64;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.BogoPicGen;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImagePolicy;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImageStore;
+import ca.ualberta.cmput301f13t13.storyhoard.local.MediaManager;
+
+/**
+ * Tests the ImageStore class.
+ *
+ * @author Stephanie Gil
+ *
+ * @see ImageStore
+ */
+public class TestImageStore extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	private ImageStore store;
+	private MediaManager mediaMan;
+
+	public TestImageStore() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		store = ImageStore.getInstance(getActivity());
+		mediaMan = MediaManager.getInstance(getActivity());
+	}
+
+	/**
+	 * Tests that saving the same image twice gives the same file, and that
+	 * different images get different files.
+	 */
+	public void testSameImageSameFile() {
+		Media media = new Media(UUID.randomUUID(), null, Media.PHOTO, "");
+		ImagePolicy.PUBLISH.encode(BogoPicGen.generateBitmap(100, 100), media);
+
+		String first = store.put(media.getBitmapString());
+		String second = store.put(media.getBitmapString());
+		assertNotNull(first);
+		assertEquals(first, second);
+		assertTrue(store.contains(first));
+
+		String other = store.put(BogoPicGen.generateBitmap(100, 100));
+		assertFalse(first.equals(other));
+
+		new File(first).delete();
+		new File(other).delete();
+	}
+
+	/**
+	 * Tests saving a base 64 encoded image, and makes sure the file holds 
+	 * exactly the bytes that were encoded.
+	 * @throws Exception 
+	 */
+	public void testPutBase64() throws Exception {
+		Bitmap bmp = BogoPicGen.generateBitmap(300, 300);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bmp.compress(Bitmap.CompressFormat.JPEG, 100, bytes);
+		byte[] original = bytes.toByteArray();
+		String encoded = Base64.encodeToString(original, Base64.DEFAULT);
+		
+		String path = store.put(encoded);
+		assertNotNull(path);
+		
+		File file = new File(path);
+		assertEquals(file.length(), original.length);
+		byte[] saved = new byte[original.length];
+		FileInputStream in = new FileInputStream(file);
+		int read = 0;
+		while (read < saved.length) {
+			read += in.read(saved, read, saved.length - read);
+		}
+		in.close();
+		assertTrue(Arrays.equals(original, saved));
+		file.delete();
+	}
+
+	/**
+	 * Tests that garbage collection deletes files no media uses, and keeps
+	 * the ones still used.
+	 */
+	public void testCollectGarbage() {
+		Bitmap used = BogoPicGen.generateBitmap(50, 50);
+		Bitmap unused = BogoPicGen.generateBitmap(60, 60);
+		String usedPath = store.put(used);
+		String unusedPath = store.put(unused);
+
+		Media media = new Media(UUID.randomUUID(), usedPath, Media.PHOTO, "");
+		mediaMan.insert(media);
+		assertEquals(mediaMan.getPathCounts().get(usedPath), Integer.valueOf(1));
+
+		assertTrue(store.collectGarbage(0) >= 1);
+		assertTrue(store.contains(usedPath));
+		assertFalse(store.contains(unusedPath));
+
+		mediaMan.remove(media.getId());
+		store.collectGarbage(0);
+		assertFalse(store.contains(usedPath));
+	}
+
+	/**
+	 * Tests that garbage collection keeps files given to keep(), even if no
+	 * media in the database uses them.
+	 */
+	public void testKeep() {
+		String keptPath = store.put(BogoPicGen.generateBitmap(70, 70));
+		store.keep(keptPath);
+		store.collectGarbage(0);
+		assertTrue(store.contains(keptPath));
+		new File(keptPath).delete();
+	}
+
+	/**
+	 * Tests that a big image is shrunk to the policy's largest dimension,
+	 * and that a small JPEG is copied as it is.
+	 * @throws Exception 
+	 */
+	public void testPutRendition() throws Exception {
+		File big = new File(getActivity().getCacheDir(), "big.jpg");
+		TestImages.writeJpeg(BogoPicGen.generateBitmap(2000, 1000), big);
+		ImagePolicy policy = new ImagePolicy(800, 80, true);
+
+		String path = store.putRendition(big.getAbsolutePath(), policy);
+		assertTrue(store.contains(path));
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(path, options);
+		assertEquals(options.outWidth, 800);
+		assertEquals(options.outHeight, 400);
+		assertTrue(big.exists());
+
+		File small = new File(getActivity().getCacheDir(), "small.jpg");
+		TestImages.writeJpeg(BogoPicGen.generateBitmap(200, 100), small);
+		String copy = store.putRendition(small.getAbsolutePath(), policy);
+		assertEquals(new File(copy).length(), small.length());
+
+		big.delete();
+		small.delete();
+		new File(path).delete();
+		new File(copy).delete();
+	}
+}
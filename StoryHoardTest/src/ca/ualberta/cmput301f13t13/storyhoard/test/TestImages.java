@@ -0,0 +1,135 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import ca.ualberta.cmput301f13t13.storyhoard.local.BogoPicGen;
+
+/**
+ * Role: Makes the image files the image tests work on, and deletes them
+ * again once the test is done. </br></br>
+ *
+ * Generated images are noise from BogoPicGen, which is fine for testing
+ * sizes and orientation, but compresses nothing like a photo. Benchmarks
+ * of codecs should use the samples instead: the photo-like images in the
+ * test project's assets/images folder. </br></br>
+ *
+ * Example call: </br>
+ * TestImages images = new TestImages(getActivity().getCacheDir()); </br>
+ * String path = images.makeImage("wide.jpg", 1000, 500); </br>
+ * ... </br>
+ * images.deleteAll(); // in tearDown()
+ *
+ * @author Stephanie Gil
+ *
+ * @see TestImageDecoder
+ * @see TestImagePolicy
+ */
+public class TestImages {
+	/**
+	 * Folder of the test project's assets holding the sample images.
+	 */
+	public static final String SAMPLES = "images";
+
+	private final File folder;
+	private final ArrayList<File> files = new ArrayList<File>();
+
+	/**
+	 * Initializes a new TestImages.
+	 *
+	 * @param folder
+	 * 			Folder to make the images in, usually the cache folder.
+	 */
+	public TestImages(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Makes a JPEG of random noise, and returns its path. The file is
+	 * deleted by deleteAll().
+	 */
+	public String makeImage(String name, int width, int height)
+			throws IOException {
+		File file = new File(folder, name);
+		writeJpeg(BogoPicGen.generateBitmap(width, height), file);
+		files.add(file);
+		return file.getAbsolutePath();
+	}
+
+	/**
+	 * Makes deleteAll() delete the file too, such as one made by the code
+	 * being tested.
+	 */
+	public void track(File file) {
+		files.add(file);
+	}
+
+	/**
+	 * Deletes every file made or tracked.
+	 */
+	public void deleteAll() {
+		for (File file : files) {
+			file.delete();
+		}
+		files.clear();
+	}
+
+	/**
+	 * Writes the bitmap to the file as a JPEG at quality 85 (about what a
+	 * camera does), and recycles the bitmap.
+	 */
+	public static void writeJpeg(Bitmap bitmap, File file) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			bitmap.compress(Bitmap.CompressFormat.JPEG, 85, out);
+		} finally {
+			out.close();
+		}
+		bitmap.recycle();
+	}
+
+	/**
+	 * Decodes every sample image in the assets. The caller recycles them.
+	 *
+	 * @param assets
+	 * 			Assets of the test project, from
+	 * 			getInstrumentation().getContext().getAssets().
+	 */
+	public static ArrayList<Bitmap> loadSamples(AssetManager assets)
+			throws IOException {
+		ArrayList<Bitmap> samples = new ArrayList<Bitmap>();
+		for (String name : assets.list(SAMPLES)) {
+			InputStream in = assets.open(SAMPLES + "/" + name);
+			try {
+				Bitmap bitmap = BitmapFactory.decodeStream(in);
+				if (bitmap != null) {
+					samples.add(bitmap);
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return samples;
+	}
+}
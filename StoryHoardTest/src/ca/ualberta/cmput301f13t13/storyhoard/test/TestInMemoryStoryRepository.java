@@ -0,0 +1,224 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.InMemoryStoryRepository;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerManager;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.StoryQuery;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.TransferProgress;
+
+/**
+ * Tests the InMemoryStoryRepository class, and the ServerManager using it
+ * instead of the server.
+ *
+ * @author Stephanie Gil
+ *
+ * @see InMemoryStoryRepository
+ */
+public class TestInMemoryStoryRepository extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	private ServerManager sm;
+	private InMemoryStoryRepository repository;
+
+	public TestInMemoryStoryRepository() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		sm = ServerManager.getInstance();
+		repository = new InMemoryStoryRepository(42);
+		sm.setRepository(repository);
+	}
+
+	protected void tearDown() throws Exception {
+		sm.setTestServer();
+		super.tearDown();
+	}
+
+	/**
+	 * Tests that stories published are found by searches, best matches
+	 * first, and that lists only have the headers of the stories.
+	 */
+	public void testPublishAndSearch() {
+		Story byTitle = story("Harry's Cow", "Dr. Poe", "moo");
+		Story byAuthor = story("My Cow", "Harry Smith", "moo");
+		Story other = story("A Dog", "Rowling", "woof");
+		assertTrue(sm.update(byAuthor));
+		assertTrue(sm.update(byTitle));
+		assertTrue(sm.update(other));
+
+		ArrayList<Story> found = sm.searchByKeywords("HARRY cow");
+		assertEquals(found.size(), 2);
+		assertEquals(found.get(0).getId(), byTitle.getId());
+		assertEquals(found.get(1).getId(), byAuthor.getId());
+		assertEquals(sm.getAll().size(), 3);
+
+		// lists only have headers, getWholeStory() gets the rest
+		Story header = found.get(0);
+		assertTrue(header.isHeaderOnly());
+		assertNull(header.getChapters().get(0).getText());
+		Story whole = sm.getWholeStory(header);
+		assertFalse(whole.isHeaderOnly());
+		assertEquals(whole.getChapters().get(0).getText(), "once upon a time");
+
+		sm.remove(other.getId().toString());
+		assertNull(sm.getById(other.getId()));
+		assertEquals(sm.getAll().size(), 2);
+	}
+
+	/**
+	 * Tests that a story with an image missing from the repository isn't 
+	 * retrieved, since it couldn't be saved.
+	 */
+	public void testMissingPart() throws IOException {
+		Story story = story("Cow", "Author", "moo");
+		Chapter chap = story.getChapters().get(0);
+		Media ill = new Media(chap.getId(), null, Media.ILLUSTRATION, "");
+		ill.setPartId("missing");
+		chap.getIllustrations().add(ill);
+		repository.put(story, null);
+
+		assertNull(sm.getById(story.getId()));
+		assertEquals(sm.getByIds(Collections.singleton(story.getId())).size(),
+				0);
+		Story header = sm.getAll().get(0);
+		assertNull(sm.getWholeStory(header));
+	}
+
+	/**
+	 * Tests that getWholeStory() counts the images it downloads in the 
+	 * progress, and returns null once the progress is cancelled.
+	 */
+	public void testWholeStoryProgress() throws IOException {
+		TestImages images = new TestImages(getActivity().getCacheDir());
+		try {
+			Story story = story("Cow", "Author", "moo");
+			Chapter chap = story.getChapters().get(0);
+			for (int i = 0; i < 3; ++i) {
+				Media ill = new Media(chap.getId(), null, Media.ILLUSTRATION,
+						"");
+				ill.setUploadPath(images.makeImage("part" + i + ".jpg", 50,
+						50));
+				chap.getIllustrations().add(ill);
+			}
+			assertTrue(sm.update(story));
+			Story header = sm.getAll().get(0);
+
+			TransferProgress progress = new TransferProgress(null);
+			Story whole = sm.getWholeStory(header, progress);
+			assertNotNull(whole);
+			assertEquals(progress.getItemsDone(), 3);
+
+			progress = new TransferProgress(null);
+			progress.cancel();
+			assertNull(sm.getWholeStory(sm.getAll().get(0), progress));
+		} finally {
+			images.deleteAll();
+		}
+	}
+
+	/**
+	 * Tests the fields and pages of a StoryQuery.
+	 */
+	public void testQuery() throws IOException {
+		for (int i = 0; i < 5; ++i) {
+			repository.put(story("Cow " + i, "Author", "moo"), null);
+		}
+		StoryQuery query = new StoryQuery("cow");
+		query.setFields(StoryQuery.SUGGEST_FIELDS);
+		query.setPage(1, 3);
+		ArrayList<Story> found = repository.search(query);
+		assertEquals(found.size(), 3);
+		assertEquals(found.get(0).getTitle(), "Cow 1");
+		assertNull(found.get(0).getDescription());
+
+		query = new StoryQuery("co");
+		assertEquals(repository.search(query).size(), 0);
+		query.setPrefix(true);
+		assertEquals(repository.search(query).size(), 5);
+		assertEquals(repository.count(), 5);
+		assertEquals(repository.getIds(3, 10).size(), 2);
+	}
+
+	/**
+	 * Tests that the same seed fails the same calls, and that the breaker
+	 * opens after failures in a row.
+	 */
+	public void testSeededFailures() {
+		boolean[] first = failures(new InMemoryStoryRepository(7));
+		boolean[] second = failures(new InMemoryStoryRepository(7));
+		for (int i = 0; i < first.length; ++i) {
+			assertEquals(first[i], second[i]);
+		}
+
+		repository.setFailureRate(1);
+		for (int i = 0; i < 3; ++i) {
+			assertNull(sm.getById(story("a", "b", "c").getId()));
+		}
+		assertFalse(sm.isServerAvailable());
+		assertEquals(repository.getFailures(), 3);
+		// refused without being tried
+		sm.getAll();
+		assertEquals(repository.getCalls(), 3);
+	}
+
+	/**
+	 * Tests that every call takes at least the latency asked for.
+	 */
+	public void testLatency() throws IOException {
+		repository.setLatency(50, 60);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 4; ++i) {
+			repository.count();
+		}
+		assertTrue(System.currentTimeMillis() - start >= 200);
+	}
+
+	private static boolean[] failures(InMemoryStoryRepository repository) {
+		repository.setFailureRate(0.3);
+		boolean[] failed = new boolean[20];
+		for (int i = 0; i < failed.length; ++i) {
+			try {
+				repository.count();
+			} catch (IOException e) {
+				failed[i] = true;
+				// keeps the breaker from refusing the next calls
+				repository.getCircuitBreaker().reset();
+			}
+		}
+		return failed;
+	}
+
+	private static Story story(String title, String author,
+			String description) {
+		Story story = new Story(title, author, description, "phone");
+		Chapter chap = new Chapter(story.getId(), "once upon a time");
+		story.getChapters().add(chap);
+		story.setFirstChapterId(chap.getId());
+		return story;
+	}
+}
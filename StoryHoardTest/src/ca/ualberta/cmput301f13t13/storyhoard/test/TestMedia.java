@@ -29,6 +29,7 @@ import android.util.Log;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
 import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
 import ca.ualberta.cmput301f13t13.storyhoard.local.BogoPicGen;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImageDecoder;
 
 /**
  * Class meant for the testing of the Media class in the StoryHoard application.
@@ -76,7 +77,7 @@ public class TestMedia extends ActivityInstrumentationTestCase2<InfoActivity> {
 		UUID id = photo.getId();
 		UUID chapterId = photo.getChapterId();
 		String type = photo.getType();
-		Bitmap bm = photo.getBitmap();
+		Bitmap bm = ImageDecoder.decodeFitting(photo.getPath(), 200, 200);
 		String text = "text";
 
 		photo.setId(UUID.randomUUID());
@@ -91,7 +92,7 @@ public class TestMedia extends ActivityInstrumentationTestCase2<InfoActivity> {
 		assertNotSame(chapterId, photo.getChapterId());
 		assertFalse(type.equals(photo.getType()));
 		assertTrue(text.equals(photo.getText()));
-		assertTrue(photo.getBitmap() != null);
+		assertTrue(ImageDecoder.decodeFitting(photo.getPath(), 200, 200) != null);
 		assertFalse(photo.getPath().equals(path));
 	}
 	
@@ -31,6 +31,8 @@ import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
 import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
 import ca.ualberta.cmput301f13t13.storyhoard.local.BogoPicGen;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImageDecoder;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImagePolicy;
 import ca.ualberta.cmput301f13t13.storyhoard.local.MediaManager;
 
 /**
@@ -73,7 +75,7 @@ public class TestMediaManager extends
 		assertEquals(objects.size(), 1);
 
 		Media check = (Media) objects.get(0);
-		assertTrue(check.getBitmap() != null);
+		assertTrue(ImageDecoder.decodeFitting(check.getPath(), 200, 200) != null);
 	}
 
 	/**
@@ -173,7 +175,8 @@ public class TestMediaManager extends
 		
 		UUID chapId = UUID.randomUUID();
 		Media mockMedia = new Media(chapId, createPath(fname1), Media.PHOTO, "");
-		mockMedia.setBitmapString(mockMedia.getBitmap());
+		ImagePolicy.PUBLISH.encode(ImageDecoder.decodeFitting(
+				mockMedia.getPath(), 200, 200), mockMedia);
 		mm.sync(mockMedia, mockMedia.getId());
 		ArrayList<Media> mockMedias = mm.retrieve(mockMedia);
 		assertEquals(mockMedias.size(), 1);
@@ -0,0 +1,144 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.MediaManager;
+import ca.ualberta.cmput301f13t13.storyhoard.local.MediaPipeline;
+import ca.ualberta.cmput301f13t13.storyhoard.local.Metrics;
+
+/**
+ * Tests the MediaPipeline class.
+ * 
+ * @author Stephanie Gil
+ * 
+ * @see MediaPipeline
+ */
+public class TestMediaPipeline extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	private MediaPipeline pipeline;
+
+	public TestMediaPipeline() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		pipeline = MediaPipeline.getInstance(getActivity());
+		Metrics.reset();
+		Metrics.setEnabled(true);
+	}
+
+	protected void tearDown() throws Exception {
+		Metrics.setEnabled(false);
+		Metrics.reset();
+		super.tearDown();
+	}
+
+	/**
+	 * Tests that every media goes through both stages, that the work is 
+	 * timed, and that once finishWrites() returns, the media are in the 
+	 * database.
+	 */
+	public void testForEachAndWrite() {
+		final MediaManager mediaMan = MediaManager.getInstance(getActivity());
+		UUID chapId = UUID.randomUUID();
+		ArrayList<Media> medias = new ArrayList<Media>();
+		for (int i = 0; i < 40; ++i) {
+			medias.add(new Media(chapId, "", Media.PHOTO, "" + i));
+		}
+		
+		final AtomicInteger worked = new AtomicInteger();
+		final List<Media> written = Collections
+				.synchronizedList(new ArrayList<Media>());
+		pipeline.forEach(medias, "work", new MediaPipeline.Stage() {
+			@Override
+			public void run(Media media) {
+				media.setPath("/tmp/" + media.getText() + ".jpg");
+				worked.incrementAndGet();
+			}
+		}, new MediaPipeline.Stage() {
+			@Override
+			public void run(Media media) {
+				mediaMan.insert(media);
+				written.add(media);
+			}
+		});
+		assertEquals(worked.get(), 40);
+		assertEquals(Metrics.getTimer(MediaPipeline.TIMER + "work")
+				.getCount(), 40);
+		
+		assertTrue(pipeline.finishWrites());
+		assertEquals(written.size(), 40);
+		assertEquals(mediaMan.getPhotosByChapter(chapId).size(), 40);
+		assertTrue(Metrics.getTimer(MediaPipeline.TIMER + "db").getCount() > 0);
+		
+		for (Media media : medias) {
+			mediaMan.remove(media.getId());
+		}
+	}
+
+	/**
+	 * Tests that a work stage that fails is counted, and that its media 
+	 * isn't given to the database stage.
+	 */
+	public void testFailedStage() {
+		ArrayList<Media> medias = new ArrayList<Media>();
+		for (int i = 0; i < 10; ++i) {
+			medias.add(new Media(UUID.randomUUID(), "", Media.PHOTO, "" + i));
+		}
+		final AtomicInteger written = new AtomicInteger();
+		int failed = pipeline.forEach(medias, "work", new MediaPipeline.Stage() {
+			@Override
+			public void run(Media media) {
+				if (Integer.parseInt(media.getText()) % 2 == 0) {
+					throw new IllegalStateException("work failed");
+				}
+			}
+		}, new MediaPipeline.Stage() {
+			@Override
+			public void run(Media media) {
+				written.incrementAndGet();
+			}
+		});
+		assertEquals(failed, 5);
+		assertTrue(pipeline.finishWrites());
+		assertEquals(written.get(), 5);
+	}
+
+	/**
+	 * Tests that a write that fails makes finishWrites() return false, and 
+	 * that the failure isn't reported again by the next finishWrites().
+	 */
+	public void testFailedWrite() {
+		pipeline.write(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException("write failed");
+			}
+		});
+		assertFalse(pipeline.finishWrites());
+		assertTrue(pipeline.finishWrites());
+	}
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import org.apache.http.entity.StringEntity;
+
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.Metrics;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.MeteredEntity;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Tests the Metrics class, and the MeteredEntity counting the bytes sent to
+ * and received from the server.
+ *
+ * @author Stephanie Gil
+ *
+ * @see Metrics
+ * @see MeteredEntity
+ */
+public class TestMetrics extends ActivityInstrumentationTestCase2<InfoActivity> {
+
+	public TestMetrics() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		Metrics.reset();
+		Metrics.setEnabled(true);
+	}
+
+	protected void tearDown() throws Exception {
+		Metrics.setEnabled(false);
+		Metrics.reset();
+		super.tearDown();
+	}
+
+	/**
+	 * Tests that nothing is recorded while the metrics are off.
+	 */
+	public void testDisabled() {
+		Metrics.setEnabled(false);
+		assertEquals(Metrics.start(), 0);
+		Metrics.count("a");
+		Metrics.record("b", 5);
+		Metrics.time("c", System.nanoTime());
+		assertEquals(Metrics.getCount("a"), 0);
+		assertNull(Metrics.getHistogram("b"));
+		assertNull(Metrics.getTimer("c"));
+	}
+
+	/**
+	 * Tests counters, timers and the percentiles of histograms.
+	 */
+	public void testRecord() throws InterruptedException {
+		Metrics.count("a");
+		Metrics.count("a", 4);
+		assertEquals(Metrics.getCount("a"), 5);
+
+		for (int i = 1; i <= 100; ++i) {
+			Metrics.record("b", i);
+		}
+		Metrics.Histogram b = Metrics.getHistogram("b");
+		assertEquals(b.getCount(), 100);
+		assertEquals(b.getSum(), 5050);
+		assertEquals(b.getMin(), 1);
+		assertEquals(b.getMax(), 100);
+		// within a factor of 2 of the real ones
+		assertTrue(b.getPercentile(0.5) >= 50 && b.getPercentile(0.5) < 100);
+		assertEquals(b.getPercentile(0.99), 100);
+
+		long start = Metrics.start();
+		Thread.sleep(20);
+		Metrics.time("c", start);
+		assertEquals(Metrics.getTimer("c").getCount(), 1);
+		assertTrue(Metrics.getTimer("c").getMax() >= 20000000L);
+	}
+
+	/**
+	 * Tests that the snapshot has everything recorded, with times in
+	 * milliseconds, and that reset() forgets it all.
+	 */
+	public void testSnapshot() {
+		Metrics.count("cache.hit", 3);
+		Metrics.record("es.bytes.in", 1000);
+		JsonObject snapshot = Metrics.snapshot();
+		assertTrue(snapshot.get("enabled").getAsBoolean());
+		assertEquals(snapshot.getAsJsonObject("counters").get("cache.hit")
+				.getAsLong(), 3);
+		assertEquals(snapshot.getAsJsonObject("histograms")
+				.getAsJsonObject("es.bytes.in").get("max").getAsDouble(),
+				1000.0);
+		assertTrue(Metrics.report().contains("es.bytes.in"));
+
+		Metrics.reset();
+		assertEquals(Metrics.getCount("cache.hit"), 0);
+		assertEquals(Metrics.snapshot().getAsJsonObject("histograms")
+				.entrySet().size(), 0);
+	}
+
+	/**
+	 * Tests that a MeteredEntity records the size of what is read from it
+	 * and written by it.
+	 */
+	public void testMeteredEntity() throws Exception {
+		String body = "{\"title\": \"The Cow\"}";
+		MeteredEntity entity = new MeteredEntity(new StringEntity(body),
+				"in");
+		InputStream in = entity.getContent();
+		while (in.read(new byte[4]) != -1) {
+		}
+		in.close();
+		assertEquals(Metrics.getHistogram("in").getCount(), 1);
+		assertEquals(Metrics.getHistogram("in").getSum(), body.length());
+
+		entity = new MeteredEntity(new StringEntity(body), "out");
+		entity.writeTo(new ByteArrayOutputStream());
+		assertEquals(Metrics.getHistogram("out").getSum(), body.length());
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.QueryCache;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.StoryQuery;
+
+/**
+ * Tests the QueryCache class, which keeps the stories returned by recent
+ * searches of the server.
+ *
+ * @author Stephanie Gil
+ *
+ * @see QueryCache
+ */
+public class TestQueryCache extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	private File folder;
+	private QueryCache cache;
+
+	public TestQueryCache() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		folder = new File(getActivity().getCacheDir(), "testQueries");
+		cache = newCache();
+		cache.clear();
+	}
+
+	protected void tearDown() throws Exception {
+		cache.clear();
+		super.tearDown();
+	}
+
+	/**
+	 * Tests that the stories kept for a query are found again, and that the
+	 * hits and misses are counted.
+	 */
+	public void testPutGet() {
+		String key = query("harry potter", 0);
+		assertNull(cache.get(key));
+
+		ArrayList<Story> stories = new ArrayList<Story>();
+		stories.add(new Story("Harry Potter", "Rowling", "wizards", "phone"));
+		cache.put(key, stories);
+
+		QueryCache.Entry entry = cache.get(key);
+		assertNotNull(entry);
+		assertTrue(entry.isFresh());
+		assertEquals(entry.getStories().size(), 1);
+		assertEquals(entry.getStories().get(0).getId(), stories.get(0).getId());
+		assertEquals(entry.getStories().get(0).getTitle(), "Harry Potter");
+
+		// the same words in another case are the same query
+		assertNotNull(cache.get(query("Harry  POTTER", 0)));
+		// another page is not
+		assertNull(cache.get(query("harry potter", 10)));
+
+		assertEquals(cache.getHits(), 2);
+		assertEquals(cache.getStaleHits(), 0);
+		assertEquals(cache.getMisses(), 2);
+	}
+
+	/**
+	 * Tests that the queries used least recently are dropped once there are
+	 * more than MAX_ENTRIES, and that clear() drops everything.
+	 */
+	public void testEviction() {
+		for (int i = 0; i < QueryCache.MAX_ENTRIES; ++i) {
+			cache.put(query("word" + i, 0), new ArrayList<Story>());
+		}
+		// uses the first query, so the second is now the least recent
+		assertNotNull(cache.get(query("word0", 0)));
+		cache.put(query("one more", 0), new ArrayList<Story>());
+
+		assertNotNull(cache.get(query("word0", 0)));
+		assertNull(cache.get(query("word1", 0)));
+		assertNotNull(cache.get(query("word2", 0)));
+		assertNotNull(cache.get(query("one more", 0)));
+		assertEquals(folder.listFiles().length, QueryCache.MAX_ENTRIES);
+
+		cache.clear();
+		assertNull(cache.get(query("word0", 0)));
+		assertEquals(folder.listFiles().length, 0);
+	}
+
+	/**
+	 * Tests that the queries kept are still there for a new cache, as after
+	 * the application is restarted.
+	 */
+	public void testPersistence() {
+		ArrayList<Story> stories = new ArrayList<Story>();
+		stories.add(new Story("Kept", "Author", "description", "phone"));
+		cache.put(query("kept", 0), stories);
+
+		QueryCache restarted = newCache();
+		QueryCache.Entry entry = restarted.get(query("kept", 0));
+		assertNotNull(entry);
+		assertEquals(entry.getStories().get(0).getTitle(), "Kept");
+		assertEquals(restarted.getHits(), 1);
+	}
+
+	private QueryCache newCache() {
+		return new QueryCache(folder) {};
+	}
+
+	private static String query(String text, int from) {
+		StoryQuery query = new StoryQuery(text);
+		query.setFields(StoryQuery.HEADER_FIELDS);
+		query.setPage(from, 10);
+		return query.toJson();
+	}
+}
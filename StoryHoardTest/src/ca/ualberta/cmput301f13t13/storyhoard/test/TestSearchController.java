@@ -0,0 +1,114 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.controllers.SearchController;
+import ca.ualberta.cmput301f13t13.storyhoard.controllers.SearchController.Result;
+import ca.ualberta.cmput301f13t13.storyhoard.controllers.SearchController.ResultListener;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.DBContract;
+import ca.ualberta.cmput301f13t13.storyhoard.local.DBHelper;
+import ca.ualberta.cmput301f13t13.storyhoard.local.StoryIndex;
+import ca.ualberta.cmput301f13t13.storyhoard.local.StoryManager;
+import ca.ualberta.cmput301f13t13.storyhoard.local.Utilities;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerManager;
+
+/**
+ * Tests the search of every place at once in the SearchController class.
+ *
+ * @author Stephanie Gil
+ *
+ * @see SearchController
+ */
+public class TestSearchController extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+
+	public TestSearchController() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		DBHelper.getInstance(getActivity()).close();
+		getActivity().deleteDatabase(DBContract.DATABASE_NAME);
+		StoryIndex.getInstance(getActivity()).invalidate();
+	}
+
+	/**
+	 * Tests that the stories on the phone come first, that the published
+	 * stories are added after them, and that a downloaded story which is 
+	 * also published is only listed once, marked as being in both places.
+	 * @throws Exception 
+	 */
+	public void testSearchAll() throws Exception {
+		StoryManager sm = StoryManager.getInstance(getActivity());
+		ServerManager server = ServerManager.getInstance();
+		server.setTestServer();
+
+		Story mine = new Story("Federated zebra mine", "me", "",
+				Utilities.getPhoneId(getActivity()));
+		Story both = new Story("Federated zebra both", "someone", "", 
+				"otherphone");
+		Story published = new Story("Federated zebra published", "someone",
+				"", "otherphone");
+		sm.insert(mine);
+		sm.insert(both);
+		server.insert(both);
+		server.insert(published);
+		Thread.sleep(2000);
+
+		final ArrayList<ArrayList<Result>> delivered = 
+				new ArrayList<ArrayList<Result>>();
+		final CountDownLatch done = new CountDownLatch(1);
+		SearchController.getInstance(getActivity()).search("federated zebra",
+				new ResultListener() {
+					@Override
+					public void onResults(ArrayList<Result> results,
+							boolean finished) {
+						delivered.add(results);
+						if (finished) {
+							done.countDown();
+						}
+					}
+
+					@Override
+					public void onServerFailure(Exception e) {
+						fail(e.toString());
+					}
+				});
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+
+		ArrayList<Result> results = delivered.get(delivered.size() - 1);
+		assertEquals(results.size(), 3);
+		assertEquals(results.get(0).getStory().getId(), mine.getId());
+		assertTrue(results.get(0).isIn(SearchController.AUTHOR));
+		assertFalse(results.get(0).isIn(SearchController.PUBLISHED));
+		assertEquals(results.get(1).getStory().getId(), both.getId());
+		assertTrue(results.get(1).isIn(SearchController.CACHED));
+		assertTrue(results.get(1).isIn(SearchController.PUBLISHED));
+		assertEquals(results.get(2).getStory().getId(), published.getId());
+		assertFalse(results.get(2).isLocal());
+
+		server.remove(both.getId().toString());
+		server.remove(published.getId().toString());
+	}
+}
@@ -17,13 +17,17 @@ package ca.ualberta.cmput301f13t13.storyhoard.test;
 
 import java.util.ArrayList;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import android.test.ActivityInstrumentationTestCase2;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Choice;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
 import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerCallback;
 import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerManager;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerTask;
 
 /**
  * Tests the methods of the ServerManager class.
@@ -87,6 +91,93 @@ public class TestServerManager extends
 		sm.remove(story.getId().toString());
 	}
 
+	/**
+	 * Tests retrieving several stories in one request by their ids, and 
+	 * makes sure ids not on the server are just skipped.
+	 * @throws InterruptedException 
+	 */
+	public void testGetByIds() throws InterruptedException {
+		sm = ServerManager.getInstance();
+		sm.setTestServer();
+		
+		Story story = new Story("Harry Potter test", "oprah", 
+				"the emo boy", "232");
+		Story story2 = new Story("Ugly Duckling test", "oprah", 
+				"the emo boy", "232");
+		Chapter chap = new Chapter(story.getId(), "on a dark cold night");
+		story.getChapters().add(chap);
+		
+		sm.insert(story);
+		sm.insert(story2);
+		Thread.sleep(5000);
+		
+		ArrayList<UUID> ids = new ArrayList<UUID>();
+		ids.add(story.getId());
+		ids.add(UUID.randomUUID());
+		ids.add(story2.getId());
+		
+		stories = sm.getByIds(ids);
+		assertEquals(stories.size(), 2);
+		assertTrue(hasStory(stories, story));
+		assertTrue(hasStory(stories, story2));
+		
+		sm.remove(story.getId().toString());
+		sm.remove(story2.getId().toString());
+	}
+
+	/**
+	 * Tests that the asynchronous version of getById() delivers the story to
+	 * its callback, and that a cancelled task never calls its callback.
+	 * @throws Exception 
+	 */
+	public void testAsyncGetByIdAndCancel() throws Exception {
+		sm = ServerManager.getInstance();
+		sm.setTestServer();
+		
+		final Story story = new Story("Harry Potter test", "oprah", 
+				"the emo boy", "232");
+		sm.insert(story);
+		Thread.sleep(5000);
+		
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Story[] found = new Story[1];
+		ServerTask<Story> task = sm.getById(story.getId(), 
+				new ServerCallback<Story>() {
+			@Override
+			public void onSuccess(Story result) {
+				found[0] = result;
+				latch.countDown();
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				latch.countDown();
+			}
+		});
+		assertTrue(latch.await(20, TimeUnit.SECONDS));
+		assertNotNull(found[0]);
+		assertEquals(found[0].getId(), story.getId());
+		assertEquals(task.get().getId(), story.getId());
+		
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		task = sm.getById(story.getId(), new ServerCallback<Story>() {
+			@Override
+			public void onSuccess(Story result) {
+				cancelled.countDown();
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				cancelled.countDown();
+			}
+		});
+		task.cancel(true);
+		assertTrue(task.isCancelled());
+		assertFalse(cancelled.await(5, TimeUnit.SECONDS));
+		
+		sm.remove(story.getId().toString());
+	}
+
 	/**
 	 * Tests loading all created stories, and makes sure the results don't
 	 * include any stories not created by author.
@@ -196,6 +287,30 @@ public class TestServerManager extends
 		assertNull(newStory);
 	}
 	
+	/**
+	 * Tests searching by author and description, with characters that used
+	 * to break the query, and that the results only have their headers.
+	 * @throws InterruptedException 
+	 */
+	public void testSearchFields() throws InterruptedException {
+		sm = ServerManager.getInstance();
+		sm.setTestServer();
+		
+		Story story = new Story("Harry Potter test", "o'prah \"winfrey\"", 
+				"the emo boy", "232");
+		Chapter chap = new Chapter(story.getId(), "on a dark cold night");
+		story.getChapters().add(chap);
+		sm.insert(story);
+		Thread.sleep(2000);
+		
+		ArrayList<Story> results = sm.searchByKeywords("\"winfrey\" emo");
+		assertTrue(hasStory(results, story));
+		results = sm.searchByKeywords("harry pot AND (");
+		assertFalse(hasStory(results, story));
+		
+		sm.remove(story.getId().toString());
+	}
+	
     /**
      * Checks whether a story is contained in a stories ArrayList.
      */
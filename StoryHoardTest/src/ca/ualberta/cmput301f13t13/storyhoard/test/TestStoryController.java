@@ -6,6 +6,7 @@ import java.util.UUID;
 import android.test.ActivityInstrumentationTestCase2;
 import ca.ualberta.cmput301f13t13.storyhoard.controllers.StoryController;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
 import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
 import ca.ualberta.cmput301f13t13.storyhoard.local.ChapterManager;
@@ -45,6 +46,25 @@ public class TestStoryController extends ActivityInstrumentationTestCase2<InfoAc
 		assertEquals(mockStory.getChapters().size(), 1);
 	}		
 	
+	/**
+	 * Tests that a story with an image that can't be read isn't published.
+	 */
+	public void testPushUnreadableImageFails() {
+		ServerManager sm = ServerManager.getInstance();
+		StoryController sc = StoryController.getInstance(getActivity());
+		sm.setTestServer();
+		
+		Story mockStory = new Story("title1", "author1", "desc1",
+				Utilities.getPhoneId(this.getActivity()));
+		Chapter chap = new Chapter(mockStory.getId(), "new");
+		chap.getPhotos().add(new Media(chap.getId(), "/no/such/image.jpg", 
+				Media.PHOTO, ""));
+		mockStory.getChapters().add(chap);
+		sc.setCurrStoryComplete(mockStory);
+		assertFalse(sc.pushChangesToServer());
+		assertNull(chap.getPhotos().get(0).getUploadPath());
+	}
+	
 	/**
 	 * Tests saving /updating changes to a story or a new story in memory to 
 	 * the database.
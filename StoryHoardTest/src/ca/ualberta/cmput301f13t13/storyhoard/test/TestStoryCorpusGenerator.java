@@ -0,0 +1,219 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.UUID;
+
+import android.os.Bundle;
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Choice;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ChapterManager;
+import ca.ualberta.cmput301f13t13.storyhoard.local.DBContract;
+import ca.ualberta.cmput301f13t13.storyhoard.local.DBHelper;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImageDecoder;
+import ca.ualberta.cmput301f13t13.storyhoard.local.MediaManager;
+import ca.ualberta.cmput301f13t13.storyhoard.local.StoryCorpusGenerator;
+import ca.ualberta.cmput301f13t13.storyhoard.local.StoryIndex;
+import ca.ualberta.cmput301f13t13.storyhoard.local.StoryManager;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.InMemoryStoryRepository;
+
+/**
+ * Tests the StoryCorpusGenerator class, which makes up stories for load
+ * tests and benchmarks.
+ *
+ * @author Stephanie Gil
+ *
+ * @see StoryCorpusGenerator
+ */
+public class TestStoryCorpusGenerator extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	/**
+	 * Argument of the test runner that turns on testStress(), as in
+	 * "adb shell am instrument -w -e stress true ...".
+	 */
+	static final String STRESS = "stress";
+	static final int STRESS_STORIES = 10000;
+
+	public TestStoryCorpusGenerator() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		DBHelper.getInstance(getActivity()).close();
+		getActivity().deleteDatabase(DBContract.DATABASE_NAME);
+		StoryIndex.getInstance(getActivity()).invalidate();
+	}
+
+	/**
+	 * Tests that the same seed makes exactly the same stories, and another
+	 * seed different ones.
+	 */
+	public void testSeeded() {
+		ArrayList<Story> first = new StoryCorpusGenerator(7).generate(20);
+		ArrayList<Story> second = new StoryCorpusGenerator(7).generate(20);
+		for (int i = 0; i < first.size(); ++i) {
+			Story a = first.get(i);
+			Story b = second.get(i);
+			assertEquals(a.getId(), b.getId());
+			assertEquals(a.getTitle(), b.getTitle());
+			assertEquals(a.getChapters().size(), b.getChapters().size());
+			for (int c = 0; c < a.getChapters().size(); ++c) {
+				assertEquals(a.getChapters().get(c).getText(),
+						b.getChapters().get(c).getText());
+			}
+		}
+		Story other = new StoryCorpusGenerator(8).nextStory();
+		assertFalse(other.getId().equals(first.get(0).getId()));
+	}
+
+	/**
+	 * Tests that the stories follow the settings, and that every chapter
+	 * can be reached from the first.
+	 */
+	public void testShape() {
+		StoryCorpusGenerator generator = new StoryCorpusGenerator(1);
+		generator.setChapters(2, 4);
+		generator.setBranching(2, 3);
+		generator.setWords(50, 0);
+		for (Story story : generator.generate(30)) {
+			ArrayList<Chapter> chapters = story.getChapters();
+			assertTrue(chapters.size() >= 2 && chapters.size() <= 4);
+			assertEquals(story.getFirstChapterId(), chapters.get(0).getId());
+
+			HashSet<UUID> ids = new HashSet<UUID>();
+			for (Chapter chap : chapters) {
+				ids.add(chap.getId());
+				assertEquals(chap.getText().split(" ").length, 50);
+			}
+			HashSet<UUID> reached = new HashSet<UUID>();
+			reached.add(chapters.get(0).getId());
+			for (int c = 0; c < chapters.size(); ++c) {
+				ArrayList<Choice> choices = chapters.get(c).getChoices();
+				if (c == chapters.size() - 1) {
+					assertEquals(choices.size(), 0);
+				} else {
+					assertTrue(choices.size() >= 2 && choices.size() <= 3);
+				}
+				for (Choice choice : choices) {
+					assertTrue(ids.contains(choice.getNextChapter()));
+					reached.add(choice.getNextChapter());
+				}
+			}
+			assertEquals(reached, ids);
+		}
+		assertEquals(generator.getCount(), 30);
+	}
+
+	/**
+	 * Tests loading stories with images into the database, and into a
+	 * repository.
+	 */
+	public void testLoad() throws Exception {
+		StoryCorpusGenerator generator = new StoryCorpusGenerator(3);
+		generator.setChapters(1, 1);
+		generator.setImages(1, 16);
+		generator.setImagePool(2);
+		ArrayList<UUID> ids = generator.loadIntoDatabase(getActivity(), 5);
+		assertEquals(ids.size(), 5);
+
+		StoryManager storyMan = StoryManager.getInstance(getActivity());
+		ChapterManager chapMan = ChapterManager.getInstance(getActivity());
+		MediaManager mediaMan = MediaManager.getInstance(getActivity());
+		assertEquals(storyMan.getAllCachedStories().size(), 5);
+		Chapter chap = chapMan.getChaptersByStory(ids.get(0)).get(0);
+		ArrayList<Media> medias = mediaMan.getPhotosByChapter(chap.getId());
+		medias.addAll(mediaMan.getIllustrationsByChapter(chap.getId()));
+		assertEquals(medias.size(), 1);
+		assertNotNull(ImageDecoder.decodeFitting(medias.get(0).getPath(), 200,
+				200));
+
+		InMemoryStoryRepository repository = new InMemoryStoryRepository(3);
+		ids = generator.loadInto(repository, 10);
+		assertEquals(repository.count(), 10);
+		assertNotNull(repository.getById(ids.get(9).toString(), null));
+	}
+
+	/**
+	 * Loads STRESS_STORIES stories into the database and into a repository,
+	 * and checks they can all be found. It takes minutes, so it only runs
+	 * when the test runner is given the STRESS argument; otherwise it 
+	 * passes straight away.
+	 */
+	public void testStress() throws Exception {
+		if (!isStressEnabled()) {
+			return;
+		}
+		StoryCorpusGenerator generator = new StoryCorpusGenerator(42);
+		try {
+			long start = System.nanoTime();
+			ArrayList<UUID> ids = generator.loadIntoDatabase(getActivity(),
+					STRESS_STORIES);
+			System.out.println(String.format("TestStoryCorpusGenerator: "
+					+ "%d stories into the database in %.1fs", ids.size(),
+					(System.nanoTime() - start) / 1e9));
+
+			StoryManager storyMan = StoryManager.getInstance(getActivity());
+			assertEquals(storyMan.getAllCachedStories().size(),
+					STRESS_STORIES);
+			UUID last = ids.get(ids.size() - 1);
+			assertEquals(storyMan.getById(last).getId(), last);
+			assertFalse(ChapterManager.getInstance(getActivity())
+					.getChaptersByStory(last).isEmpty());
+			String word = storyMan.getById(ids.get(0)).getTitle().split(" ")[1];
+			assertFalse(StoryIndex.getInstance(getActivity()).search(word,
+					false, 20).isEmpty());
+
+			InMemoryStoryRepository repository = new InMemoryStoryRepository(42);
+			start = System.nanoTime();
+			ids = generator.loadInto(repository, STRESS_STORIES);
+			System.out.println(String.format("TestStoryCorpusGenerator: "
+					+ "%d stories into the repository in %.1fs", ids.size(),
+					(System.nanoTime() - start) / 1e9));
+			assertEquals(repository.count(), STRESS_STORIES);
+			assertNotNull(repository.getById(ids.get(ids.size() - 1)
+					.toString(), null));
+		} finally {
+			// so the tests after this one don't see ten thousand stories
+			DBHelper.getInstance(getActivity()).close();
+			getActivity().deleteDatabase(DBContract.DATABASE_NAME);
+			StoryIndex.getInstance(getActivity()).invalidate();
+		}
+	}
+
+	/**
+	 * Returns whether the test runner was given the STRESS argument. Its
+	 * arguments can only be read with getArguments(), new in Android 4.3,
+	 * so it is looked up by name; before that the test stays off.
+	 */
+	private boolean isStressEnabled() {
+		try {
+			Bundle arguments = (Bundle) getInstrumentation().getClass()
+					.getMethod("getArguments").invoke(getInstrumentation());
+			return arguments != null
+					&& Boolean.parseBoolean(arguments.getString(STRESS));
+		} catch (Exception e) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import android.graphics.Bitmap;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Base64;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Choice;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.BogoPicGen;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.PartEntity;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.StoryEntity;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.TransferProgress;
+
+import com.google.gson.Gson;
+
+/**
+ * Tests the StoryEntity class, which streams stories to the server.
+ * 
+ * @author Stephanie Gil
+ * 
+ * @see StoryEntity
+ */
+public class TestStoryEntity extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	private Gson gson = new Gson();
+
+	public TestStoryEntity() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+	}
+
+	/**
+	 * Tests that a story without upload paths is written exactly like gson
+	 * would write it.
+	 * @throws Exception 
+	 */
+	public void testSameAsGson() throws Exception {
+		Story story = new Story("Harry \"Potter\" <test>", "oprah", 
+				"the emo boy\n", "232");
+		Chapter chap = new Chapter(story.getId(), "on a dark cold night");
+		Chapter chap2 = new Chapter(story.getId(), "he lughe");
+		chap.getChoices().add(new Choice(chap.getId(), chap2.getId(), 
+				"hit me!"));
+		story.getChapters().add(chap);
+		story.getChapters().add(chap2);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new StoryEntity(story, gson).writeTo(out);
+		assertEquals(out.toString("UTF-8"), gson.toJson(story));
+	}
+
+	/**
+	 * Tests that media with an upload path get the contents of the file as 
+	 * their bitmap string.
+	 * @throws Exception 
+	 */
+	public void testStreamsUploads() throws Exception {
+		File file = new File(getActivity().getCacheDir(), "upload.jpg");
+		Bitmap bmp = BogoPicGen.generateBitmap(300, 200);
+		FileOutputStream fout = new FileOutputStream(file);
+		bmp.compress(Bitmap.CompressFormat.JPEG, 85, fout);
+		fout.close();
+		
+		Story story = new Story("Harry Potter test", "oprah", 
+				"the emo boy", "232");
+		Chapter chap = new Chapter(story.getId(), "on a dark cold night");
+		Media photo = new Media(chap.getId(), file.getAbsolutePath(), 
+				Media.PHOTO, "a photo");
+		photo.setUploadPath(file.getAbsolutePath());
+		Media ill = new Media(chap.getId(), "", Media.ILLUSTRATION, "");
+		chap.getPhotos().add(photo);
+		chap.getIllustrations().add(ill);
+		story.getChapters().add(chap);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new StoryEntity(story, gson).writeTo(out);
+		Story sent = gson.fromJson(out.toString("UTF-8"), Story.class);
+		
+		Chapter sentChap = sent.getChapters().get(0);
+		byte[] sentBytes = Base64.decode(sentChap.getPhotos().get(0)
+				.getBitmapString(), Base64.DEFAULT);
+		ByteArrayOutputStream original = new ByteArrayOutputStream();
+		FileInputStream in = new FileInputStream(file);
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			original.write(buffer, 0, read);
+		}
+		in.close();
+		assertTrue(Arrays.equals(sentBytes, original.toByteArray()));
+		assertEquals(sentChap.getPhotos().get(0).getText(), "a photo");
+		assertEquals(sentChap.getIllustrations().get(0).getBitmapString(), "");
+		file.delete();
+	}
+
+	/**
+	 * Tests that the bytes and chapters written are counted, that the 
+	 * length is known before writing, and that writing stops once the
+	 * progress is cancelled.
+	 * @throws Exception 
+	 */
+	public void testProgress() throws Exception {
+		File file = new File(getActivity().getCacheDir(), "progress.jpg");
+		Bitmap bmp = BogoPicGen.generateBitmap(400, 300);
+		FileOutputStream fout = new FileOutputStream(file);
+		bmp.compress(Bitmap.CompressFormat.JPEG, 85, fout);
+		fout.close();
+
+		Story story = new Story("title", "author", "desc", "232");
+		for (int i = 0; i < 3; ++i) {
+			Chapter chap = new Chapter(story.getId(), "chapter " + i);
+			Media photo = new Media(chap.getId(), file.getAbsolutePath(),
+					Media.PHOTO, "");
+			photo.setUploadPath(file.getAbsolutePath());
+			chap.getPhotos().add(photo);
+			story.getChapters().add(chap);
+		}
+
+		TransferProgress progress = new TransferProgress(null);
+		StoryEntity entity = new StoryEntity(story, gson, progress);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		assertEquals(entity.getLength(), out.size());
+		assertEquals(progress.getBytesTotal(), out.size());
+		assertEquals(progress.getBytesDone(), out.size());
+		assertEquals(progress.getItemsDone(), 3);
+		assertEquals(progress.getItemsTotal(), 3);
+
+		progress.cancel();
+		try {
+			entity.writeTo(new ByteArrayOutputStream());
+			fail("writing should stop once cancelled");
+		} catch (IOException e) {
+			// expected
+		}
+		file.delete();
+	}
+
+	/**
+	 * Tests that an image sent as a part of its own is written with the 
+	 * length given beforehand, and that media sent that way are not also 
+	 * written into the story.
+	 * @throws Exception 
+	 */
+	public void testParts() throws Exception {
+		File file = new File(getActivity().getCacheDir(), "part.webp");
+		Bitmap bmp = BogoPicGen.generateBitmap(300, 200);
+		FileOutputStream fout = new FileOutputStream(file);
+		bmp.compress(Bitmap.CompressFormat.WEBP, 75, fout);
+		fout.close();
+
+		TransferProgress progress = new TransferProgress(null);
+		progress.startBytes(file.length() * 2);
+		PartEntity part = new PartEntity(file.getAbsolutePath(), Media.WEBP,
+				gson, progress);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		part.writeTo(out);
+		assertEquals(part.getContentLength(), out.size());
+		assertEquals(progress.getBytesDone(), out.size());
+		Media sentPart = gson.fromJson(out.toString("UTF-8"), Media.class);
+		assertEquals(sentPart.getFormat(), Media.WEBP);
+		assertEquals(Base64.decode(sentPart.getBitmapString(), 
+				Base64.DEFAULT).length, file.length());
+
+		Story story = new Story("title", "author", "desc", "232");
+		Chapter chap = new Chapter(story.getId(), "chapter");
+		Media photo = new Media(chap.getId(), file.getAbsolutePath(),
+				Media.PHOTO, "");
+		photo.setUploadPath(file.getAbsolutePath());
+		photo.setPartId("abc123");
+		chap.getPhotos().add(photo);
+		story.getChapters().add(chap);
+
+		out = new ByteArrayOutputStream();
+		new StoryEntity(story, gson).writeTo(out);
+		Story sent = gson.fromJson(out.toString("UTF-8"), Story.class);
+		Media sentPhoto = sent.getChapters().get(0).getPhotos().get(0);
+		assertEquals(sentPhoto.getPartId(), "abc123");
+		assertEquals(sentPhoto.getBitmapString(), "");
+		file.delete();
+	}
+}
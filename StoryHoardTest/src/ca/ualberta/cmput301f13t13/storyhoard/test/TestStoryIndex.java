@@ -0,0 +1,119 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.util.ArrayList;
+
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.DBContract;
+import ca.ualberta.cmput301f13t13.storyhoard.local.DBHelper;
+import ca.ualberta.cmput301f13t13.storyhoard.local.StoryIndex;
+import ca.ualberta.cmput301f13t13.storyhoard.local.StoryManager;
+import ca.ualberta.cmput301f13t13.storyhoard.local.Utilities;
+
+/**
+ * Tests the StoryIndex class, which suggests stories on the phone while the
+ * user is typing a search.
+ *
+ * @author Stephanie Gil
+ *
+ * @see StoryIndex
+ */
+public class TestStoryIndex extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+	private StoryManager sm;
+	private StoryIndex index;
+	private String phoneId;
+
+	public TestStoryIndex() {
+		super(InfoActivity.class);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		DBHelper.getInstance(getActivity()).close();
+		getActivity().deleteDatabase(DBContract.DATABASE_NAME);
+		sm = StoryManager.getInstance(getActivity());
+		index = StoryIndex.getInstance(getActivity());
+		index.invalidate();
+		phoneId = Utilities.getPhoneId(getActivity());
+	}
+
+	/**
+	 * Tests that every word must be the start of a word in the story, and
+	 * that title matches come before author and description matches.
+	 */
+	public void testPrefixAndRanking() {
+		Story byDescription = new Story("A Cow", "Dr. Poe",
+				"harry the hairy cow", phoneId);
+		Story byTitle = new Story("Harry's Cow", "Dr. Poe", "moo", phoneId);
+		Story byAuthor = new Story("My Cow", "Harry Smith", "moo", phoneId);
+		Story other = new Story("Harry Potter", "Rowling", "wizards", phoneId);
+		sm.insert(byDescription);
+		sm.insert(byTitle);
+		sm.insert(byAuthor);
+		sm.insert(other);
+
+		ArrayList<Story> found = index.search("har co", true, 10);
+		assertEquals(found.size(), 3);
+		assertEquals(found.get(0).getId(), byTitle.getId());
+		assertEquals(found.get(1).getId(), byAuthor.getId());
+		assertEquals(found.get(2).getId(), byDescription.getId());
+
+		assertEquals(index.search("HARRY POT", true, 10).size(), 1);
+		assertEquals(index.search("har", true, 2).size(), 2);
+		assertEquals(index.search("  ", true, 10).size(), 0);
+		assertEquals(index.search("potters", true, 10).size(), 0);
+	}
+
+	/**
+	 * Tests that own and downloaded stories are kept apart, and that a story
+	 * saved after the index was loaded is found.
+	 */
+	public void testOwnCachedAndInvalidate() {
+		sm.insert(new Story("Mine", "me", "", phoneId));
+		sm.insert(new Story("Downloaded", "someone", "", "otherphone"));
+		assertEquals(index.search("mine", true, 10).size(), 1);
+		assertEquals(index.search("mine", false, 10).size(), 0);
+		assertEquals(index.search("down", false, 10).size(), 1);
+		assertTrue(index.isLoaded());
+
+		Story later = new Story("Mine Too", "me", "", phoneId);
+		sm.insert(later);
+		assertFalse(index.isLoaded());
+		assertEquals(index.search("mine", true, 10).size(), 2);
+	}
+
+	/**
+	 * Times a suggestion over a few hundred stories once the index is
+	 * loaded; it must be quick enough to do on every key pressed.
+	 */
+	public void testSpeed() {
+		for (int i = 0; i < 500; ++i) {
+			sm.insert(new Story("Story number " + i, "Author " + (i % 20),
+					"the description of story " + i, phoneId));
+		}
+		index.load();
+		long start = System.nanoTime();
+		ArrayList<Story> found = index.search("story num 4", true, 8);
+		long millis = (System.nanoTime() - start) / 1000000;
+		System.out.println("TestStoryIndex: search took " + millis + "ms");
+		assertEquals(found.size(), 8);
+		assertTrue(millis < 50);
+	}
+}
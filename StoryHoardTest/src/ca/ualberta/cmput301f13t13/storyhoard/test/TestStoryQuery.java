@@ -0,0 +1,135 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.test;
+
+import java.lang.reflect.Type;
+import java.util.Iterator;
+
+import android.test.ActivityInstrumentationTestCase2;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ElasticSearchResponse;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.SimpleESResponse;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.StoryQuery;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Tests the StoryQuery class, which builds the searches sent to the server.
+ *
+ * @author Stephanie Gil
+ *
+ * @see StoryQuery
+ */
+public class TestStoryQuery extends
+		ActivityInstrumentationTestCase2<InfoActivity> {
+
+	public TestStoryQuery() {
+		super(InfoActivity.class);
+	}
+
+	/**
+	 * Tests that quotes and query syntax typed by the user are sent as plain
+	 * text, one clause per word.
+	 */
+	public void testEscaping() {
+		StoryQuery query = new StoryQuery("  \"harry\"  AND (potter*  ");
+		assertEquals(query.getWords().size(), 3);
+
+		JsonArray must = parse(query).getAsJsonObject("query")
+				.getAsJsonObject("bool").getAsJsonArray("must");
+		assertEquals(must.size(), 3);
+		JsonObject first = must.get(0).getAsJsonObject()
+				.getAsJsonObject("multi_match");
+		assertEquals(first.get("query").getAsString(), "\"harry\"");
+		assertEquals(first.getAsJsonArray("fields").get(0).getAsString(),
+				"title^3");
+		assertNull(first.get("type"));
+		assertEquals(must.get(2).getAsJsonObject()
+				.getAsJsonObject("multi_match").get("query").getAsString(),
+				"(potter*");
+	}
+
+	/**
+	 * Tests that only the last word matches as a prefix.
+	 */
+	public void testPrefix() {
+		StoryQuery query = new StoryQuery("harry pot");
+		query.setPrefix(true);
+		JsonArray must = parse(query).getAsJsonObject("query")
+				.getAsJsonObject("bool").getAsJsonArray("must");
+		assertNull(must.get(0).getAsJsonObject()
+				.getAsJsonObject("multi_match").get("type"));
+		assertEquals(must.get(1).getAsJsonObject()
+				.getAsJsonObject("multi_match").get("type").getAsString(),
+				"phrase_prefix");
+	}
+
+	/**
+	 * Tests that an empty search matches everything, and that the fields
+	 * and page asked for are sent.
+	 */
+	public void testFieldsAndPage() {
+		StoryQuery query = new StoryQuery(null);
+		JsonObject body = parse(query);
+		assertTrue(body.getAsJsonObject("query").has("match_all"));
+		assertFalse(body.has("partial_fields"));
+		assertFalse(body.has("size"));
+
+		query = new StoryQuery(" ");
+		query.setFields(StoryQuery.HEADER_FIELDS);
+		query.setPage(20, 10);
+		body = parse(query);
+		assertTrue(body.getAsJsonObject("query").has("match_all"));
+		assertEquals(body.getAsJsonObject("partial_fields")
+				.getAsJsonObject(StoryQuery.PARTIAL).getAsJsonArray("include")
+				.size(), StoryQuery.HEADER_FIELDS.length);
+		assertEquals(body.get("from").getAsInt(), 20);
+		assertEquals(body.get("size").getAsInt(), 10);
+	}
+
+	/**
+	 * Tests that the fields asked for are read from a search response, and
+	 * that a whole story is still read from _source.
+	 */
+	public void testPartialResponse() {
+		String json = "{\"hits\": {\"total\": 2, \"hits\": ["
+				+ "{\"_id\": \"a\", \"fields\": {\"" + StoryQuery.PARTIAL
+				+ "\": {\"title\": \"partial\", \"chapters\": [{"
+				+ "\"illustrations\": [{\"partId\": \"p\"}]}]}}},"
+				+ "{\"_id\": \"b\", \"_source\": {\"title\": \"whole\"}}"
+				+ "]}}";
+		Type type = new TypeToken<ElasticSearchResponse<Story>>() {
+		}.getType();
+		ElasticSearchResponse<Story> response = new Gson().fromJson(json,
+				type);
+		Iterator<SimpleESResponse<Story>> hits = response.getHits()
+				.iterator();
+		Story partial = hits.next().getSource();
+		assertEquals(partial.getTitle(), "partial");
+		assertEquals(partial.getChapters().get(0).getIllustrations().get(0)
+				.getPartId(), "p");
+		assertEquals(hits.next().getSource().getTitle(), "whole");
+	}
+
+	private JsonObject parse(StoryQuery query) {
+		return new JsonParser().parse(query.toJson()).getAsJsonObject();
+	}
+}
@@ -6,12 +6,16 @@ import java.util.UUID;
 import android.test.ActivityInstrumentationTestCase2;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Choice;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
 import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
+import ca.ualberta.cmput301f13t13.storyhoard.local.BogoPicGen;
 import ca.ualberta.cmput301f13t13.storyhoard.local.ChapterManager;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImagePolicy;
 import ca.ualberta.cmput301f13t13.storyhoard.local.StoryManager;
 import ca.ualberta.cmput301f13t13.storyhoard.local.Syncher;
 import ca.ualberta.cmput301f13t13.storyhoard.local.Utilities;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.TransferProgress;
 
 public class TestSyncher extends ActivityInstrumentationTestCase2<InfoActivity> {
 
@@ -43,6 +47,51 @@ public class TestSyncher extends ActivityInstrumentationTestCase2<InfoActivity>
 		mockStory = stories.get(0);
 	}
 	
+	/**
+	 * Tests that a download cancelled before it starts writes nothing to 
+	 * the database.
+	 */
+	public void testCancelledSyncWritesNothing() {
+		StoryManager storyMan = StoryManager.getInstance(getActivity());
+		Syncher syncher = Syncher.getInstance(getActivity());
+		Story mockStory = new Story("title1", "author1", "desc1",
+				Utilities.getPhoneId(this.getActivity()));
+		Chapter mockChapter = new Chapter(mockStory.getId(), "chap texty");
+		Media ill = new Media(mockChapter.getId(), null, Media.ILLUSTRATION,
+				"");
+		ImagePolicy.PUBLISH.encode(BogoPicGen.generateBitmap(50, 50), ill);
+		mockChapter.getIllustrations().add(ill);
+		mockStory.getChapters().add(mockChapter);
+
+		TransferProgress progress = new TransferProgress(null);
+		progress.cancel();
+		assertFalse(syncher.syncStoryFromServer(mockStory, progress));
+		assertEquals(storyMan.retrieve(mockStory).size(), 0);
+
+		progress = new TransferProgress(null);
+		assertTrue(syncher.syncStoryFromServer(mockStory, progress));
+		assertEquals(storyMan.retrieve(mockStory).size(), 1);
+		assertEquals(progress.getItemsDone(), 1);
+	}
+
+	/**
+	 * Tests that a story with an image that didn't come with it writes 
+	 * nothing to the database.
+	 */
+	public void testMissingImageWritesNothing() {
+		StoryManager storyMan = StoryManager.getInstance(getActivity());
+		Syncher syncher = Syncher.getInstance(getActivity());
+		Story mockStory = new Story("title1", "author1", "desc1",
+				Utilities.getPhoneId(this.getActivity()));
+		Chapter mockChapter = new Chapter(mockStory.getId(), "chap texty");
+		mockChapter.getIllustrations().add(new Media(mockChapter.getId(), 
+				null, Media.ILLUSTRATION, ""));
+		mockStory.getChapters().add(mockChapter);
+
+		assertFalse(syncher.syncStoryFromServer(mockStory, null));
+		assertEquals(storyMan.retrieve(mockStory).size(), 0);
+	}
+
 	/**
 	 * Tests synching chapters from the database, which is the same as retreivng
 	 * and array list of all the chapters of a story, including all their choices
@@ -16,6 +16,7 @@
 
 package ca.ualberta.cmput301f13t13.storyhoard.test;
 
+
 import android.graphics.Bitmap;
 import android.test.ActivityInstrumentationTestCase2;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
@@ -25,6 +25,8 @@ import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Choice;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
 import ca.ualberta.cmput301f13t13.storyhoard.local.ChapterManager;
 import ca.ualberta.cmput301f13t13.storyhoard.local.ChoiceManager;
+import ca.ualberta.cmput301f13t13.storyhoard.local.CoverCache;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImageStore;
 import ca.ualberta.cmput301f13t13.storyhoard.local.MediaManager;
 import ca.ualberta.cmput301f13t13.storyhoard.local.Syncher;
 
@@ -47,6 +49,8 @@ public class ChapterController {
 	private static ChapterManager chapMan;
 	private static ChoiceManager choiceMan;
 	private static Syncher syncher;
+	private static CoverCache covers;
+	private static ImageStore store;
 	private static Chapter chapter;
 	private static ChapterController self = null;
 	
@@ -64,6 +68,8 @@ public class ChapterController {
 		syncher = Syncher.getInstance(context);
 		chapMan = ChapterManager.getInstance(context);
 		choiceMan = ChoiceManager.getInstance(context);
+		covers = CoverCache.getInstance(context);
+		store = ImageStore.getInstance(context);
 		chapter = new Chapter(null, null, "");  // blank chapter
 	}
 	
@@ -282,7 +288,10 @@ public class ChapterController {
 
 	/**
 	 * Adds a media to the chapter. Can be a photo or an illustration, the 
-	 * method will decide for itself and add it to the correct array list. </br></br>
+	 * method will decide for itself and add it to the correct array list. 
+	 * Photos are saved to the database right away. Illustrations are only 
+	 * saved with the chapter (see pushChangesToDb()), so their image is kept
+	 * in the ImageStore until then. </br></br>
 	 * 
 	 * Example Call: </br>
 	 * Chapter myChapter = new Chapter(UUID.randomUUID(), "chap text"); </br>
@@ -300,6 +309,7 @@ public class ChapterController {
 			mediaMan.insert(photo);
 		} else {
 			chapter.getIllustrations().add(photo);
+			store.keep(photo.getPath());
 		}
 	}
 	
@@ -317,5 +327,9 @@ public class ChapterController {
 	public void pushChangesToDb() {
 		chapMan.sync(chapter, chapter.getId());
 		syncher.syncChapterParts(chapter);
+		// its illustrations may have changed the story's cover
+		if (chapter.getStoryId() != null) {
+			covers.forget(chapter.getStoryId());
+		}
 	}
 }
@@ -0,0 +1,418 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.controllers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.local.StoryIndex;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerCallback;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerManager;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerTask;
+
+/**
+ * Role: Searches for stories in every place they can be at once, and 
+ * suggests stories while the user is typing a search. Stories on the
+ * phone come from the StoryIndex, and published stories from the server
+ * (see ServerManager.suggest() and searchByKeywords()). </br></br>
+ *
+ * search() looks for the user's own stories, the stories downloaded and
+ * the published stories at the same time, so it takes as long as the 
+ * slowest of them rather than all of them together. The request to the 
+ * server is sent first, the phone is searched while it is waiting, and 
+ * the results found on the phone are delivered straight away. The 
+ * published stories are added when they arrive. A story found in more 
+ * than one place (a downloaded or own story that is also published) is 
+ * only listed once, with every place it was found in, and the copy on the
+ * phone is the one listed. </br></br>
+ *
+ * Only the latest suggestion asked for is ever delivered. Asking for a new
+ * one cancels the one before it: its request to the server is aborted if
+ * it was already sent, and its listener is never called. Suggestions from
+ * the server are only asked for once the user has stopped typing for
+ * DEBOUNCE_MS, so a word typed quickly costs one request rather than one per
+ * letter, and the last few answers are kept, so deleting a letter or typing
+ * it again doesn't go to the server at all. Suggestions from the phone
+ * don't wait: once the index has been loaded, they are found in memory and
+ * delivered straight away. </br></br>
+ *
+ * All methods must be called on the main UI thread, and the listener is
+ * called on it. </br></br>
+ *
+ * Example call: </br>
+ * SearchController searchCon = SearchController.getInstance(this); </br>
+ * searchCon.suggest("harry pot", SearchController.PUBLISHED, listener);
+ * </br>
+ * ... </br>
+ * searchCon.cancel(); // in onPause() </br>
+ * searchCon.search("harry potter", resultListener); </br>
+ *
+ * Design Pattern: Singleton
+ *
+ * @author Stephanie Gil
+ *
+ * @see StoryIndex
+ * @see ServerManager
+ */
+public class SearchController {
+	public static final int AUTHOR = 0;
+	public static final int CACHED = 1;
+	public static final int PUBLISHED = 2;
+	public static final int ALL = 3;
+	public static final int MAX_SUGGESTIONS = 8;
+	public static final long DEBOUNCE_MS = 250;
+	private static final int MAX_CACHED = 32;
+	private static final int MAX_LOCAL_RESULTS = 50;
+	private static SearchController self = null;
+
+	/**
+	 * Receives the suggestions on the main UI thread.
+	 */
+	public interface SuggestionListener {
+		public void onSuggestions(String text, ArrayList<Story> stories);
+	}
+
+	/**
+	 * Receives the results of search() on the main UI thread.
+	 */
+	public interface ResultListener {
+		/**
+		 * Called each time results arrive from one of the places searched,
+		 * with all the results found so far, the ones on the phone first.
+		 * done is true once every place has answered.
+		 */
+		public void onResults(ArrayList<Result> results, boolean done);
+
+		/**
+		 * Called if the server could not be searched. The results from the
+		 * phone are still delivered.
+		 */
+		public void onServerFailure(Exception e);
+	}
+
+	/**
+	 * A story found by search(), and the places it was found in.
+	 */
+	public static class Result {
+		private final Story story;
+		private int places = 0;
+
+		Result(Story story, int place) {
+			this.story = story;
+			addPlace(place);
+		}
+
+		public Story getStory() {
+			return story;
+		}
+
+		/**
+		 * Returns whether the story was found in the given place, AUTHOR,
+		 * CACHED or PUBLISHED.
+		 */
+		public boolean isIn(int place) {
+			return (places & (1 << place)) != 0;
+		}
+
+		/**
+		 * Returns whether the story is saved on the phone, so it can be 
+		 * read without downloading it.
+		 */
+		public boolean isLocal() {
+			return isIn(AUTHOR) || isIn(CACHED);
+		}
+
+		void addPlace(int place) {
+			places |= 1 << place;
+		}
+	}
+
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final StoryIndex index;
+	private final ServerManager serverMan;
+	private final Map<String, ArrayList<Story>> published;
+	private Runnable pending = null;
+	private ServerTask<ArrayList<Story>> task = null;
+	private int latest = 0;
+	private ServerTask<ArrayList<Story>> searchTask = null;
+	private int latestSearch = 0;
+
+	protected SearchController(Context context) {
+		index = StoryIndex.getInstance(context);
+		serverMan = ServerManager.getInstance(context);
+		published = new LinkedHashMap<String, ArrayList<Story>>(MAX_CACHED,
+				0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, ArrayList<Story>> eldest) {
+				return size() > MAX_CACHED;
+			}
+		};
+	}
+
+	/**
+	 * Returns the one instance of SearchController.
+	 *
+	 * @param context
+	 */
+	public static SearchController getInstance(Context context) {
+		if (self == null) {
+			self = new SearchController(context);
+		}
+		return self;
+	}
+
+	/**
+	 * Finds the stories to suggest for what the user has typed so far, and
+	 * gives them to the listener, unless suggest() or cancel() is called
+	 * again first. Text with no words in it gets no suggestions.
+	 *
+	 * @param text
+	 * 			What the user has typed.
+	 * @param type
+	 * 			AUTHOR, CACHED or PUBLISHED. ALL only suggests stories on the
+	 * 			phone, which can be suggested on every key pressed.
+	 * @param listener
+	 * 			Receives the suggestions.
+	 */
+	public void suggest(final String text, final int type,
+			final SuggestionListener listener) {
+		cancel();
+		final int id = latest;
+		final String key = normalize(text);
+		if (key.length() == 0) {
+			listener.onSuggestions(text, new ArrayList<Story>());
+			return;
+		}
+
+		if (type != PUBLISHED) {
+			if (index.isLoaded()) {
+				listener.onSuggestions(text, suggestLocal(key, type));
+				return;
+			}
+			// the first search reads the index from the database
+			AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+				@Override
+				public void run() {
+					index.load();
+					handler.post(new Runnable() {
+						@Override
+						public void run() {
+							if (id == latest) {
+								suggest(text, type, listener);
+							}
+						}
+					});
+				}
+			});
+			return;
+		}
+
+		ArrayList<Story> cached = published.get(key);
+		if (cached != null) {
+			listener.onSuggestions(text, cached);
+			return;
+		}
+		pending = new Runnable() {
+			@Override
+			public void run() {
+				pending = null;
+				task = serverMan.suggest(key, MAX_SUGGESTIONS,
+						new ServerCallback<ArrayList<Story>>() {
+							@Override
+							public void onSuccess(ArrayList<Story> stories) {
+								task = null;
+								published.put(key, stories);
+								listener.onSuggestions(text, stories);
+							}
+
+							@Override
+							public void onFailure(Exception e) {
+								task = null;
+								e.printStackTrace();
+							}
+						});
+			}
+		};
+		handler.postDelayed(pending, DEBOUNCE_MS);
+	}
+
+	/**
+	 * Returns the stories on the phone to suggest for the key.
+	 */
+	private ArrayList<Story> suggestLocal(String key, int type) {
+		if (type != ALL) {
+			return index.search(key, type == AUTHOR, MAX_SUGGESTIONS);
+		}
+		ArrayList<Story> stories = index.search(key, true, MAX_SUGGESTIONS);
+		for (Story story : index.search(key, false, MAX_SUGGESTIONS)) {
+			if (stories.size() >= MAX_SUGGESTIONS) {
+				break;
+			}
+			stories.add(story);
+		}
+		return stories;
+	}
+
+	/**
+	 * Stops the suggestion being worked on, if there is one. Its listener
+	 * will not be called.
+	 */
+	public void cancel() {
+		++latest;
+		if (pending != null) {
+			handler.removeCallbacks(pending);
+			pending = null;
+		}
+		if (task != null) {
+			task.cancel(true);
+			task = null;
+		}
+	}
+
+	/**
+	 * Searches the user's own stories, the downloaded stories and the 
+	 * published stories for the text at the same time, and gives the 
+	 * results to the listener as they arrive, unless search() or 
+	 * cancelSearch() is called again first.
+	 *
+	 * @param text
+	 * 			The keywords searched for, separated by whitespace.
+	 * @param listener
+	 * 			Receives the results.
+	 */
+	public void search(String text, final ResultListener listener) {
+		cancelSearch();
+		final int id = latestSearch;
+		final String key = normalize(text);
+		final ArrayList<Result> local = new ArrayList<Result>();
+		final ArrayList<Story> published = new ArrayList<Story>();
+		final int[] waiting = { 2 };
+
+		// the server is the slowest, so it is asked first
+		searchTask = serverMan.searchByKeywords(key,
+				new ServerCallback<ArrayList<Story>>() {
+					@Override
+					public void onSuccess(ArrayList<Story> stories) {
+						searchTask = null;
+						published.addAll(stories);
+						--waiting[0];
+						listener.onResults(combine(local, published),
+								waiting[0] == 0);
+					}
+
+					@Override
+					public void onFailure(Exception e) {
+						searchTask = null;
+						--waiting[0];
+						listener.onServerFailure(e);
+						listener.onResults(combine(local, published),
+								waiting[0] == 0);
+					}
+				});
+
+		AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				final ArrayList<Story> own = index.search(key, true,
+						MAX_LOCAL_RESULTS);
+				final ArrayList<Story> cached = index.search(key, false,
+						MAX_LOCAL_RESULTS);
+				handler.post(new Runnable() {
+					@Override
+					public void run() {
+						if (id != latestSearch) {
+							return;
+						}
+						for (Story story : own) {
+							local.add(new Result(story, AUTHOR));
+						}
+						for (Story story : cached) {
+							local.add(new Result(story, CACHED));
+						}
+						--waiting[0];
+						listener.onResults(combine(local, published),
+								waiting[0] == 0);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Stops the search being worked on, if there is one. Its listener will
+	 * not be called again.
+	 */
+	public void cancelSearch() {
+		++latestSearch;
+		if (searchTask != null) {
+			searchTask.cancel(true);
+			searchTask = null;
+		}
+	}
+
+	/**
+	 * Lists the stories found on the phone, then the published stories that
+	 * aren't on the phone. Stories on the phone that are also published are
+	 * marked as being in both places.
+	 */
+	private static ArrayList<Result> combine(ArrayList<Result> local,
+			ArrayList<Story> published) {
+		ArrayList<Result> results = new ArrayList<Result>();
+		Map<UUID, Result> byId = new HashMap<UUID, Result>();
+		for (Result result : local) {
+			Result copy = new Result(result.getStory(), 
+					result.isIn(AUTHOR) ? AUTHOR : CACHED);
+			byId.put(copy.getStory().getId(), copy);
+			results.add(copy);
+		}
+		for (Story story : published) {
+			Result found = byId.get(story.getId());
+			if (found != null) {
+				found.addPlace(PUBLISHED);
+			} else {
+				found = new Result(story, PUBLISHED);
+				byId.put(story.getId(), found);
+				results.add(found);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the text as the key it is searched and kept under: in lower
+	 * case, with its words separated by single spaces.
+	 */
+	private static String normalize(String text) {
+		if (text == null) {
+			return "";
+		}
+		return text.trim().toLowerCase(Locale.ENGLISH)
+				.replaceAll("\\s+", " ");
+	}
+}
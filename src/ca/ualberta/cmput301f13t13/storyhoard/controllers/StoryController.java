@@ -23,8 +23,12 @@ import android.content.Context;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImagePolicy;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImageStore;
+import ca.ualberta.cmput301f13t13.storyhoard.local.MediaPipeline;
 import ca.ualberta.cmput301f13t13.storyhoard.local.Syncher;
 import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerManager;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.TransferProgress;
 
 /**
  * Role: Responsible for manipulating the story model. It keeps a reference to 
@@ -45,6 +49,8 @@ public class StoryController {
 	private static ServerManager serverMan;
 	private static Syncher syncher;
 	private static StoryController self;
+	private static ImageStore store;
+	private static MediaPipeline pipeline;
 
 	/**
 	 * Initializes a new StoryController. Needs context so it is able to 
@@ -58,7 +64,9 @@ public class StoryController {
 	 */
 	protected StoryController(Context context) {
 		syncher = Syncher.getInstance(context);
-		serverMan = ServerManager.getInstance();
+		serverMan = ServerManager.getInstance(context);
+		store = ImageStore.getInstance(context);
+		pipeline = MediaPipeline.getInstance(context);
 		story = new Story("", "", "", "");  	// blank story
 	}
 	
@@ -279,49 +287,75 @@ public class StoryController {
 	 * bitmaps after the have been converted to a string (Base64). </br></br>
 	 * 
 	 * Before a Story can be inserted into the server, all the images  
-	 * belonging to the story's chapters must have their bitmap strings 
-	 * set, i.e. all of them must convert the bitmap they are linked with 
-	 * to a string. This is only done when the story is published to avoid  
-	 * doing the expensive conversion unnecessarily (local stories only  
-	 * need to know the path to the image). 
+	 * belonging to the story's chapters must be ready to be sent with it. 
+	 * This is only done when the story is published to avoid doing the  
+	 * work unnecessarily (local stories only need to know the path to the  
+	 * image). 
 	 * </br>
 	 * 
-	 * This function takes care of setting all the Medias' bitmap strings.
+	 * This function takes care of preparing all the Medias' images. The 
+	 * images are prepared in parallel by the MediaPipeline, and each one 
+	 * is counted in the progress once it is ready. Images not started yet
+	 * when the progress is cancelled are skipped. Returns false if an image
+	 * could not be prepared.
 	 */
-	private void prepareChaptersForServer() {
+	private boolean prepareChaptersForServer(final TransferProgress progress) {
 		// get any media associated with the chapters of the story
-		ArrayList<Chapter> chaps = story.getChapters();
+		ArrayList<Media> medias = new ArrayList<Media>();
+		for (Chapter chap : story.getChapters()) {
+			medias.addAll(chap.getPhotos());
+			medias.addAll(chap.getIllustrations());
+		}
 
-		for (Chapter chap : chaps) {
-			prepareMediasForServer(chap);
+		// images are prepared in parallel
+		if (progress != null) {
+			progress.startItems("image", medias.size());
 		}
-		story.setChapters(chaps);
+		int failed = pipeline.forEach(medias, "bound", 
+				new MediaPipeline.Stage() {
+			@Override
+			public void run(Media media) {
+				if (progress == null) {
+					prepareMediaForServer(media);
+				} else if (!progress.isCancelled()) {
+					prepareMediaForServer(media);
+					progress.itemDone();
+				}
+			}
+		}, null);
+		return failed == 0;
 	}	
 
 	/** 
-	 * Helper function to prepareChaptersForServer. It sets the bitmap string 
+	 * Helper function to prepareChaptersForServer. It sets the upload path 
 	 * for a single media object. Reason why: </br></br>
 	 * 
 	 * Before a Story can be inserted into the server, all the images 
-	 * belonging to the story's chapters must have their bitmap strings 
-	 * set, i.e. all of them must convert the bitmap they are linked with 
-	 * to a string. This is only done when the story is published to avoid  
-	 * doing the expensive conversion unnecessarily (local stories only  
-	 * need to know the path to the image). 
+	 * belonging to the story's chapters must be sent along with it. Rather 
+	 * than converting each image to a bitmap string in memory, every media 
+	 * is given the path of a copy of its image in the ImageStore, encoded as
+	 * ImagePolicy.PUBLISH says, which is streamed to the server while the 
+	 * story is being sent. The media's format is set to match, so the image 
+	 * is saved under the right name when the story is downloaded. Throws an
+	 * IllegalStateException if the copy could not be made, leaving the 
+	 * media as it was.
 	 * </br>
 	 * 
-	 * @param chap
+	 * @param media
 	 */
-	private void prepareMediasForServer(Chapter chap) {
-		for (Media photo : chap.getPhotos()) {
-			photo.setBitmapString(photo.getBitmap());
+	private void prepareMediaForServer(Media media) {
+		ImagePolicy policy = ImagePolicy.PUBLISH;
+		String uploadPath = store.putRendition(media.getPath(), policy);
+		if (uploadPath == null) {
+			throw new IllegalStateException("Could not encode the image of "
+					+ "media " + media.getId());
 		}
+		// not used by any media, so it must outlive collectGarbage()
+		store.keep(uploadPath);
+		media.setUploadPath(uploadPath);
+		media.setFormat(policy.getFormat());
+	}
 
-		for (Media ill : chap.getIllustrations()) {
-			ill.setBitmapString(ill.getBitmap());
-		}
-	}	
-	
 	/**
 	 * Any changes to the story model will now be pushed to the server. This is 
 	 * called any time the user publishes or republishes a story. If the update 
@@ -337,8 +371,30 @@ public class StoryController {
 	 * 
 	 */
 	public Boolean pushChangesToServer() {
-		prepareChaptersForServer();
-		return serverMan.update(story);
+		return pushChangesToServer(null);
+	}
+
+	/**
+	 * Same as pushChangesToServer(), but reports how far it has got in the 
+	 * given progress: first the images prepared, then the images sent to the
+	 * server (see ServerManager), then the chapters and bytes of the story 
+	 * sent. If the progress is cancelled, the images left are not prepared,
+	 * the request to the server is aborted, and false is returned. False is
+	 * also returned, without sending anything, if an image can't be 
+	 * prepared. The story
+	 * on the server is only replaced once all of it has been sent, so a 
+	 * cancelled publish leaves it as it was. Must not be called on the main 
+	 * UI thread.
+	 * 
+	 * @param progress
+	 * 			Receives the progress, and can cancel the publish. May be null.
+	 */
+	public Boolean pushChangesToServer(TransferProgress progress) {
+		boolean prepared = prepareChaptersForServer(progress);
+		if (!prepared || (progress != null && progress.isCancelled())) {
+			return false;
+		}
+		return serverMan.update(story, progress);
 	}
 
 	/**
@@ -16,7 +16,6 @@
 
 package ca.ualberta.cmput301f13t13.storyhoard.dataClasses;
 
-import java.io.ByteArrayOutputStream;
 import java.util.UUID;
 
 import android.graphics.Bitmap;
@@ -32,7 +31,17 @@ import android.util.Base64;
  * the bitmap information onto the server. </br></br>
  * 
  * Also, a media object will always belong to a specific chapter, and no media
- * can belong to more than one chapter.
+ * can belong to more than one chapter. </br></br>
+ * 
+ * The format field says how the image sent to the server was encoded 
+ * ("jpeg" or "webp"), so a downloaded image is saved under the right name.
+ * Media published before the field existed have no format, and are JPEGs.
+ * A media published with its image in a separate part on the server has 
+ * the id of that part (see ServerManager.update()) and an empty 
+ * bitmapString, until the part is downloaded. </br></br>
+ * 
+ * The image at the path is decoded with ImageDecoder.decodeFitting(), and 
+ * encoded for the server with ImagePolicy.encode().
  * 
  * @author Stephanie Gil
  * @author Ashley Brown
@@ -45,8 +54,13 @@ public class Media {
 	private String type;
 	private String bitmapString;
 	private String text;
+	private String format;
+	private String partId = null;
+	private transient String uploadPath = null;
 	public static final String PHOTO = "photo";
 	public static final String ILLUSTRATION = "illustration";
+	public static final String JPEG = "jpeg";
+	public static final String WEBP = "webp";
 
 	/**
 	 * Initializes a new Media object without needing to specify an id since a
@@ -74,6 +88,7 @@ public class Media {
 		this.chapterId = chapterId;
 		this.type = type;
 		this.text = text;
+		this.format = JPEG;
 		bitmapString = "";
 		if (path != null) {
 			this.path = path;
@@ -123,6 +138,7 @@ public class Media {
 		this.chapterId = chapterId;
 		this.type = type;
 		this.text = text;
+		this.format = JPEG;
 		bitmapString = "";
 		if (path != null) {
 			this.path = path;		
@@ -198,23 +214,6 @@ public class Media {
 		return type;
 	}
 
-	/**
-	 * Returns the media's bitmap. It decodes the path that is has stored using 
-	 * the BitmapFactory decodeFile() method. The bitmap is also shrunken 
-	 * before being returned. This is to be able to put it on the server with 
-	 * less of a hassle. </br></br>
-	 * 
-	 * Example call:</br>
-	 * UUID chapId = UUID.randomUUID(); </br>
-	 * Media myMedia = (chapId, "sd://resources/img1.jpg", "photo", "hi");</br>
-	 * Bitmap bitmap = myMedia.getBitmap();</br>
-	 */
-	public Bitmap getBitmap() {
-		Bitmap bitmap = BitmapFactory.decodeFile(path);
-		Bitmap resizedbmp = Bitmap.createScaledBitmap(bitmap, 200, 200, false);
-		return resizedbmp;
-	}
-	
 	/**
 	 * Returns the media's bitmap as an encoded String. This method assumes the 
 	 * bitmapString field has already been filled. If not, an empty string would 
@@ -230,6 +229,45 @@ public class Media {
 		return bitmapString;
 	}	
 	
+	/**
+	 * Returns how the media's image was encoded for the server, either 
+	 * Media.JPEG or Media.WEBP. </br></br>
+	 * 
+	 * Example call:</br>
+	 * String ext = ImagePolicy.getExtension(myMedia.getFormat());</br>
+	 */
+	public String getFormat() {
+		if (format == null) {
+			// published before formats were recorded
+			return JPEG;
+		}
+		return format;
+	}
+
+	/**
+	 * Returns the id of the part on the server that holds the media's image,
+	 * or null if the image is in the bitmapString. The id is a hash of the 
+	 * image, so the same image is only ever sent once. </br></br>
+	 * 
+	 * Example call:</br>
+	 * String partId = myMedia.getPartId();</br>
+	 */
+	public String getPartId() {
+		return partId;
+	}
+
+	/**
+	 * Returns the path of the image file to send to the server in place of  
+	 * the bitmapString, or null if none has been set. It is not saved in the 
+	 * database or put on the server. </br></br>
+	 * 
+	 * Example call:</br>
+	 * String uploadPath = myMedia.getUploadPath();</br>
+	 */
+	public String getUploadPath() {
+		return uploadPath;
+	}
+
 	/**
 	 * Returns the media's bitmap, but does so by converting the bitmapString 
 	 * from string to bitmap. In other words, the path field is not used at 
@@ -317,27 +355,65 @@ public class Media {
 	}
 
 	/**
-	 * Sets the bitmapString of the media. What this is, is the bitmap  
-	 * associated with the Media object, but converted into a base 64 string.  
-	 * If a Chapter has a media, either a photo or illustration, this field is  
-	 * needed filled out when a story is sent to the server since the path  
-	 * becomes useless for stories on the server.</br></br>
-	 * 
-	 * This method actually takes a bitmap and does the conversion itself 
-	 * using the getStringFromBitmap() method, so no need to do the conversion 
-	 * yourself. </br></br>
+	 * Sets how the media's image is encoded for the server. Should match 
+	 * the image in the bitmapString or at the upload path. </br></br>
 	 * 
 	 * Example call:</br>
-	 * Media myMedia = (chapId, "sd://resources/img1.jpg", "photo", "hi");</br>
-	 * myMedia.setBitmapString(myMedia.getBitmap());</br>
+	 * myMedia.setFormat(Media.WEBP);</br>
 	 * 
-	 * @param bitmap
-	 * 			Valid bitmap, should never be null.
+	 * @param format
+	 * 			Media.JPEG or Media.WEBP.
 	 */
-	public void setBitmapString(Bitmap bitmap) {
-		this.bitmapString = getStringFromBitmap(bitmap);
+	public void setFormat(String format) {
+		this.format = format;
 	}
 	
+	/**
+	 * Sets the path of the image file whose contents should be sent to the  
+	 * server as this media's bitmap string. Publishing with an upload path  
+	 * lets the file be streamed to the server a piece at a time, rather than  
+	 * holding the whole image (and its base 64 string) in memory like 
+	 * setBitmapString() does. </br></br>
+	 * 
+	 * Example call:</br>
+	 * myMedia.setUploadPath("/sdcard/tmp/1385171296001.jpg");</br>
+	 * 
+	 * @param uploadPath
+	 * 			Path to a valid image file, or null to use the bitmapString.
+	 */
+	public void setUploadPath(String uploadPath) {
+		this.uploadPath = uploadPath;
+	}
+
+	/**
+	 * Sets the bitmapString of the media to an image already encoded as a 
+	 * base 64 string, for example one downloaded from the server. To encode 
+	 * a bitmap, use ImagePolicy.encode(). </br></br>
+	 * 
+	 * Example call:</br>
+	 * myMedia.setBitmapString(otherMedia.getBitmapString());</br>
+	 * 
+	 * @param bitmapString
+	 * 			Base 64 string of an image in the media's format.
+	 */
+	public void setBitmapString(String bitmapString) {
+		this.bitmapString = bitmapString;
+	}
+
+	/**
+	 * Sets the id of the part on the server that holds the media's image. 
+	 * </br></br>
+	 * 
+	 * Example call:</br>
+	 * myMedia.setPartId("2fd4e1c67a2d28fced849ee1bb76e7391b93eb12");</br>
+	 * 
+	 * @param partId
+	 * 			Id of the part, or null if the image is in the bitmapString.
+	 */
+	public void setPartId(String partId) {
+		this.partId = partId;
+	}
+
 	/**
 	 * Sets the type of media the object is. Will either be "photo" or 
 	 * "illustration". </br></br>
@@ -374,27 +450,6 @@ public class Media {
 		this.text = text;
 	}
 	
-	/**
-	 * This functions converts Bitmap picture to a string so that the media 
-	 * object can be converted to a JSON string and placed in the server. 
-	 * Should only be used by the Media object itself.
-	 * </br></br>
-	 * 
-	 * CODE REUSE: </br>
-	 * This code is taken straight from: </br>
-	 * URL: http://mobile.cs.fsu.edu/converting-images-to-json-objects/ </br>
-	 * Date: Nov. 4th, 2013 </br>
-	 * Author: Manav </br>
-	 */
-	private String getStringFromBitmap(Bitmap bitmapPicture) {
-		final int COMPRESSION_QUALITY = 100;
-		ByteArrayOutputStream byteArrayBitmapStream = new ByteArrayOutputStream();
-		bitmapPicture.compress(Bitmap.CompressFormat.JPEG, 
-				COMPRESSION_QUALITY, byteArrayBitmapStream);
-		byte[] b = byteArrayBitmapStream.toByteArray();
-		return Base64.encodeToString(b, Base64.DEFAULT);
-	}	
-
 	/**
 	 * This functions converts a base 64 string to a Bitmap. This is used 
 	 * whenever story is retrieved from the server since all of its 
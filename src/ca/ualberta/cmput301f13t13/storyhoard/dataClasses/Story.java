@@ -35,6 +35,7 @@ public class Story {
 	private UUID firstChapterId;
 	private ArrayList<Chapter> chapters;
 	private String phoneId;
+	private transient boolean headerOnly = false;
 	public static final String NOT_AUTHORS = "not";
 
 	/**
@@ -245,6 +246,21 @@ public class Story {
 		return this.phoneId;
 	}
 
+	/**
+	 * Returns whether only the header of the story was retrieved from the 
+	 * server (see ServerManager.getAll()), so the text of its chapters and 
+	 * most of its images are missing. It is not saved in the database or 
+	 * put on the server. </br></br>
+	 * 
+	 * Example call:</br>
+	 * if (story.isHeaderOnly()) { </br>
+	 * 		story = serverMan.getWholeStory(story); </br>
+	 * } </br>
+	 */
+	public boolean isHeaderOnly() {
+		return headerOnly;
+	}
+
 	// SETTERS
 
 	/**
@@ -358,4 +374,15 @@ public class Story {
 	public void setPhoneId(String phoneId) {
 		this.phoneId = phoneId;
 	}
+
+	/**
+	 * Sets whether only the header of the story was retrieved from the 
+	 * server. Only ServerManager should need to call this.
+	 * 
+	 * @param headerOnly
+	 * 			True if the story is missing everything but its header.
+	 */
+	public void setHeaderOnly(boolean headerOnly) {
+		this.headerOnly = headerOnly;
+	}
 }
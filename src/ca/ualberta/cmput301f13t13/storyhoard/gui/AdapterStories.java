@@ -16,11 +16,17 @@
 package ca.ualberta.cmput301f13t13.storyhoard.gui;
 
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import android.app.Activity;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.AsyncTask;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -29,6 +35,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 import ca.ualberta.cmput301f13t13.storyhoard.R;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.local.CoverCache;
 
 /**
  * Class which handles adapting the Story object to a displayable view type.
@@ -36,14 +43,39 @@ import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
  * 
  * This is using the adapter patern.
  * 
+ * Each story shows its cover from the CoverCache. Covers not in memory yet 
+ * are loaded in the background, and the book placeholder is shown until 
+ * they are ready. The placeholder is only ever decoded once. Stories known
+ * to have no cover just show the placeholder, without loading anything.
+ * 
+ * Covers are loaded on two threads of their own. Only MAX_QUEUED loads 
+ * wait for them; when a fling binds more rows than that, the oldest loads
+ * (for rows that have already scrolled away) are dropped.
+ * 
+ * Stories can also be given a label, shown under their title, for
+ * example to say where a search result was found.
+ * 
  * @author alexanderwong
  * 
  */
 public class AdapterStories extends ArrayAdapter<Story> {
+	// more than a screen full of covers
+	private static final int MAX_QUEUED = 32;
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+			2, 2, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(
+					MAX_QUEUED), new ThreadPoolExecutor.DiscardOldestPolicy());
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
 
 	Context context;
 	int layoutResourceId;
 	ArrayList<Story> data = new ArrayList<Story>();
+	private static Bitmap placeholder = null;
+	private final CoverCache covers;
+	private final int coverSize;
+	private Map<UUID, String> labels = null;
 
 	public AdapterStories(Context context, int layoutResourceId,
 			ArrayList<Story> data) {
@@ -51,6 +83,29 @@ public class AdapterStories extends ArrayAdapter<Story> {
 		this.layoutResourceId = layoutResourceId;
 		this.context = context;
 		this.data = data;
+		covers = CoverCache.getInstance(context);
+		// the cover image in browse_story_item is 100dp wide
+		coverSize = Math.round(100 * context.getResources()
+				.getDisplayMetrics().density);
+	}
+
+	/**
+	 * Sets the labels shown under the titles of the stories, by story id.
+	 * Stories without a label just show their title.
+	 */
+	public void setLabels(Map<UUID, String> labels) {
+		this.labels = labels;
+	}
+
+	/**
+	 * Returns the book placeholder, decoding it the first time.
+	 */
+	private static synchronized Bitmap getPlaceholder(Context context) {
+		if (placeholder == null) {
+			placeholder = BitmapFactory.decodeResource(context.getResources(),
+					R.drawable.book);
+		}
+		return placeholder;
 	}
 
 	@Override
@@ -71,21 +126,66 @@ public class AdapterStories extends ArrayAdapter<Story> {
 
 		Story item = data.get(position);
 		// Check for no text here
-		if (item.getTitle().equals("")) {
-			holder.txtTitle.setText("<No Title>");
+		String title = item.getTitle();
+		if (title == null || title.equals("")) {
+			title = "<No Title>";
+		}
+		if (labels != null && labels.containsKey(item.getId())) {
+			title += "\n(" + labels.get(item.getId()) + ")";
+		}
+		holder.txtTitle.setText(title);
+		if (holder.task != null) {
+			holder.task.cancel(false);
+			holder.task = null;
+		}
+		holder.story = item;
+		Bitmap cover = covers.getFromMemory(item);
+		if (cover != null) {
+			holder.imageItem.setImageBitmap(cover);
 		} else {
-			holder.txtTitle.setText(item.getTitle());
+			holder.imageItem.setImageBitmap(getPlaceholder(context));
+			if (!covers.hasNoCover(item)) {
+				holder.task = new LoadCover(holder, item);
+				holder.task.executeOnExecutor(executor);
+			}
 		}
-		// Implement this when stories actually have pictures
-		// holder.imageItem.setImageBitmap(item.getImage());
-		holder.imageItem.setImageBitmap((Bitmap) BitmapFactory.decodeResource(
-				context.getResources(), R.drawable.book));
 		return row;
 
 	}
 
+	/**
+	 * Loads the cover of a story in the background, and shows it if the row
+	 * is still showing that story.
+	 */
+	private class LoadCover extends AsyncTask<Void, Void, Bitmap> {
+		private final StoryHolder holder;
+		private final Story story;
+
+		LoadCover(StoryHolder holder, Story story) {
+			this.holder = holder;
+			this.story = story;
+		}
+
+		@Override
+		protected Bitmap doInBackground(Void... params) {
+			return covers.get(story, coverSize);
+		}
+
+		@Override
+		protected void onPostExecute(Bitmap cover) {
+			if (holder.task == this) {
+				holder.task = null;
+			}
+			if (cover != null && holder.story == story) {
+				holder.imageItem.setImageBitmap(cover);
+			}
+		}
+	}
+
 	static class StoryHolder {
 		TextView txtTitle;
 		ImageView imageItem;
+		Story story;
+		AsyncTask<Void, Void, Bitmap> task;
 	}
 }
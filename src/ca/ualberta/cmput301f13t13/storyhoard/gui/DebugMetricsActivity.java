@@ -0,0 +1,144 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.gui;
+
+import java.io.File;
+import java.io.IOException;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.Button;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.TextView;
+import android.widget.Toast;
+import ca.ualberta.cmput301f13t13.storyhoard.R;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImageCache;
+import ca.ualberta.cmput301f13t13.storyhoard.local.Metrics;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ESClient;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.QueryCache;
+
+/**
+ * Role: Shows what the Metrics have recorded, along with the state of the
+ * caches and of the connection to the server, for finding out where the
+ * time goes. Metrics can be turned on and off, reset, and saved to a file
+ * that can be pulled off the phone. It is reached from the overflow menu
+ * of ViewBrowseStories.
+ *
+ * @author Stephanie Gil
+ *
+ * @see Metrics
+ */
+public class DebugMetricsActivity extends Activity {
+	private CheckBox enabled;
+	private TextView metricsText;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		setContentView(R.layout.activity_debug_metrics);
+		setUpFields();
+		setListeners();
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+		enabled.setChecked(Metrics.isEnabled());
+		refresh();
+	}
+
+	/**
+	 * Sets up activity fields
+	 */
+	private void setUpFields() {
+		enabled = (CheckBox) findViewById(R.id.metricsEnabled);
+		metricsText = (TextView) findViewById(R.id.metricsText);
+	}
+
+	/**
+	 * Sets the listeners of the check box and the buttons
+	 */
+	private void setListeners() {
+		enabled.setOnCheckedChangeListener(
+				new CompoundButton.OnCheckedChangeListener() {
+			@Override
+			public void onCheckedChanged(CompoundButton button,
+					boolean isChecked) {
+				Metrics.setEnabled(isChecked);
+				refresh();
+			}
+		});
+		Button refresh = (Button) findViewById(R.id.refreshMetrics);
+		refresh.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				refresh();
+			}
+		});
+		Button reset = (Button) findViewById(R.id.resetMetrics);
+		reset.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				Metrics.reset();
+				refresh();
+			}
+		});
+		Button dump = (Button) findViewById(R.id.dumpMetrics);
+		dump.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				dump();
+			}
+		});
+	}
+
+	/**
+	 * Shows what has been recorded so far.
+	 */
+	private void refresh() {
+		StringBuilder text = new StringBuilder();
+		text.append(ESClient.getCircuitBreaker()).append("\n");
+		text.append(QueryCache.getInstance(this)).append("\n");
+		text.append(ImageCache.getInstance(this)).append("\n\n");
+		text.append(Metrics.report());
+		metricsText.setText(text);
+	}
+
+	/**
+	 * Saves the metrics to a file in the application's folder on the SD
+	 * card, or in its private folder if there is no SD card.
+	 */
+	private void dump() {
+		File folder = getExternalFilesDir(null);
+		if (folder == null) {
+			folder = getFilesDir();
+		}
+		File file = new File(folder, "metrics-" + System.currentTimeMillis()
+				+ ".json");
+		try {
+			Metrics.dump(file);
+			Toast.makeText(this, "Saved to " + file.getPath(),
+					Toast.LENGTH_LONG).show();
+		} catch (IOException e) {
+			e.printStackTrace();
+			Toast.makeText(this, "Could not save the metrics",
+					Toast.LENGTH_SHORT).show();
+		}
+	}
+}
@@ -196,12 +196,17 @@ public class EditChapterActivity extends MediaActivity {
 		setUpIllustrations();
 	}
 
+	@Override
+	protected void refreshImages() {
+		setUpIllustrations();
+	}
+
 	/**
 	 * Retrieves and sets up the illustrations for the chapter.
 	 */
 	public void setUpIllustrations() {
 		// Clean up illustrations layout
-		illustrations.removeAllViews();
+		clearImages(illustrations);
 
 		for (Media img : chapter.getIllustrations()) {
 			View view = insertImage(img, EditChapterActivity.this,
@@ -112,7 +112,7 @@ public class EditStoryActivity extends Activity {
 	private void setupFields() {
 		lifedata = LifecycleData.getInstance();
 		storyCon = StoryController.getInstance(this);
-		serverMan = ServerManager.getInstance();
+		serverMan = ServerManager.getInstance(this);
 
 		setContentView(R.layout.activity_edit_story);
 
@@ -138,9 +138,14 @@ public class EditStoryActivity extends Activity {
 	 */
 	private void publishStory() {
 		if (lifedata.isEditing()) {
-			// publish new story somehow
-			saveChanges();
-			new Update().execute();
+			String title = newTitle.getText().toString();
+			if (validTitle(title)) {
+				editStoryDetails(title);
+				// the activity is closed once the story has been published
+				new Update().execute();
+			} else {
+				alertDialog();
+			}
 		} else {
 			Toast.makeText(getBaseContext(),
 					"Create a story before publishing", Toast.LENGTH_SHORT)
@@ -164,16 +169,29 @@ public class EditStoryActivity extends Activity {
 	}
 
 	private class Update extends AsyncTask<Void, Void, Boolean> {
+		private TransferDialog dialog;
+
+		@Override
+		protected void onPreExecute() {
+			dialog = new TransferDialog(EditStoryActivity.this,
+					"Publishing Story");
+			dialog.show();
+		}
+
 		@Override
 		protected synchronized Boolean doInBackground(Void... params) {
 			// publish or update story
-			return storyCon.pushChangesToServer();
+			return storyCon.pushChangesToServer(dialog.getProgress());
 		}
 		
 		@Override
 		protected void onPostExecute(Boolean result) {
 			super.onPostExecute(result);
-			if (result) {
+			dialog.dismiss();
+			if (dialog.getProgress().isCancelled()) {
+				Toast.makeText(getBaseContext(), "Publishing cancelled",
+						Toast.LENGTH_SHORT).show();
+			} else if (result) {
 				Toast.makeText(getBaseContext(), "Story published to server",
 						Toast.LENGTH_SHORT).show();
 				finish();
@@ -203,10 +221,7 @@ public class EditStoryActivity extends Activity {
 			String author = newAuthor.getText().toString();
 			String description = newDescription.getText().toString();
 			if (lifedata.isEditing()) {
-				storyCon.editAuthor(author);
-				storyCon.editTitle(title);
-				storyCon.editDescription(description);
-				storyCon.pushChangesToDb();
+				editStoryDetails(title);
 			} else {
 				newStory = new Story(title, author, description,
 						Utilities.getPhoneId(getBaseContext()));
@@ -223,6 +238,17 @@ public class EditStoryActivity extends Activity {
 		}
 	}
 
+	/**
+	 * Saves the title, author and description entered into the story being
+	 * edited.
+	 */
+	private void editStoryDetails(String title) {
+		storyCon.editAuthor(newAuthor.getText().toString());
+		storyCon.editTitle(title);
+		storyCon.editDescription(newDescription.getText().toString());
+		storyCon.pushChangesToDb();
+	}
+
 	/**
 	 * Ensures that user enters a valid title
 	 * 
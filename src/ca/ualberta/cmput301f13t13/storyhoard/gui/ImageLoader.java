@@ -0,0 +1,254 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.gui;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.widget.ImageView;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImageCache;
+import ca.ualberta.cmput301f13t13.storyhoard.local.Metrics;
+
+/**
+ * Role: Loads the images of a chapter into their ImageViews in the
+ * background, so that opening a chapter with many images doesn't freeze
+ * the screen while they are decoded. </br></br>
+ *
+ * Each view shows a plain placeholder until its image is ready. Images are
+ * loaded in the order of their priority (the first images of the strip
+ * first), on two shared background threads. When a view is given a new
+ * image, or the activity goes away, the loads that are no longer needed
+ * are cancelled, even if they are half way through decoding. </br></br>
+ *
+ * The bitmaps come from the ImageCache, and are handed back to it with
+ * releaseAll() once the views are not shown anymore, so their memory can be
+ * reused for the next images. </br></br>
+ *
+ * Every method must be called on the main UI thread. </br></br>
+ *
+ * Example call: </br>
+ * ImageLoader loader = new ImageLoader(context, 250, 250); </br>
+ * loader.load(media, imageView, 0); </br>
+ * ... </br>
+ * loader.cancelAll(); </br>
+ * loader.releaseAll(); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see ImageCache
+ * @see MediaActivity
+ */
+public class ImageLoader {
+	private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+			2, 2, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+			new LoaderThreadFactory());
+	private static final AtomicLong sequence = new AtomicLong();
+
+	static {
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	private final ImageCache cache;
+	private final int width;
+	private final int height;
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final Map<ImageView, LoadTask> tasks = new WeakHashMap<ImageView, LoadTask>();
+	private final ArrayList<Bitmap> shown = new ArrayList<Bitmap>();
+
+	/**
+	 * Initializes a new ImageLoader.
+	 *
+	 * @param context
+	 * 			Can be an activity or application context.
+	 * @param width
+	 * 			Width the images are shown at, in pixels.
+	 * @param height
+	 * 			Height the images are shown at, in pixels.
+	 */
+	public ImageLoader(Context context, int width, int height) {
+		this.cache = ImageCache.getInstance(context);
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * Returns the drawable shown while an image is loading.
+	 */
+	public Drawable getPlaceholder() {
+		return new ColorDrawable(Color.LTGRAY);
+	}
+
+	/**
+	 * Shows the media's image in the view. If it is already in memory it is
+	 * shown right away, otherwise the placeholder is shown and the image is
+	 * loaded in the background. Any load that was still pending for this view
+	 * is cancelled.
+	 *
+	 * @param media
+	 * 			Media whose image is to be shown.
+	 * @param view
+	 * 			ImageView to show it in.
+	 * @param priority
+	 * 			Lower numbers are loaded first, for example the position of
+	 * 			the image in the strip.
+	 */
+	public void load(Media media, ImageView view, int priority) {
+		cancel(view);
+		Bitmap bitmap = cache.getFromMemory(media, width, height);
+		if (bitmap != null) {
+			Metrics.count("image.load.memory");
+			show(view, bitmap);
+			return;
+		}
+		view.setImageDrawable(getPlaceholder());
+		LoadTask task = new LoadTask(media, view, priority);
+		tasks.put(view, task);
+		executor.execute(task);
+	}
+
+	/**
+	 * Cancels the pending load for a view, if there is one.
+	 */
+	public void cancel(ImageView view) {
+		LoadTask task = tasks.remove(view);
+		if (task != null) {
+			task.cancel();
+		}
+	}
+
+	/**
+	 * Cancels every load that hasn't finished yet, for example when the
+	 * activity is paused.
+	 */
+	public void cancelAll() {
+		for (LoadTask task : tasks.values()) {
+			task.cancel();
+		}
+		tasks.clear();
+	}
+
+	/**
+	 * Hands every bitmap this loader has shown back to the ImageCache. Must
+	 * only be called once the views showing them are gone or no longer
+	 * drawn.
+	 */
+	public void releaseAll() {
+		for (Bitmap bitmap : shown) {
+			cache.release(bitmap);
+		}
+		shown.clear();
+	}
+
+	private void show(ImageView view, Bitmap bitmap) {
+		view.setImageBitmap(bitmap);
+		shown.add(bitmap);
+	}
+
+	/**
+	 * Loads one image on a background thread and posts it back to its view.
+	 * Tasks with a lower priority number run first, and tasks with the same
+	 * priority run in the order they were started.
+	 */
+	private class LoadTask implements Runnable, Comparable<LoadTask> {
+		private final Media media;
+		private final ImageView view;
+		private final int priority;
+		private final long order = sequence.getAndIncrement();
+		private final long start = Metrics.start();
+		private final BitmapFactory.Options options = new BitmapFactory.Options();
+		private volatile boolean cancelled = false;
+
+		LoadTask(Media media, ImageView view, int priority) {
+			this.media = media;
+			this.view = view;
+			this.priority = priority;
+		}
+
+		void cancel() {
+			cancelled = true;
+			executor.remove(this);
+			options.requestCancelDecode();
+		}
+
+		@Override
+		public void run() {
+			if (cancelled) {
+				return;
+			}
+			final Bitmap bitmap = cache.get(media, width, height, options);
+			if (bitmap == null) {
+				return;
+			}
+			handler.post(new Runnable() {
+				@Override
+				public void run() {
+					if (cancelled || tasks.get(view) != LoadTask.this) {
+						cache.release(bitmap);
+						return;
+					}
+					tasks.remove(view);
+					show(view, bitmap);
+					// from being asked for to being on the screen
+					Metrics.time("image.load", start);
+				}
+			});
+		}
+
+		@Override
+		public int compareTo(LoadTask other) {
+			if (priority != other.priority) {
+				return priority < other.priority ? -1 : 1;
+			}
+			return order < other.order ? -1 : (order == other.order ? 0 : 1);
+		}
+	}
+
+	/**
+	 * Makes named background priority threads for the loader.
+	 */
+	private static class LoaderThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger(1);
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					r.run();
+				}
+			}, "ImageLoader #" + count.getAndIncrement());
+		}
+	}
+}
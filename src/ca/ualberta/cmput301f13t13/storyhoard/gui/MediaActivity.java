@@ -16,6 +16,8 @@
 package ca.ualberta.cmput301f13t13.storyhoard.gui;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.UUID;
 
 import android.app.Activity;
 import android.app.AlertDialog;
@@ -24,9 +26,8 @@ import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Environment;
 import android.provider.MediaStore;
 import android.text.InputFilter;
@@ -38,6 +39,9 @@ import android.widget.ImageView;
 import android.widget.LinearLayout;
 import ca.ualberta.cmput301f13t13.storyhoard.controllers.ChapterController;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImagePolicy;
+import ca.ualberta.cmput301f13t13.storyhoard.local.ImageStore;
+import ca.ualberta.cmput301f13t13.storyhoard.local.MediaManager;
 
 /**
  * This activity handles all the media getting and setting code.
@@ -56,6 +60,8 @@ public abstract class MediaActivity extends Activity {
 	private String photoComment = "";
 	private AlertDialog photoDialog;
 	private ChapterController chapCon;
+	private ImageLoader loader;
+	private final ArrayList<IngestImage> ingests = new ArrayList<IngestImage>();
 
 	/**
 	 * Code for browsing gallery </br></br>
@@ -161,12 +167,15 @@ public abstract class MediaActivity extends Activity {
 	 * Determines what activity was just performed (either taking a
 	 * photo or choosing from the gallery), and creates a new Media
 	 * object to store in the LifecycleData class for other 
-	 * activity classes to use.
+	 * activity classes to use. The media is given a smaller copy of the 
+	 * image (see ImagePolicy.CAPTURE), made in the background, and is added 
+	 * to the chapter once the copy is ready.
 	 */
 	protected void onActivityResult(int requestCode, int resultCode,
 			Intent intent) {
 		if (resultCode == RESULT_OK) {
 			Media photo = null;
+			boolean captured = false;
 			chapCon = ChapterController.getInstance(this);
 			if (requestCode == BROWSE_GALLERY_ACTIVITY_REQUEST_CODE) {
 				photo = new Media(chapCon.getCurrChapter().getId(), 
@@ -176,9 +185,14 @@ public abstract class MediaActivity extends Activity {
 				photo = new Media(chapCon.getCurrChapter().getId(), 
 						imageFileUri.getPath(), 
 						imageType, photoComment);
-				insertIntoGallery(photo);
+				captured = true;
+			}
+			if (photo != null) {
+				IngestImage ingest = new IngestImage(photo, captured,
+						ImagePolicy.CAPTURE);
+				ingests.add(ingest);
+				ingest.execute();
 			}
-			chapCon.addMedia(photo);
 		} else if (resultCode == RESULT_CANCELED) {
 			System.out.println("cancelled action");
 		} else {
@@ -186,6 +200,78 @@ public abstract class MediaActivity extends Activity {
 		}
 	}	
 
+	/**
+	 * Shows the chapter's images again, once a new one has been added to the
+	 * chapter.
+	 */
+	protected abstract void refreshImages();
+
+	/**
+	 * Makes the copy of a new image that the media will use, then adds the 
+	 * media to the current chapter and shows it. If the copy can't be made,
+	 * the original image is used. </br></br>
+	 * 
+	 * If the user has moved on to another chapter meanwhile, the media is 
+	 * saved straight to the database for the chapter it was added to. If the
+	 * activity is destroyed meanwhile, the task is cancelled: the copy is 
+	 * still finished and the media still added, but nothing is shown.
+	 */
+	private class IngestImage extends AsyncTask<Void, Void, String> {
+		private final Media photo;
+		private final boolean captured;
+		private final ImagePolicy policy;
+
+		IngestImage(Media photo, boolean captured, ImagePolicy policy) {
+			this.photo = photo;
+			this.captured = captured;
+			this.policy = policy;
+		}
+
+		@Override
+		protected String doInBackground(Void... params) {
+			return ImageStore.getInstance(MediaActivity.this).putRendition(
+					photo.getPath(), policy);
+		}
+
+		@Override
+		protected void onPostExecute(String rendition) {
+			ingests.remove(this);
+			if (addToChapter(rendition)) {
+				refreshImages();
+			}
+		}
+
+		@Override
+		protected void onCancelled(String rendition) {
+			ingests.remove(this);
+			addToChapter(rendition);
+		}
+
+		/**
+		 * Points the media at its copy and adds it to its chapter. Returns 
+		 * whether that is still the current chapter.
+		 */
+		private boolean addToChapter(String rendition) {
+			if (captured) {
+				if (rendition != null && !policy.keepsOriginal()) {
+					new File(photo.getPath()).delete();
+				} else {
+					insertIntoGallery(photo);
+				}
+			}
+			if (rendition != null) {
+				photo.setPath(rendition);
+			}
+			if (!photo.getChapterId().equals(chapCon.getCurrChapter().getId())) {
+				// the user moved on to another chapter meanwhile
+				MediaManager.getInstance(MediaActivity.this).insert(photo);
+				return false;
+			}
+			chapCon.addMedia(photo);
+			return true;
+		}
+	}
+
 	/**
 	 * Code for getting the Uri of a new file created for storing an image
 	 * which has just been taken by the camera app. </br> </br>
@@ -205,8 +291,8 @@ public abstract class MediaActivity extends Activity {
 			folderF.mkdir();
 		}
 
-		String imageFilePath = folder + "/"
-				+ String.valueOf(System.currentTimeMillis()) + ".jpg";
+		// a random name, so two photos can never be given the same file
+		String imageFilePath = folder + "/" + UUID.randomUUID() + ".jpg";
 		File imageFile = new File(imageFilePath);
 		Uri imageFileUri = Uri.fromFile(imageFile);
 
@@ -217,7 +303,9 @@ public abstract class MediaActivity extends Activity {
 	 * Inserts the bitmap of a Media object onto an imageView to display in
 	 * the activity. It also puts the Media object as the Tag of the imageView
 	 * so that later on if the image needs to be deleted or the text field 
-	 * needs to be read, we will know which object the bitmap belongs to. </br></br>
+	 * needs to be read, we will know which object the bitmap belongs to. 
+	 * The bitmap is loaded in the background by an ImageLoader, so a 
+	 * placeholder is shown until it is ready. </br></br>
 	 * 
 	 * CODE REUSE </br> 
 	 * URL: http://android-er.blogspot.ca/2012/07/implement-gallery-like.html </br>
@@ -225,8 +313,6 @@ public abstract class MediaActivity extends Activity {
 	 * Author: Andr.oid Eric
 	 */
 	protected View insertImage(Media img, Context context, LinearLayout main) {
-		Bitmap bm = decodeSampledBitmapFromUri(Uri.parse(img.getPath()), 
-				250, 250);
 		LinearLayout layout = new LinearLayout(context);
 
 		layout.setLayoutParams(new LayoutParams(250, 250));
@@ -235,14 +321,57 @@ public abstract class MediaActivity extends Activity {
 		imageView = new ImageView(context);
 		imageView.setLayoutParams(new LayoutParams(250, 250));
 		imageView.setScaleType(ImageView.ScaleType.CENTER_CROP);
-		imageView.setImageBitmap(bm);
 		imageView.setTag(img);
+		// images earlier in the strip are loaded first
+		getImageLoader().load(img, imageView, main.getChildCount());
 
 		layout.addView(imageView);
 		main.addView(layout);
 
 		return (View) imageView;
-	}		
+	}
+
+	/**
+	 * Removes every image from a layout filled with insertImage(), stopping
+	 * the images that are still loading and letting the memory of the ones
+	 * shown be reused.
+	 */
+	protected void clearImages(LinearLayout main) {
+		ImageLoader loader = getImageLoader();
+		loader.cancelAll();
+		main.removeAllViews();
+		loader.releaseAll();
+	}
+
+	/**
+	 * Returns the ImageLoader used for this activity's images.
+	 */
+	protected ImageLoader getImageLoader() {
+		if (loader == null) {
+			loader = new ImageLoader(this, 250, 250);
+		}
+		return loader;
+	}
+
+	@Override
+	protected void onPause() {
+		super.onPause();
+		if (loader != null) {
+			loader.cancelAll();
+		}
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		for (IngestImage ingest : new ArrayList<IngestImage>(ingests)) {
+			ingest.cancel(false);
+		}
+		if (loader != null) {
+			loader.cancelAll();
+			loader.releaseAll();
+		}
+	}
 
 	/**
 	 * Takes a uri, and from it finds the absolute path to the media. It 
@@ -265,62 +394,5 @@ public abstract class MediaActivity extends Activity {
 		int column_index = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
 		cursor.moveToFirst();
 		return cursor.getString(column_index);
-	}	
-
-	/**
-	 * Calculates the size desired for bitmap. Only to be used by the 
-	 * decodeSampledBitmapFromUri method below. </br></br>
-	 * 
-	 * CODE REUSE </br>
-	 * URL: http://android-er.blogspot.ca/2012/07/implement-gallery-like.html </br>
-	 * Date: Nov. 7, 2013 </br>
-	 * Author: Andr.oid Eric </br>
-	 */		
-	private static int calculateInSampleSize(BitmapFactory.Options options, 
-			int reqWidth, int reqHeight) {
-		// Raw height and width of image
-		final int height = options.outHeight;
-		final int width = options.outWidth;
-		int inSampleSize = 1;
-
-		if (height > reqHeight || width > reqWidth) {
-			if (width > height) {
-				inSampleSize = Math.round((float)height / (float)reqHeight);   
-			} else {
-				inSampleSize = Math.round((float)width / (float)reqWidth);   
-			}   
-		}
-
-		return inSampleSize;   
-	}	
-
-	/**
-	 * Decodes a Uri into a bitmap and also make sure the bitmap is scaled
-	 * down to the specified size. Only to be used by the insertImage()
-	 * method when setting a bitmap to an imageView. </br></br>
-	 * 
-	 * CODE REUSE </br>
-	 * URL: http://android-er.blogspot.ca/2012/07/implement-gallery-like.html </br>
-	 * Date: Nov. 7, 2013 </br>
-	 * Author: Andr.oid Eric </br>
-	 */	
-	private static Bitmap decodeSampledBitmapFromUri(Uri uri, 
-			int reqWidth, int reqHeight) {
-		Bitmap bm = null;
-
-		// First decode with inJustDecodeBounds=true to check dimensions
-		final BitmapFactory.Options options = new BitmapFactory.Options();
-		options.inJustDecodeBounds = true;
-		BitmapFactory.decodeFile(uri.getPath(), options);
-
-		// Calculate inSampleSize
-		options.inSampleSize = calculateInSampleSize(options, 
-				reqWidth, reqHeight);
-
-		// Decode bitmap with inSampleSize set
-		options.inJustDecodeBounds = false;
-		bm = BitmapFactory.decodeFile(uri.getPath(), options); 
-
-		return bm;  
-	}		
-}
+	}
+}
\ No newline at end of file
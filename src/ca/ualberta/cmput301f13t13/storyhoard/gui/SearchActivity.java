@@ -23,16 +23,25 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.view.ViewGroup;
 import android.widget.AdapterView;
+import android.widget.AdapterView.OnItemClickListener;
 import android.widget.AdapterView.OnItemSelectedListener;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.ListView;
 import android.widget.Spinner;
+import android.widget.TextView;
 import ca.ualberta.cmput301f13t13.storyhoard.R;
+import ca.ualberta.cmput301f13t13.storyhoard.controllers.SearchController;
+import ca.ualberta.cmput301f13t13.storyhoard.controllers.SearchController.SuggestionListener;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
 import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
 import ca.ualberta.cmput301f13t13.storyhoard.local.StoryManager;
@@ -46,6 +55,11 @@ import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerManager;
  * wish to find and read. Results of their search 
  * will be displayed in the search results activity. 
  * 
+ * While the user types, stories matching what has
+ * been typed so far are suggested under the search
+ * box (see SearchController). Choosing one searches
+ * for its title.
+ * 
  * @author Kim Wu
  */
 
@@ -56,24 +70,42 @@ public class SearchActivity extends Activity {
 	private StoryManager storyMan;
 	private ServerManager serverMan;
 	private LifecycleData lifedata;
+	private SearchController searchCon;
+	private ListView suggestionList;
+	private ArrayAdapter<Story> suggestions;
 
 	private enum Type {
-		AUTHOR, CACHED, PUBLISHED
+		ALL, AUTHOR, CACHED, PUBLISHED
 	};
 
-	private Type viewType = Type.AUTHOR;
+	private Type viewType = Type.ALL;
+
+	private final SuggestionListener suggestionListener = 
+			new SuggestionListener() {
+		@Override
+		public void onSuggestions(String text, ArrayList<Story> stories) {
+			suggestions.clear();
+			for (Story story : stories) {
+				suggestions.add(story);
+			}
+		}
+	};
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.activity_search);
+		searchCon = SearchController.getInstance(this);
+		titleInput = (EditText) findViewById(R.id.story_name);
+		suggestionList = (ListView) findViewById(R.id.suggestions);
+		setSuggestions();
 	}
 
 	@Override
 	protected void onResume() {
 		super.onResume();
 		lifedata = LifecycleData.getInstance();
-		serverMan = ServerManager.getInstance();
+		serverMan = ServerManager.getInstance(this);
 		storyMan = StoryManager.getInstance(this);
 		searchButton = (Button) findViewById(R.id.searchButton);
 		titleInput = (EditText) findViewById(R.id.story_name);
@@ -82,6 +114,12 @@ public class SearchActivity extends Activity {
 		setSearchListener();
 	}
 
+	@Override
+	protected void onPause() {
+		super.onPause();
+		searchCon.cancel();
+	}
+
 	@Override
 	public boolean onCreateOptionsMenu(Menu menu) {
 		// Inflate the menu; this adds items to the action bar if it is present.
@@ -128,6 +166,69 @@ public class SearchActivity extends Activity {
 		});
 	}
 
+	/**
+	 * Sets up the list of suggestions under the search box, which follows
+	 * what is typed. Choosing a suggestion searches for its title.
+	 */
+	private void setSuggestions() {
+		suggestions = new ArrayAdapter<Story>(this,
+				android.R.layout.simple_list_item_1) {
+			@Override
+			public View getView(int position, View convertView,
+					ViewGroup parent) {
+				TextView view = (TextView) super.getView(position, 
+						convertView, parent);
+				Story story = getItem(position);
+				view.setText(story.getTitle() + " - " + story.getAuthor());
+				view.setTextColor(0xfffff190);
+				return view;
+			}
+		};
+		suggestionList.setAdapter(suggestions);
+		suggestionList.setOnItemClickListener(new OnItemClickListener() {
+			@Override
+			public void onItemClick(AdapterView<?> adapter, View v,
+					int position, long id) {
+				String title = suggestions.getItem(position).getTitle();
+				searchCon.cancel();
+				titleInput.setText(title);
+				new SearchKeywords().execute(title);
+			}
+		});
+		titleInput.addTextChangedListener(new TextWatcher() {
+			@Override
+			public void afterTextChanged(Editable s) {
+				suggest();
+			}
+
+			@Override
+			public void beforeTextChanged(CharSequence s, int start,
+					int count, int after) {
+			}
+
+			@Override
+			public void onTextChanged(CharSequence s, int start, int before,
+					int count) {
+			}
+		});
+	}
+
+	/**
+	 * Asks for suggestions for what is in the search box now.
+	 */
+	private void suggest() {
+		int type = SearchController.ALL;
+		if (viewType == Type.AUTHOR) {
+			type = SearchController.AUTHOR;
+		} else if (viewType == Type.CACHED) {
+			type = SearchController.CACHED;
+		} else if (viewType == Type.PUBLISHED) {
+			type = SearchController.PUBLISHED;
+		}
+		searchCon.suggest(titleInput.getText().toString(), type,
+				suggestionListener);
+	}
+
 	private class SearchKeywords extends AsyncTask<String, Void, Void> {
 		@Override
 		protected synchronized Void doInBackground(String... params) {
@@ -148,7 +249,12 @@ public class SearchActivity extends Activity {
 		Intent intent = new Intent(getBaseContext(),
 				SearchResultsActivity.class);
 
-		if (viewType == Type.AUTHOR) {
+		if (viewType == Type.ALL) {
+			// the results activity searches every place at once
+			intent.putExtra("query", title);
+			startActivity(intent);
+			return;
+		} else if (viewType == Type.AUTHOR) {
 			stories = storyMan.searchAuthorStories(title);
 			intent.putExtra("isPublished", false);
 		} else if (viewType == Type.CACHED) {
@@ -187,12 +293,15 @@ public class SearchActivity extends Activity {
 			public void onItemSelected(AdapterView<?> adapter, View v,
 					int position, long id) {
 				if (position == 0) {
-					viewType = Type.AUTHOR;
+					viewType = Type.ALL;
 				} else if (position == 1) {
-					viewType = Type.CACHED;
+					viewType = Type.AUTHOR;
 				} else if (position == 2) {
+					viewType = Type.CACHED;
+				} else if (position == 3) {
 					viewType = Type.PUBLISHED;
 				}
+				suggest();
 			}
 
 			@Override
@@ -219,7 +328,12 @@ public class SearchActivity extends Activity {
 		String helpInfo = "Type a story you want to search "
 				+ "where it says Story title.\n\n"
 				+ "Select from the dropdown which type of story "
-				+ "you would like to search for.\n\n"
+				+ "you would like to search for, or All Stories to "
+				+ "search your stories, downloaded stories and "
+				+ "published stories at once.\n\n"
+				+ "Stories matching what you have typed so far are "
+				+ "shown under the search box; select one to search "
+				+ "for it.\n\n"
 				+ "Click the search stories button ";
 		intent.putExtra("theHelp", helpInfo);
 		startActivity(intent);
@@ -17,10 +17,11 @@
 package ca.ualberta.cmput301f13t13.storyhoard.gui;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.UUID;
 
 import android.app.Activity;
 import android.app.AlertDialog;
-import android.app.ProgressDialog;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
 import android.content.Intent;
@@ -35,11 +36,15 @@ import android.widget.GridView;
 import android.widget.TextView;
 import android.widget.Toast;
 import ca.ualberta.cmput301f13t13.storyhoard.R;
+import ca.ualberta.cmput301f13t13.storyhoard.controllers.SearchController;
+import ca.ualberta.cmput301f13t13.storyhoard.controllers.SearchController.Result;
+import ca.ualberta.cmput301f13t13.storyhoard.controllers.SearchController.ResultListener;
 import ca.ualberta.cmput301f13t13.storyhoard.controllers.StoryController;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
 import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
 import ca.ualberta.cmput301f13t13.storyhoard.local.StoryManager;
 import ca.ualberta.cmput301f13t13.storyhoard.local.Syncher;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerManager;
 
 
 /**
@@ -50,6 +55,13 @@ import ca.ualberta.cmput301f13t13.storyhoard.local.Syncher;
  * will show all stories that have the string in question in the story
  * name. 
  * 
+ * When started with a "query" extra, it searches the user's stories, the
+ * downloaded stories and the published stories for it at once (see 
+ * SearchController.search()). The stories on the phone are shown first, 
+ * published stories are added when they arrive from the server, and every
+ * story is labelled with where it was found. Choosing a story on the 
+ * phone opens it; choosing one only published downloads it first.
+ * 
  * @author Kim Wu
  * 
  */
@@ -63,13 +75,86 @@ public class SearchResultsActivity extends Activity {
 	private Syncher syncher;
 	private Boolean isPublished;
 	private StoryManager storyMan;
-	private ProgressDialog progressDialog;
+	private TransferDialog transferDialog;
 	private AlertDialog overwriteDialog;
+	private String query;
+	private SearchController searchCon;
+	private ArrayList<Result> results = new ArrayList<Result>();
+	private HashMap<UUID, String> labels = new HashMap<UUID, String>();
+	private boolean searching = false;
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.activity_view_search_results);
+		query = getIntent().getStringExtra("query");
+		searchCon = SearchController.getInstance(this);
+		if (query != null) {
+			searching = true;
+			searchCon.search(query, resultListener);
+		}
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		if (searching) {
+			searchCon.cancelSearch();
+		}
+	}
+
+	/**
+	 * Shows the results of the search of every place as they arrive.
+	 */
+	private final ResultListener resultListener = new ResultListener() {
+		@Override
+		public void onResults(ArrayList<Result> found, boolean done) {
+			searching = !done;
+			results = found;
+			showResults();
+			if (done && found.isEmpty()) {
+				Toast.makeText(getBaseContext(),
+						"No stories matched your search.", Toast.LENGTH_LONG)
+						.show();
+			}
+		}
+
+		@Override
+		public void onServerFailure(Exception e) {
+			Toast.makeText(getBaseContext(), "Could not search published " 
+					+ "stories.", Toast.LENGTH_SHORT).show();
+		}
+	};
+
+	/**
+	 * Puts the results of the search of every place in the grid, labelled
+	 * with where each was found.
+	 */
+	private void showResults() {
+		gridArray.clear();
+		labels.clear();
+		for (Result result : results) {
+			gridArray.add(result.getStory());
+			labels.put(result.getStory().getId(), getLabel(result));
+		}
+		if (customGridAdapter != null) {
+			customGridAdapter.notifyDataSetChanged();
+		}
+	}
+
+	private static String getLabel(Result result) {
+		String label;
+		if (result.isIn(SearchController.AUTHOR)) {
+			label = "Mine";
+		} else if (result.isIn(SearchController.CACHED)) {
+			label = "Downloaded";
+		} else {
+			return "Published";
+		}
+		if (result.isIn(SearchController.PUBLISHED)) {
+			label += ", Published";
+		}
+		return label;
 	}
 
 	@Override 
@@ -86,7 +171,7 @@ public class SearchResultsActivity extends Activity {
 
 		ArrayList<Story> newStories = lifedata.getSearchResults();
 
-		if (newStories == null || newStories.size() == 0) {
+		if (query == null && (newStories == null || newStories.size() == 0)) {
 			Toast.makeText(getBaseContext(),
 					"No stories matched your search.", Toast.LENGTH_LONG)
 					.show();	
@@ -101,13 +186,18 @@ public class SearchResultsActivity extends Activity {
 		gridView = (GridView) findViewById(R.id.gridStoriesView);
 		customGridAdapter = new AdapterStories(this,
 				R.layout.browse_story_item, gridArray);
+		customGridAdapter.setLabels(labels);
 		gridView.setAdapter(customGridAdapter);
 		gridView.setOnItemClickListener(new OnItemClickListener() {
 
 			@Override
 			public void onItemClick(AdapterView<?> arg0, View arg1, int arg2,
 					long arg3) {		
-				if (isPublished) {
+				boolean published = isPublished;
+				if (query != null) {
+					published = !results.get(arg2).isLocal();
+				}
+				if (published) {
 					storyCon.setCurrStoryComplete(gridArray.get(arg2));
 					if (storyMan.existsLocally(gridArray.get(arg2).getId())) {
 						overwriteStory();
@@ -123,8 +213,12 @@ public class SearchResultsActivity extends Activity {
 			}
 		});
 
-		gridArray.clear();
-		gridArray.addAll(newStories);
+		if (query != null) {
+			showResults();
+		} else {
+			gridArray.clear();
+			gridArray.addAll(newStories);
+		}
 		emptyList.setText(" ");
 		customGridAdapter.notifyDataSetChanged();			
 	}
@@ -198,26 +292,40 @@ public class SearchResultsActivity extends Activity {
 	 * heavy operations, an async task is used.
 	 * 
 	 */
-	private class CacheStory extends AsyncTask<Void, Void, Void> {
-
+	private class CacheStory extends AsyncTask<Void, Void, Boolean> {
 		@Override
 		protected void onPreExecute() {
-			progressDialog = ProgressDialog.show(SearchResultsActivity.this,
-					"Downloading Story", "Please wait...", true);
+			transferDialog = new TransferDialog(SearchResultsActivity.this,
+					"Downloading Story");
+			transferDialog.show();
 		}
 
 		@Override
-		protected synchronized Void doInBackground(Void... params) {
-			syncher.syncStoryFromServer(storyCon.getCurrStory());
-			return null;
+		protected synchronized Boolean doInBackground(Void... params) {
+			Story story = ServerManager.getInstance().getWholeStory(
+					storyCon.getCurrStory(), transferDialog.getProgress());
+			if (story == null) {
+				return false;
+			}
+			storyCon.setCurrStoryComplete(story);
+			return syncher.syncStoryFromServer(story,
+					transferDialog.getProgress());
 		}
 
 		@Override
-		protected void onPostExecute(Void result) {
+		protected void onPostExecute(Boolean result) {
 			super.onPostExecute(result);
+			transferDialog.dismiss();
+			if (!result) {
+				String message = transferDialog.getProgress().isCancelled() 
+						? "Download cancelled"
+						: "Problems with server. Please try again.";
+				Toast.makeText(getBaseContext(), message,
+						Toast.LENGTH_SHORT).show();
+				return;
+			}
 			Intent intent = new Intent(getBaseContext(), ViewStory.class);
 			startActivity(intent);
-			progressDialog.dismiss();
 			finish();
 		}
 	}
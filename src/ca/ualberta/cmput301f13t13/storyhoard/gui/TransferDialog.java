@@ -0,0 +1,137 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.gui;
+
+import android.app.Activity;
+import android.app.ProgressDialog;
+import android.content.DialogInterface;
+import android.view.KeyEvent;
+import android.view.View;
+import android.widget.Button;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.TransferProgress;
+
+/**
+ * Role: Shows how far a publish or a download has got in a progress bar,
+ * with a Cancel button that stops it. </br></br>
+ *
+ * The bar follows the bytes transferred once their total is known, and the
+ * items (images or chapters) done before that. The text under the title
+ * says both, like "chapter 12 of 80, 3.2 of 18.0 MB". Pressing Cancel or
+ * the back button cancels the TransferProgress; the dialog stays up until
+ * the work has actually stopped and dismiss() is called. A ProgressDialog
+ * closes itself when one of its buttons is pressed, so the Cancel button
+ * is given its own click listener once the dialog is shown. </br></br>
+ *
+ * Example call: </br>
+ * TransferDialog dialog = new TransferDialog(this, "Downloading Story");
+ * </br>
+ * dialog.show(); </br>
+ * // on a background thread </br>
+ * syncher.syncStoryFromServer(story, dialog.getProgress()); </br>
+ * ... </br>
+ * dialog.dismiss(); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see TransferProgress
+ */
+public class TransferDialog implements TransferProgress.Listener {
+	private static final int KB = 1024;
+	private final ProgressDialog dialog;
+	private final TransferProgress progress;
+
+	public TransferDialog(Activity activity, String title) {
+		progress = new TransferProgress(this);
+		dialog = new ProgressDialog(activity);
+		dialog.setTitle(title);
+		dialog.setMessage("Please wait...");
+		dialog.setProgressStyle(ProgressDialog.STYLE_HORIZONTAL);
+		dialog.setIndeterminate(true);
+		dialog.setProgressNumberFormat(null);
+		dialog.setCancelable(false);
+		dialog.setOnKeyListener(new DialogInterface.OnKeyListener() {
+			@Override
+			public boolean onKey(DialogInterface d, int keyCode, 
+					KeyEvent event) {
+				if (keyCode != KeyEvent.KEYCODE_BACK) {
+					return false;
+				}
+				if (event.getAction() == KeyEvent.ACTION_UP) {
+					cancel();
+				}
+				return true;
+			}
+		});
+		// replaced in show(), this only makes the dialog add the button
+		dialog.setButton(DialogInterface.BUTTON_NEGATIVE, "Cancel",
+				(DialogInterface.OnClickListener) null);
+	}
+
+	/**
+	 * Returns the progress to give the work being shown.
+	 */
+	public TransferProgress getProgress() {
+		return progress;
+	}
+
+	public void show() {
+		dialog.show();
+		dialog.getButton(DialogInterface.BUTTON_NEGATIVE).setOnClickListener(
+				new View.OnClickListener() {
+					@Override
+					public void onClick(View v) {
+						cancel();
+					}
+				});
+	}
+
+	public void dismiss() {
+		if (dialog.isShowing()) {
+			dialog.dismiss();
+		}
+	}
+
+	@Override
+	public void onProgress(TransferProgress progress) {
+		if (progress.isCancelled()) {
+			return;
+		}
+		if (progress.getBytesTotal() > 0) {
+			dialog.setIndeterminate(false);
+			dialog.setMax((int) (progress.getBytesTotal() / KB));
+			dialog.setProgress((int) (progress.getBytesDone() / KB));
+		} else if (progress.getItemsTotal() > 0) {
+			dialog.setIndeterminate(false);
+			dialog.setMax(progress.getItemsTotal());
+			dialog.setProgress(progress.getItemsDone());
+		}
+		dialog.setMessage(progress.toString());
+	}
+
+	/**
+	 * Cancels the work. The dialog stays up until it has stopped.
+	 */
+	private void cancel() {
+		progress.cancel();
+		dialog.setIndeterminate(true);
+		dialog.setMessage("Cancelling...");
+		Button button = dialog.getButton(DialogInterface.BUTTON_NEGATIVE);
+		if (button != null) {
+			button.setEnabled(false);
+		}
+	}
+}
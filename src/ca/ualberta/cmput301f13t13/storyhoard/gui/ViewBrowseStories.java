@@ -21,7 +21,6 @@ import android.app.ActionBar;
 import android.app.ActionBar.OnNavigationListener;
 import android.app.Activity;
 import android.app.AlertDialog;
-import android.app.ProgressDialog;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnClickListener;
 import android.content.Intent;
@@ -41,7 +40,10 @@ import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
 import ca.ualberta.cmput301f13t13.storyhoard.helpGuides.InfoActivity;
 import ca.ualberta.cmput301f13t13.storyhoard.local.StoryManager;
 import ca.ualberta.cmput301f13t13.storyhoard.local.Syncher;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.QueryCache;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerCallback;
 import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerManager;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.ServerTask;
 
 /**
  * Class which displays all stories in a grid. The story will be in one of three
@@ -70,7 +72,9 @@ public class ViewBrowseStories extends Activity {
 
 	private Type viewType;
 	private StoryController storyCon;
-	private ProgressDialog progressDialog;
+	private TransferDialog transferDialog;
+	private ServerTask<Story> randomTask = null;
+	private ServerTask<ArrayList<Story>> refreshTask = null;
 	ArrayList<Story> currentStories;
 
 	/**
@@ -88,11 +92,59 @@ public class ViewBrowseStories extends Activity {
 		setGridView();
 		storyCon = StoryController.getInstance(this);
 		lifedata = LifecycleData.getInstance();
-		serverMan = ServerManager.getInstance();
+		serverMan = ServerManager.getInstance(this);
 		storyMan = StoryManager.getInstance(this);
 		syncher = Syncher.getInstance(this);
 		setActionBar();
 		refreshStories();
+		serverMan.prepareRandom();
+	}
+
+	/**
+	 * Stops looking for a random story, or refreshing the published 
+	 * stories, if the user leaves before it is done.
+	 */
+	@Override
+	public void onPause() {
+		super.onPause();
+		if (randomTask != null) {
+			randomTask.cancel(true);
+			randomTask = null;
+		}
+		cancelRefresh();
+	}
+
+	/**
+	 * Gets the published stories from the server again in the background,
+	 * while the ones kept in the QueryCache are shown, and shows the new 
+	 * ones if the user is still looking at the published stories.
+	 */
+	private void refreshPublished() {
+		cancelRefresh();
+		refreshTask = serverMan.getAll(0, ServerManager.PAGE_SIZE,
+				new ServerCallback<ArrayList<Story>>() {
+					@Override
+					public void onSuccess(ArrayList<Story> stories) {
+						refreshTask = null;
+						if (viewType == Type.PUBLISHED) {
+							currentStories = stories;
+							refreshStories();
+						}
+					}
+
+					@Override
+					public void onFailure(Exception e) {
+						refreshTask = null;
+						e.printStackTrace();
+					}
+				});
+	}
+
+	private void cancelRefresh() {
+		if (refreshTask != null) {
+			refreshTask.cancel(true);
+			refreshTask = null;
+		}
 	}
 
 	private void setActionBar() {
@@ -160,25 +212,52 @@ public class ViewBrowseStories extends Activity {
 			startActivity(intent);
 			return true;
 		case R.id.lucky:
-			Story randomStory = serverMan.getRandom();
-			storyCon.setCurrStoryComplete(randomStory);
-
-			if (randomStory != null) {
-				new CacheStory().execute();
-			} else {
-				Toast.makeText(getBaseContext(),
-						"No Published Stories Available", Toast.LENGTH_LONG)
-						.show();
-			}
+			getRandomStory();
 			return true;
 		case R.id.info:
 			getHelp();
 			return true;
+		case R.id.debugMetrics:
+			intent = new Intent(this, DebugMetricsActivity.class);
+			startActivity(intent);
+			return true;
 		default:
 			return super.onOptionsItemSelected(item);
 		}
 	}
 
+	/**
+	 * Asks the server for a random story without blocking the UI thread. Once
+	 * it arrives, the story is cached and opened. Pressing the button again
+	 * while waiting replaces the earlier request.
+	 */
+	private void getRandomStory() {
+		if (randomTask != null) {
+			randomTask.cancel(true);
+		}
+		randomTask = serverMan.getRandom(new ServerCallback<Story>() {
+			@Override
+			public void onSuccess(Story randomStory) {
+				randomTask = null;
+				if (randomStory != null) {
+					storyCon.setCurrStoryComplete(randomStory);
+					new CacheStory().execute();
+				} else {
+					Toast.makeText(getBaseContext(),
+							"No Published Stories Available",
+							Toast.LENGTH_LONG).show();
+				}
+			}
+
+			@Override
+			public void onFailure(Exception e) {
+				randomTask = null;
+				Toast.makeText(getBaseContext(), "Problems with server. Please"
+						+ " try again.", Toast.LENGTH_SHORT).show();
+			}
+		});
+	}
+
 	/**
 	 * Called whenever the spinner is updated. Will story array based on
 	 * whatever the general controller returns.
@@ -255,25 +334,40 @@ public class ViewBrowseStories extends Activity {
 	 * heavy operations, an async task is used.
 	 * 
 	 */
-	private class CacheStory extends AsyncTask<Void, Void, Void> {
+	private class CacheStory extends AsyncTask<Void, Void, Boolean> {
 		@Override
 		protected void onPreExecute() {
-			progressDialog = ProgressDialog.show(ViewBrowseStories.this,
-					"Downloading Story", "Please wait...", true);
-		};
+			transferDialog = new TransferDialog(ViewBrowseStories.this,
+					"Downloading Story");
+			transferDialog.show();
+		}
 
 		@Override
-		protected synchronized Void doInBackground(Void... params) {
-			syncher.syncStoryFromServer(storyCon.getCurrStory());
-			return null;
+		protected synchronized Boolean doInBackground(Void... params) {
+			Story story = serverMan.getWholeStory(storyCon.getCurrStory(),
+					transferDialog.getProgress());
+			if (story == null) {
+				return false;
+			}
+			storyCon.setCurrStoryComplete(story);
+			return syncher.syncStoryFromServer(story,
+					transferDialog.getProgress());
 		}
 
 		@Override
-		protected void onPostExecute(Void result) {
+		protected void onPostExecute(Boolean result) {
 			super.onPostExecute(result);
+			transferDialog.dismiss();
+			if (!result) {
+				String message = transferDialog.getProgress().isCancelled() 
+						? "Download cancelled"
+						: "Problems with server. Please try again.";
+				Toast.makeText(getBaseContext(), message,
+						Toast.LENGTH_SHORT).show();
+				return;
+			}
 			Intent intent = new Intent(getBaseContext(), ViewStory.class);
 			startActivity(intent);
-			progressDialog.dismiss();
 		}
 	}
 
@@ -281,10 +375,20 @@ public class ViewBrowseStories extends Activity {
 	 * Async task to get all stories of a type in the database. Used so main UI
 	 * thread does not have to interact with database and skip too many frames.
 	 * 
+	 * Published stories kept in the QueryCache are shown without waiting for
+	 * the server. If they were kept too long ago, they are only shown until
+	 * the server has been asked again (see refreshPublished()). While the
+	 * server is down, they are shown however old they are, without asking
+	 * it.
+	 * 
 	 */
 	private class GetAllStories extends AsyncTask<Void, Void, Boolean> {
+		private boolean stale = false;
+		private boolean offline = false;
+
 		@Override
 		protected void onPreExecute() {
+			cancelRefresh();
 			setContentView(R.layout.activity_intro_screen);
 		}
 
@@ -296,7 +400,17 @@ public class ViewBrowseStories extends Activity {
 				} else if (viewType == Type.CREATED) {
 					currentStories = storyMan.getAllAuthorStories();
 				} else {
-					currentStories = serverMan.getAll();
+					QueryCache.Entry entry = serverMan.getCachedAll(0, 
+							ServerManager.PAGE_SIZE);
+					offline = !serverMan.isServerAvailable();
+					if (entry != null) {
+						currentStories = entry.getStories();
+						stale = !offline && !entry.isFresh();
+					} else if (!offline) {
+						currentStories = serverMan.getAll();
+					} else {
+						currentStories = new ArrayList<Story>();
+					}
 				}
 				return true;
 			} catch (Exception e) {
@@ -310,6 +424,13 @@ public class ViewBrowseStories extends Activity {
 			refreshStories();
 			setContentView(R.layout.activity_view_browse_stories);
 			setGridView();		
+			if (stale) {
+				refreshPublished();
+			}
+			if (offline) {
+				Toast.makeText(getBaseContext(), "Server unavailable. Showing "
+						+ "saved stories.", Toast.LENGTH_SHORT).show();
+			}
 			
 			if (!result) {
 				Toast.makeText(getBaseContext(), "Problems with server. Please"
@@ -140,6 +140,12 @@ public class ViewChapter extends MediaActivity {
 		insertPhotos();
 	}
 
+	@Override
+	protected void refreshImages() {
+		insertIllustrations();
+		insertPhotos();
+	}
+
 	public void insertChoices() {
 		choices.clear();
 		choices.addAll(chapter.getChoices());
@@ -157,7 +163,7 @@ public class ViewChapter extends MediaActivity {
 	}
 
 	public void insertIllustrations() {
-		illustrations.removeAllViews();
+		clearImages(illustrations);
 
 		// Insert Illustrations
 		for (Media ill : chapter.getIllustrations()) {
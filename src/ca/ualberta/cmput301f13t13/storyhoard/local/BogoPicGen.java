@@ -3,6 +3,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Random;
 
 import android.graphics.Bitmap;
 import android.graphics.Color;
@@ -24,47 +25,56 @@ import android.util.Log;
  */
 public class BogoPicGen {
 	public static Bitmap generateBitmap(int width, int height) {
+		return generateBitmap(width, height, new Random());
+	}
+
+	/**
+	 * Same as generateBitmap(width, height), but every random choice is
+	 * taken from the given Random, so the same seed always makes the same
+	 * picture.
+	 */
+	public static Bitmap generateBitmap(int width, int height, Random random) {
 		// Algorithms based on:
 		// 	http://countercomplex.blogspot.com/2011/10/some-deep-analysis-of-one-line-music.html
 		
 		Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888 );
-		int t = (int) (255.0 * Math.random());
-		int r = (int) (255.0 * Math.random());
-		int g = (int) (255.0 * Math.random());
-		int b = (int) (255.0 * Math.random());
-		int offset1 = (int) (255 * Math.random());
-		int offset2 = (int) (255 * Math.random());
-		int offset3 = (int) (255 * Math.random());
-		int rm1 = 1 + (int)( 12 * Math.random());
-		int gm1 = 1 + (int)( 12 * Math.random());
-		int bm1 = 1 + (int)( 12 * Math.random());
-		int rm2 = 1 + (int)( 12 * Math.random());
-		int gm2 = 1 + (int)( 12 * Math.random());
-		int bm2 = 1 + (int)( 12 * Math.random());
-		int rm3 = 1 + (int)( 12 * Math.random());
-		int gm3 = 1 + (int)( 12 * Math.random());
-		int bm3 = 1 + (int)( 12 * Math.random());
+		int t = (int) (255.0 * random.nextDouble());
+		int r = (int) (255.0 * random.nextDouble());
+		int g = (int) (255.0 * random.nextDouble());
+		int b = (int) (255.0 * random.nextDouble());
+		int offset1 = (int) (255 * random.nextDouble());
+		int offset2 = (int) (255 * random.nextDouble());
+		int offset3 = (int) (255 * random.nextDouble());
+		int rm1 = 1 + (int)( 12 * random.nextDouble());
+		int gm1 = 1 + (int)( 12 * random.nextDouble());
+		int bm1 = 1 + (int)( 12 * random.nextDouble());
+		int rm2 = 1 + (int)( 12 * random.nextDouble());
+		int gm2 = 1 + (int)( 12 * random.nextDouble());
+		int bm2 = 1 + (int)( 12 * random.nextDouble());
+		int rm3 = 1 + (int)( 12 * random.nextDouble());
+		int gm3 = 1 + (int)( 12 * random.nextDouble());
+		int bm3 = 1 + (int)( 12 * random.nextDouble());
 
 		int [] mods = { 65535, width, height, 255, 64, 32, 512, 1024 , width, height, width, height}; 
-		int rmod = mods[(int)(mods.length * Math.random())];
-		int gmod = mods[(int)(mods.length * Math.random())];
-		int bmod = mods[(int)(mods.length * Math.random())];
+		int rmod = mods[(int)(mods.length * random.nextDouble())];
+		int gmod = mods[(int)(mods.length * random.nextDouble())];
+		int bmod = mods[(int)(mods.length * random.nextDouble())];
 		
-		int rs1 = 1 + (int)( 11 * Math.random());
-		int gs1 = 1 + (int)( 11 * Math.random());
-		int bs1 = 1 + (int)( 11 * Math.random());
-		int rs2 = 1 + (int)( 11 * Math.random());
-		int gs2 = 1 + (int)( 11 * Math.random());
-		int bs2 = 1 + (int)( 11 * Math.random());
-
-		int rf = (int)(2*Math.random());
-		int bf = (int)(2*Math.random());
-		int gf = (int)(2*Math.random());
+		int rs1 = 1 + (int)( 11 * random.nextDouble());
+		int gs1 = 1 + (int)( 11 * random.nextDouble());
+		int bs1 = 1 + (int)( 11 * random.nextDouble());
+		int rs2 = 1 + (int)( 11 * random.nextDouble());
+		int gs2 = 1 + (int)( 11 * random.nextDouble());
+		int bs2 = 1 + (int)( 11 * random.nextDouble());
+
+		int rf = (int)(2*random.nextDouble());
+		int bf = (int)(2*random.nextDouble());
+		int gf = (int)(2*random.nextDouble());
 		
 		int [] pixels = new int[width*height];
 		float [] hsv = new float[3];
-		boolean isHSV = (Math.random() > 0.5);
-		int constantT = (Math.random() > 0.5)?1:0;
+		boolean isHSV = (random.nextDouble() > 0.5);
+		int constantT = (random.nextDouble() > 0.5)?1:0;
 		int c;
 		//public void setPixels (int[] pixels, int offset, int stride, int x, int y, int width, int height) 
 		for (int i = 0; i < height; i++) {		
@@ -103,9 +103,11 @@ public class ChapterManager extends StoringManager<Chapter> {
 	 */
 	@Override
 	public void insert(Chapter chapter) {
+		long start = Metrics.start();
 		SQLiteDatabase db = helper.getWritableDatabase();
 		setContentValues(chapter);
 		db.insert(ChapterTable.TABLE_NAME, null, values);
+		Metrics.time("db.chapter.insert", start);
 	}
 
 	/**
@@ -137,6 +139,7 @@ public class ChapterManager extends StoringManager<Chapter> {
 	 */
 	@Override
 	public ArrayList<Chapter> retrieve(Chapter criteria) {
+		long start = Metrics.start();
 		ArrayList<Chapter> results = new ArrayList<Chapter>();
 		SQLiteDatabase db = helper.getReadableDatabase();
 		setupSearch(criteria);
@@ -160,6 +163,7 @@ public class ChapterManager extends StoringManager<Chapter> {
 			cursor.moveToNext();
 		}
 		cursor.close();
+		Metrics.time("db.chapter.retrieve", start);
 		return results;
 	}
 	/**
@@ -195,12 +199,14 @@ public class ChapterManager extends StoringManager<Chapter> {
 	 */
 	@Override
 	public void update(Chapter newChapter) {
+		long start = Metrics.start();
 		setContentValues(newChapter);
 		Chapter newC = (Chapter) newChapter;
 		SQLiteDatabase db = helper.getReadableDatabase();
 		selection = ChapterTable.COLUMN_NAME_CHAPTER_ID + " LIKE ?";
 		sArgs = new String[]{ newC.getId().toString() };
 		db.update(ChapterTable.TABLE_NAME, values, selection, sArgs);
+		Metrics.time("db.chapter.update", start);
 	}
 	
 	/**
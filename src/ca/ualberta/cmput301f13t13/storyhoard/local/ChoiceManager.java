@@ -103,9 +103,11 @@ public class ChoiceManager extends StoringManager<Choice> {
 	 */
 	@Override
 	public void insert(Choice choice) {
+		long start = Metrics.start();
 		SQLiteDatabase db = helper.getWritableDatabase();
 		setContentValues(choice);
-		db.insert(ChoiceTable.TABLE_NAME, null, values);		
+		db.insert(ChoiceTable.TABLE_NAME, null, values);
+		Metrics.time("db.choice.insert", start);
 	}
 	/**
 	 * Sets up the ContentValues for inserting or updating the database. This 
@@ -140,6 +142,7 @@ public class ChoiceManager extends StoringManager<Choice> {
 	 */
 	@Override
 	public void update(Choice newChoice) {
+		long start = Metrics.start();
 		SQLiteDatabase db = helper.getReadableDatabase();
 		setContentValues(newChoice);
 
@@ -147,7 +150,8 @@ public class ChoiceManager extends StoringManager<Choice> {
 		selection = ChoiceTable.COLUMN_NAME_CHOICE_ID + " LIKE ?";
 		sArgs = new String[]{ newChoice.getId().toString()};	
 		
-		db.update(ChoiceTable.TABLE_NAME, values, selection, sArgs);	
+		db.update(ChoiceTable.TABLE_NAME, values, selection, sArgs);
+		Metrics.time("db.choice.update", start);
 	}
 
 	/**
@@ -172,6 +176,7 @@ public class ChoiceManager extends StoringManager<Choice> {
 	 */
 	@Override
 	public ArrayList<Choice> retrieve(Choice criteria) {
+		long start = Metrics.start();
 		ArrayList<Choice> results = new ArrayList<Choice>();
 		SQLiteDatabase db = helper.getReadableDatabase();
 		
@@ -196,6 +201,7 @@ public class ChoiceManager extends StoringManager<Choice> {
 			cursor.moveToNext();
 		}
 		cursor.close();		
+		Metrics.time("db.choice.retrieve", start);
 		return results;
 	}
 	/**
@@ -295,10 +301,12 @@ public class ChoiceManager extends StoringManager<Choice> {
 	 */
 	@Override
 	public void remove(UUID id) {
+		long start = Metrics.start();
 		SQLiteDatabase db = helper.getWritableDatabase();
 		selection = ChoiceTable.COLUMN_NAME_CHOICE_ID + " LIKE ?";
 		sArgs = new String[]{ String.valueOf(id)};
 		db.delete(ChoiceTable.TABLE_NAME, selection, sArgs);
+		Metrics.time("db.choice.remove", start);
 	}
 
 	public ArrayList<Choice> getChoicesByChapter(UUID chapterId) {
@@ -0,0 +1,289 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.local;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Base64;
+import android.util.LruCache;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.local.DBContract.MediaTable;
+
+/**
+ * Role: Makes and keeps the small cover images shown for each story in the
+ * story grids. </br></br>
+ *
+ * A story's cover is the first illustration of its first chapter, cropped
+ * to a square. For a story on the phone, the illustration is looked up in
+ * the database; for a story from the server, it is decoded from the
+ * bitmapString it came with. </br></br>
+ *
+ * Covers are made once and saved as small JPEGs in the application's cache
+ * folder, named after the story and the illustration they were made from,
+ * so a cover is made again only if the illustration changes. Covers
+ * already decoded are also kept in memory, shared by every grid, so
+ * scrolling back to a story shows its cover right away. A story found to
+ * have no illustration is remembered as having no cover, so it isn't
+ * looked up again until forget() is called for it. </br></br>
+ *
+ * Example call: </br>
+ * CoverCache covers = CoverCache.getInstance(context); </br>
+ * Bitmap cover = covers.getFromMemory(story); </br>
+ * if (cover == null && !covers.hasNoCover(story)) { </br>
+ * 		// on a background thread </br>
+ * 		cover = covers.get(story, 150); </br>
+ * } </br></br>
+ *
+ * Design Pattern: Singleton
+ *
+ * @author Stephanie Gil
+ *
+ * @see ImageDecoder
+ */
+public class CoverCache {
+	private static final String NO_COVER = "";
+	private static CoverCache self = null;
+
+	private final LruCache<String, Bitmap> memory;
+	// story id -> id of the illustration its cover was made from
+	private final Map<String, String> coverIds = new HashMap<String, String>();
+	private final File diskDir;
+	private final DBHelper helper;
+
+	protected CoverCache(Context context) {
+		// sizes are in kilobytes
+		int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024);
+		memory = new LruCache<String, Bitmap>(maxKb / 32) {
+			@Override
+			protected int sizeOf(String key, Bitmap bitmap) {
+				return bitmap.getByteCount() / 1024;
+			}
+		};
+		diskDir = new File(context.getCacheDir(), "covers");
+		diskDir.mkdirs();
+		helper = DBHelper.getInstance(context);
+	}
+
+	/**
+	 * Returns the instance of the CoverCache (singleton).
+	 *
+	 * @param context
+	 * 			Can be an activity or application context.
+	 */
+	public static synchronized CoverCache getInstance(Context context) {
+		if (self == null) {
+			self = new CoverCache(context.getApplicationContext());
+		}
+		return self;
+	}
+
+	/**
+	 * Returns the story's cover if it is in memory, otherwise null. Safe to
+	 * call on the main UI thread.
+	 */
+	public Bitmap getFromMemory(Story story) {
+		return memory.get(story.getId().toString());
+	}
+
+	/**
+	 * Returns whether the story is known to have no illustration to make a
+	 * cover from, in which case get() would return null right away. Safe to
+	 * call on the main UI thread.
+	 */
+	public boolean hasNoCover(Story story) {
+		synchronized (coverIds) {
+			return NO_COVER.equals(coverIds.get(story.getId().toString()));
+		}
+	}
+
+	/**
+	 * Returns the story's cover, a square of the given size. It is taken
+	 * from memory or the disk if it was made before, and made otherwise.
+	 * Returns null if the story has no illustration to make a cover from.
+	 * Must not be called on the main UI thread.
+	 *
+	 * @param story
+	 * 			Story from the phone or from the server.
+	 * @param size
+	 * 			Width and height of the cover, in pixels.
+	 */
+	public Bitmap get(Story story, int size) {
+		String storyId = story.getId().toString();
+		if (hasNoCover(story)) {
+			return null;
+		}
+		Media media = findCoverMedia(story);
+		String mediaId = media == null ? NO_COVER : media.getId().toString();
+
+		synchronized (coverIds) {
+			String known = coverIds.get(storyId);
+			if (mediaId.equals(known)) {
+				Bitmap bitmap = memory.get(storyId);
+				if (bitmap != null) {
+					return bitmap;
+				}
+			}
+			coverIds.put(storyId, mediaId);
+		}
+		if (media == null) {
+			memory.remove(storyId);
+			return null;
+		}
+
+		File file = new File(diskDir, storyId + "_" + mediaId + "_" + size
+				+ ".jpg");
+		Bitmap bitmap = null;
+		if (file.exists()) {
+			bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
+		}
+		if (bitmap == null) {
+			bitmap = makeCover(media, size);
+			if (bitmap == null) {
+				return null;
+			}
+			writeToDisk(bitmap, file, storyId);
+		}
+		memory.put(storyId, bitmap);
+		return bitmap;
+	}
+
+	/**
+	 * Forgets the cover of a story, for example when its illustrations have
+	 * changed. The next get() checks which illustration to use again.
+	 */
+	public void forget(UUID storyId) {
+		synchronized (coverIds) {
+			coverIds.remove(storyId.toString());
+		}
+		memory.remove(storyId.toString());
+	}
+
+	/**
+	 * Returns the first illustration of the story's first chapter, or null
+	 * if it has none. Stories from the server carry their chapters; the
+	 * chapters of stories on the phone are in the database.
+	 */
+	private Media findCoverMedia(Story story) {
+		UUID firstId = story.getFirstChapterId();
+		ArrayList<Chapter> chapters = story.getChapters();
+		if (chapters == null) {
+			chapters = new ArrayList<Chapter>();
+		}
+		for (Chapter chap : chapters) {
+			if (firstId == null || chap.getId().equals(firstId)) {
+				if (chap.getIllustrations().isEmpty()) {
+					return null;
+				}
+				return chap.getIllustrations().get(0);
+			}
+		}
+		if (firstId == null) {
+			return null;
+		}
+
+		// queried here instead of through the MediaManager, since this runs
+		// on background threads and the managers are not thread safe
+		SQLiteDatabase db = helper.getReadableDatabase();
+		Cursor cursor = db.query(MediaTable.TABLE_NAME, new String[] {
+				MediaTable.COLUMN_NAME_MEDIA_ID, MediaTable.COLUMN_NAME_MEDIA_URI },
+				MediaTable.COLUMN_NAME_CHAPTER_ID + " = ? AND "
+						+ MediaTable.COLUMN_NAME_TYPE + " = ?", new String[] {
+						firstId.toString(), Media.ILLUSTRATION }, null, null,
+				null, "1");
+		Media media = null;
+		if (cursor.moveToFirst()) {
+			media = new Media(UUID.fromString(cursor.getString(0)), firstId,
+					cursor.getString(1), Media.ILLUSTRATION, "");
+		}
+		cursor.close();
+		return media;
+	}
+
+	/**
+	 * Decodes a cover from the media's file, or from its bitmapString if
+	 * the file isn't on the phone.
+	 */
+	private Bitmap makeCover(Media media, int size) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		String path = media.getPath();
+		if (path != null && !path.equals("") && new File(path).exists()) {
+			return ImageDecoder.decodeCropped(path, size, size, options, null);
+		}
+		String base64 = media.getBitmapString();
+		if (base64 == null || base64.equals("")) {
+			return null;
+		}
+		try {
+			return ImageDecoder.decodeCropped(Base64.decode(base64,
+					Base64.DEFAULT), size, size, options, null);
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Saves a cover, and deletes the older covers of the same story. It is
+	 * written to a temporary file first so a half written file is never
+	 * read back.
+	 */
+	private void writeToDisk(Bitmap bitmap, File file, String storyId) {
+		File[] old = diskDir.listFiles();
+		if (old != null) {
+			for (File other : old) {
+				if (other.getName().startsWith(storyId + "_")) {
+					other.delete();
+				}
+			}
+		}
+		File temp = new File(diskDir, file.getName() + ".tmp");
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(temp);
+			bitmap.compress(Bitmap.CompressFormat.JPEG, 85, out);
+			out.close();
+			out = null;
+			if (!temp.renameTo(file)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			temp.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,456 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.local;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.LruCache;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+
+/**
+ * Role: Caches the small versions of media images shown in the chapter
+ * screens, so the same image files aren't decoded over and over every time
+ * a chapter is shown. </br></br>
+ *
+ * There are two levels to the cache. The first keeps recently used bitmaps
+ * in memory, using up to an eighth of the memory the application is allowed.
+ * The second keeps small JPEG copies of the images in the application's
+ * cache folder, which are much faster to decode than the full size images
+ * and survive the application being closed. Both are keyed by the media's
+ * id and the size asked for, and a copy on disk is only used if it is newer
+ * than the image it was made from. </br></br>
+ *
+ * The number of hits in memory, hits on disk, and misses are counted so
+ * the cache's hit rate can be checked. </br></br>
+ *
+ * Every image is cropped to exactly the size asked for (the middle of it is
+ * kept, just like an ImageView with CENTER_CROP would show it). Since the
+ * strips all use the same size, the memory of a bitmap that is no longer
+ * shown or cached can be reused to decode the next one (see inBitmap in
+ * BitmapFactory.Options), which saves the garbage collector a lot of work.
+ * To know when a bitmap is no longer shown, every bitmap returned by get()
+ * is counted as in use until release() is called for it. </br></br>
+ *
+ * Example call: </br>
+ * ImageCache cache = ImageCache.getInstance(context); </br>
+ * Bitmap bitmap = cache.get(media, 250, 250); </br>
+ * ... </br>
+ * cache.release(bitmap); </br></br>
+ *
+ * Design Pattern: Singleton
+ *
+ * @author Stephanie Gil
+ *
+ * @see Media
+ */
+public class ImageCache {
+	private static final long MAX_DISK_BYTES = 20 * 1024 * 1024;
+	private static final int TRIM_EVERY = 20;
+	private static final int MAX_REUSABLE = 8;
+	private static ImageCache self = null;
+
+	private final LruCache<String, Bitmap> memory;
+	private final Object lock = new Object();
+	private final Map<Bitmap, Integer> inUse = new IdentityHashMap<Bitmap, Integer>();
+	private final Set<Bitmap> evictedInUse = Collections
+			.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+	private final LinkedList<Bitmap> reusable = new LinkedList<Bitmap>();
+	private final File diskDir;
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	// so the first copy written trims what earlier runs left on disk
+	private int writesSinceTrim = TRIM_EVERY - 1;
+
+	protected ImageCache(Context context) {
+		// sizes are in kilobytes
+		int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024);
+		memory = new LruCache<String, Bitmap>(maxKb / 8) {
+			@Override
+			protected int sizeOf(String key, Bitmap bitmap) {
+				return bitmap.getByteCount() / 1024;
+			}
+
+			@Override
+			protected void entryRemoved(boolean evicted, String key,
+					Bitmap oldValue, Bitmap newValue) {
+				synchronized (lock) {
+					if (inUse.containsKey(oldValue)) {
+						evictedInUse.add(oldValue);
+					} else {
+						addReusable(oldValue);
+					}
+				}
+			}
+		};
+		// the folder is made and trimmed on the first write, off the main
+		// UI thread
+		diskDir = new File(context.getCacheDir(), "thumbs");
+	}
+
+	/**
+	 * Returns the instance of the ImageCache (singleton).
+	 *
+	 * @param context
+	 * 			Can be an activity or application context.
+	 */
+	public static synchronized ImageCache getInstance(Context context) {
+		if (self == null) {
+			self = new ImageCache(context.getApplicationContext());
+		}
+		return self;
+	}
+
+	/**
+	 * Returns the media's image, scaled down and cropped to exactly the given
+	 * width and height. It is taken from memory if it is there, otherwise 
+	 * from the disk cache, and otherwise it is decoded from the media's file 
+	 * and added to both. Returns null if the media's file can't be decoded.
+	 * </br></br>
+	 * 
+	 * The bitmap returned is counted as in use, and release() must be called
+	 * once it is not shown anymore so its memory can be reused. A miss has 
+	 * to decode an image file, so this is best not called on the main UI 
+	 * thread.
+	 * 
+	 * @param media
+	 * 			Media whose image is wanted.
+	 * @param width
+	 * 			Width the image will be shown at, in pixels.
+	 * @param height
+	 * 			Height the image will be shown at, in pixels.
+	 */
+	public Bitmap get(Media media, int width, int height) {
+		return get(media, width, height, new BitmapFactory.Options());
+	}
+
+	/**
+	 * Same as get(media, width, height), except that the given options are
+	 * used for any decoding, so that another thread can stop a decode that 
+	 * is no longer needed with options.requestCancelDecode(). Returns null
+	 * if the decode was cancelled.
+	 */
+	public Bitmap get(Media media, int width, int height,
+			BitmapFactory.Options options) {
+		String key = key(media, width, height);
+		synchronized (lock) {
+			Bitmap bitmap = memory.get(key);
+			if (bitmap != null) {
+				memoryHits.incrementAndGet();
+				retain(bitmap);
+				return bitmap;
+			}
+		}
+
+		File original = new File(media.getPath());
+		File cached = new File(diskDir, key + ".jpg");
+		if (cached.exists() && cached.lastModified() >= original.lastModified()) {
+			Bitmap bitmap = decodeReusing(cached.getAbsolutePath(), width,
+					height, options);
+			if (bitmap != null) {
+				diskHits.incrementAndGet();
+				// so trimDisk() keeps the copies used most recently
+				cached.setLastModified(System.currentTimeMillis());
+				return cache(key, bitmap);
+			}
+			if (options.mCancel) {
+				return null;
+			}
+		}
+
+		Bitmap bitmap = decodeCropped(media.getPath(), width, height, options);
+		if (bitmap == null) {
+			return null;
+		}
+		misses.incrementAndGet();
+		writeToDisk(bitmap, cached);
+		return cache(key, bitmap);
+	}
+
+	/**
+	 * Returns the image only if it is already in memory, otherwise null.
+	 * Never touches the disk, so it is safe to call on the main UI thread.
+	 * Like get(), release() must be called for the bitmap afterwards.
+	 */
+	public Bitmap getFromMemory(Media media, int width, int height) {
+		synchronized (lock) {
+			Bitmap bitmap = memory.get(key(media, width, height));
+			if (bitmap != null) {
+				memoryHits.incrementAndGet();
+				retain(bitmap);
+			}
+			return bitmap;
+		}
+	}
+
+	/**
+	 * Tells the cache a bitmap returned by get() is not shown anymore. Once
+	 * it has also left the memory cache, its memory can be reused. Must be
+	 * called once for every time the bitmap was returned.
+	 */
+	public void release(Bitmap bitmap) {
+		synchronized (lock) {
+			Integer count = inUse.get(bitmap);
+			if (count == null) {
+				return;
+			}
+			if (count > 1) {
+				inUse.put(bitmap, count - 1);
+				return;
+			}
+			inUse.remove(bitmap);
+			if (evictedInUse.remove(bitmap)) {
+				addReusable(bitmap);
+			}
+		}
+	}
+
+	/**
+	 * Returns how many bitmaps are waiting to have their memory reused.
+	 */
+	public int getReusableCount() {
+		synchronized (lock) {
+			return reusable.size();
+		}
+	}
+
+	/**
+	 * Returns the fraction of calls to get() that didn't have to decode the
+	 * original image (between 0 and 1).
+	 */
+	public double getHitRate() {
+		long hits = memoryHits.get() + diskHits.get();
+		long total = hits + misses.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Empties the memory cache and resets the hit counts. The disk cache is
+	 * left alone. Bitmaps still in use stay valid.
+	 */
+	public void clearMemory() {
+		memory.evictAll();
+		memoryHits.set(0);
+		diskHits.set(0);
+		misses.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ImageCache: %d memory hits, %d disk hits, "
+				+ "%d misses (%.0f%% hit rate), %dkB in memory",
+				memoryHits.get(), diskHits.get(), misses.get(),
+				getHitRate() * 100, memory.size());
+	}
+
+	private String key(Media media, int width, int height) {
+		return media.getId().toString() + "_" + width + "x" + height;
+	}
+
+	/**
+	 * Adds a bitmap to the memory cache (unless another thread beat us to
+	 * it) and returns the cached bitmap, counted as in use.
+	 */
+	private Bitmap cache(String key, Bitmap bitmap) {
+		synchronized (lock) {
+			Bitmap existing = memory.get(key);
+			if (existing != null) {
+				addReusable(bitmap);
+				bitmap = existing;
+			} else {
+				memory.put(key, bitmap);
+			}
+			retain(bitmap);
+			return bitmap;
+		}
+	}
+
+	/**
+	 * Must be called while holding the lock.
+	 */
+	private void retain(Bitmap bitmap) {
+		Integer count = inUse.get(bitmap);
+		inUse.put(bitmap, count == null ? 1 : count + 1);
+	}
+
+	/**
+	 * Keeps a bitmap nobody is using so its memory can be reused, dropping
+	 * the oldest one if there are too many. Must be called while holding the
+	 * lock.
+	 */
+	private void addReusable(Bitmap bitmap) {
+		if (!bitmap.isMutable()) {
+			return;
+		}
+		if (reusable.size() >= MAX_REUSABLE) {
+			reusable.removeFirst();
+		}
+		reusable.add(bitmap);
+	}
+
+	/**
+	 * Takes a bitmap of the given size whose memory can be reused, or returns
+	 * null if there isn't one.
+	 */
+	private Bitmap takeReusable(int width, int height) {
+		synchronized (lock) {
+			// the most recently released first
+			Iterator<Bitmap> it = reusable.descendingIterator();
+			while (it.hasNext()) {
+				Bitmap bitmap = it.next();
+				if (bitmap.getWidth() == width && bitmap.getHeight() == height
+						&& bitmap.getConfig() == Bitmap.Config.ARGB_8888) {
+					it.remove();
+					return bitmap;
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes a copy from the disk cache, which is already the right size,
+	 * into the memory of an unused bitmap if there is one.
+	 */
+	private Bitmap decodeReusing(String path, int width, int height,
+			BitmapFactory.Options options) {
+		options.inJustDecodeBounds = false;
+		options.inSampleSize = 1;
+		options.inMutable = true;
+		options.inBitmap = takeReusable(width, height);
+		try {
+			return BitmapFactory.decodeFile(path, options);
+		} catch (IllegalArgumentException e) {
+			// the bitmap couldn't be reused after all
+			options.inBitmap = null;
+			return BitmapFactory.decodeFile(path, options);
+		} finally {
+			options.inBitmap = null;
+		}
+	}
+
+	/**
+	 * Decodes the image at the given path cropped to exactly the given size,
+	 * into the memory of an unused bitmap if there is one.
+	 */
+	private Bitmap decodeCropped(String path, int width, int height,
+			BitmapFactory.Options options) {
+		Bitmap into = takeReusable(width, height);
+		Bitmap bitmap = ImageDecoder.decodeCropped(path, width, height,
+				options, into);
+		if (bitmap == null && into != null) {
+			synchronized (lock) {
+				addReusable(into);
+			}
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Saves a bitmap in the disk cache. It is written to a temporary file
+	 * first so a half written file is never read back.
+	 */
+	private void writeToDisk(Bitmap bitmap, File file) {
+		diskDir.mkdirs();
+		File temp = new File(file.getAbsolutePath() + ".tmp");
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(temp);
+			bitmap.compress(Bitmap.CompressFormat.JPEG, 85, out);
+			out.close();
+			out = null;
+			if (!temp.renameTo(file)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			temp.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		synchronized (this) {
+			if (++writesSinceTrim >= TRIM_EVERY) {
+				writesSinceTrim = 0;
+				trimDisk();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the least recently used copies on disk until the disk
+	 * cache is under MAX_DISK_BYTES.
+	 */
+	private synchronized void trimDisk() {
+		File[] files = diskDir.listFiles();
+		if (files == null) {
+			return;
+		}
+		long total = 0;
+		for (File file : files) {
+			total += file.length();
+		}
+		if (total <= MAX_DISK_BYTES) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				long diff = a.lastModified() - b.lastModified();
+				return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+			}
+		});
+		for (File file : files) {
+			if (total <= MAX_DISK_BYTES) {
+				break;
+			}
+			total -= file.length();
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,268 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.local;
+
+import java.io.IOException;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.media.ExifInterface;
+
+/**
+ * Role: Decodes image files at the size they will be shown at, instead of at
+ * their full size. </br></br>
+ *
+ * The size of the image is read first without decoding any pixels, and the
+ * image is then decoded subsampled by the largest power of two that still
+ * leaves it at least as big as what was asked for. Only then is it scaled
+ * (and rotated) to its final size, so the memory used depends on the size
+ * asked for rather than the size of the photo: a 12 megapixel photo shown
+ * at 200x200 is never more than about four times the size of the result.
+ * </br></br>
+ *
+ * Photos taken by the camera are often stored sideways with an EXIF tag
+ * saying how to turn them, so images are always returned the right way up.
+ * </br></br>
+ *
+ * Example call: </br>
+ * Bitmap bitmap = ImageDecoder.decodeFitting(path, 200, 200); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see ImageCache
+ */
+public class ImageDecoder {
+
+	/**
+	 * Returns the image at the given path, shrunk to fit inside the given
+	 * size with its width to height ratio kept, and turned the right way up.
+	 * Images that already fit are not made any bigger. Returns null if the
+	 * file can't be decoded.
+	 *
+	 * @param path
+	 * 			Path of the image file.
+	 * @param maxWidth
+	 * 			Largest width allowed, in pixels.
+	 * @param maxHeight
+	 * 			Largest height allowed, in pixels.
+	 */
+	public static Bitmap decodeFitting(String path, int maxWidth, int maxHeight) {
+		long start = Metrics.start();
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		int orientation = getOrientation(path);
+		if (!readBounds(path, null, options, orientation)) {
+			Metrics.count("image.decode.failed");
+			return null;
+		}
+		float scale = Math.min(1f, Math.min((float) maxWidth / options.outWidth,
+				(float) maxHeight / options.outHeight));
+		Bitmap sampled = decodeSampled(path, null, options, scale);
+		if (sampled == null) {
+			Metrics.count("image.decode.failed");
+			return null;
+		}
+
+		int width = Math.max(1, Math.round(options.outWidth * scale));
+		int height = Math.max(1, Math.round(options.outHeight * scale));
+		if (orientation == 0 && sampled.getWidth() == width
+				&& sampled.getHeight() == height) {
+			Metrics.time("image.decode.fitting", start);
+			return sampled;
+		}
+		Bitmap fitted = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		draw(sampled, orientation, fitted, 0, 0);
+		sampled.recycle();
+		Metrics.time("image.decode.fitting", start);
+		return fitted;
+	}
+
+	/**
+	 * Returns the image at the given path scaled so it covers the given size,
+	 * with the middle of it cropped to exactly that size and turned the right
+	 * way up. Returns null if the file can't be decoded, or if the decode is
+	 * cancelled with options.requestCancelDecode().
+	 *
+	 * @param path
+	 * 			Path of the image file.
+	 * @param width
+	 * 			Width of the result, in pixels.
+	 * @param height
+	 * 			Height of the result, in pixels.
+	 * @param options
+	 * 			Used for the decoding, so it can be cancelled.
+	 * @param into
+	 * 			A mutable bitmap of exactly width x height to draw the result
+	 * 			into, or null to make a new one.
+	 */
+	public static Bitmap decodeCropped(String path, int width, int height,
+			BitmapFactory.Options options, Bitmap into) {
+		return decodeCropped(path, null, getOrientation(path), width, height,
+				options, into);
+	}
+
+	/**
+	 * Same as decodeCropped(path, width, height, options, into), but for an
+	 * image that is in memory, like the decoded bitmapString of a Media from
+	 * the server. EXIF tags can't be read from memory, so the image is used
+	 * the way it is stored.
+	 *
+	 * @param data
+	 * 			The bytes of the image file.
+	 */
+	public static Bitmap decodeCropped(byte[] data, int width, int height,
+			BitmapFactory.Options options, Bitmap into) {
+		return decodeCropped(null, data, 0, width, height, options, into);
+	}
+
+	private static Bitmap decodeCropped(String path, byte[] data,
+			int orientation, int width, int height,
+			BitmapFactory.Options options, Bitmap into) {
+		long start = Metrics.start();
+		if (!readBounds(path, data, options, orientation) || options.mCancel) {
+			Metrics.count(options.mCancel ? "image.decode.cancelled"
+					: "image.decode.failed");
+			return null;
+		}
+		float scale = Math.max((float) width / options.outWidth,
+				(float) height / options.outHeight);
+		Bitmap sampled = decodeSampled(path, data, options, scale);
+		if (sampled == null) {
+			Metrics.count(options.mCancel ? "image.decode.cancelled"
+					: "image.decode.failed");
+			return null;
+		}
+
+		if (into == null) {
+			into = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+		}
+		draw(sampled, orientation, into, (width - options.outWidth * scale) / 2,
+				(height - options.outHeight * scale) / 2);
+		sampled.recycle();
+		Metrics.time("image.decode.cropped", start);
+		return into;
+	}
+
+	/**
+	 * Returns how many degrees clockwise the image at the given path has to
+	 * be turned to be the right way up, according to its EXIF tags. Returns
+	 * 0 if it has none, or isn't a JPEG.
+	 */
+	public static int getOrientation(String path) {
+		try {
+			ExifInterface exif = new ExifInterface(path);
+			switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION,
+					ExifInterface.ORIENTATION_NORMAL)) {
+			case ExifInterface.ORIENTATION_ROTATE_90:
+				return 90;
+			case ExifInterface.ORIENTATION_ROTATE_180:
+				return 180;
+			case ExifInterface.ORIENTATION_ROTATE_270:
+				return 270;
+			default:
+				return 0;
+			}
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Returns the largest power of two an image can be subsampled by while
+	 * staying at least as big as it will be drawn.
+	 *
+	 * @param scale
+	 * 			How much the full size image will be scaled by when drawn.
+	 */
+	public static int calculateInSampleSize(float scale) {
+		int sampleSize = 1;
+		while (sampleSize * 2 * scale <= 1) {
+			sampleSize *= 2;
+		}
+		return sampleSize;
+	}
+
+	/**
+	 * Reads the size of the image into outWidth and outHeight of the options
+	 * (swapped if it is turned sideways) without decoding it. Returns false
+	 * if it isn't an image.
+	 */
+	private static boolean readBounds(String path, byte[] data,
+			BitmapFactory.Options options, int orientation) {
+		options.inJustDecodeBounds = true;
+		decode(path, data, options);
+		options.inJustDecodeBounds = false;
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			return false;
+		}
+		if (orientation == 90 || orientation == 270) {
+			int width = options.outWidth;
+			options.outWidth = options.outHeight;
+			options.outHeight = width;
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the image subsampled for the given scale. The full size read by
+	 * readBounds() is left in the options.
+	 */
+	private static Bitmap decodeSampled(String path, byte[] data,
+			BitmapFactory.Options options, float scale) {
+		int outWidth = options.outWidth;
+		int outHeight = options.outHeight;
+		options.inSampleSize = calculateInSampleSize(scale);
+		options.inMutable = false;
+		Bitmap sampled = decode(path, data, options);
+		// decoding overwrites these with the sampled size
+		options.outWidth = outWidth;
+		options.outHeight = outHeight;
+		return sampled;
+	}
+
+	/**
+	 * Decodes the file at the path if there is one, otherwise the data.
+	 */
+	private static Bitmap decode(String path, byte[] data,
+			BitmapFactory.Options options) {
+		if (path != null) {
+			return BitmapFactory.decodeFile(path, options);
+		}
+		return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+	}
+
+	/**
+	 * Draws a sampled bitmap turned the right way up and scaled to the
+	 * target's size (or to cover it, when cropping), offset by dx and dy.
+	 */
+	private static void draw(Bitmap sampled, int orientation, Bitmap target,
+			float dx, float dy) {
+		Matrix matrix = new Matrix();
+		matrix.setRotate(orientation);
+		RectF bounds = new RectF(0, 0, sampled.getWidth(), sampled.getHeight());
+		matrix.mapRect(bounds);
+		matrix.postTranslate(-bounds.left, -bounds.top);
+		float scale = (target.getWidth() - 2 * dx) / bounds.width();
+		matrix.postScale(scale, scale);
+		matrix.postTranslate(dx, dy);
+		new Canvas(target).drawBitmap(sampled, matrix, new Paint(
+				Paint.FILTER_BITMAP_FLAG));
+	}
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.local;
+
+import java.io.ByteArrayOutputStream;
+
+import android.graphics.Bitmap;
+import android.util.Base64;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+
+/**
+ * Role: Says how big, how compressed, and in which format (JPEG or WebP)
+ * the copy of an image kept or sent for a media should be. </br></br>
+ *
+ * CAPTURE is used for every photo and illustration the user adds, so that
+ * a 12 megapixel camera photo doesn't have to be decoded, cached and
+ * published at full size every time it is used. PUBLISH is used for the
+ * images sent to the server with a story; every version of Android the 
+ * application runs on can decode WebP, which is much smaller than JPEG at
+ * the same quality. The format used is recorded in each Media (see 
+ * Media.getFormat()), so the image is saved under the right name when the
+ * story is downloaded. </br></br>
+ *
+ * Example call: </br>
+ * String path = ImageStore.getInstance(context).putRendition(original,
+ * 					ImagePolicy.CAPTURE); </br>
+ * ImagePolicy.PUBLISH.encode(bitmap, media); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see ImageStore
+ */
+public class ImagePolicy {
+	/**
+	 * Used for images added to a chapter. Large enough to fill a tablet
+	 * screen.
+	 */
+	public static final ImagePolicy CAPTURE = new ImagePolicy(1600, 85, true);
+
+	/**
+	 * Used for images sent to the server.
+	 */
+	public static final ImagePolicy PUBLISH = new ImagePolicy(1024, 75,
+			Media.WEBP, false);
+
+	private final int maxDimension;
+	private final int quality;
+	private final String format;
+	private final boolean keepOriginal;
+
+	/**
+	 * Initializes a new ImagePolicy.
+	 *
+	 * @param maxDimension
+	 * 			Largest width or height allowed, in pixels.
+	 * @param quality
+	 * 			JPEG quality, from 0 to 100.
+	 * @param keepOriginal
+	 * 			Whether a photo taken with the camera is kept once its copy
+	 * 			has been made. Images chosen from the gallery are always kept.
+	 */
+	public ImagePolicy(int maxDimension, int quality, boolean keepOriginal) {
+		this(maxDimension, quality, Media.JPEG, keepOriginal);
+	}
+
+	/**
+	 * Initializes a new ImagePolicy with the given format.
+	 *
+	 * @param maxDimension
+	 * 			Largest width or height allowed, in pixels.
+	 * @param quality
+	 * 			Compression quality, from 0 to 100.
+	 * @param format
+	 * 			Media.JPEG or Media.WEBP.
+	 * @param keepOriginal
+	 * 			Whether a photo taken with the camera is kept once its copy
+	 * 			has been made. Images chosen from the gallery are always kept.
+	 */
+	public ImagePolicy(int maxDimension, int quality, String format,
+			boolean keepOriginal) {
+		this.maxDimension = maxDimension;
+		this.quality = quality;
+		this.format = format;
+		this.keepOriginal = keepOriginal;
+	}
+
+	/**
+	 * Returns the largest width or height allowed, in pixels.
+	 */
+	public int getMaxDimension() {
+		return maxDimension;
+	}
+
+	/**
+	 * Returns the compression quality, from 0 to 100.
+	 */
+	public int getQuality() {
+		return quality;
+	}
+
+	/**
+	 * Returns the format, Media.JPEG or Media.WEBP.
+	 */
+	public String getFormat() {
+		return format;
+	}
+
+	/**
+	 * Returns the format to give Bitmap.compress().
+	 */
+	public Bitmap.CompressFormat getCompressFormat() {
+		return getCompressFormat(format);
+	}
+
+	/**
+	 * Returns the format to give Bitmap.compress() for Media.JPEG or 
+	 * Media.WEBP. Anything else is taken to be a JPEG.
+	 */
+	public static Bitmap.CompressFormat getCompressFormat(String format) {
+		if (Media.WEBP.equals(format)) {
+			return Bitmap.CompressFormat.WEBP;
+		}
+		return Bitmap.CompressFormat.JPEG;
+	}
+
+	/**
+	 * Returns the file extension for Media.JPEG or Media.WEBP, including the
+	 * dot. Anything else is taken to be a JPEG.
+	 */
+	public static String getExtension(String format) {
+		if (Media.WEBP.equals(format)) {
+			return ".webp";
+		}
+		return ".jpg";
+	}
+
+	/**
+	 * Returns whether a photo taken with the camera is kept once its copy has
+	 * been made.
+	 */
+	public boolean keepsOriginal() {
+		return keepOriginal;
+	}
+
+	/**
+	 * Compresses the bitmap in this policy's format and quality, and sets it
+	 * as the media's bitmapString (in base 64) so it can be put on the 
+	 * server. The media's format is set to match. The bitmap isn't resized.
+	 * </br></br>
+	 * 
+	 * CODE REUSE: </br>
+	 * This code is taken straight from: </br>
+	 * URL: http://mobile.cs.fsu.edu/converting-images-to-json-objects/ </br>
+	 * Date: Nov. 4th, 2013 </br>
+	 * Author: Manav </br>
+	 * 
+	 * @param bitmap
+	 * 			Valid bitmap, should never be null.
+	 * @param media
+	 * 			Media the encoded image is for.
+	 */
+	public void encode(Bitmap bitmap, Media media) {
+		ByteArrayOutputStream byteArrayBitmapStream = new ByteArrayOutputStream();
+		bitmap.compress(getCompressFormat(), quality, byteArrayBitmapStream);
+		byte[] b = byteArrayBitmapStream.toByteArray();
+		media.setBitmapString(Base64.encodeToString(b, Base64.DEFAULT));
+		media.setFormat(format);
+	}
+}
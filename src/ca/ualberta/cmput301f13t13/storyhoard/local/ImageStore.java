@@ -0,0 +1,364 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.local;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Environment;
+import android.util.Base64;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+
+/**
+ * Role: Keeps the image files of stories downloaded from the server, and the
+ * copies of images added to chapters (see putRendition()), named after a
+ * hash (SHA-1) of their contents. </br></br>
+ *
+ * Since the name of a file comes from what is in it, saving the same image
+ * twice gives the same file, and the second save doesn't use any more
+ * space. Caching a story again, or two stories sharing an image, costs no
+ * new storage. </br></br>
+ *
+ * An image is written to a temporary file with a random name while its
+ * hash is worked out, and then renamed, so two saves at the same time never
+ * write to the same file and a half written image is never used. </br></br>
+ *
+ * Files are never deleted when a media is removed, since other media may
+ * use the same file. Instead, collectGarbage() counts how many media in
+ * the database use each file (see MediaManager.getPathCounts()) and deletes
+ * the ones nothing uses anymore. Files changed in the last GRACE_MILLIS
+ * are always kept, so that an image saved just before its media is written
+ * to the database isn't deleted. Images whose media will only be written
+ * later (like an illustration added to a chapter that is still being
+ * edited) are kept with keep() until the application is closed.
+ * </br></br>
+ *
+ * Example call: </br>
+ * ImageStore store = ImageStore.getInstance(context); </br>
+ * media.setPath(store.put(media.getBitmapString())); </br>
+ * ... </br>
+ * store.collectGarbage(); </br></br>
+ *
+ * Design Pattern: Singleton
+ *
+ * @author Stephanie Gil
+ *
+ * @see Syncher
+ * @see MediaManager
+ */
+public class ImageStore {
+	private static final int BASE64_CHUNK = 8192;
+	private static final int BUFFER_SIZE = 8192;
+	private static final long GRACE_MILLIS = 10 * 60 * 1000;
+	private static final String TEMP_PREFIX = ".tmp-";
+	private static ImageStore self = null;
+
+	private final File folder;
+	private final MediaManager mediaMan;
+	private final Set<String> kept = Collections
+			.synchronizedSet(new HashSet<String>());
+
+	protected ImageStore(Context context) {
+		this(new File(Environment.getExternalStorageDirectory(), "tmp/store"),
+				MediaManager.getInstance(context));
+	}
+
+	protected ImageStore(File folder, MediaManager mediaMan) {
+		this.folder = folder;
+		this.mediaMan = mediaMan;
+	}
+
+	/**
+	 * Returns the instance of the ImageStore (singleton).
+	 *
+	 * @param context
+	 * 			Can be an activity or application context.
+	 */
+	public static synchronized ImageStore getInstance(Context context) {
+		if (self == null) {
+			self = new ImageStore(context.getApplicationContext());
+		}
+		return self;
+	}
+
+	/**
+	 * Saves a JPEG encoded as a base 64 string (like the bitmapString of a
+	 * Media downloaded from the server). The string is decoded a chunk at a
+	 * time, so the image is never held in memory as a whole. Returns the
+	 * path of the image in the store, or null if it could not be saved.
+	 *
+	 * @param base64
+	 * 			The encoded image.
+	 */
+	public String put(String base64) {
+		return put(base64, Media.JPEG);
+	}
+
+	/**
+	 * Same as put(String), for an image in the given format.
+	 *
+	 * @param base64
+	 * 			The encoded image.
+	 * @param format
+	 * 			Media.JPEG or Media.WEBP, usually the format of the media the
+	 * 			image belongs to.
+	 */
+	public String put(final String base64, String format) {
+		return put(new Writer() {
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				decodeBase64(base64, out);
+			}
+		}, ImagePolicy.getExtension(format));
+	}
+
+	/**
+	 * Saves a bitmap as a JPEG. Returns the path of the image in the store,
+	 * or null if it could not be saved.
+	 */
+	public String put(final Bitmap bitmap) {
+		return put(new Writer() {
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				bitmap.compress(Bitmap.CompressFormat.JPEG, 85, out);
+			}
+		}, ".jpg");
+	}
+
+	/**
+	 * Saves a copy of the image at the given path made to follow the policy:
+	 * no bigger than its largest dimension, turned the right way up, and 
+	 * compressed in its format and at its quality. An image in that format 
+	 * that already fits and is the right way up is copied as it is, rather 
+	 * than compressed again. Returns the
+	 * path of the copy in the store, or null if it could not be made. The 
+	 * original is left alone. Must not be called on the main UI thread.
+	 *
+	 * @param path
+	 * 			Path of the original image.
+	 * @param policy
+	 * 			How big and how compressed the copy should be.
+	 */
+	public String putRendition(final String path, final ImagePolicy policy) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(path, options);
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			return null;
+		}
+		int max = policy.getMaxDimension();
+		final String extension = ImagePolicy.getExtension(policy.getFormat());
+		if (options.outWidth <= max && options.outHeight <= max
+				&& ("image/" + policy.getFormat()).equals(options.outMimeType)
+				&& ImageDecoder.getOrientation(path) == 0) {
+			return put(new Writer() {
+				@Override
+				public void writeTo(OutputStream out) throws IOException {
+					copy(path, out);
+				}
+			}, extension);
+		}
+
+		final Bitmap bitmap = ImageDecoder.decodeFitting(path, max, max);
+		if (bitmap == null) {
+			return null;
+		}
+		try {
+			return put(new Writer() {
+				@Override
+				public void writeTo(OutputStream out) throws IOException {
+					bitmap.compress(policy.getCompressFormat(),
+							policy.getQuality(), out);
+				}
+			}, extension);
+		} finally {
+			bitmap.recycle();
+		}
+	}
+
+	/**
+	 * Returns true if the given path is a file in the store.
+	 */
+	public boolean contains(String path) {
+		if (path == null) {
+			return false;
+		}
+		File file = new File(path);
+		return folder.equals(file.getParentFile()) && file.exists();
+	}
+
+	/**
+	 * Makes collectGarbage() keep the file at the given path until the 
+	 * application is closed, even if no media in the database uses it. Used
+	 * for images of media that are only written to the database later. 
+	 * Paths outside the store are ignored by collectGarbage() anyway.
+	 * 
+	 * @param path
+	 * 			Path of an image in the store.
+	 */
+	public void keep(String path) {
+		if (path != null) {
+			kept.add(new File(path).getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Deletes every file in the store that no media in the database uses
+	 * anymore, except the ones changed in the last GRACE_MILLIS and the ones
+	 * given to keep(). Returns the number of files deleted. Must not be 
+	 * called on the main UI thread.
+	 */
+	public int collectGarbage() {
+		return collectGarbage(GRACE_MILLIS);
+	}
+
+	/**
+	 * Same as collectGarbage(), but only keeps unused files changed in the
+	 * last graceMillis milliseconds (and the ones given to keep()).
+	 */
+	public int collectGarbage(long graceMillis) {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return 0;
+		}
+		Map<String, Integer> counts = mediaMan.getPathCounts();
+		long keepAfter = System.currentTimeMillis() - graceMillis;
+		int deleted = 0;
+		for (File file : files) {
+			String path = file.getAbsolutePath();
+			if (file.lastModified() > keepAfter || counts.containsKey(path)
+					|| kept.contains(path)) {
+				continue;
+			}
+			if (file.delete()) {
+				deleted++;
+			}
+		}
+		System.out.println("ImageStore: deleted " + deleted + " of "
+				+ files.length + " files");
+		return deleted;
+	}
+
+	/**
+	 * Writes the bytes of an image into a temporary file while hashing them,
+	 * and then moves it to the name given by its hash and the extension (or
+	 * deletes it, if the same image is already there).
+	 */
+	private String put(Writer writer, String extension) {
+		if (!folder.exists()) {
+			folder.mkdirs();
+		}
+		File temp = new File(folder, TEMP_PREFIX + UUID.randomUUID());
+		MessageDigest digest = Utilities.newSha1();
+
+		OutputStream out = null;
+		try {
+			out = new DigestOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temp)), digest);
+			writer.writeTo(out);
+			out.close();
+			out = null;
+		} catch (IOException e) {
+			e.printStackTrace();
+			temp.delete();
+			return null;
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+
+		File file = new File(folder, Utilities.sha1Hex(digest) + extension);
+		if (file.exists()) {
+			temp.delete();
+			// so collectGarbage() doesn't delete it before it is used again
+			file.setLastModified(System.currentTimeMillis());
+		} else if (!temp.renameTo(file)) {
+			temp.delete();
+			if (!file.exists()) {
+				return null;
+			}
+		}
+		return file.getAbsolutePath();
+	}
+
+	/**
+	 * Decodes a base 64 string onto a stream a chunk at a time. Line breaks
+	 * and padding are skipped, so every full chunk is a multiple of four
+	 * characters and can be decoded on its own.
+	 */
+	static void decodeBase64(String base64, OutputStream out)
+			throws IOException {
+		int length = base64.length();
+		byte[] chunk = new byte[BASE64_CHUNK];
+		int filled = 0;
+		for (int i = 0; i < length; ++i) {
+			char c = base64.charAt(i);
+			if (c == '\n' || c == '\r' || c == '=') {
+				continue;
+			}
+			// base 64 is plain ASCII, so each char is one byte
+			chunk[filled++] = (byte) c;
+			if (filled == BASE64_CHUNK) {
+				out.write(Base64.decode(chunk, 0, filled, Base64.DEFAULT));
+				filled = 0;
+			}
+		}
+		if (filled > 0) {
+			out.write(Base64.decode(chunk, 0, filled, Base64.DEFAULT));
+		}
+	}
+
+	private static void copy(String path, OutputStream out) throws IOException {
+		InputStream in = new FileInputStream(path);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the bytes of an image.
+	 */
+	private interface Writer {
+		public void writeTo(OutputStream out) throws IOException;
+	}
+}
@@ -100,9 +100,11 @@ public class MediaManager extends StoringManager<Media>{
 	 */
 	@Override
 	public void insert(Media media) {
+		long start = Metrics.start();
 		SQLiteDatabase db = helper.getWritableDatabase();
 		setContentValues(media);
-		db.insert(MediaTable.TABLE_NAME, null, values);	
+		db.insert(MediaTable.TABLE_NAME, null, values);
+		Metrics.time("db.media.insert", start);
 	}
 	/**
 	 * Sets up the ContentValues for inserting or updating the database. This 
@@ -146,6 +148,7 @@ public class MediaManager extends StoringManager<Media>{
 	 */
 	@Override
 	public ArrayList<Media> retrieve(Media criteria) {
+		long start = Metrics.start();
 		SQLiteDatabase db = helper.getReadableDatabase();
 		ArrayList<Media> results = new ArrayList<Media>();
 		
@@ -170,6 +173,7 @@ public class MediaManager extends StoringManager<Media>{
 			cursor.moveToNext();
 		}
 		cursor.close();		
+		Metrics.time("db.media.retrieve", start);
 		return results;		
 	}
 	/**
@@ -219,12 +223,13 @@ public class MediaManager extends StoringManager<Media>{
 	 */
 	@Override
 	public void update(Media newMedia) {
+		long start = Metrics.start();
 		SQLiteDatabase db = helper.getReadableDatabase();
 		setContentValues(newMedia);
 		selection = MediaTable.COLUMN_NAME_MEDIA_ID + " LIKE ?";
 		sArgs = new String[]{ newMedia.getId().toString()};	
 		db.update(MediaTable.TABLE_NAME, values, selection, sArgs);
-		
+		Metrics.time("db.media.update", start);
 	}
 
 	/**
@@ -292,11 +297,13 @@ public class MediaManager extends StoringManager<Media>{
 	 */
 	@Override
 	public void remove(UUID id) {
+		long start = Metrics.start();
 		SQLiteDatabase db = helper.getWritableDatabase();
 		// Delete entry 
 		selection = MediaTable.COLUMN_NAME_MEDIA_ID + " LIKE ?";
 		sArgs = new String[]{ String.valueOf(id)};
 		db.delete(MediaTable.TABLE_NAME, selection, sArgs);
+		Metrics.time("db.media.remove", start);
 	}
 	/**
 	 * Removes the media no longer in a chapter
@@ -315,6 +322,30 @@ public class MediaManager extends StoringManager<Media>{
 			}
 		}
 	}
+	/**
+	 * Returns how many media use each image path, keyed by path. Paths that
+	 * no media uses are not in the map. Used by the ImageStore to know which
+	 * of its files can be deleted. </br></br>
+	 * 
+	 * Example call:</br>
+	 * MediaManager mm = MediaManager.getInstance(someActivity.this);</br>
+	 * HashMap<String, Integer> counts = mm.getPathCounts();</br>
+	 */
+	public HashMap<String, Integer> getPathCounts() {
+		SQLiteDatabase db = helper.getReadableDatabase();
+		HashMap<String, Integer> counts = new HashMap<String, Integer>();
+		Cursor cursor = db.query(MediaTable.TABLE_NAME, new String[] {
+				MediaTable.COLUMN_NAME_MEDIA_URI, "COUNT(*)" }, null, null,
+				MediaTable.COLUMN_NAME_MEDIA_URI, null, null);
+		cursor.moveToFirst();
+		while (!cursor.isAfterLast()) {
+			counts.put(cursor.getString(0), cursor.getInt(1));
+			cursor.moveToNext();
+		}
+		cursor.close();
+		return counts;
+	}
+
 	/**
 	 * Retrieves the photos whose chapter id matches the id provided. It expects the id 
 	 * provided to be a UUID. 
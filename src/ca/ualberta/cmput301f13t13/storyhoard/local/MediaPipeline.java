@@ -0,0 +1,303 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.local;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Process;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+
+/**
+ * Role: Does the heavy work on a story's images (encoding, decoding, and
+ * writing them) on several threads at once, one per processor core, and
+ * does the database writes that go with it on a single writer thread.
+ * </br></br>
+ *
+ * Only a few images are worked on at a time (twice the number of cores).
+ * When that many are in progress, forEach() waits for one to finish before
+ * starting the next, so the memory used stays capped no matter how many
+ * images a story has. Database writes are grouped into transactions of up
+ * to WRITE_BATCH writes, because the managers are not thread safe and one
+ * transaction per row is much slower than one per batch. If a write in a
+ * batch fails, the whole batch is rolled back, and the next finishWrites()
+ * returns false. </br></br>
+ *
+ * The time spent in every stage is recorded by the Metrics timer named
+ * TIMER followed by the name of the stage (such as "pipeline.save"), and 
+ * the time of every batch of writes by "pipeline.db". </br></br>
+ *
+ * None of these methods should be called on the main UI thread, since they
+ * wait for the work to be done. </br></br>
+ *
+ * Design Pattern: Singleton
+ *
+ * @author Stephanie Gil
+ *
+ * @see Syncher
+ * @see Metrics
+ */
+public class MediaPipeline {
+	/**
+	 * Start of the names of the Metrics timers of the stages.
+	 */
+	public static final String TIMER = "pipeline.";
+	private static final int WRITE_BATCH = 16;
+	private static final String DB_TIMER = TIMER + "db";
+	private static MediaPipeline self = null;
+	private static DBHelper helper = null;
+
+	private final int workerCount;
+	private final ExecutorService workers;
+	private final ExecutorService dbWriter;
+	private final Semaphore inFlight;
+	private final ArrayList<Runnable> pendingWrites = new ArrayList<Runnable>();
+	private final ArrayList<Future<Boolean>> submitted = 
+			new ArrayList<Future<Boolean>>();
+
+	/**
+	 * Some work to do on a single media, for example saving its image.
+	 */
+	public interface Stage {
+		public void run(Media media);
+	}
+
+	protected MediaPipeline(Context context) {
+		helper = DBHelper.getInstance(context);
+		workerCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+		inFlight = new Semaphore(workerCount * 2);
+		workers = new ThreadPoolExecutor(workerCount, workerCount, 30,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new PipelineThreadFactory("MediaPipeline worker #"));
+		((ThreadPoolExecutor) workers).allowCoreThreadTimeOut(true);
+		dbWriter = Executors.newSingleThreadExecutor(
+				new PipelineThreadFactory("MediaPipeline db #"));
+	}
+
+	/**
+	 * Returns the instance of the MediaPipeline (singleton).
+	 *
+	 * @param context
+	 * 			Can be an activity or application context.
+	 */
+	public static synchronized MediaPipeline getInstance(Context context) {
+		if (self == null) {
+			self = new MediaPipeline(context);
+		}
+		return self;
+	}
+
+	/**
+	 * Runs the work stage on every media, spread over the worker threads, and
+	 * returns once all of them are done. If a database stage is given, it is
+	 * queued for the writer thread as soon as the work for that media is
+	 * done, so the database is written while the rest of the images are
+	 * still being worked on. </br></br>
+	 *
+	 * A stage fails by throwing a RuntimeException. The database stage isn't
+	 * run for the media it failed on, and the media is counted in the number
+	 * returned, so the caller can give up before writing anything else.
+	 * </br></br>
+	 *
+	 * Example call: </br>
+	 * int failed = pipeline.forEach(medias, "save", saveImage, insertMedia); </br>
+	 * pipeline.finishWrites(); </br>
+	 *
+	 * @param medias
+	 * 			Medias to do the work on.
+	 * @param stageName
+	 * 			Name the work is timed under, after TIMER.
+	 * @param work
+	 * 			What to do with each media on a worker thread.
+	 * @param dbStage
+	 * 			What to write to the database for each media afterwards, or
+	 * 			null if nothing.
+	 * @return The number of medias the work stage failed on.
+	 */
+	public int forEach(Collection<Media> medias, final String stageName,
+			final Stage work, final Stage dbStage) {
+		final CountDownLatch done = new CountDownLatch(medias.size());
+		final AtomicInteger failed = new AtomicInteger();
+		for (final Media media : medias) {
+			inFlight.acquireUninterruptibly();
+			workers.execute(new Runnable() {
+				@Override
+				public void run() {
+					long start = Metrics.start();
+					try {
+						work.run(media);
+						if (start != 0) {
+							Metrics.time(TIMER + stageName, start);
+						}
+						if (dbStage != null) {
+							write(new Runnable() {
+								@Override
+								public void run() {
+									dbStage.run(media);
+								}
+							});
+						}
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+						failed.incrementAndGet();
+					} finally {
+						inFlight.release();
+						done.countDown();
+					}
+				}
+			});
+		}
+		awaitUninterruptibly(done);
+		return failed.get();
+	}
+
+	/**
+	 * Queues a database write for the writer thread. It is done in a
+	 * transaction with the writes queued just before and after it. Writes
+	 * are always done in the order they were queued.
+	 */
+	public void write(Runnable dbWrite) {
+		synchronized (pendingWrites) {
+			pendingWrites.add(dbWrite);
+			if (pendingWrites.size() >= WRITE_BATCH) {
+				submitWrites();
+			}
+		}
+	}
+
+	/**
+	 * Sends any queued writes to the writer thread, and waits for every
+	 * write queued so far to be done. </br></br>
+	 * 
+	 * Writes from everyone using the pipeline share the batches, so a write 
+	 * that fails also rolls back the writes batched with it, and makes every
+	 * finishWrites() waiting on that batch return false.
+	 * 
+	 * @return True if every batch was saved, false if one was rolled back 
+	 * 			(or the wait was interrupted).
+	 */
+	public boolean finishWrites() {
+		ArrayList<Future<Boolean>> batches;
+		synchronized (pendingWrites) {
+			submitWrites();
+			batches = new ArrayList<Future<Boolean>>(submitted);
+			submitted.clear();
+		}
+		boolean saved = true;
+		for (Future<Boolean> batch : batches) {
+			try {
+				saved &= batch.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				saved = false;
+				break;
+			} catch (ExecutionException e) {
+				e.printStackTrace();
+				saved = false;
+			}
+		}
+		return saved;
+	}
+
+	/**
+	 * Hands the queued writes to the writer thread as a single transaction,
+	 * and keeps its result for finishWrites(). Must be called while holding 
+	 * the pendingWrites lock.
+	 */
+	private void submitWrites() {
+		if (pendingWrites.isEmpty()) {
+			return;
+		}
+		final ArrayList<Runnable> batch = new ArrayList<Runnable>(pendingWrites);
+		pendingWrites.clear();
+		submitted.add(dbWriter.submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				long start = Metrics.start();
+				SQLiteDatabase db = helper.getWritableDatabase();
+				db.beginTransaction();
+				try {
+					for (Runnable write : batch) {
+						write.run();
+					}
+					db.setTransactionSuccessful();
+					return true;
+				} catch (RuntimeException e) {
+					// the whole batch is rolled back
+					e.printStackTrace();
+					return false;
+				} finally {
+					db.endTransaction();
+					Metrics.time(DB_TIMER, start);
+				}
+			}
+		}));
+	}
+
+	private void awaitUninterruptibly(CountDownLatch latch) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Makes named background priority threads for the pipeline.
+	 */
+	private static class PipelineThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger(1);
+		private final String name;
+
+		PipelineThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(
+							Process.THREAD_PRIORITY_BACKGROUND);
+					r.run();
+				}
+			}, name + count.getAndIncrement());
+		}
+	}
+}
@@ -0,0 +1,335 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.local;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+
+/**
+ * Role: Keeps counters, timers and histograms for the data layer (database
+ * calls, syncs, requests to the server and image decodes), so where the
+ * time goes can be seen on the DebugMetricsActivity or dumped to a file.
+ * </br></br>
+ *
+ * Metrics are off by default. While they are off, start() returns 0 and
+ * every other call returns straight away after reading one flag, so the
+ * calls can be left in code that runs often. That doesn't cover building
+ * a name from parts, which the caller does first, so such names are only
+ * built when isEnabled() (or start() returned a time). Names are made of
+ * words separated by dots, starting with what is measured, such as
+ * "db.story.retrieve" or "es.bytes.in". </br></br>
+ *
+ * Timers and histograms keep their values in buckets that are each twice
+ * as wide as the one before, so they take the same small space however
+ * many values are recorded, and their percentiles are within a factor of
+ * 2 of the real ones. </br></br>
+ *
+ * Example call: </br>
+ * long start = Metrics.start(); </br>
+ * db.insert(StoryTable.TABLE_NAME, null, values); </br>
+ * Metrics.time("db.story.insert", start); </br>
+ * Metrics.count("cache.hit"); </br>
+ * Metrics.record("es.bytes.in", length); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see MediaPipeline
+ */
+public class Metrics {
+	private static volatile boolean enabled = false;
+	private static final Map<String, AtomicLong> counters =
+			new ConcurrentHashMap<String, AtomicLong>();
+	private static final Map<String, Histogram> timers =
+			new ConcurrentHashMap<String, Histogram>();
+	private static final Map<String, Histogram> histograms =
+			new ConcurrentHashMap<String, Histogram>();
+
+	/**
+	 * Values recorded under one name, in buckets of powers of 2: bucket i
+	 * holds the values from 2^(i-1) to 2^i - 1, and bucket 0 holds 0 and
+	 * negative values.
+	 */
+	public static class Histogram {
+		private final long[] buckets = new long[65];
+		private long count = 0;
+		private long sum = 0;
+		private long min = Long.MAX_VALUE;
+		private long max = Long.MIN_VALUE;
+
+		synchronized void record(long value) {
+			int bucket = value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value);
+			buckets[bucket]++;
+			count++;
+			sum += value;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized long getSum() {
+			return sum;
+		}
+
+		public synchronized long getMin() {
+			return count == 0 ? 0 : min;
+		}
+
+		public synchronized long getMax() {
+			return count == 0 ? 0 : max;
+		}
+
+		public synchronized double getMean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * Returns about the value that the given fraction (0.5 for the
+		 * median, 0.95, ...) of the values are at most: the top of the
+		 * bucket it falls in, but never more than the largest value.
+		 */
+		public synchronized long getPercentile(double fraction) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(fraction * count);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; ++i) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) {
+					long top = i == 0 ? 0 : (i == 64 ? Long.MAX_VALUE
+							: (1L << i) - 1);
+					return Math.max(min, Math.min(top, max));
+				}
+			}
+			return max;
+		}
+
+		/**
+		 * Returns the count, mean, percentiles and largest value, divided
+		 * by the given scale (1e6 to show nanoseconds as milliseconds).
+		 */
+		synchronized JsonObject toJson(double scale) {
+			JsonObject json = new JsonObject();
+			json.addProperty("count", count);
+			json.addProperty("sum", round(sum / scale));
+			json.addProperty("mean", round(getMean() / scale));
+			json.addProperty("p50", round(getPercentile(0.5) / scale));
+			json.addProperty("p95", round(getPercentile(0.95) / scale));
+			json.addProperty("p99", round(getPercentile(0.99) / scale));
+			json.addProperty("max", round(getMax() / scale));
+			return json;
+		}
+
+		private static double round(double value) {
+			return Math.round(value * 100) / 100.0;
+		}
+	}
+
+	protected Metrics() {
+	}
+
+	/**
+	 * Turns the metrics on or off. What was recorded before is kept.
+	 */
+	public static void setEnabled(boolean on) {
+		enabled = on;
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns the time to give time() once the work is done, or 0 if the
+	 * metrics are off.
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records how long some work took under the given timer.
+	 *
+	 * @param startNanos
+	 * 			What start() returned when the work started. Nothing is
+	 * 			recorded if it is 0.
+	 */
+	public static void time(String timer, long startNanos) {
+		if (startNanos == 0 || !enabled) {
+			return;
+		}
+		get(timers, timer).record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Adds 1 to the given counter.
+	 */
+	public static void count(String counter) {
+		count(counter, 1);
+	}
+
+	/**
+	 * Adds the amount to the given counter.
+	 */
+	public static void count(String counter, long amount) {
+		if (!enabled) {
+			return;
+		}
+		AtomicLong value = counters.get(counter);
+		if (value == null) {
+			synchronized (counters) {
+				value = counters.get(counter);
+				if (value == null) {
+					value = new AtomicLong();
+					counters.put(counter, value);
+				}
+			}
+		}
+		value.addAndGet(amount);
+	}
+
+	/**
+	 * Records a value, such as the size of a response, in the given
+	 * histogram.
+	 */
+	public static void record(String histogram, long value) {
+		if (!enabled) {
+			return;
+		}
+		get(histograms, histogram).record(value);
+	}
+
+	private static Histogram get(Map<String, Histogram> map, String name) {
+		Histogram histogram = map.get(name);
+		if (histogram == null) {
+			synchronized (map) {
+				histogram = map.get(name);
+				if (histogram == null) {
+					histogram = new Histogram();
+					map.put(name, histogram);
+				}
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns the value of a counter, or 0 if nothing was counted.
+	 */
+	public static long getCount(String counter) {
+		AtomicLong value = counters.get(counter);
+		return value == null ? 0 : value.get();
+	}
+
+	/**
+	 * Returns the times recorded by a timer, in nanoseconds, or null if
+	 * there are none.
+	 */
+	public static Histogram getTimer(String timer) {
+		return timers.get(timer);
+	}
+
+	/**
+	 * Returns the values recorded in a histogram, or null if there are
+	 * none.
+	 */
+	public static Histogram getHistogram(String histogram) {
+		return histograms.get(histogram);
+	}
+
+	/**
+	 * Forgets everything recorded so far.
+	 */
+	public static void reset() {
+		synchronized (counters) {
+			counters.clear();
+		}
+		synchronized (timers) {
+			timers.clear();
+		}
+		synchronized (histograms) {
+			histograms.clear();
+		}
+	}
+
+	/**
+	 * Returns everything recorded so far, sorted by name, with the timers
+	 * in milliseconds. </br></br>
+	 *
+	 * Output would be like: </br>
+	 * {"enabled": true, "counters": {"cache.hit": 4}, "timers":
+	 * {"db.story.retrieve": {"count": 12, "sum": 30.5, "mean": 2.54,
+	 * "p50": 2.1, "p95": 4.19, "p99": 4.19, "max": 4.0}}, "histograms": {}}
+	 */
+	public static JsonObject snapshot() {
+		JsonObject json = new JsonObject();
+		json.addProperty("enabled", enabled);
+		JsonObject counts = new JsonObject();
+		for (Map.Entry<String, AtomicLong> counter
+				: new TreeMap<String, AtomicLong>(counters).entrySet()) {
+			counts.addProperty(counter.getKey(), counter.getValue().get());
+		}
+		json.add("counters", counts);
+		json.add("timers", toJson(timers, 1e6));
+		json.add("histograms", toJson(histograms, 1));
+		return json;
+	}
+
+	private static JsonObject toJson(Map<String, Histogram> map,
+			double scale) {
+		JsonObject json = new JsonObject();
+		for (Map.Entry<String, Histogram> histogram
+				: new TreeMap<String, Histogram>(map).entrySet()) {
+			json.add(histogram.getKey(), histogram.getValue().toJson(scale));
+		}
+		return json;
+	}
+
+	/**
+	 * Returns snapshot() as indented JSON, to be read by people.
+	 */
+	public static String report() {
+		return new GsonBuilder().setPrettyPrinting().create()
+				.toJson(snapshot());
+	}
+
+	/**
+	 * Writes report() to the given file, replacing it.
+	 */
+	public static void dump(File file) throws IOException {
+		Writer out = new OutputStreamWriter(new FileOutputStream(file),
+				"UTF-8");
+		try {
+			out.write(report());
+		} finally {
+			out.close();
+		}
+	}
+}
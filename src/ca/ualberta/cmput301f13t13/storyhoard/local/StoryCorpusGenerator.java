@@ -0,0 +1,437 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.local;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Choice;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.StoryRepository;
+
+/**
+ * Role: Makes up whole stories (chapters, choices between them, and
+ * images) for load tests and benchmarks, and loads them into the database
+ * or into a StoryRepository. Like BogoPicGen, it is only meant for tests.
+ * </br></br>
+ *
+ * Everything, ids included, comes from the seed, so the same seed and
+ * settings always make the same stories, and a benchmark can be run again
+ * on exactly the same data. What the stories look like can be set: </br>
+ * - setChapters(): how many chapters a story has. </br>
+ * - setBranching(): how many choices lead out of each chapter. The last
+ * chapter is an ending, with none, and every other chapter leads to the
+ * next, so every chapter can be reached. </br>
+ * - setWords(): how long chapters are. Lengths follow a log-normal
+ * distribution around the median, so most chapters are about that long
+ * and a few are much longer, like real ones. Common words are picked much
+ * more often than rare ones, so searches find realistic numbers of
+ * stories. </br>
+ * - setImages(): how many images a chapter has, made by BogoPicGen. Only a
+ * pool of different images is made and then reused, since making them is
+ * slow; the pool can be made as large as needed. </br></br>
+ *
+ * Stories are made one at a time, so corpora of tens of thousands of
+ * stories can be loaded without holding them all in memory. </br></br>
+ *
+ * Example call: </br>
+ * StoryCorpusGenerator generator = new StoryCorpusGenerator(42); </br>
+ * generator.setChapters(2, 8); </br>
+ * generator.setImages(0.5, 64); </br>
+ * ArrayList&lt;UUID&gt; ids = generator.loadIntoDatabase(someActivity.this,
+ * 		10000); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see BogoPicGen
+ */
+public class StoryCorpusGenerator {
+	/**
+	 * Number of stories inserted in each database transaction.
+	 */
+	public static final int BATCH_SIZE = 200;
+	private static final String[] WORDS = { "the", "a", "and", "of", "to",
+			"in", "was", "he", "she", "it", "you", "that", "his", "her",
+			"they", "with", "on", "at", "door", "house", "night", "king",
+			"forest", "river", "castle", "dragon", "ship", "sword", "moon",
+			"village", "storm", "winter", "garden", "tower", "wolf", "thief",
+			"island", "lantern", "mountain", "cow", "letter", "queen",
+			"shadow", "bridge", "fire", "stranger", "map", "key", "mirror",
+			"crown", "harbour", "desert", "clock", "library", "raven",
+			"orchard", "compass", "glacier", "carnival", "labyrinth" };
+	private static final String[] NAMES = { "Ada", "Bram", "Cleo", "Dev",
+			"Esme", "Finn", "Gus", "Hana", "Ivo", "Juno", "Kai", "Lena",
+			"Milo", "Nia", "Otto", "Pia" };
+
+	private final long seed;
+	private final Random random;
+	private int minChapters = 1;
+	private int maxChapters = 6;
+	private int minChoices = 1;
+	private int maxChoices = 3;
+	private int medianWords = 150;
+	private double wordSpread = 0.6;
+	private double imagesPerChapter = 0;
+	private int imageSize = 64;
+	private String[] imagePool = null;
+	private String[] imageFormats = null;
+	private final Map<String, String> savedPaths =
+			new HashMap<String, String>();
+	private int authors = 200;
+	private String phoneId = "corpus";
+	private int made = 0;
+
+	/**
+	 * Initializes a new StoryCorpusGenerator.
+	 *
+	 * @param seed
+	 * 			Decides everything that is made up.
+	 */
+	public StoryCorpusGenerator(long seed) {
+		this.seed = seed;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Sets how many chapters each story has, picked evenly between min and
+	 * max. 1 to 6 by default.
+	 */
+	public void setChapters(int min, int max) {
+		minChapters = Math.max(1, min);
+		maxChapters = Math.max(minChapters, max);
+	}
+
+	/**
+	 * Sets how many choices lead out of each chapter but the last, picked
+	 * evenly between min and max. 1 to 3 by default.
+	 */
+	public void setBranching(int min, int max) {
+		minChoices = Math.max(1, min);
+		maxChoices = Math.max(minChoices, max);
+	}
+
+	/**
+	 * Sets how long the chapters are.
+	 *
+	 * @param median
+	 * 			Half the chapters are shorter than this many words, and half
+	 * 			are longer. 150 by default.
+	 * @param spread
+	 * 			How much the lengths vary: the standard deviation of their
+	 * 			logarithm. 0 makes every chapter the median length. 0.6 by
+	 * 			default.
+	 */
+	public void setWords(int median, double spread) {
+		medianWords = Math.max(1, median);
+		wordSpread = Math.max(0, spread);
+	}
+
+	/**
+	 * Sets how many images chapters have. None by default.
+	 *
+	 * @param perChapter
+	 * 			Average number of images in a chapter, such as 0.5 for one
+	 * 			image in every other chapter.
+	 * @param size
+	 * 			Width and height of the images, in pixels.
+	 */
+	public void setImages(double perChapter, int size) {
+		imagesPerChapter = Math.max(0, perChapter);
+		imageSize = size;
+		if (imagePool != null) {
+			// the images made so far have the wrong size
+			setImagePool(imagePool.length);
+		}
+	}
+
+	/**
+	 * Sets how many different images are made. The images of the stories
+	 * are picked from them. 16 by default.
+	 */
+	public void setImagePool(int count) {
+		imagePool = new String[Math.max(1, count)];
+		imageFormats = new String[imagePool.length];
+	}
+
+	/**
+	 * Sets how many different authors the stories are by. 200 by default.
+	 */
+	public void setAuthors(int count) {
+		authors = Math.max(1, count);
+	}
+
+	/**
+	 * Sets the phone id of the stories made. Use the id of the phone, from
+	 * Utilities.getPhoneId(), to make them the user's own stories; any other
+	 * makes them stories downloaded from the server. "corpus" by default.
+	 */
+	public void setPhoneId(String phoneId) {
+		this.phoneId = phoneId;
+	}
+
+	/**
+	 * Returns how many stories have been made so far.
+	 */
+	public int getCount() {
+		return made;
+	}
+
+	/**
+	 * Makes up the next story, with all its chapters, choices and images.
+	 * The images only have their bitmapString set, as if the story had
+	 * just been downloaded.
+	 */
+	public Story nextStory() {
+		int n = made++;
+		UUID storyId = nextId();
+		String title = capitalize(pickWord(false)) + " " + pickWord(false);
+		if (random.nextBoolean()) {
+			title = "The " + title;
+		}
+		String author = NAMES[random.nextInt(NAMES.length)] + " "
+				+ (random.nextInt(authors) + 1);
+		Story story = new Story(storyId, title + " " + (n + 1), author,
+				sentence(8 + random.nextInt(12)), phoneId);
+
+		int count = minChapters + random.nextInt(maxChapters - minChapters
+				+ 1);
+		ArrayList<Chapter> chapters = new ArrayList<Chapter>();
+		for (int c = 0; c < count; ++c) {
+			chapters.add(new Chapter(nextId(), storyId, sentence(chapterWords())));
+		}
+		for (int c = 0; c < count; ++c) {
+			Chapter chap = chapters.get(c);
+			if (c < count - 1) {
+				int choices = minChoices + random.nextInt(maxChoices
+						- minChoices + 1);
+				for (int i = 0; i < choices; ++i) {
+					// the first choice goes on, so every chapter is reached
+					Chapter next = i == 0 ? chapters.get(c + 1)
+							: chapters.get(random.nextInt(count));
+					chap.getChoices().add(new Choice(nextId(), chap.getId(),
+							next.getId(), sentence(3 + random.nextInt(6))));
+				}
+			}
+			int images = (int) imagesPerChapter;
+			if (random.nextDouble() < imagesPerChapter - images) {
+				++images;
+			}
+			for (int i = 0; i < images; ++i) {
+				addImage(chap);
+			}
+		}
+		story.setFirstChapterId(chapters.get(0).getId());
+		story.setChapters(chapters);
+		return story;
+	}
+
+	/**
+	 * Makes up the given number of stories.
+	 */
+	public ArrayList<Story> generate(int count) {
+		ArrayList<Story> stories = new ArrayList<Story>(count);
+		for (int i = 0; i < count; ++i) {
+			stories.add(nextStory());
+		}
+		return stories;
+	}
+
+	/**
+	 * Makes up the given number of stories and inserts them into the
+	 * database, in transactions of BATCH_SIZE stories. Images are saved in
+	 * the ImageStore, each image of the pool only once. Returns the ids of
+	 * the stories, in the order they were made. Must not be called on the
+	 * main UI thread.
+	 */
+	public ArrayList<UUID> loadIntoDatabase(Context context, int count) {
+		ArrayList<UUID> ids = new ArrayList<UUID>(count);
+		ArrayList<Story> batch = new ArrayList<Story>(BATCH_SIZE);
+		for (int i = 0; i < count; ++i) {
+			Story story = nextStory();
+			ids.add(story.getId());
+			batch.add(story);
+			if (batch.size() == BATCH_SIZE || i == count - 1) {
+				loadIntoDatabase(context, batch);
+				batch.clear();
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Inserts the stories, with all their chapters, choices and images, into
+	 * the database as a single transaction. Must not be called on the main
+	 * UI thread.
+	 */
+	public void loadIntoDatabase(Context context, Collection<Story> stories) {
+		StoryManager storyMan = StoryManager.getInstance(context);
+		ChapterManager chapMan = ChapterManager.getInstance(context);
+		ChoiceManager choiceMan = ChoiceManager.getInstance(context);
+		MediaManager mediaMan = MediaManager.getInstance(context);
+		ImageStore store = ImageStore.getInstance(context);
+
+		SQLiteDatabase db = DBHelper.getInstance(context)
+				.getWritableDatabase();
+		db.beginTransaction();
+		try {
+			for (Story story : stories) {
+				storyMan.insert(story);
+				for (Chapter chap : story.getChapters()) {
+					chapMan.insert(chap);
+					for (Choice choice : chap.getChoices()) {
+						choiceMan.insert(choice);
+					}
+					ArrayList<Media> medias = new ArrayList<Media>(
+							chap.getPhotos());
+					medias.addAll(chap.getIllustrations());
+					for (Media media : medias) {
+						media.setPath(savedPath(store, media));
+						mediaMan.insert(media);
+					}
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+		}
+	}
+
+	/**
+	 * Makes up the given number of stories and puts them in the repository,
+	 * usually an InMemoryStoryRepository standing in for the server. Images
+	 * stay in the stories, in their bitmapString. Returns the ids of the
+	 * stories, in the order they were made.
+	 */
+	public ArrayList<UUID> loadInto(StoryRepository repository, int count)
+			throws IOException {
+		ArrayList<UUID> ids = new ArrayList<UUID>(count);
+		for (int i = 0; i < count; ++i) {
+			Story story = nextStory();
+			ids.add(story.getId());
+			repository.put(story, null);
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns a random id, made from the seed. Its bits are set like those
+	 * of UUID.randomUUID(), so it is a valid version 4 UUID.
+	 */
+	private UUID nextId() {
+		long most = (random.nextLong() & ~0xf000L) | 0x4000L;
+		long least = (random.nextLong() & 0x3fffffffffffffffL)
+				| 0x8000000000000000L;
+		return new UUID(most, least);
+	}
+
+	/**
+	 * Returns the number of words of a chapter, from the log-normal
+	 * distribution of setWords().
+	 */
+	private int chapterWords() {
+		double words = medianWords * Math.exp(wordSpread
+				* random.nextGaussian());
+		return (int) Math.max(1, Math.min(words, 20.0 * medianWords));
+	}
+
+	/**
+	 * Returns a word, the ones early in WORDS much more often than the ones
+	 * late in it. How often a word is picked falls with the square root of
+	 * its position, so a word is picked about half as often as the word at
+	 * a quarter of its position (the 40th half as often as the 10th).
+	 *
+	 * @param common
+	 * 			False to leave out the small common words ("the", "and",
+	 * 			...), as for titles.
+	 */
+	private String pickWord(boolean common) {
+		double r = random.nextDouble();
+		int start = common ? 0 : 18;
+		int range = WORDS.length - start;
+		return WORDS[start + (int) (range * r * r)];
+	}
+
+	private String sentence(int words) {
+		StringBuilder text = new StringBuilder(words * 6);
+		for (int i = 0; i < words; ++i) {
+			if (i > 0) {
+				text.append(' ');
+			}
+			String word = pickWord(random.nextInt(3) > 0);
+			text.append(i == 0 ? capitalize(word) : word);
+		}
+		return text.append('.').toString();
+	}
+
+	private static String capitalize(String word) {
+		return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+	}
+
+	/**
+	 * Adds an image from the pool to the chapter, as a photo with a comment
+	 * or as an illustration.
+	 */
+	private void addImage(Chapter chap) {
+		if (imagePool == null) {
+			setImagePool(16);
+		}
+		int index = random.nextInt(imagePool.length);
+		Media media;
+		if (random.nextBoolean()) {
+			media = new Media(nextId(), chap.getId(), null, Media.PHOTO,
+					sentence(2 + random.nextInt(5)));
+			chap.getPhotos().add(media);
+		} else {
+			media = new Media(nextId(), chap.getId(), null,
+					Media.ILLUSTRATION, "");
+			chap.getIllustrations().add(media);
+		}
+		if (imagePool[index] == null) {
+			// each image has its own seed, so the pool is the same however
+			// many of it are used
+			Media image = new Media(null, null, null, null);
+			ImagePolicy.PUBLISH.encode(BogoPicGen.generateBitmap(imageSize,
+					imageSize, new Random(seed * 31 + index)), image);
+			imagePool[index] = image.getBitmapString();
+			imageFormats[index] = image.getFormat();
+		}
+		media.setBitmapString(imagePool[index]);
+		media.setFormat(imageFormats[index]);
+	}
+
+	/**
+	 * Returns the path of the media's image in the store, saving it the
+	 * first time that image is needed.
+	 */
+	private String savedPath(ImageStore store, Media media) {
+		String path = savedPaths.get(media.getBitmapString());
+		if (path == null) {
+			path = store.put(media.getBitmapString(), media.getFormat());
+			savedPaths.put(media.getBitmapString(), path);
+		}
+		return path;
+	}
+}
@@ -0,0 +1,290 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.local;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.local.DBContract.StoryTable;
+
+/**
+ * Role: Keeps the title, author and description of every story saved on the
+ * phone in memory, indexed by the words in them, so that stories can be
+ * suggested while the user is still typing a search without going to the
+ * database for every key pressed. </br></br>
+ *
+ * A story matches if every word searched for is the start of a word in its
+ * title, author or description ("har pot" matches "Harry Potter"). Words
+ * found in the title count for more than words found in the author, which
+ * count for more than words in the description, like on the server (see
+ * StoryQuery). </br></br>
+ *
+ * The index is read from the database the first time it is needed, by
+ * load(), which should be called off the main UI thread. StoryManager
+ * calls invalidate() whenever a story is saved, and the index is read
+ * again the next time it is needed. search() itself only looks in memory,
+ * so it is fast enough to call on the main UI thread once the index is
+ * loaded. </br></br>
+ *
+ * Example call: </br>
+ * StoryIndex index = StoryIndex.getInstance(someActivity.this); </br>
+ * index.load(); // on a background thread </br>
+ * ArrayList<Story> stories = index.search("har pot", true, 10); </br>
+ *
+ * Design Pattern: Singleton
+ *
+ * @author Stephanie Gil
+ *
+ * @see StoryManager
+ */
+public class StoryIndex {
+	private static final int TITLE_WEIGHT = 3;
+	private static final int AUTHOR_WEIGHT = 2;
+	private static final int DESCRIPTION_WEIGHT = 1;
+	private static StoryIndex self = null;
+	private final DBHelper helper;
+	private final String phoneId;
+	private ArrayList<Story> stories = null;
+	private TreeMap<String, ArrayList<int[]>> words = null;
+	private int generation = 0;
+
+	protected StoryIndex(Context context) {
+		helper = DBHelper.getInstance(context);
+		phoneId = Utilities.getPhoneId(context);
+	}
+
+	/**
+	 * Returns the one instance of StoryIndex.
+	 *
+	 * @param context
+	 */
+	public static synchronized StoryIndex getInstance(Context context) {
+		if (self == null) {
+			self = new StoryIndex(context);
+		}
+		return self;
+	}
+
+	/**
+	 * Returns whether the index is ready, so search() can be called without
+	 * reading the database.
+	 */
+	public synchronized boolean isLoaded() {
+		return stories != null;
+	}
+
+	/**
+	 * Forgets the index, so that it is read again from the database the
+	 * next time it is needed. Called whenever a story is saved.
+	 */
+	public synchronized void invalidate() {
+		stories = null;
+		words = null;
+		++generation;
+	}
+
+	/**
+	 * Reads the stories from the database and indexes them, if that hasn't
+	 * been done since the last invalidate(). Reads the database directly
+	 * rather than through StoryManager, so it can be called from any thread.
+	 */
+	public void load() {
+		int loading;
+		synchronized (this) {
+			if (stories != null) {
+				return;
+			}
+			loading = generation;
+		}
+		ArrayList<Story> loaded = new ArrayList<Story>();
+		SQLiteDatabase db = helper.getReadableDatabase();
+		Cursor cursor = db.query(StoryTable.TABLE_NAME, new String[] {
+				StoryTable.COLUMN_NAME_STORY_ID,
+				StoryTable.COLUMN_NAME_TITLE,
+				StoryTable.COLUMN_NAME_AUTHOR,
+				StoryTable.COLUMN_NAME_DESCRIPTION,
+				StoryTable.COLUMN_NAME_FIRST_CHAPTER,
+				StoryTable.COLUMN_NAME_PHONE_ID }, null, null, null, null,
+				null);
+		try {
+			while (cursor.moveToNext()) {
+				String firstChap = cursor.getString(4);
+				loaded.add(new Story(cursor.getString(0), cursor.getString(1),
+						cursor.getString(2), cursor.getString(3),
+						firstChap == null ? null : UUID.fromString(firstChap),
+						cursor.getString(5)));
+			}
+		} finally {
+			cursor.close();
+		}
+
+		TreeMap<String, ArrayList<int[]>> index =
+				new TreeMap<String, ArrayList<int[]>>();
+		for (int i = 0; i < loaded.size(); ++i) {
+			Story story = loaded.get(i);
+			add(index, story.getTitle(), i, TITLE_WEIGHT);
+			add(index, story.getAuthor(), i, AUTHOR_WEIGHT);
+			add(index, story.getDescription(), i, DESCRIPTION_WEIGHT);
+		}
+		synchronized (this) {
+			// a story saved while reading makes what was read out of date
+			if (loading == generation) {
+				stories = loaded;
+				words = index;
+			}
+		}
+	}
+
+	/**
+	 * Returns the stories matching the text, best matches first. Only looks
+	 * at the stories created on this phone, or only at the ones downloaded
+	 * from the server. Loads the index first if it isn't already.
+	 *
+	 * @param text
+	 * 			The words being searched for. If there are none, nothing
+	 * 			matches.
+	 * @param authors
+	 * 			True to search the user's own stories, false to search the
+	 * 			stories downloaded.
+	 * @param max
+	 * 			Most stories to return.
+	 */
+	public ArrayList<Story> search(String text, boolean authors, int max) {
+		load();
+		List<String> query = split(text);
+		ArrayList<Story> results = new ArrayList<Story>();
+		if (query.isEmpty()) {
+			return results;
+		}
+
+		final ArrayList<Story> all;
+		final Map<Integer, Integer> scores;
+		synchronized (this) {
+			if (stories == null) {
+				return results;
+			}
+			all = stories;
+			scores = score(query);
+		}
+
+		ArrayList<Integer> found = new ArrayList<Integer>();
+		for (Integer i : scores.keySet()) {
+			boolean own = phoneId.equals(all.get(i).getPhoneId());
+			if (own == authors) {
+				found.add(i);
+			}
+		}
+		Collections.sort(found, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int byScore = scores.get(b) - scores.get(a);
+				if (byScore != 0) {
+					return byScore;
+				}
+				return title(all.get(a)).compareTo(title(all.get(b)));
+			}
+		});
+		for (int i = 0; i < found.size() && i < max; ++i) {
+			results.add(all.get(found.get(i)));
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the score of every story matching all of the words, by its
+	 * position in stories. For each word, a story scores the weight of the
+	 * best field it is found in.
+	 */
+	private Map<Integer, Integer> score(List<String> query) {
+		Map<Integer, Integer> total = null;
+		for (String word : query) {
+			Map<Integer, Integer> best = new HashMap<Integer, Integer>();
+			for (Map.Entry<String, ArrayList<int[]>> entry : words.tailMap(
+					word).entrySet()) {
+				if (!entry.getKey().startsWith(word)) {
+					break;
+				}
+				for (int[] posting : entry.getValue()) {
+					Integer score = best.get(posting[0]);
+					if (score == null || score < posting[1]) {
+						best.put(posting[0], posting[1]);
+					}
+				}
+			}
+			if (total == null) {
+				total = best;
+				continue;
+			}
+			Map<Integer, Integer> both = new HashMap<Integer, Integer>();
+			for (Map.Entry<Integer, Integer> entry : total.entrySet()) {
+				Integer score = best.get(entry.getKey());
+				if (score != null) {
+					both.put(entry.getKey(), entry.getValue() + score);
+				}
+			}
+			total = both;
+		}
+		return total;
+	}
+
+	/**
+	 * Indexes the words of one field of a story.
+	 */
+	private static void add(TreeMap<String, ArrayList<int[]>> index,
+			String field, int story, int weight) {
+		for (String word : split(field)) {
+			ArrayList<int[]> postings = index.get(word);
+			if (postings == null) {
+				postings = new ArrayList<int[]>();
+				index.put(word, postings);
+			}
+			postings.add(new int[] { story, weight });
+		}
+	}
+
+	/**
+	 * Splits text into lower case words, dropping punctuation.
+	 */
+	private static List<String> split(String text) {
+		ArrayList<String> split = new ArrayList<String>();
+		if (text == null) {
+			return split;
+		}
+		for (String word : text.toLowerCase(Locale.ENGLISH).split(
+				"[^\\p{L}\\p{N}]+")) {
+			if (word.length() > 0) {
+				split.add(word);
+			}
+		}
+		return split;
+	}
+
+	private static String title(Story story) {
+		return story.getTitle() == null ? "" : story.getTitle();
+	}
+}
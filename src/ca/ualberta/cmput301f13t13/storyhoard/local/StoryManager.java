@@ -50,6 +50,7 @@ import ca.ualberta.cmput301f13t13.storyhoard.local.DBContract.StoryTable;
  */
 public class StoryManager extends StoringManager<Story> {
 	private static DBHelper helper = null;
+	private static StoryIndex index = null;
 	private static StoryManager self = null;
 	private static String phoneId = null;
 	protected ContentValues values;
@@ -70,6 +71,7 @@ public class StoryManager extends StoringManager<Story> {
 	 */
 	protected StoryManager(Context context) {
 		helper = DBHelper.getInstance(context);
+		index = StoryIndex.getInstance(context);
 		phoneId = Utilities.getPhoneId(context);
 	}
 
@@ -107,9 +109,12 @@ public class StoryManager extends StoringManager<Story> {
 	 */
 	@Override
 	public void insert(Story story) {
+		long start = Metrics.start();
 		SQLiteDatabase db = helper.getWritableDatabase();
 		setContentValues(story);
 		db.insert(StoryTable.TABLE_NAME, null, values);
+		index.invalidate();
+		Metrics.time("db.story.insert", start);
 	}
 
 	/**
@@ -131,6 +136,7 @@ public class StoryManager extends StoringManager<Story> {
 	 */
 	@Override
 	public void update(Story newStory) {
+		long start = Metrics.start();
 		setContentValues(newStory);
 		Story newS = (Story) newStory;
 		selection = StoryTable.COLUMN_NAME_STORY_ID + " LIKE ?";
@@ -138,6 +144,8 @@ public class StoryManager extends StoringManager<Story> {
 		SQLiteDatabase db = helper.getReadableDatabase();
 		db.update(StoryTable.TABLE_NAME, values, selection, 
 				sArgs);	
+		index.invalidate();
+		Metrics.time("db.story.update", start);
 	}
 
 	/**
@@ -174,6 +182,7 @@ public class StoryManager extends StoringManager<Story> {
 	 */
 	@Override
 	public ArrayList<Story> retrieve(Story criteria) {
+		long start = Metrics.start();
 		ArrayList<Story> results = new ArrayList<Story>();
 		SQLiteDatabase db = helper.getReadableDatabase();
 		setUpSearch(criteria);
@@ -204,6 +213,7 @@ public class StoryManager extends StoringManager<Story> {
 			cursor.moveToNext();
 		}
 		cursor.close();
+		Metrics.time("db.story.retrieve", start);
 		return results;
 	}
 	
@@ -24,6 +24,7 @@ import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Choice;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.serverClasses.TransferProgress;
 
 /**
  * Role: uses all of the manager classes to "sync" stories. For example,  
@@ -43,6 +44,8 @@ public class Syncher {
 	private static ChapterManager chapMan = null;
 	private static MediaManager mediaMan = null;
 	private static ChoiceManager choiceMan = null;
+	private static MediaPipeline pipeline = null;
+	private static ImageStore store = null;
 	private static Syncher self = null;
 
 	protected Syncher(Context context) {
@@ -50,6 +53,8 @@ public class Syncher {
 		chapMan = ChapterManager.getInstance(context);
 		mediaMan = MediaManager.getInstance(context);
 		choiceMan = ChoiceManager.getInstance(context);
+		pipeline = MediaPipeline.getInstance(context);
+		store = ImageStore.getInstance(context);
 	}
 
 	/**
@@ -88,11 +93,13 @@ public class Syncher {
 	 * 			Story object that is gotten locally you want to sync.
 	 */	
 	public void syncStoryFromMemory(Story story) {
+		long start = Metrics.start();
 		storyMan.sync(story, story.getId());
 		for (Chapter chap : story.getChapters()) {
 			syncChapterParts(chap);
 			chapMan.sync(chap, chap.getId());
 		}
+		Metrics.time("sync.fromMemory", start);
 	}	
 
 	/**
@@ -112,6 +119,7 @@ public class Syncher {
 	 * 			Chapter object you want to sync.
 	 */
 	public void syncChapterParts(Chapter chap) {
+		long start = Metrics.start();
 		ArrayList<UUID> medias = new ArrayList<UUID>();
 
 		for (Media photo : chap.getPhotos()) {
@@ -126,6 +134,7 @@ public class Syncher {
 			choiceMan.sync(choice, choice.getId());
 		}
 		mediaMan.syncDeletions(medias, chap.getId());
+		Metrics.time("sync.chapterParts", start);
 	}		
 	
 	/**
@@ -133,7 +142,14 @@ public class Syncher {
 	 * database. This includes all the parts of a story (chapter, and choices 
 	 * and media belonging to the chapters). As well, it saves the bitmaps 
 	 * of all the images contained in its chapters to the SD card so the 
-	 * user who downloaded the story can use those images as well. </br></br>
+	 * user who downloaded the story can use those images as well. The images
+	 * are written to the SD card exactly as they came from the server, 
+	 * without being decoded into bitmaps and compressed again. </br></br>
+	 * 
+	 * The images are saved in parallel by the MediaPipeline, and all the 
+	 * database writes are done in batches on its writer thread once every 
+	 * image has been saved. This method returns once everything has been 
+	 * saved, so it must not be called on the main UI thread. </br></br>
 	 * 
 	 * Example call: </br>
 	 * Assume myStory is a story downloaded from the server (a story downloaded 
@@ -149,28 +165,141 @@ public class Syncher {
 	 * 			Story object that came from the server you want to save locally.
 	 */
 	public void syncStoryFromServer(Story story) {
-		ArrayList<UUID> medias = new ArrayList<UUID>();
-		storyMan.sync(story, story.getId());
+		syncStoryFromServer(story, null);
+	}
 
+	/**
+	 * Same as syncStoryFromServer(story), but counts the images and bytes 
+	 * saved in the given progress. </br></br>
+	 * 
+	 * If the progress is cancelled while the images are being saved, the 
+	 * images left are skipped and false is returned. Nothing is written to 
+	 * the database until every image has been saved, so a cancelled download
+	 * leaves the database (and any version of the story already on the 
+	 * phone) as it was. The images already saved aren't used by anything, 
+	 * and are deleted by a later ImageStore.collectGarbage(). </br></br>
+	 * 
+	 * False is also returned, before anything is written to the database, 
+	 * if an image can't be saved (or didn't come with the story). It is 
+	 * also returned if the database writes fail. The batch that 
+	 * failed is rolled back, but batches saved before it stay, so the story 
+	 * should be downloaded again (which writes over them). </br></br>
+	 * 
+	 * @param story
+	 * 			Story object that came from the server you want to save locally.
+	 * @param progress
+	 * 			Receives the progress, and can cancel the download. May be 
+	 * 			null.
+	 * @return True if the whole story was saved, false if the download was 
+	 * 			cancelled or the story couldn't be saved.
+	 */
+	public boolean syncStoryFromServer(final Story story,
+			final TransferProgress progress) {
+		long start = Metrics.start();
+		ArrayList<Media> allMedias = new ArrayList<Media>();
+		long bytes = 0;
 		for (Chapter chap : story.getChapters()) {
-			for (Media photo : chap.getPhotos()) {
-				medias.add(photo.getId());
-				String path = Utilities.saveImageToSD(photo.getBitmapFromString());
-				photo.setPath(path);
-				mediaMan.sync(photo, photo.getId());
+			allMedias.addAll(chap.getPhotos());
+			allMedias.addAll(chap.getIllustrations());
+		}
+		for (Media media : allMedias) {
+			bytes += decodedLength(media);
+		}
+		Metrics.record("sync.fromServer.images", allMedias.size());
+		Metrics.record("sync.fromServer.bytes", bytes);
+		if (progress != null) {
+			progress.startItems("image", allMedias.size());
+			progress.startBytes(bytes);
+		}
+
+		// images are saved in parallel
+		int failed = pipeline.forEach(allMedias, "save", 
+				new MediaPipeline.Stage() {
+			@Override
+			public void run(Media media) {
+				if (progress != null && progress.isCancelled()) {
+					return;
+				}
+				String base64 = media.getBitmapString();
+				if (base64 == null || base64.length() == 0) {
+					throw new IllegalStateException("No image for media "
+							+ media.getId());
+				}
+				// the same image always gets the same file, so caching a 
+				// story again doesn't use any more space
+				String path = store.put(base64, media.getFormat());
+				if (path == null) {
+					throw new IllegalStateException("Could not save image of "
+							+ "media " + media.getId());
+				}
+				media.setPath(path);
+				if (progress != null) {
+					progress.itemDone();
+					progress.addBytes(decodedLength(media));
+				}
 			}
-			for (Media ill : chap.getIllustrations()) {
-				String path = Utilities.saveImageToSD(ill.getBitmapFromString());
-				ill.setPath(path);
-				medias.add(ill.getId());
-				mediaMan.sync(ill, ill.getId());
+		}, null);
+		Metrics.time("sync.fromServer.save", start);
+		if (progress != null && progress.isCancelled()) {
+			Metrics.count("sync.fromServer.cancelled");
+			return false;
+		}
+		if (failed > 0) {
+			Metrics.count("sync.fromServer.failed");
+			return false;
+		}
+
+		pipeline.write(new Runnable() {
+			@Override
+			public void run() {
+				storyMan.sync(story, story.getId());
 			}
-			for (Choice choice : chap.getChoices()) {
-				choiceMan.sync(choice, choice.getId());
+		});
+		for (final Chapter chap : story.getChapters()) {
+			final ArrayList<UUID> medias = new ArrayList<UUID>();
+			for (Media media : chap.getPhotos()) {
+				medias.add(media.getId());
 			}
-			chapMan.sync(chap, chap.getId());
-			mediaMan.syncDeletions(medias, chap.getId());
+			for (Media media : chap.getIllustrations()) {
+				medias.add(media.getId());
+			}
+			pipeline.write(new Runnable() {
+				@Override
+				public void run() {
+					for (Choice choice : chap.getChoices()) {
+						choiceMan.sync(choice, choice.getId());
+					}
+					chapMan.sync(chap, chap.getId());
+					for (Media media : chap.getPhotos()) {
+						mediaMan.sync(media, media.getId());
+					}
+					for (Media media : chap.getIllustrations()) {
+						mediaMan.sync(media, media.getId());
+					}
+					mediaMan.syncDeletions(medias, chap.getId());
+				}
+			});
+		}
+		if (!pipeline.finishWrites()) {
+			Metrics.count("sync.fromServer.failed");
+			return false;
+		}
+		// images this story doesn't use anymore
+		store.collectGarbage();
+		Metrics.time("sync.fromServer", start);
+		return true;
+	}
+
+	/**
+	 * Returns about how many bytes the media's image takes once decoded from
+	 * its bitmapString (3 for every 4 characters).
+	 */
+	private static long decodedLength(Media media) {
+		String base64 = media.getBitmapString();
+		if (base64 == null) {
+			return 0;
 		}
+		return base64.length() / 4L * 3;
 	}
 
 	/**
@@ -191,6 +320,7 @@ public class Syncher {
 	 * 			be a UUID.
 	 */
 	public ArrayList<Chapter> syncChaptersFromDb(UUID storyId) {
+		long start = Metrics.start();
 		ArrayList<Chapter> chaps = chapMan.getChaptersByStory(storyId);
 		ArrayList<Chapter> fullChaps = new ArrayList<Chapter>();
 		
@@ -203,6 +333,7 @@ public class Syncher {
 					chap.getId(), null, Media.PHOTO, "")));	
 			fullChaps.add(chap);
 		}
+		Metrics.time("sync.chaptersFromDb", start);
 		return fullChaps;
 	}	
 }
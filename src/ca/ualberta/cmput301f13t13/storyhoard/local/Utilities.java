@@ -20,6 +20,10 @@ package ca.ualberta.cmput301f13t13.storyhoard.local;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
 
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
 
@@ -72,8 +76,7 @@ public class Utilities {
 	        }
 	
 	        String imageFilePath;
-	        imageFilePath = folder + "/"
-	                                + String.valueOf(System.currentTimeMillis()) + ".jpg";
+	        imageFilePath = folder + "/" + UUID.randomUUID() + ".jpg";
 	        File imageFile = new File(imageFilePath);
 	
 	        FileOutputStream fout;
@@ -89,6 +92,61 @@ public class Utilities {
 	        
 	        return imageFilePath;
 	}	
+	/**
+	 * Returns a new SHA-1 digest. Every phone has SHA-1, so not having it
+	 * is thrown as a RuntimeException rather than handled by each caller.
+	 */
+	public static MessageDigest newSha1() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Finishes a digest from newSha1() (which resets it), and returns the 
+	 * hash in hexadecimal. This is how images, files sent to the server and
+	 * cached queries are all named. </br></br>
+	 * 
+	 * Example call: </br>
+	 * MessageDigest digest = Utilities.newSha1(); </br>
+	 * ... write through a DigestOutputStream ... </br>
+	 * String name = Utilities.sha1Hex(digest) + ".jpg";
+	 */
+	public static String sha1Hex(MessageDigest digest) {
+		byte[] bytes = digest.digest();
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Returns the SHA-1 hash of the bytes, in hexadecimal.
+	 */
+	public static String sha1Hex(byte[] bytes) {
+		MessageDigest digest = newSha1();
+		digest.update(bytes);
+		return sha1Hex(digest);
+	}
+
+	/**
+	 * Returns the SHA-1 hash of everything left in the stream, in 
+	 * hexadecimal. The stream is not closed.
+	 */
+	public static String sha1Hex(InputStream in) throws IOException {
+		MessageDigest digest = newSha1();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			digest.update(buffer, 0, read);
+		}
+		return sha1Hex(digest);
+	}
+
 	/**
 	 * Returns if the publish story is the users. </br></br>
 	 * 
@@ -0,0 +1,180 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.io.IOException;
+
+import ca.ualberta.cmput301f13t13.storyhoard.local.Metrics;
+
+/**
+ * Role: Keeps track of whether the server is answering, so that requests
+ * fail straight away while it is down instead of each one waiting for a
+ * timeout. </br></br>
+ *
+ * The breaker starts CLOSED, and every request is let through. After
+ * MAX_FAILURES requests in a row have failed, it OPENs, and requests are
+ * refused with a ServerUnavailableException without being sent. Once
+ * OPEN_MS have passed, it is HALF_OPEN: one request is let through to see
+ * if the server is back. If it succeeds the breaker closes again; if it
+ * fails the breaker opens for another OPEN_MS. </br></br>
+ *
+ * ESClient keeps the one breaker shared by every request. The user
+ * interface can ask ServerManager.isServerAvailable() to go straight to
+ * what is saved on the phone while the server is down. </br></br>
+ *
+ * Example call: </br>
+ * breaker.allowRequest(); // throws if the server is down </br>
+ * try { </br>
+ * 		send(); </br>
+ * 		breaker.recordSuccess(); </br>
+ * } catch (IOException e) { </br>
+ * 		breaker.recordFailure(); </br>
+ * } </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see ESClient
+ */
+public class CircuitBreaker {
+	public static final int MAX_FAILURES = 3;
+	public static final long OPEN_MS = 30 * 1000;
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	};
+
+	/**
+	 * Thrown instead of sending a request while the breaker is open.
+	 */
+	public static class ServerUnavailableException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public ServerUnavailableException(long retryInMs) {
+			super("Server unavailable, retrying in " + retryInMs + " ms");
+		}
+	}
+
+	private final int maxFailures;
+	private final long openMs;
+	private int failures = 0;
+	private long openedAt = 0;
+	private boolean open = false;
+	private boolean trying = false;
+
+	public CircuitBreaker() {
+		this(MAX_FAILURES, OPEN_MS);
+	}
+
+	/**
+	 * Initializes a new CircuitBreaker.
+	 *
+	 * @param maxFailures
+	 * 			Failures in a row that open the breaker.
+	 * @param openMs
+	 * 			How long the breaker stays open before trying again.
+	 */
+	public CircuitBreaker(int maxFailures, long openMs) {
+		this.maxFailures = maxFailures;
+		this.openMs = openMs;
+	}
+
+	/**
+	 * Returns the state of the breaker, without changing it.
+	 */
+	public synchronized State getState() {
+		if (!open) {
+			return State.CLOSED;
+		}
+		if (trying || now() - openedAt < openMs) {
+			return State.OPEN;
+		}
+		return State.HALF_OPEN;
+	}
+
+	/**
+	 * Returns whether a request would be let through right now.
+	 */
+	public boolean isAvailable() {
+		return getState() != State.OPEN;
+	}
+
+	/**
+	 * Returns normally if a request may be sent, or throws if the breaker is
+	 * open. When half open, only the first request is let through, and the
+	 * others are refused until it has succeeded or failed.
+	 */
+	public synchronized void allowRequest() throws ServerUnavailableException {
+		State state = getState();
+		if (state == State.OPEN) {
+			long waited = now() - openedAt;
+			throw new ServerUnavailableException(Math.max(0, openMs - waited));
+		}
+		if (state == State.HALF_OPEN) {
+			trying = true;
+		}
+	}
+
+	/**
+	 * Called when the server answered.
+	 */
+	public synchronized void recordSuccess() {
+		failures = 0;
+		open = false;
+		trying = false;
+	}
+
+	/**
+	 * Called when the server could not be reached, or didn't answer in
+	 * time.
+	 */
+	public synchronized void recordFailure() {
+		++failures;
+		if (trying || failures >= maxFailures) {
+			if (!open || trying) {
+				Metrics.count("breaker.opened");
+			}
+			open = true;
+			openedAt = now();
+		}
+		trying = false;
+	}
+
+	/**
+	 * Called when a request let through ended without saying anything
+	 * about the server, for example because it was cancelled.
+	 */
+	public synchronized void recordIgnored() {
+		trying = false;
+	}
+
+	/**
+	 * Closes the breaker, forgetting every failure.
+	 */
+	public synchronized void reset() {
+		recordSuccess();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "CircuitBreaker: " + getState() + ", " + failures
+				+ " failures in a row";
+	}
+
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,439 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+
+import ca.ualberta.cmput301f13t13.storyhoard.local.Metrics;
+
+/**
+ * Role: Creates the one HttpClient shared by ESRetrieval and ESUpdates. A
+ * plain DefaultHttpClient can only be used by one thread at a time, but
+ * the ServerManager runs several requests at once on its I/O threads, so
+ * the shared client uses a thread safe connection pool with enough
+ * connections for all of them. </br></br>
+ *
+ * Story documents are large and repetitive, so the client asks the server
+ * to compress its responses with gzip or deflate, and decompresses them
+ * as they are read (see InflatingEntity). Request bodies can be compressed
+ * as well with compress(), once setCompressRequests(true) has been called;
+ * this is off by default, since not every server accepts compressed 
+ * requests. </br></br>
+ *
+ * Every request is sent with execute(), which keeps a dead or slow server
+ * from holding up the application: </br>
+ * - Each kind of Operation has its own timeouts for connecting and for
+ * waiting on the server, and reads have a deadline for the whole call.
+ * </br>
+ * - Reads, which can safely be sent twice, are tried again after a
+ * failure, waiting a random time that doubles with each try so phones
+ * don't all retry at once, as long as the deadline allows. </br>
+ * - A CircuitBreaker shared by every request notices when the server keeps
+ * failing, and refuses requests straight away until it is back. </br></br>
+ *
+ * While the Metrics are on, every call is timed under a name made from its
+ * method and what it asks for (for example "es.post._search" or
+ * "es.get.doc"), the status of every response is counted (for example
+ * "es.status.200"), and the size of the bodies sent and received is
+ * recorded in "es.bytes.out" and "es.bytes.in". The bodies themselves are
+ * only printed out if setLogPayloads(true) was called. </br></br>
+ *
+ * Design Pattern: Singleton
+ *
+ * @author Stephanie Gil
+ *
+ * @see ESRetrieval
+ * @see ESUpdates
+ */
+public class ESClient {
+	/**
+	 * Maximum number of open connections to the server. Matches the number of
+	 * I/O threads in ServerManager so no thread waits for a connection.
+	 */
+	static final int MAX_CONNECTIONS = 4;
+	static final String ACCEPT_ENCODING = "gzip, deflate";
+	private static final long BASE_BACKOFF_MS = 250;
+	private static final long MAX_BACKOFF_MS = 4000;
+	private static final Random jitter = new Random();
+	private static HttpClient httpclient = null;
+	private static CircuitBreaker breaker = null;
+	private static boolean compressRequests = false;
+	private static volatile boolean logPayloads = false;
+
+	/**
+	 * How long a kind of request may take, and how many times it is tried.
+	 */
+	public static final class Operation {
+		/**
+		 * Searches and other reads. They can be sent again, so they are
+		 * tried up to three times within 20 seconds.
+		 */
+		public static final Operation READ = new Operation(5000, 10000,
+				20000, 3);
+
+		/**
+		 * Publishing and removing stories. Sent once, and given longer to
+		 * answer since the server has to store a whole story. There is no
+		 * deadline, so large stories can still be sent over a slow network
+		 * as long as the server keeps answering.
+		 */
+		public static final Operation WRITE = new Operation(5000, 30000, 0, 1);
+
+		final int connectMs;
+		final int readMs;
+		final long deadlineMs;
+		final int tries;
+
+		/**
+		 * Initializes a new Operation.
+		 *
+		 * @param connectMs
+		 * 			Longest wait for a connection.
+		 * @param readMs
+		 * 			Longest wait for the server between two pieces of data.
+		 * @param deadlineMs
+		 * 			Longest time for all the tries together, or 0 for none.
+		 * @param tries
+		 * 			Most times the request is sent.
+		 */
+		public Operation(int connectMs, int readMs, long deadlineMs,
+				int tries) {
+			this.connectMs = connectMs;
+			this.readMs = readMs;
+			this.deadlineMs = deadlineMs;
+			this.tries = tries;
+		}
+	}
+
+	protected ESClient() {
+	}
+
+	/**
+	 * Returns the shared HttpClient, creating it the first time it is asked
+	 * for.
+	 */
+	public static synchronized HttpClient getHttpClient() {
+		if (httpclient == null) {
+			HttpParams params = new BasicHttpParams();
+			ConnManagerParams.setMaxTotalConnections(params, MAX_CONNECTIONS);
+			ConnManagerParams.setMaxConnectionsPerRoute(params,
+					new ConnPerRouteBean(MAX_CONNECTIONS));
+
+			SchemeRegistry registry = new SchemeRegistry();
+			registry.register(new Scheme("http", PlainSocketFactory
+					.getSocketFactory(), 80));
+
+			ClientConnectionManager manager = new ThreadSafeClientConnManager(
+					params, registry);
+			DefaultHttpClient client = new DefaultHttpClient(manager, params);
+			client.addRequestInterceptor(new HttpRequestInterceptor() {
+				@Override
+				public void process(HttpRequest request, HttpContext context)
+						throws HttpException, IOException {
+					if (!request.containsHeader("Accept-Encoding")) {
+						request.addHeader("Accept-Encoding", ACCEPT_ENCODING);
+					}
+					if (Metrics.isEnabled()
+							&& request instanceof HttpEntityEnclosingRequest) {
+						HttpEntityEnclosingRequest sent = 
+								(HttpEntityEnclosingRequest) request;
+						if (sent.getEntity() != null && !(sent.getEntity() 
+								instanceof MeteredEntity)) {
+							sent.setEntity(new MeteredEntity(sent.getEntity(),
+									"es.bytes.out"));
+						}
+					}
+				}
+			});
+			client.addResponseInterceptor(new HttpResponseInterceptor() {
+				@Override
+				public void process(HttpResponse response, HttpContext context)
+						throws HttpException, IOException {
+					if (Metrics.isEnabled() && response.getEntity() != null) {
+						response.setEntity(new MeteredEntity(
+								response.getEntity(), "es.bytes.in"));
+					}
+					inflate(response);
+				}
+			});
+			httpclient = client;
+		}
+		return httpclient;
+	}
+
+	/**
+	 * Returns the breaker shared by every request to the server.
+	 */
+	public static synchronized CircuitBreaker getCircuitBreaker() {
+		if (breaker == null) {
+			breaker = new CircuitBreaker();
+		}
+		return breaker;
+	}
+
+	/**
+	 * Sends a request with the timeouts, retries and circuit breaker of the
+	 * operation (see above), and returns the response once its status and
+	 * headers have arrived. The request is attached to the ServerTask
+	 * running it, so it can be cancelled. A request that was aborted is 
+	 * never tried again, and doesn't count as a failure of the server.
+	 * </br></br>
+	 * 
+	 * Only the server being unreachable, too slow, or answering 502, 503 or
+	 * 504 (the server or something in front of it is down) count as 
+	 * failures. Any other answer, even an error, means the server is up.
+	 * </br></br>
+	 * 
+	 * Example call: </br>
+	 * HttpResponse response = ESClient.execute(getRequest, 
+	 * 		ESClient.Operation.READ); </br>
+	 * 
+	 * @param request
+	 * 			The request to send. Its entity, if it has one, must be
+	 * 			repeatable for it to be tried more than once.
+	 * @param op
+	 * 			The kind of request.
+	 * @throws CircuitBreaker.ServerUnavailableException
+	 * 			If the server is known to be down.
+	 */
+	static HttpResponse execute(HttpRequestBase request, Operation op)
+			throws IOException {
+		long start = Metrics.start();
+		try {
+			HttpResponse response = send(request, op);
+			if (Metrics.isEnabled()) {
+				Metrics.count("es.status." 
+						+ response.getStatusLine().getStatusCode());
+			}
+			return response;
+		} catch (CircuitBreaker.ServerUnavailableException e) {
+			Metrics.count("es.refused");
+			throw e;
+		} catch (IOException e) {
+			Metrics.count("es.failed");
+			throw e;
+		} finally {
+			if (start != 0) {
+				Metrics.time(metricName(request), start);
+			}
+		}
+	}
+
+	private static HttpResponse send(HttpRequestBase request, Operation op)
+			throws IOException {
+		HttpClient client = getHttpClient();
+		CircuitBreaker breaker = getCircuitBreaker();
+		long deadline = Long.MAX_VALUE;
+		if (op.deadlineMs > 0) {
+			deadline = System.currentTimeMillis() + op.deadlineMs;
+		}
+		ServerTask.attach(request);
+
+		for (int attempt = 1;; ++attempt) {
+			breaker.allowRequest();
+			setTimeouts(request, op, deadline);
+			HttpResponse response;
+			try {
+				response = client.execute(request);
+			} catch (IOException e) {
+				if (request.isAborted() || ServerTask.isCurrentCancelled()) {
+					breaker.recordIgnored();
+					throw e;
+				}
+				breaker.recordFailure();
+				if (!backOff(request, op, attempt, deadline, e)) {
+					throw e;
+				}
+				continue;
+			}
+
+			int code = response.getStatusLine().getStatusCode();
+			if (code < 502 || code > 504) {
+				breaker.recordSuccess();
+				return response;
+			}
+			breaker.recordFailure();
+			if (!backOff(request, op, attempt, deadline, null)) {
+				return response;
+			}
+			if (response.getEntity() != null) {
+				// frees the connection for the next try
+				response.getEntity().consumeContent();
+			}
+		}
+	}
+
+	/**
+	 * Returns the name a request is timed under: "es.", its method, and the
+	 * api it asks for (like "_search" or "_mget"), or "doc" for a single
+	 * story or part.
+	 */
+	static String metricName(HttpRequestBase request) {
+		String path = request.getURI().getPath();
+		String api = "doc";
+		if (path != null) {
+			String last = path.substring(path.lastIndexOf('/') + 1);
+			if (last.startsWith("_")) {
+				api = last;
+			}
+		}
+		return "es." + request.getMethod().toLowerCase() + "." + api;
+	}
+
+	/**
+	 * Sets the timeouts of a request, cut short if the deadline is near.
+	 */
+	private static void setTimeouts(HttpRequestBase request, Operation op,
+			long deadline) throws SocketTimeoutException {
+		long left = deadline - System.currentTimeMillis();
+		if (left <= 0) {
+			throw new SocketTimeoutException("Deadline passed for "
+					+ request.getURI());
+		}
+		int connect = (int) Math.min(op.connectMs, left);
+		int read = (int) Math.min(op.readMs, left);
+		HttpParams params = request.getParams();
+		ConnManagerParams.setTimeout(params, connect);
+		HttpConnectionParams.setConnectionTimeout(params, connect);
+		HttpConnectionParams.setSoTimeout(params, read);
+	}
+
+	/**
+	 * Waits before trying a request again, for a random time of up to 
+	 * BASE_BACKOFF_MS doubled for every try already made. Returns false,
+	 * without waiting, if the request shouldn't be tried again: it has been
+	 * tried enough, or the wait would go past the deadline.
+	 */
+	private static boolean backOff(HttpRequestBase request, Operation op,
+			int attempt, long deadline, IOException cause)
+			throws InterruptedIOException {
+		if (attempt >= op.tries) {
+			return false;
+		}
+		long most = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << (attempt - 1));
+		long wait;
+		synchronized (jitter) {
+			wait = (long) (jitter.nextDouble() * most);
+		}
+		if (System.currentTimeMillis() + wait >= deadline) {
+			return false;
+		}
+		System.out.println("Trying " + request.getURI() + " again in " + wait
+				+ " ms" + (cause == null ? "" : " after " + cause));
+		Metrics.count("es.retry");
+		try {
+			Thread.sleep(wait);
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Cancelled while waiting to "
+					+ "try again");
+		}
+		return !request.isAborted();
+	}
+
+	/**
+	 * Sets whether compress() compresses request bodies. Only turn it on
+	 * for a server that accepts "Content-Encoding: gzip" requests.
+	 */
+	public static synchronized void setCompressRequests(boolean compress) {
+		compressRequests = compress;
+	}
+
+	public static synchronized boolean isCompressingRequests() {
+		return compressRequests;
+	}
+
+	/**
+	 * Sets whether ESRetrieval and ESUpdates print out the bodies of the
+	 * responses they get. Off by default: whole stories, with their images,
+	 * are slow to print and fill up the logcat.
+	 */
+	public static void setLogPayloads(boolean log) {
+		logPayloads = log;
+	}
+
+	public static boolean isLoggingPayloads() {
+		return logPayloads;
+	}
+
+	/**
+	 * Returns the body to send for a request: the entity compressed with
+	 * gzip if setCompressRequests(true) was called, or else the entity 
+	 * itself. </br></br>
+	 * 
+	 * Example call: </br>
+	 * httpPost.setEntity(ESClient.compress(new StoryEntity(story, gson)));
+	 */
+	public static HttpEntity compress(HttpEntity entity) {
+		if (isCompressingRequests()) {
+			return new GzipEntity(entity);
+		}
+		return entity;
+	}
+
+	/**
+	 * Replaces the body of a response compressed with gzip or deflate with
+	 * one that decompresses it as it is read.
+	 */
+	static void inflate(HttpResponse response) {
+		HttpEntity entity = response.getEntity();
+		if (entity == null) {
+			return;
+		}
+		Header encoding = entity.getContentEncoding();
+		if (encoding == null) {
+			return;
+		}
+		for (HeaderElement element : encoding.getElements()) {
+			String name = element.getName();
+			if (name.equalsIgnoreCase("gzip") 
+					|| name.equalsIgnoreCase("x-gzip")) {
+				response.setEntity(new InflatingEntity(entity, true));
+				return;
+			} else if (name.equalsIgnoreCase("deflate")) {
+				response.setEntity(new InflatingEntity(entity, false));
+				return;
+			}
+		}
+	}
+}
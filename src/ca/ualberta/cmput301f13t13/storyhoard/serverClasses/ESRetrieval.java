@@ -14,6 +14,8 @@ import org.apache.http.HttpResponse;
 import java.io.IOException;
 import org.apache.http.HttpEntity;
 import java.io.InputStreamReader;
+import java.io.FilterInputStream;
+import java.io.InputStream;
 import java.io.BufferedReader;
 import org.apache.http.client.methods.HttpGet;
 import java.lang.reflect.Type;
@@ -21,14 +23,21 @@ import java.lang.reflect.Type;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
 
 /**
  * This class provides the necessary methods for retrieving responses from the
@@ -56,7 +65,7 @@ public class ESRetrieval {
 	private static ESRetrieval self = null;
 
 	protected ESRetrieval() {
-		httpclient = new DefaultHttpClient();
+		httpclient = ESClient.getHttpClient();
 		gson = new Gson();
 	}
 	
@@ -78,26 +87,37 @@ public class ESRetrieval {
 	 * </br></br>
 	 * 
 	 * In addition to returning JSON string, this method also prints out the 
-	 * JSON string to the logcat. 
+	 * JSON string to the logcat, if ESClient.setLogPayloads(true) was called.
 	 * 
+	 * @param progress
+	 * 			Counts the bytes read. May be null.
 	 * @return string of the response
 	 */
-	private String getEntityContent(HttpResponse response) throws IOException {
+	private String getEntityContent(HttpResponse response,
+			TransferProgress progress) throws IOException {
 		HttpEntity entity = response.getEntity();
-		InputStreamReader is = new InputStreamReader(entity.getContent());
+		InputStreamReader is = new InputStreamReader(getContent(entity,
+				progress));
 		BufferedReader br = new BufferedReader(is);
 		String output;
-		System.err.println("Output from ESUpdates -> ");
-		String json = "";
+		boolean log = ESClient.isLoggingPayloads();
+		if (log) {
+			System.err.println("Output from ESUpdates -> ");
+		}
+		StringBuilder json = new StringBuilder();
 		while ((output = br.readLine()) != null) {
-			System.err.println(output);
-			json += output;
+			if (log) {
+				System.err.println(output);
+			}
+			json.append(output);
+		}
+		if (log) {
+			System.err.println("JSON:" + json);
 		}
-		System.err.println("JSON:" + json);
 		entity.consumeContent();
 		is.close();
 		br.close();
-		return json;
+		return json.toString();
 	}
 
 	/**
@@ -124,28 +144,35 @@ public class ESRetrieval {
 	 * @param id 
 	 * 			Will be a 128-bit UUID value that was converted to a String.
 	 * 			These are unique identifiers of stories.
+	 * @param progress
+	 * 			Counts the bytes received, and can abort the request. May be
+	 * 			null.
 	 */
-	protected Story searchById(String id, String server) {
-		Story story = null;
+	protected Story searchById(String id, String server,
+			TransferProgress progress) throws ClientProtocolException,
+			IOException {
+		HttpGet getRequest = new HttpGet(server + id + "?pretty=1");
+		getRequest.addHeader("Accept", "application/json");
+		if (progress != null) {
+			progress.attach(getRequest);
+		}
+		String json;
 		try {
-			HttpGet getRequest = new HttpGet(server + id + "?pretty=1");
-			getRequest.addHeader("Accept", "application/json");
-			HttpResponse response;
-			response = httpclient.execute(getRequest);
+			HttpResponse response = ESClient.execute(getRequest,
+					ESClient.Operation.READ);
 			String status = response.getStatusLine().toString();
 			System.out.println(status);
-			String json = getEntityContent(response);
-			Type simpleESResponseType = new TypeToken<SimpleESResponse<Story>>() {
-			}.getType();
-			SimpleESResponse<Story> esResponse = gson.fromJson(json,
-					simpleESResponseType);
-			story = esResponse.getSource();
-		} catch (ClientProtocolException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		return story;
+			json = getEntityContent(response, progress);
+		} finally {
+			if (progress != null) {
+				progress.detach();
+			}
+		}
+		Type simpleESResponseType = new TypeToken<SimpleESResponse<Story>>() {
+		}.getType();
+		SimpleESResponse<Story> esResponse = gson.fromJson(json,
+				simpleESResponseType);
+		return esResponse.getSource();
 	}
 
 	/**
@@ -155,24 +182,19 @@ public class ESRetrieval {
 	 * case the value for the argument will be null) is searching for all 
 	 * stories available on the server. </br></br>
 	 * 
-	 * Although the query provided could be anything,and the following is
-	 * an example of a query that can be provided. This one searches for
-	 * all stories on the server who have contain the specified keywords in
-	 * their titles. </br></br>
-	 * 
-	 * {"query" : {"query_string" : {"default_field" : "title", "query" : "ugly AND red"}}}
-	 * 	
+	 * Although the query provided could be anything, it is normally built
+	 * with StoryQuery, which takes care of escaping what the user typed. 
 	 * </br></br>
+	 * 
 	 * Note that like in the method above, the string for the server we are
 	 * searching in must also be provided. A full example call would be: </br></br>
 	 * 
 	 * String server = "http://cmput301.softwareprocess.es:8080/cmput301f13t13/stories/" </br>
-	 * String query = "{\"query\" : {\"query_string\" : {\"default_field\""
-				+ " : \"title\",\"query\" : \"dog AND cat"\"}}}";	</br>
+	 * String query = new StoryQuery("dog cat").toJson(); </br>
 	 * ArrayList<Story> stories = retrieve(query, server); </br></br>
 	 * 
 	 * stories will contain all stories that contained both the words "dog"
-	 * and "cat" in their titles. </br></br>
+	 * and "cat" in their title, author or description. </br></br>
 	 * 
 	 * Here is an example of what you would call to retrieve all the stories on
 	 * the server.
@@ -191,6 +213,34 @@ public class ESRetrieval {
 	protected ArrayList<Story> retrieve(String query, String server)
 			throws ClientProtocolException, IOException {
 		ArrayList<Story> stories = new ArrayList<Story>();
+		ElasticSearchResponse<Story> esResponse = search(query, server);
+		for (SimpleESResponse<Story> r : esResponse.getHits()) {
+			Story story = r.getSource();
+			stories.add(story);
+		}
+		return stories;
+	}
+
+	/**
+	 * Sends a search query to the server and returns the whole response
+	 * rather than just the stories in it. This is for queries where the 
+	 * rest of the response matters, for example the total number of hits, or
+	 * the ids of hits when the query asks for no fields (so every story
+	 * in the response is null). Otherwise, it works exactly like retrieve().
+	 * </br></br>
+	 * 
+	 * Example call: </br>
+	 * String query = "{\"fields\": [], \"size\": 10}"; </br>
+	 * ElasticSearchResponse<Story> response = search(query, server); </br>
+	 * int total = response.getTotal(); </br>
+	 * 
+	 * @param query 
+	 * 			The query as a string. It can be null to match every story.
+	 * @param server
+	 * 			The location on elastic search to search for the responses.
+	 */
+	protected ElasticSearchResponse<Story> search(String query, String server)
+			throws ClientProtocolException, IOException {
 		HttpPost searchRequest = new HttpPost(server
 				+ "_search?pretty=1");
 		if (query != null) {
@@ -198,20 +248,267 @@ public class ESRetrieval {
 			searchRequest.setEntity(stringentity);
 		}
 		searchRequest.setHeader("Accept", "application/json");
-		HttpResponse response;
-		response = httpclient.execute(searchRequest);
+		HttpResponse response = ESClient.execute(searchRequest,
+				ESClient.Operation.READ);
 		String status = response.getStatusLine().toString();
 		System.out.println(status);
-		String json = getEntityContent(response);
+		String json = getEntityContent(response, null);
 		Type elasticSearchSearchResponseType = new TypeToken<ElasticSearchResponse<Story>>() {
 		}.getType();
 		ElasticSearchResponse<Story> esResponse = gson.fromJson(json,
 				elasticSearchSearchResponseType);
-		System.err.println(esResponse);
-		for (SimpleESResponse<Story> r : esResponse.getHits()) {
-			Story story = r.getSource();
-			stories.add(story);
+		if (ESClient.isLoggingPayloads()) {
+			System.err.println(esResponse);
+		}
+		return esResponse;
+	}
+
+	/**
+	 * Retrieves several stories by id in a single request using elastic
+	 * search's multi get (_mget) api. Instead of building the whole response
+	 * as one string, the response is read as a stream, and every story is
+	 * handed to the listener as soon as it has been parsed. Ids that don't
+	 * match any story on the server are simply skipped. </br></br>
+	 * 
+	 * An example call: </br></br>
+	 * String server = "http://cmput301.softwareprocess.es:8080/cmput301f13t13/stories/" </br>
+	 * ArrayList<String> ids = new ArrayList<String>(); </br>
+	 * ids.add("5231b533-ba17-4787-98a3-f2df37de2aD7"); </br>
+	 * ids.add("f1bda3a9-4560-4530-befc-2d58db9419b7"); </br>
+	 * searchByIds(ids, server, listener); </br></br>
+	 * 
+	 * The body sent to the server would then be: </br>
+	 * {"ids":["5231b533-ba17-4787-98a3-f2df37de2aD7","f1bda3a9-4560-4530-befc-2d58db9419b7"]}
+	 * 
+	 * @param ids
+	 * 			The ids (UUIDs as strings) of the stories to retrieve.
+	 * @param server
+	 * 			The location on elastic search to search for the responses.
+	 * @param listener
+	 * 			Receives each story as it is parsed from the response.
+	 */
+	protected void searchByIds(Collection<String> ids, String server,
+			OnStoryRetrievedListener listener) throws ClientProtocolException,
+			IOException {
+		JsonArray idArray = new JsonArray();
+		for (String id : ids) {
+			idArray.add(new JsonPrimitive(id));
+		}
+		JsonObject body = new JsonObject();
+		body.add("ids", idArray);
+
+		HttpPost mgetRequest = new HttpPost(server + "_mget");
+		mgetRequest.setEntity(new StringEntity(gson.toJson(body)));
+		mgetRequest.setHeader("Accept", "application/json");
+		HttpResponse response = ESClient.execute(mgetRequest,
+				ESClient.Operation.READ);
+		String status = response.getStatusLine().toString();
+		System.out.println(status);
+
+		HttpEntity entity = response.getEntity();
+		JsonReader reader = new JsonReader(new InputStreamReader(
+				entity.getContent(), "UTF-8"));
+		Type simpleESResponseType = new TypeToken<SimpleESResponse<Story>>() {
+		}.getType();
+		try {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("docs")) {
+					// error responses have no docs, so there is nothing to read
+					reader.skipValue();
+					continue;
+				}
+				reader.beginArray();
+				while (reader.hasNext()) {
+					SimpleESResponse<Story> doc = gson.fromJson(reader,
+							simpleESResponseType);
+					if (doc != null && doc.getSource() != null) {
+						listener.onStoryRetrieved(doc.getSource());
+					}
+				}
+				reader.endArray();
+			}
+			reader.endObject();
+		} finally {
+			reader.close();
+			entity.consumeContent();
+		}
+	}
+
+	/**
+	 * Retrieves the parts (images stored apart from their stories, see 
+	 * ESUpdates.insertPart()) with the given ids in a single request, using
+	 * multi get. Returns a map from the id of every part found to its 
+	 * bitmapString. Ids with no matching part are left out. </br></br>
+	 * 
+	 * If withImages is false, only whether each part exists is asked for,
+	 * and every bitmapString in the map is empty. This is used to find which
+	 * parts of a story still have to be sent.
+	 * 
+	 * @param ids
+	 * 			The ids of the parts to retrieve.
+	 * @param partServer
+	 * 			The location on elastic search of the parts.
+	 * @param withImages
+	 * 			Whether to download the images, or only check the parts exist.
+	 * @param progress
+	 * 			Counts the bytes received, and can abort the request. May be
+	 * 			null.
+	 */
+	protected Map<String, String> getParts(Collection<String> ids,
+			String partServer, boolean withImages, TransferProgress progress)
+			throws ClientProtocolException, IOException {
+		JsonArray docs = new JsonArray();
+		for (String id : ids) {
+			JsonObject doc = new JsonObject();
+			doc.addProperty("_id", id);
+			if (!withImages) {
+				doc.add("fields", new JsonArray());
+			}
+			docs.add(doc);
+		}
+		JsonObject body = new JsonObject();
+		body.add("docs", docs);
+
+		HttpPost mgetRequest = new HttpPost(partServer + "_mget");
+		mgetRequest.setEntity(new StringEntity(gson.toJson(body)));
+		mgetRequest.setHeader("Accept", "application/json");
+		if (progress != null) {
+			progress.attach(mgetRequest);
+		}
+		try {
+			return readParts(ESClient.execute(mgetRequest,
+					ESClient.Operation.READ), progress);
+		} finally {
+			if (progress != null) {
+				progress.detach();
+			}
+		}
+	}
+
+	/**
+	 * Reads the response to a multi get for parts. See getParts().
+	 */
+	private Map<String, String> readParts(HttpResponse response,
+			TransferProgress progress) throws IOException {
+		System.out.println(response.getStatusLine().toString());
+
+		Map<String, String> parts = new HashMap<String, String>();
+		HttpEntity entity = response.getEntity();
+		JsonReader reader = new JsonReader(new InputStreamReader(
+				getContent(entity, progress), "UTF-8"));
+		try {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (!reader.nextName().equals("docs")) {
+					// error responses have no docs, so there is nothing to read
+					reader.skipValue();
+					continue;
+				}
+				reader.beginArray();
+				while (reader.hasNext()) {
+					readPart(reader, parts);
+				}
+				reader.endArray();
+			}
+			reader.endObject();
+		} finally {
+			reader.close();
+			entity.consumeContent();
+		}
+		return parts;
+	}
+
+	/**
+	 * Reads one doc of a multi get response for parts, and puts it in the
+	 * map if it exists. Older versions of elastic search say whether a doc
+	 * exists with "exists", newer ones with "found".
+	 */
+	private void readPart(JsonReader reader, Map<String, String> parts)
+			throws IOException {
+		String id = null;
+		boolean found = false;
+		String bitmapString = "";
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("_id")) {
+				id = reader.nextString();
+			} else if (name.equals("exists") || name.equals("found")) {
+				found = reader.nextBoolean();
+			} else if (name.equals("_source")) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					if (reader.nextName().equals("bitmapString")) {
+						bitmapString = reader.nextString();
+					} else {
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		if (found && id != null) {
+			parts.put(id, bitmapString);
+		}
+	}
+
+	/**
+	 * Returns the body of a response, counted in the progress as it is 
+	 * read if there is one. The size of the body, if the server says it, is
+	 * added to the bytes the progress expects.
+	 */
+	private static InputStream getContent(HttpEntity entity,
+			TransferProgress progress) throws IOException {
+		if (progress == null) {
+			return entity.getContent();
+		}
+		if (entity.getContentLength() > 0) {
+			progress.expectBytes(entity.getContentLength());
+		}
+		return new CountingInputStream(entity.getContent(), progress);
+	}
+
+	/**
+	 * Counts the bytes read through it, and fails once the progress is
+	 * cancelled.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private final TransferProgress progress;
+
+		CountingInputStream(InputStream in, TransferProgress progress) {
+			super(in);
+			this.progress = progress;
+		}
+
+		@Override
+		public int read() throws IOException {
+			checkCancelled();
+			int b = super.read();
+			if (b != -1) {
+				progress.addBytes(1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length)
+				throws IOException {
+			checkCancelled();
+			int read = super.read(buffer, offset, length);
+			if (read > 0) {
+				progress.addBytes(read);
+			}
+			return read;
+		}
+
+		private void checkCancelled() throws IOException {
+			if (progress.isCancelled()) {
+				throw new IOException("Cancelled");
+			}
 		}
-		return stories;
 	}
-}
\ No newline at end of file
+}
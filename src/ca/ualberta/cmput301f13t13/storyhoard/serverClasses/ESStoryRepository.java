@@ -0,0 +1,153 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+
+/**
+ * Role: Keeps the published stories in an index on the elastic search
+ * server, through ESRetrieval and ESUpdates. The images sent as parts of
+ * their own are kept in an index next to the stories' (for
+ * ".../stories/", it is ".../stories_media/"). </br></br>
+ *
+ * Example call: </br>
+ * StoryRepository repository = new ESStoryRepository(
+ * 		ESStoryRepository.STORIES); </br>
+ * Story story = repository.getById(id); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see StoryRepository
+ * @see ESRetrieval
+ * @see ESUpdates
+ */
+public class ESStoryRepository implements StoryRepository {
+	/**
+	 * The index the application's stories are published to.
+	 */
+	public static final String STORIES =
+			"http://cmput301.softwareprocess.es:8080/cmput301f13t13/stories/";
+
+	/**
+	 * The index used by the JUnit tests, so they run on a clean index and
+	 * don't pollute the real one with half complete mock stories.
+	 */
+	public static final String TESTS =
+			"http://cmput301.softwareprocess.es:8080/cmput301f13t13/tests/";
+
+	private final String server;
+	private final String partServer;
+	private final ESRetrieval esRetrieval;
+	private final ESUpdates esUpdates;
+
+	/**
+	 * Initializes a new ESStoryRepository.
+	 *
+	 * @param server
+	 * 			The location of the index on elastic search, ending with
+	 * 			"/", such as STORIES.
+	 */
+	public ESStoryRepository(String server) {
+		this.server = server;
+		String stories = server;
+		if (stories.endsWith("/")) {
+			stories = stories.substring(0, stories.length() - 1);
+		}
+		partServer = stories + "_media/";
+		esRetrieval = ESRetrieval.getInstance();
+		esUpdates = ESUpdates.getInstance();
+	}
+
+	@Override
+	public Story getById(String id, TransferProgress progress)
+			throws IOException {
+		return esRetrieval.searchById(id, server, progress);
+	}
+
+	@Override
+	public void getByIds(Collection<String> ids,
+			OnStoryRetrievedListener listener) throws IOException {
+		esRetrieval.searchByIds(ids, server, listener);
+	}
+
+	@Override
+	public ArrayList<Story> search(StoryQuery query) throws IOException {
+		return esRetrieval.retrieve(query.toJson(), server);
+	}
+
+	@Override
+	public int count() throws IOException {
+		return esRetrieval.search("{\"fields\": [], \"size\": 0}", server)
+				.getTotal();
+	}
+
+	@Override
+	public ArrayList<String> getIds(int from, int size) throws IOException {
+		String query = "{\"fields\": [], \"from\": " + from + ", \"size\": "
+				+ size + "}";
+		ArrayList<String> ids = new ArrayList<String>();
+		for (SimpleESResponse<Story> hit : esRetrieval.search(query, server)
+				.getHits()) {
+			ids.add(hit.getId());
+		}
+		return ids;
+	}
+
+	@Override
+	public void put(Story story, TransferProgress progress)
+			throws IOException {
+		esUpdates.insertStory(story, server, progress);
+	}
+
+	@Override
+	public void remove(String id) throws IOException {
+		esUpdates.deleteStory(id, server);
+	}
+
+	@Override
+	public Map<String, String> getParts(Collection<String> ids,
+			boolean withImages, TransferProgress progress) throws IOException {
+		return esRetrieval.getParts(ids, partServer, withImages, progress);
+	}
+
+	@Override
+	public void putPart(String id, String path, String format,
+			TransferProgress progress) throws IOException {
+		esUpdates.insertPart(id, path, format, partServer, progress);
+	}
+
+	/**
+	 * Returns false while the CircuitBreaker of ESClient is open.
+	 */
+	@Override
+	public boolean isAvailable() {
+		return ESClient.getCircuitBreaker().isAvailable();
+	}
+
+	/**
+	 * Returns the location of the index.
+	 */
+	@Override
+	public String getName() {
+		return server;
+	}
+}
@@ -19,7 +19,6 @@ package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.UnsupportedEncodingException;
 
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
@@ -27,8 +26,6 @@ import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
 
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
 
@@ -61,7 +58,7 @@ public class ESUpdates {
 	 * Initializes an ESUpdates.
 	 */
 	protected ESUpdates() {
-		httpclient = new DefaultHttpClient();
+		httpclient = ESClient.getHttpClient();
 		gson = new Gson();
 	}
 
@@ -81,7 +78,7 @@ public class ESUpdates {
 	 * the server. You must specify the id as a string (but in the format of
 	 * a UUID), and the server as a string as well. In addition, output from
 	 * the server (the response's content) will also be printed out to
-	 * System.err. </br></br>
+	 * System.err, if ESClient.setLogPayloads(true) was called. </br></br>
 	 * 
 	 * Example call: </br>
 	 * Let's say the following story is on the server. </br>
@@ -106,7 +103,8 @@ public class ESUpdates {
 		HttpDelete httpDelete = new HttpDelete(server + id);
 		httpDelete.addHeader("Accept", "application/json");
 
-		HttpResponse response = httpclient.execute(httpDelete);
+		HttpResponse response = ESClient.execute(httpDelete,
+				ESClient.Operation.WRITE);
 
 		String status = response.getStatusLine().toString();
 		System.out.println(status);
@@ -115,10 +113,14 @@ public class ESUpdates {
 		InputStreamReader is = new InputStreamReader(entity.getContent());
 		BufferedReader br = new BufferedReader(is);
 		String output;
-		System.err.println("Output from ESUpdates -> ");
-		
+		boolean log = ESClient.isLoggingPayloads();
+		if (log) {
+			System.err.println("Output from ESUpdates -> ");
+		}
 		while ((output = br.readLine()) != null) {
-			System.err.println(output);
+			if (log) {
+				System.err.println(output);
+			}
 		}
 
 		entity.consumeContent();
@@ -129,58 +131,115 @@ public class ESUpdates {
 	 * Inserts a story object into the server. The story must be a complete
 	 * story, in other words, have all its chapters, choices, and media. It is
 	 * all stored as one story, not individual components like in the database.
-	 * </br> The story is inserted using HttpPost, not HttpGet.
+	 * </br> The story is inserted using HttpPost, not HttpGet. The JSON is
+	 * streamed to the server by a StoryEntity, so media with an upload path
+	 * are read from their files as they are sent. It is compressed on the 
+	 * way if ESClient.setCompressRequests(true) was called. </br></br>
+	 * 
+	 * If the story is already on the server, it is replaced as a whole once
+	 * the new one has been received, so a post that is aborted part way 
+	 * leaves the old story as it was.
 	 * 
 	 * @param story
 	 *            The complete story to post to server. It is first converted to
 	 *            a Json string, and then is posted onto the server.
+	 * @param progress
+	 * 			  Counts what has been sent, and can abort the post. May be 
+	 * 			  null.
 	 */
-	protected void insertStory(Story story, String server) {
+	protected void insertStory(Story story, String server,
+			TransferProgress progress) throws ClientProtocolException,
+			IOException {
 		HttpPost httpPost = new HttpPost(server + story.getId().toString());
+		httpPost.setHeader("Accept", "application/json");
+		httpPost.setEntity(ESClient.compress(new StoryEntity(story, gson,
+				progress)));
 
-		StringEntity stringentity = null;
+		if (progress != null) {
+			progress.attach(httpPost);
+		}
+		HttpResponse response;
 		try {
-			stringentity = new StringEntity(gson.toJson(story));
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
+			response = ESClient.execute(httpPost, ESClient.Operation.WRITE);
+		} finally {
+			if (progress != null) {
+				progress.detach();
+			}
+		}
+		int code = response.getStatusLine().getStatusCode();
+		printResponse(response);
+		if (code < 200 || code >= 300) {
+			throw new IOException("Story not stored: " + code);
 		}
+	}
+
+	/**
+	 * Puts one image of a story on the server as a part of its own, with
+	 * the given id. The image file is streamed to the server by a 
+	 * PartEntity. Throws an IOException if the server didn't take it, so
+	 * the part can be sent again.
+	 * 
+	 * @param id
+	 * 			Id of the part, a hash of the image.
+	 * @param path
+	 * 			Path of the image file.
+	 * @param format
+	 * 			Format of the image, Media.JPEG or Media.WEBP.
+	 * @param partServer
+	 * 			The location on elastic search of the parts.
+	 * @param progress
+	 * 			Counts what has been sent, and can abort the post. May be 
+	 * 			null.
+	 */
+	protected void insertPart(String id, String path, String format,
+			String partServer, TransferProgress progress) throws IOException {
+		HttpPost httpPost = new HttpPost(partServer + id);
 		httpPost.setHeader("Accept", "application/json");
+		httpPost.setEntity(ESClient.compress(new PartEntity(path, format,
+				gson, progress)));
 
-		httpPost.setEntity(stringentity);
-		HttpResponse response = null;
+		if (progress != null) {
+			progress.attach(httpPost);
+		}
+		HttpResponse response;
 		try {
-			response = httpclient.execute(httpPost);
-		} catch (ClientProtocolException e) {
-			e.printStackTrace();
-		} catch (IOException e) {
-			e.printStackTrace();
+			response = ESClient.execute(httpPost, ESClient.Operation.WRITE);
+		} finally {
+			if (progress != null) {
+				progress.detach();
+			}
+		}
+		int code = response.getStatusLine().getStatusCode();
+		printResponse(response);
+		if (code < 200 || code >= 300) {
+			throw new IOException("Part " + id + " not stored: " + code);
 		}
+	}
 
+	/**
+	 * Prints out the status and content of a response from the server (the
+	 * content only if ESClient.setLogPayloads(true) was called), which 
+	 * also reads it to the end so the connection can be reused.
+	 */
+	private void printResponse(HttpResponse response) throws IOException {
 		String status = response.getStatusLine().toString();
 		System.out.println(status);
 
 		HttpEntity entity = response.getEntity();
-		InputStreamReader is = null;
-		try {
-			is = new InputStreamReader(entity.getContent());
-		} catch (IllegalStateException e1) {
-			e1.printStackTrace();
-		} catch (IOException e1) {
-			e1.printStackTrace();
-		}
+		InputStreamReader is = new InputStreamReader(entity.getContent());
 		BufferedReader br = new BufferedReader(is);
 
 		String output;
-		System.err.println("Output from ESUpdates -> ");
-		try {
-			while ((output = br.readLine()) != null) {
+		boolean log = ESClient.isLoggingPayloads();
+		if (log) {
+			System.err.println("Output from ESUpdates -> ");
+		}
+		while ((output = br.readLine()) != null) {
+			if (log) {
 				System.err.println(output);
 			}
-			entity.consumeContent();
-			is.close();
-		} catch (IOException e) {
-			e.printStackTrace();
 		}
-
+		entity.consumeContent();
+		is.close();
 	}
-}
+}
\ No newline at end of file
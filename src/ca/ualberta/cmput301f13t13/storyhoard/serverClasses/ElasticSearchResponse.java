@@ -51,6 +51,14 @@ public class ElasticSearchResponse<T> {
 		return hits.getHits();
 	}
 
+	/**
+	 * Returns the number of responses matching the search, which may be more
+	 * than the number of hits actually returned.
+	 */
+	public int getTotal() {
+		return hits.getTotal();
+	}
+
 	public Collection<T> getSources() {
 		Collection<T> out = new ArrayList<T>();
 		for (SimpleESResponse<T> essrt : getHits()) {
@@ -0,0 +1,89 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Role: Compresses the body of a request with gzip as it is written to the
+ * connection, so a story (see StoryEntity) is never held compressed in
+ * memory either. </br></br>
+ *
+ * The compressed length isn't known until the body has been written, so it
+ * is sent chunked. Whatever counts the bytes of the wrapped entity (see
+ * TransferProgress) still counts them before they are compressed, so the
+ * progress shown doesn't change. </br></br>
+ *
+ * Example call: </br>
+ * httpPost.setEntity(new GzipEntity(new StoryEntity(story, gson))); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see ESClient
+ */
+public class GzipEntity extends HttpEntityWrapper {
+	private static final int BUFFER_SIZE = 8192;
+
+	public GzipEntity(HttpEntity entity) {
+		super(entity);
+	}
+
+	@Override
+	public Header getContentEncoding() {
+		return new BasicHeader("Content-Encoding", "gzip");
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public boolean isChunked() {
+		return true;
+	}
+
+	/**
+	 * Returns the whole compressed body in memory. Only here because
+	 * HttpEntity needs it; requests are always sent with writeTo().
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writeTo(bytes);
+		return new ByteArrayInputStream(bytes.toByteArray());
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+		wrappedEntity.writeTo(gzip);
+		// finishes the gzip stream without closing the connection
+		gzip.finish();
+		out.flush();
+	}
+}
@@ -45,6 +45,9 @@ public class Hits<T> {
 	    public Collection<SimpleESResponse<T>> getHits() {
 	        return hits;
 	    }
+	    public int getTotal() {
+	        return total;
+	    }
 	    public String toString() {
 	        return (super.toString()+","+total+","+max_score+","+hits);
 	    }
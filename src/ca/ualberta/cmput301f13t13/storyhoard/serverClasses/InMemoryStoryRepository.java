@@ -0,0 +1,455 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Role: Keeps published stories in memory instead of on a server, so that
+ * publishing, searching and caching can be tested and measured without a
+ * network, and give the same results every time. </br></br>
+ *
+ * Stories are stored as the JSON a StoryEntity writes, and images as the
+ * bitmapString a PartEntity writes, like on the server, so what is stored
+ * and what comes back is the same as with ESStoryRepository. search()
+ * follows StoryQuery the way the server does: every word must be found in
+ * the title, author or description, the title counting most, and only
+ * the fields asked for are returned. </br></br>
+ *
+ * Every call can be made to take a while (setLatency()) and to fail some
+ * of the time (setFailureRate()), like a real network. The latency and the
+ * failures come from a Random with the seed given, so a test making the
+ * same calls in the same order sees the same delays and failures every
+ * time. Failures feed a CircuitBreaker of its own, like ESClient's, so
+ * isAvailable() turns false after a few in a row. </br></br>
+ *
+ * Example call: </br>
+ * InMemoryStoryRepository repository = new InMemoryStoryRepository(42);
+ * </br>
+ * repository.setLatency(50, 150); </br>
+ * repository.setFailureRate(0.1); </br>
+ * ServerManager.getInstance().setRepository(repository); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see StoryRepository
+ */
+public class InMemoryStoryRepository implements StoryRepository {
+	private static final int DEFAULT_SIZE = 10;
+	private static final int TITLE_WEIGHT = 3;
+	private static final int AUTHOR_WEIGHT = 2;
+	private static final int DESCRIPTION_WEIGHT = 1;
+	private static final AtomicInteger instances = new AtomicInteger();
+
+	private final String name;
+	private final Random random;
+	private final Gson gson = new Gson();
+	private final CircuitBreaker breaker = new CircuitBreaker();
+	// the stories by id, in the order they were first published
+	private final Map<String, JsonObject> stories =
+			new LinkedHashMap<String, JsonObject>();
+	private final Map<String, String> parts = new HashMap<String, String>();
+	private int minLatencyMs = 0;
+	private int maxLatencyMs = 0;
+	private double failureRate = 0;
+	private int calls = 0;
+	private int failures = 0;
+
+	/**
+	 * Initializes a new, empty InMemoryStoryRepository that answers straight
+	 * away and never fails.
+	 *
+	 * @param seed
+	 * 			Seed of the latency and failures.
+	 */
+	public InMemoryStoryRepository(long seed) {
+		random = new Random(seed);
+		name = "memory:" + instances.incrementAndGet();
+	}
+
+	/**
+	 * Makes every call take between minMs and maxMs milliseconds.
+	 */
+	public synchronized void setLatency(int minMs, int maxMs) {
+		minLatencyMs = minMs;
+		maxLatencyMs = Math.max(minMs, maxMs);
+	}
+
+	/**
+	 * Makes each call fail with an IOException with the given probability,
+	 * between 0 and 1.
+	 */
+	public synchronized void setFailureRate(double rate) {
+		failureRate = rate;
+	}
+
+	/**
+	 * Returns how many calls have been made, including those that failed.
+	 */
+	public synchronized int getCalls() {
+		return calls;
+	}
+
+	/**
+	 * Returns how many calls failed on purpose.
+	 */
+	public synchronized int getFailures() {
+		return failures;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return breaker;
+	}
+
+	@Override
+	public Story getById(String id, TransferProgress progress)
+			throws IOException {
+		call();
+		synchronized (this) {
+			return toStory(stories.get(id));
+		}
+	}
+
+	@Override
+	public void getByIds(Collection<String> ids,
+			OnStoryRetrievedListener listener) throws IOException {
+		call();
+		ArrayList<Story> found = new ArrayList<Story>();
+		synchronized (this) {
+			for (String id : ids) {
+				Story story = toStory(stories.get(id));
+				if (story != null) {
+					found.add(story);
+				}
+			}
+		}
+		for (Story story : found) {
+			listener.onStoryRetrieved(story);
+		}
+	}
+
+	@Override
+	public ArrayList<Story> search(StoryQuery query) throws IOException {
+		call();
+		List<String> words = new ArrayList<String>();
+		for (String word : query.getWords()) {
+			words.addAll(split(word));
+		}
+
+		final Map<JsonObject, Integer> scores =
+				new LinkedHashMap<JsonObject, Integer>();
+		synchronized (this) {
+			for (JsonObject source : stories.values()) {
+				int score = score(source, words, query.isPrefix());
+				if (score > 0) {
+					scores.put(source, score);
+				}
+			}
+		}
+		ArrayList<JsonObject> found = new ArrayList<JsonObject>(
+				scores.keySet());
+		// stable, so equal scores stay in the order they were published
+		Collections.sort(found, new Comparator<JsonObject>() {
+			@Override
+			public int compare(JsonObject a, JsonObject b) {
+				return scores.get(b) - scores.get(a);
+			}
+		});
+
+		int size = query.getSize() < 0 ? DEFAULT_SIZE : query.getSize();
+		ArrayList<Story> results = new ArrayList<Story>();
+		for (int i = query.getFrom(); i < found.size()
+				&& results.size() < size; ++i) {
+			JsonObject source = found.get(i);
+			if (query.getFields() != null) {
+				source = project(source, query.getFields());
+			}
+			results.add(toStory(source));
+		}
+		return results;
+	}
+
+	@Override
+	public int count() throws IOException {
+		call();
+		synchronized (this) {
+			return stories.size();
+		}
+	}
+
+	@Override
+	public ArrayList<String> getIds(int from, int size) throws IOException {
+		call();
+		ArrayList<String> ids = new ArrayList<String>();
+		synchronized (this) {
+			for (String id : stories.keySet()) {
+				if (from > 0) {
+					--from;
+				} else if (ids.size() < size) {
+					ids.add(id);
+				}
+			}
+		}
+		return ids;
+	}
+
+	@Override
+	public void put(Story story, TransferProgress progress)
+			throws IOException {
+		call();
+		JsonObject source = write(new StoryEntity(story, gson, progress));
+		synchronized (this) {
+			stories.put(story.getId().toString(), source);
+		}
+	}
+
+	@Override
+	public void remove(String id) throws IOException {
+		call();
+		synchronized (this) {
+			stories.remove(id);
+		}
+	}
+
+	@Override
+	public Map<String, String> getParts(Collection<String> ids,
+			boolean withImages, TransferProgress progress) throws IOException {
+		call();
+		Map<String, String> found = new HashMap<String, String>();
+		synchronized (this) {
+			for (String id : ids) {
+				String bitmapString = parts.get(id);
+				if (bitmapString != null) {
+					found.put(id, withImages ? bitmapString : "");
+				}
+			}
+		}
+		return found;
+	}
+
+	@Override
+	public void putPart(String id, String path, String format,
+			TransferProgress progress) throws IOException {
+		call();
+		JsonObject source = write(new PartEntity(path, format, gson,
+				progress));
+		synchronized (this) {
+			parts.put(id, source.get("bitmapString").getAsString());
+		}
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return breaker.isAvailable();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Goes through what every call to a server goes through: the breaker,
+	 * the latency, and maybe a failure.
+	 */
+	private void call() throws IOException {
+		breaker.allowRequest();
+		long wait;
+		boolean fail;
+		synchronized (this) {
+			++calls;
+			wait = minLatencyMs;
+			if (maxLatencyMs > minLatencyMs) {
+				wait += random.nextInt(maxLatencyMs - minLatencyMs + 1);
+			}
+			fail = random.nextDouble() < failureRate;
+			if (fail) {
+				++failures;
+			}
+		}
+		if (wait > 0) {
+			try {
+				Thread.sleep(wait);
+			} catch (InterruptedException e) {
+				breaker.recordIgnored();
+				throw new InterruptedIOException("Cancelled");
+			}
+		}
+		if (fail) {
+			breaker.recordFailure();
+			throw new IOException("Simulated failure of " + name);
+		}
+		breaker.recordSuccess();
+	}
+
+	/**
+	 * Writes the entity as it would be sent to the server, and parses it.
+	 */
+	private static JsonObject write(AbstractHttpEntity entity)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		entity.writeTo(bytes);
+		return new JsonParser().parse(bytes.toString("UTF-8"))
+				.getAsJsonObject();
+	}
+
+	private Story toStory(JsonObject source) {
+		if (source == null) {
+			return null;
+		}
+		return gson.fromJson(source, Story.class);
+	}
+
+	/**
+	 * Returns the score of a story for the words, 0 if any of them isn't
+	 * found. For each word, the story scores the weight of the best field
+	 * it is found in.
+	 */
+	private static int score(JsonObject source, List<String> words,
+			boolean prefix) {
+		if (words.isEmpty()) {
+			return 1;
+		}
+		List<String> title = split(getString(source, "title"));
+		List<String> author = split(getString(source, "author"));
+		List<String> description = split(getString(source, "description"));
+		int total = 0;
+		for (int i = 0; i < words.size(); ++i) {
+			String word = words.get(i);
+			boolean start = prefix && i == words.size() - 1;
+			if (contains(title, word, start)) {
+				total += TITLE_WEIGHT;
+			} else if (contains(author, word, start)) {
+				total += AUTHOR_WEIGHT;
+			} else if (contains(description, word, start)) {
+				total += DESCRIPTION_WEIGHT;
+			} else {
+				return 0;
+			}
+		}
+		return total;
+	}
+
+	private static boolean contains(List<String> field, String word,
+			boolean prefix) {
+		for (String token : field) {
+			if (prefix ? token.startsWith(word) : token.equals(word)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String getString(JsonObject source, String name) {
+		JsonElement value = source.get(name);
+		if (value == null || !value.isJsonPrimitive()) {
+			return null;
+		}
+		return value.getAsString();
+	}
+
+	/**
+	 * Splits text into lower case words, dropping punctuation, roughly like
+	 * the server does.
+	 */
+	private static List<String> split(String text) {
+		ArrayList<String> split = new ArrayList<String>();
+		if (text == null) {
+			return split;
+		}
+		for (String word : text.toLowerCase(Locale.ENGLISH).split(
+				"[^\\p{L}\\p{N}]+")) {
+			if (word.length() > 0) {
+				split.add(word);
+			}
+		}
+		return split;
+	}
+
+	/**
+	 * Returns a copy of the story with only the given fields, like the
+	 * server's partial fields (see StoryQuery). A field like "chapters.id" keeps the id
+	 * of every chapter.
+	 */
+	private static JsonObject project(JsonObject source, String[] fields) {
+		JsonObject copy = new JsonObject();
+		for (String field : fields) {
+			copyPath(source, copy, field.split("\\."), 0);
+		}
+		return copy;
+	}
+
+	private static void copyPath(JsonObject from, JsonObject to,
+			String[] path, int i) {
+		JsonElement value = from.get(path[i]);
+		if (value == null) {
+			return;
+		}
+		if (i == path.length - 1) {
+			to.add(path[i], value);
+		} else if (value.isJsonObject()) {
+			JsonElement child = to.get(path[i]);
+			if (child == null) {
+				child = new JsonObject();
+				to.add(path[i], child);
+			}
+			copyPath(value.getAsJsonObject(), child.getAsJsonObject(), path,
+					i + 1);
+		} else if (value.isJsonArray()) {
+			JsonArray items = value.getAsJsonArray();
+			JsonElement child = to.get(path[i]);
+			if (child == null) {
+				JsonArray copies = new JsonArray();
+				for (int j = 0; j < items.size(); ++j) {
+					copies.add(new JsonObject());
+				}
+				child = copies;
+				to.add(path[i], child);
+			}
+			JsonArray copies = child.getAsJsonArray();
+			for (int j = 0; j < items.size(); ++j) {
+				if (items.get(j).isJsonObject()) {
+					copyPath(items.get(j).getAsJsonObject(), copies.get(j)
+							.getAsJsonObject(), path, i + 1);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * Role: The body of a response the server compressed with gzip or deflate,
+ * decompressed as it is read. Nothing is decompressed ahead of time, so
+ * streaming readers (like ESRetrieval.searchByIds()) still get each story
+ * as soon as its bytes arrive. ESClient puts it around every compressed
+ * response, so ESRetrieval and ESUpdates never see the compression.
+ * </br></br>
+ *
+ * "deflate" is sent by some servers as a zlib stream and by others as raw
+ * deflate data, so the first two bytes are looked at to tell which.
+ *
+ * @author Stephanie Gil
+ *
+ * @see ESClient
+ */
+public class InflatingEntity extends HttpEntityWrapper {
+	private static final int BUFFER_SIZE = 8192;
+	private final boolean gzip;
+	private InputStream content = null;
+
+	/**
+	 * Initializes a new InflatingEntity.
+	 *
+	 * @param entity
+	 * 			The compressed body, as received.
+	 * @param gzip
+	 * 			True if it was compressed with gzip, false for deflate.
+	 */
+	public InflatingEntity(HttpEntity entity, boolean gzip) {
+		super(entity);
+		this.gzip = gzip;
+	}
+
+	@Override
+	public Header getContentEncoding() {
+		return null;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	/**
+	 * Returns the decompressed body. The body can only be read once, so the
+	 * same stream is returned every time.
+	 */
+	@Override
+	public synchronized InputStream getContent() throws IOException {
+		if (content == null) {
+			InputStream in = wrappedEntity.getContent();
+			if (gzip) {
+				content = new GZIPInputStream(in, BUFFER_SIZE);
+			} else {
+				content = inflate(in);
+			}
+		}
+		return content;
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		InputStream in = getContent();
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns a stream decompressing deflate data, with or without the zlib
+	 * header around it.
+	 */
+	private static InputStream inflate(InputStream in) throws IOException {
+		PushbackInputStream pushback = new PushbackInputStream(in, 2);
+		byte[] head = new byte[2];
+		int read = 0;
+		while (read < 2) {
+			int count = pushback.read(head, read, 2 - read);
+			if (count == -1) {
+				break;
+			}
+			read += count;
+		}
+		pushback.unread(head, 0, read);
+		boolean zlib = read == 2 && (head[0] & 0x0f) == 8
+				&& (((head[0] & 0xff) << 8) | (head[1] & 0xff)) % 31 == 0;
+		return new InflaterInputStream(pushback, new Inflater(!zlib),
+				BUFFER_SIZE);
+	}
+}
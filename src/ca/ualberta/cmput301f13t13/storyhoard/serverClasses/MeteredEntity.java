@@ -0,0 +1,161 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import ca.ualberta.cmput301f13t13.storyhoard.local.Metrics;
+
+/**
+ * Role: Counts the bytes of a request or response body as they go over
+ * the network, and records them in a Metrics histogram once the whole body
+ * has been sent or read. ESClient only puts it around bodies while the
+ * Metrics are on. Bodies are counted as they are on the network, so a
+ * compressed response is counted before it is decompressed. </br></br>
+ *
+ * Example call: </br>
+ * request.setEntity(new MeteredEntity(entity, "es.bytes.out")); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see ESClient
+ * @see Metrics
+ */
+public class MeteredEntity extends HttpEntityWrapper {
+	private static final int BUFFER_SIZE = 8192;
+	private final String histogram;
+	private CountingInputStream content = null;
+
+	/**
+	 * Initializes a new MeteredEntity.
+	 *
+	 * @param entity
+	 * 			The body to count.
+	 * @param histogram
+	 * 			Name of the histogram the size of the body is recorded in.
+	 */
+	public MeteredEntity(HttpEntity entity, String histogram) {
+		super(entity);
+		this.histogram = histogram;
+	}
+
+	/**
+	 * Returns the body, counting what is read of it. The size is recorded
+	 * once the end is reached, or once the stream is closed.
+	 */
+	@Override
+	public synchronized InputStream getContent() throws IOException {
+		if (content == null) {
+			content = new CountingInputStream(wrappedEntity.getContent());
+		}
+		return content;
+	}
+
+	/**
+	 * Reads what is left of the body, so it is counted, and frees the
+	 * connection.
+	 */
+	@Override
+	public void consumeContent() throws IOException {
+		CountingInputStream in = (CountingInputStream) getContent();
+		if (!in.recorded) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (in.read(buffer) != -1) {
+			}
+		}
+		wrappedEntity.consumeContent();
+	}
+
+	/**
+	 * Writes the body, then records how many bytes it took.
+	 */
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		final long[] bytes = new long[1];
+		wrappedEntity.writeTo(new FilterOutputStream(out) {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				bytes[0]++;
+			}
+
+			@Override
+			public void write(byte[] buffer, int offset, int length)
+					throws IOException {
+				out.write(buffer, offset, length);
+				bytes[0] += length;
+			}
+		});
+		Metrics.record(histogram, bytes[0]);
+	}
+
+	/**
+	 * Counts the bytes read, and records them once, at the end of the body
+	 * or when closed.
+	 */
+	private class CountingInputStream extends FilterInputStream {
+		private long bytes = 0;
+		private boolean recorded = false;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b == -1) {
+				finish();
+			} else {
+				bytes++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length)
+				throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read == -1) {
+				finish();
+			} else {
+				bytes += read;
+			}
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			finish();
+			super.close();
+		}
+
+		private void finish() {
+			if (!recorded) {
+				recorded = true;
+				Metrics.record(histogram, bytes);
+			}
+		}
+	}
+}
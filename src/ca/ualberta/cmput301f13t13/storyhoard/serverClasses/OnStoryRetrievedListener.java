@@ -0,0 +1,45 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+
+/**
+ * Role: Receives stories one at a time as they are parsed out of a server
+ * response. This lets callers asking for many stories at once (for example
+ * with ServerManager.getByIds()) start working on the first story before
+ * the rest of the response has even arrived. </br></br>
+ *
+ * Note that onStoryRetrieved() is called on whichever thread is reading the
+ * response, so implementations should not touch any views directly.
+ *
+ * @author Stephanie Gil
+ *
+ * @see ServerManager
+ * @see ESRetrieval
+ */
+public interface OnStoryRetrievedListener {
+
+	/**
+	 * Called once for every story found on the server, in the order they
+	 * appear in the response.
+	 *
+	 * @param story
+	 * 			A complete story that was just parsed from the server.
+	 */
+	public void onStoryRetrieved(Story story);
+}
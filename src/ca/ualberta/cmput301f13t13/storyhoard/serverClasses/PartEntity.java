@@ -0,0 +1,114 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import com.google.gson.Gson;
+
+/**
+ * Role: The body of a request that puts one image of a story on the server
+ * as a part of its own, written straight to the connection as JSON:
+ * {"format":"webp","bitmapString":"..."}. The image file is read and
+ * encoded to base 64 a piece at a time, like StoryEntity does. </br></br>
+ *
+ * Since the length of the encoded image is known from the size of the
+ * file, the body is sent with its length rather than chunked. If a
+ * TransferProgress is given, every byte written is counted in it, and
+ * writing fails as soon as it is cancelled.
+ *
+ * @author Stephanie Gil
+ *
+ * @see ESUpdates
+ * @see StoryEntity
+ */
+public class PartEntity extends AbstractHttpEntity {
+	private final String path;
+	private final byte[] head;
+	private final byte[] tail;
+	private final long length;
+	private final TransferProgress progress;
+
+	/**
+	 * Initializes a new PartEntity.
+	 *
+	 * @param path
+	 * 			Path of the image file.
+	 * @param format
+	 * 			Format of the image, Media.JPEG or Media.WEBP.
+	 * @param gson
+	 * 			Used to escape the format.
+	 * @param progress
+	 * 			Counts the bytes written. May be null.
+	 */
+	public PartEntity(String path, String format, Gson gson,
+			TransferProgress progress) throws IOException {
+		this.path = path;
+		this.progress = progress;
+		head = ("{\"format\":" + gson.toJson(format) + ",\"bitmapString\":\"")
+				.getBytes("UTF-8");
+		tail = "\"}".getBytes("UTF-8");
+		long fileLength = new File(path).length();
+		length = head.length + StoryEntity.encodedLength(fileLength)
+				+ tail.length;
+		setContentType("application/json; charset=UTF-8");
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return length;
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * Returns the whole body in memory. Only here because HttpEntity needs
+	 * it; requests are always sent with writeTo().
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writeTo(bytes);
+		return new ByteArrayInputStream(bytes.toByteArray());
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		if (progress != null) {
+			out = new StoryEntity.CountingOutputStream(out, progress);
+		}
+		out.write(head);
+		StoryEntity.encodeFile(path, out);
+		out.write(tail);
+		out.flush();
+	}
+}
@@ -0,0 +1,318 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Context;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.local.Metrics;
+import ca.ualberta.cmput301f13t13.storyhoard.local.Utilities;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+/**
+ * Role: Keeps the stories returned by recent searches of the server (the
+ * Published tab, and searches by keywords), so that the same search
+ * doesn't have to go to the server again. Each search is kept under its
+ * query (see StoryQuery), which includes the page asked for, in a file of
+ * its own in the application's cache folder, so it is still there after
+ * the application is restarted. </br></br>
+ *
+ * A search kept for less than TTL_MS is fresh, and can be used instead of
+ * asking the server. An older one is stale: it can still be shown while
+ * the server is asked again in the background (see
+ * ServerManager.getCachedAll()), and is replaced when the answer arrives.
+ * No more than MAX_ENTRIES searches or MAX_BYTES of files are kept; the
+ * searches used least recently are dropped first. Everything is dropped
+ * whenever a story is published or removed, since any search could have
+ * changed. </br></br>
+ *
+ * The number of fresh hits, stale hits and misses are counted, and can be
+ * read with getHits(), getStaleHits() and getMisses(). </br></br>
+ *
+ * Example call: </br>
+ * QueryCache cache = QueryCache.getInstance(someActivity.this); </br>
+ * QueryCache.Entry entry = cache.get(query.toJson()); </br>
+ * if (entry == null || !entry.isFresh()) { </br>
+ * 		cache.put(query.toJson(), stories); </br>
+ * } </br>
+ *
+ * Design Pattern: Singleton
+ *
+ * @author Stephanie Gil
+ *
+ * @see ServerManager
+ */
+public class QueryCache {
+	public static final long TTL_MS = 5 * 60 * 1000;
+	public static final int MAX_ENTRIES = 32;
+	public static final long MAX_BYTES = 4 * 1024 * 1024;
+	private static final String FOLDER = "queries";
+	private static QueryCache self = null;
+
+	/**
+	 * The stories kept for a search, and when they were kept.
+	 */
+	public static class Entry {
+		private long time;
+		private ArrayList<Story> stories;
+
+		public ArrayList<Story> getStories() {
+			return stories;
+		}
+
+		/**
+		 * Returns how long ago the stories were kept, in milliseconds.
+		 */
+		public long getAge() {
+			return System.currentTimeMillis() - time;
+		}
+
+		/**
+		 * Returns whether the stories are recent enough to be used instead
+		 * of asking the server.
+		 */
+		public boolean isFresh() {
+			long age = getAge();
+			return age >= 0 && age < TTL_MS;
+		}
+	}
+
+	private final File folder;
+	private final Gson gson = new Gson();
+	// the files kept, least recently used first, with their lengths
+	private LinkedHashMap<String, Long> files = null;
+	private long bytes = 0;
+	private int hits = 0;
+	private int staleHits = 0;
+	private int misses = 0;
+
+	protected QueryCache(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Returns the one instance of QueryCache, which keeps its files in the
+	 * application's cache folder.
+	 *
+	 * @param context
+	 */
+	public static synchronized QueryCache getInstance(Context context) {
+		if (self == null) {
+			self = new QueryCache(new File(context.getCacheDir(), FOLDER));
+		}
+		return self;
+	}
+
+	/**
+	 * Returns the stories kept for the query, fresh or stale, or null if
+	 * there are none. Reads a file, so it should not be called on the main
+	 * UI thread.
+	 *
+	 * @param key
+	 * 			The query, as sent to the server.
+	 */
+	public synchronized Entry get(String key) {
+		load();
+		String name = getName(key);
+		// get() rather than containsKey(), to count it as used
+		if (files.get(name) == null) {
+			++misses;
+			Metrics.count("cache.query.miss");
+			return null;
+		}
+		Entry entry = null;
+		File file = new File(folder, name);
+		try {
+			Reader reader = new InputStreamReader(new FileInputStream(file),
+					"UTF-8");
+			try {
+				entry = gson.fromJson(reader, Entry.class);
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (JsonParseException e) {
+			e.printStackTrace();
+		}
+		if (entry == null || entry.stories == null) {
+			remove(name);
+			++misses;
+			Metrics.count("cache.query.miss");
+			return null;
+		}
+		if (entry.isFresh()) {
+			++hits;
+			Metrics.count("cache.query.hit");
+		} else {
+			++staleHits;
+			Metrics.count("cache.query.stale");
+		}
+		return entry;
+	}
+
+	/**
+	 * Keeps the stories found by the query, replacing any kept before, and
+	 * drops the searches used least recently if there are too many. Writes
+	 * a file, so it should not be called on the main UI thread.
+	 *
+	 * @param key
+	 * 			The query, as sent to the server.
+	 * @param stories
+	 * 			The stories the server returned.
+	 */
+	public synchronized void put(String key, ArrayList<Story> stories) {
+		load();
+		String name = getName(key);
+		remove(name);
+		Entry entry = new Entry();
+		entry.time = System.currentTimeMillis();
+		entry.stories = stories;
+
+		File file = new File(folder, name);
+		try {
+			Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+					"UTF-8");
+			try {
+				gson.toJson(entry, writer);
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			file.delete();
+			return;
+		}
+		files.put(name, file.length());
+		bytes += file.length();
+
+		Iterator<Map.Entry<String, Long>> eldest = files.entrySet()
+				.iterator();
+		while ((files.size() > MAX_ENTRIES || bytes > MAX_BYTES)
+				&& eldest.hasNext()) {
+			Map.Entry<String, Long> drop = eldest.next();
+			if (drop.getKey().equals(name)) {
+				break;
+			}
+			new File(folder, drop.getKey()).delete();
+			bytes -= drop.getValue();
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Drops every search kept.
+	 */
+	public synchronized void clear() {
+		load();
+		for (String name : files.keySet()) {
+			new File(folder, name).delete();
+		}
+		files.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Returns how many times get() found fresh stories.
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns how many times get() found stale stories.
+	 */
+	public synchronized int getStaleHits() {
+		return staleHits;
+	}
+
+	/**
+	 * Returns how many times get() found nothing.
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "QueryCache: " + hits + " hits, " + staleHits + " stale hits, "
+				+ misses + " misses, " + (files == null ? 0 : files.size())
+				+ " searches kept (" + bytes + " bytes)";
+	}
+
+	/**
+	 * Finds the files kept by an earlier run of the application the first
+	 * time the cache is used.
+	 */
+	private void load() {
+		if (files != null) {
+			return;
+		}
+		files = new LinkedHashMap<String, Long>(MAX_ENTRIES, 0.75f, true);
+		folder.mkdirs();
+		File[] found = folder.listFiles();
+		if (found == null) {
+			return;
+		}
+		Arrays.sort(found, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				return Long.valueOf(a.lastModified()).compareTo(
+						b.lastModified());
+			}
+		});
+		for (File file : found) {
+			files.put(file.getName(), file.length());
+			bytes += file.length();
+		}
+	}
+
+	private void remove(String name) {
+		Long length = files.remove(name);
+		if (length != null) {
+			new File(folder, name).delete();
+			bytes -= length;
+		}
+	}
+
+	/**
+	 * Returns the name of the file a query is kept in, a hash of the query.
+	 */
+	private static String getName(String key) {
+		try {
+			return Utilities.sha1Hex(key.getBytes("UTF-8")) + ".json";
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Role: Keeps a small pool of ids of published stories, picked at random,
+ * ready for ServerManager.getRandom(). </br></br>
+ *
+ * Having the server sort every story with a random() script on each request
+ * makes it score the whole index just to return one story. Instead, this
+ * pool asks for a page of ids only (no story content) starting at a random
+ * offset in the index, shuffles them, and hands them out one at a time.
+ * When it is running low, it refills itself on the ServerManager's I/O
+ * threads, so a random story usually only costs the download of that one
+ * story. </br></br>
+ *
+ * Ids can go stale if a story is removed from the server after it was put
+ * in the pool, so whoever uses an id should be ready for the story not to
+ * exist anymore. The number of stories the offsets are picked from is
+ * counted again every RECOUNT_EVERY refills, and after ServerManager
+ * changes the stories (see storiesChanged()), so new stories are offered
+ * too.
+ *
+ * @author Stephanie Gil
+ *
+ * @see ServerManager
+ */
+class RandomStoryPool {
+	private static final int BATCH_SIZE = 10;
+	private static final int REFILL_BELOW = 3;
+	private static final int RECOUNT_EVERY = 5;
+
+	private final Executor executor;
+	private final Random random = new Random();
+	private final LinkedList<String> ids = new LinkedList<String>();
+	private StoryRepository repository = null;
+	private String lastTaken = null;
+	private int total = -1;
+	private int fillsSinceCount = 0;
+	private boolean refilling = false;
+
+	/**
+	 * Initializes a new RandomStoryPool.
+	 *
+	 * @param executor
+	 * 			Runs the background refills.
+	 */
+	RandomStoryPool(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Returns the id of a random story on the server, or null if there are
+	 * no stories on it. If the pool is empty, this blocks while a batch of
+	 * ids is fetched, so it must not be called on the main UI thread. When
+	 * only a few ids are left afterwards, a refill is started in the
+	 * background.
+	 *
+	 * @param repository
+	 * 			Where the stories are. If it is not the repository the pool 
+	 * 			was filled from, the pool is emptied.
+	 */
+	String take(StoryRepository repository) throws IOException {
+		String id;
+		synchronized (this) {
+			switchTo(repository);
+			id = ids.poll();
+		}
+		if (id == null) {
+			fill(repository);
+			synchronized (this) {
+				id = ids.poll();
+			}
+		}
+		synchronized (this) {
+			if (id != null) {
+				lastTaken = id;
+			}
+		}
+		refillLater(repository);
+		return id;
+	}
+
+	/**
+	 * Starts filling the pool in the background if it is running low, so
+	 * that the next take() doesn't have to wait for the server.
+	 */
+	void refillLater(final StoryRepository repository) {
+		synchronized (this) {
+			switchTo(repository);
+			if (refilling || ids.size() >= REFILL_BELOW) {
+				return;
+			}
+			refilling = true;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						fill(repository);
+					} catch (IOException e) {
+						e.printStackTrace();
+					} finally {
+						synchronized (RandomStoryPool.this) {
+							refilling = false;
+						}
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			synchronized (this) {
+				refilling = false;
+			}
+		}
+	}
+
+	/**
+	 * Forgets the number of stories, so the next refill counts them again.
+	 * Called when stories are published or removed.
+	 */
+	synchronized void storiesChanged() {
+		total = -1;
+	}
+
+	/**
+	 * Drops an id that is known not to be on the server anymore.
+	 */
+	synchronized void forget(String id) {
+		ids.remove(id);
+	}
+
+	/**
+	 * Fetches a page of ids from a random offset of the repository and adds
+	 * them to the pool in a random order. The number of stories is asked
+	 * for first if it isn't known, or was counted RECOUNT_EVERY refills 
+	 * ago. A page shorter than asked for means stories were removed, so it
+	 * is asked for again the next time.
+	 */
+	private void fill(StoryRepository repository) throws IOException {
+		int known;
+		synchronized (this) {
+			known = total;
+			if (++fillsSinceCount >= RECOUNT_EVERY) {
+				known = -1;
+			}
+		}
+		if (known < 0) {
+			known = repository.count();
+			synchronized (this) {
+				fillsSinceCount = 0;
+			}
+		}
+		int from = 0;
+		if (known > BATCH_SIZE) {
+			from = random.nextInt(known - BATCH_SIZE + 1);
+		}
+		ArrayList<String> batch = repository.getIds(from, BATCH_SIZE);
+		Collections.shuffle(batch, random);
+
+		synchronized (this) {
+			if (repository != this.repository) {
+				// the repository changed while we were waiting for it
+				return;
+			}
+			total = batch.size() < Math.min(BATCH_SIZE, known) ? -1 : known;
+			for (String id : batch) {
+				// avoid showing the same story twice in a row
+				if (!ids.contains(id) && !id.equals(lastTaken)) {
+					ids.add(id);
+				}
+			}
+			if (ids.isEmpty() && lastTaken != null && batch.contains(lastTaken)) {
+				// it is the only story there is
+				ids.add(lastTaken);
+			}
+		}
+	}
+
+	/**
+	 * Empties the pool if its ids came from a different repository.
+	 */
+	private void switchTo(StoryRepository repository) {
+		if (repository != this.repository) {
+			this.repository = repository;
+			ids.clear();
+			lastTaken = null;
+			total = -1;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+/**
+ * Role: Receives the result of one of the asynchronous ServerManager
+ * operations. Both methods are always called on the main UI thread, so it
+ * is safe to update views from them. If the operation was cancelled, neither
+ * method is called. </br></br>
+ *
+ * Example: </br>
+ * serverMan.getRandom(new ServerCallback<Story>() { </br>
+ * 		public void onSuccess(Story story) { ... } </br>
+ * 		public void onFailure(Exception e) { ... } </br>
+ * }); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see ServerManager
+ * @see ServerTask
+ */
+public interface ServerCallback<T> {
+
+	/**
+	 * Called with the result of the operation once it has finished. The
+	 * result may be null (for example, when a story searched for by id
+	 * is not on the server).
+	 */
+	public void onSuccess(T result);
+
+	/**
+	 * Called if the operation could not be completed, usually because the
+	 * server could not be reached.
+	 */
+	public void onFailure(Exception e);
+}
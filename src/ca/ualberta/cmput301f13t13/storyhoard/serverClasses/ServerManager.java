@@ -15,45 +15,121 @@
  * 
  */
 package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.client.ClientProtocolException;
 
-import android.os.StrictMode;
+import android.content.Context;
+import android.os.Process;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
 import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+import ca.ualberta.cmput301f13t13.storyhoard.local.Utilities;
 
 /**
- * Role: Uses methods from the ESUpdates and ESRetrieval class to add, remove, 
- * update, and search for stories that have been published onto the server. This
+ * Role: Uses a StoryRepository to add, remove, update, and search for 
+ * stories that have been published onto the server. By default it is an 
+ * ESStoryRepository, which uses methods from the ESUpdates and ESRetrieval
+ * class; setRepository() can change it (see InMemoryStoryRepository). This
  * class does not implement the storing manager because its retrieval methods are
  * much more varied than just retrieve(), and it also does not interact with the
  * database and therefore has no need for the methods existsLocally() or 
  * setSearchCriteria(). </br></br>
  * 
+ * Every operation comes in two versions. The first blocks until the server
+ * has answered and must never be called on the main UI thread (use it from
+ * an AsyncTask or another background thread). The second takes a 
+ * ServerCallback, runs the operation on one of a small, fixed number of
+ * I/O threads, and returns straight away with a ServerTask that can be used
+ * to cancel it. The callback is called on the main UI thread. </br></br>
+ * 
+ * A story is published in parts, so that a dropped connection doesn't 
+ * lose the whole upload. Each image is sent first as a part of its own,
+ * named after a hash of the image, to an index next to the stories (for
+ * ".../stories/", it is ".../stories_media/"). Parts already on the 
+ * server, from a publish that didn't finish or from another story with 
+ * the same image, are not sent again, and a part that fails is retried on
+ * its own. The story itself is sent last, with the id of the part of 
+ * each media in place of its image. Stories retrieved from the server get
+ * their images back from the parts; stories published before parts 
+ * existed still carry their images inline and are read as before. 
+ * </br></br>
+ * 
+ * Requests time out, reads are retried, and requests fail straight away 
+ * while the server is down (see ESClient). isServerAvailable() tells 
+ * whether it is, so the user interface can show what is saved on the 
+ * phone instead. Searches fall back to the stories kept in the QueryCache,
+ * however old, when the server can't be reached. </br></br>
+ * 
  * Design Pattern: Singleton
  * 
  * @author Stephanie Gil
  * 
+ * @see StoryRepository
  * @see ESUpdates
  * @see ESRetrieval
+ * @see ServerTask
  */
 public class ServerManager {
-	private static ESRetrieval esRetrieval = null;
-	private static ESUpdates esUpdates = null;
 	private static ServerManager self = null;
-	public static String server = "http://cmput301.softwareprocess.es:8080/cmput301f13t13/stories/";
+	private static final int MAX_IDS_PER_REQUEST = 50;
+	private static final int IO_THREADS = ESClient.MAX_CONNECTIONS;
+	private static final int MAX_WAITING_TASKS = 32;
+	private static final int MAX_RANDOM_TRIES = 3;
+	private static final int MAX_PART_TRIES = 3;
+	private static ThreadPoolExecutor ioExecutor = null;
+	private static RandomStoryPool randomPool = null;
+	public static final int PAGE_SIZE = 10;
+	private static QueryCache queryCache = null;
+	private static volatile StoryRepository repository = null;
 	
 
 	/**
 	 * Initializes a new ServerManager.
 	 */
 	protected ServerManager() {
-		esUpdates = ESUpdates.getInstance();
-		esRetrieval = ESRetrieval.getInstance();
+		if (repository == null) {
+			repository = new ESStoryRepository(ESStoryRepository.STORIES);
+		}
+		ioExecutor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS, 30,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(
+						MAX_WAITING_TASKS), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger(1);
+
+					@Override
+					public Thread newThread(final Runnable r) {
+						return new Thread(new Runnable() {
+							@Override
+							public void run() {
+								Process.setThreadPriority(
+										Process.THREAD_PRIORITY_BACKGROUND);
+								r.run();
+							}
+						}, "ServerManager #" + count.getAndIncrement());
+					}
+				});
+		ioExecutor.allowCoreThreadTimeOut(true);
+		randomPool = new RandomStoryPool(ioExecutor);
 	}
 
 	/**
@@ -65,6 +141,22 @@ public class ServerManager {
 		}
 		return self;
 	}
+
+	/**
+	 * Returns an instance of a ServerManager (singleton), which keeps the
+	 * stories it finds in the application's QueryCache. The cache is set 
+	 * the first time this is called, unless setQueryCache() already set
+	 * one, so it is used however the application was started. </br></br>
+	 * 
+	 * Example call: </br>
+	 * ServerManager serverMan = ServerManager.getInstance(this); </br>
+	 */
+	public static synchronized ServerManager getInstance(Context context) {
+		if (queryCache == null) {
+			queryCache = QueryCache.getInstance(context);
+		}
+		return getInstance();
+	}
 	
 	/**
 	 * Changes the server index. Only used for by the JUnit tests so that
@@ -73,7 +165,38 @@ public class ServerManager {
 	 * sure it is not polluted with half complete mock stories.
 	 */
 	public void setTestServer() {
-		server = "http://cmput301.softwareprocess.es:8080/cmput301f13t13/tests/";
+		setRepository(new ESStoryRepository(ESStoryRepository.TESTS));
+	}
+
+	/**
+	 * Changes where the stories are published to and retrieved from. By 
+	 * default, they are on the elastic search server 
+	 * (ESStoryRepository.STORIES). Tests and benchmarks can use an 
+	 * InMemoryStoryRepository instead, to run without a network. 
+	 * </br></br>
+	 * 
+	 * Example call: </br>
+	 * serverMan.setRepository(new InMemoryStoryRepository(42)); </br>
+	 */
+	public void setRepository(StoryRepository repository) {
+		ServerManager.repository = repository;
+	}
+
+	public StoryRepository getRepository() {
+		return repository;
+	}
+
+	/**
+	 * Returns false while the server is known to be down, in which case
+	 * every request fails straight away with a 
+	 * CircuitBreaker.ServerUnavailableException. Doesn't send anything.
+	 * </br></br>
+	 * 
+	 * Example call: </br>
+	 * if (!serverMan.isServerAvailable()) { showSavedStories(); } </br>
+	 */
+	public boolean isServerAvailable() {
+		return repository.isAvailable();
 	}
 
 	/**
@@ -101,7 +224,30 @@ public class ServerManager {
 	 * 			Story to be inserted in the server. Assumed to be complete.
 	 */	
 	public void insert(Story story){
-		esUpdates.insertStory(story, server);
+		try {
+			repository.put(story, null);
+			storiesChanged();
+		} catch (ClientProtocolException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Asynchronous version of insert(story). The callback's result is 
+	 * always null.
+	 */
+	public ServerTask<Void> insert(final Story story,
+			ServerCallback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				repository.put(story, null);
+				storiesChanged();
+				return null;
+			}
+		}, callback);
 	}
 
 	/**
@@ -119,31 +265,183 @@ public class ServerManager {
 	 *  Story myStory = getById(id); </br></br> 
 	 *  
 	 *  myStory will contain the story that was searched for, or null if it  
-	 *  didn't exist on the server. </br></br>
-	 *  
-	 *  One more thing to note is that this operation is currently done on the
-	 *  main UI thread of the android application, which is why the 
-	 *  ThreadPolicy code is needed.
+	 *  didn't exist on the server (or if the server couldn't be reached, or
+	 *  some of its images are missing from it).
 	 *  
 	 * @param id 
 	 * 			Will be a 128-bit UUID value. See the above example to see the
 	 * 			format of a UUID object.
 	 */
 	public Story getById(UUID id) {
-		StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder()
-		.permitAll().build();
-		StrictMode.setThreadPolicy(policy);
+		try {
+			return fetchById(id.toString(), null);
+		} catch (ClientProtocolException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * Asynchronous version of getById(id). The callback gets null if the 
+	 * story is not on the server.
+	 */
+	public ServerTask<Story> getById(final UUID id,
+			ServerCallback<Story> callback) {
+		return submit(new Callable<Story>() {
+			@Override
+			public Story call() throws Exception {
+				return fetchById(id.toString(), null);
+			}
+		}, callback);
+	}
+
+
+	/**
+	 * Does the actual work of getById(), also downloading the images kept
+	 * in parts of their own, and letting any errors through. Throws an
+	 * IOException if any of those parts isn't on the server.
+	 * 
+	 * @param progress
+	 * 			Counts what has been received, and can abort it. May be null.
+	 */
+	private Story fetchById(String id, TransferProgress progress)
+			throws ClientProtocolException, IOException {
+		Story story = repository.getById(id, progress);
+		if (story != null) {
+			fetchAllParts(story, progress);
+		}
+		return story;
+	}
+
+	/**
+	 * Retrieves every story on the server whose id is in the given collection
+	 * using as few requests as possible (elastic search's multi get), rather  
+	 * than one round trip per story like getById(). Ids with no matching  
+	 * story are skipped, so the list returned may be shorter than the  
+	 * collection of ids, and an empty list is returned if none were found.
+	 * </br></br>
+	 * 
+	 * Example call: </br>
+	 * ArrayList<UUID> ids = new ArrayList<UUID>(); </br>
+	 * ids.add(UUID.fromString("5231b533-ba17-4787-98a3-f2df37de2aD7")); </br>
+	 * ids.add(UUID.fromString("f1bda3a9-4560-4530-befc-2d58db9419b7")); </br>
+	 * ArrayList<Story> stories = getByIds(ids); </br></br>
+	 * 
+	 * This does network I/O, so it must not be called on the main UI thread.
+	 * 
+	 * @param ids
+	 * 			Ids of the stories wanted.
+	 */
+	public ArrayList<Story> getByIds(Collection<UUID> ids) {
+		final ArrayList<Story> stories = new ArrayList<Story>();
+		getByIds(ids, new OnStoryRetrievedListener() {
+			@Override
+			public void onStoryRetrieved(Story story) {
+				stories.add(story);
+			}
+		});
+		return stories;
+	}
+
+	/**
+	 * Same as getByIds(ids) above, except that each story is passed to the 
+	 * listener as soon as the response it was in has been read (and its 
+	 * images downloaded) instead of waiting for all of them. The ids are 
+	 * sent in batches of at most MAX_IDS_PER_REQUEST so a very large 
+	 * collection doesn't turn into one enormous request. </br></br>
+	 * 
+	 * Example call: </br>
+	 * getByIds(ids, new OnStoryRetrievedListener() { </br>
+	 * 		public void onStoryRetrieved(Story story) { </br>
+	 * 			syncher.syncStoryFromServer(story); </br>
+	 * 		} </br>
+	 * }); </br>
+	 * 
+	 * @param ids
+	 * 			Ids of the stories wanted.
+	 * @param listener
+	 * 			Gets every story found, one at a time.
+	 */
+	public void getByIds(Collection<UUID> ids, OnStoryRetrievedListener listener) {
+		try {
+			fetchByIds(ids, listener);
+		} catch (ClientProtocolException e) {
+			e.printStackTrace();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
 
-		// search by id
-		return esRetrieval.searchById(id.toString(), server);	
+	/**
+	 * Asynchronous version of getByIds(ids). The callback gets every story
+	 * found at once.
+	 */
+	public ServerTask<ArrayList<Story>> getByIds(final Collection<UUID> ids,
+			ServerCallback<ArrayList<Story>> callback) {
+		return submit(new Callable<ArrayList<Story>>() {
+			@Override
+			public ArrayList<Story> call() throws Exception {
+				final ArrayList<Story> stories = new ArrayList<Story>();
+				fetchByIds(ids, new OnStoryRetrievedListener() {
+					@Override
+					public void onStoryRetrieved(Story story) {
+						stories.add(story);
+					}
+				});
+				return stories;
+			}
+		}, callback);
 	}
 
+	/**
+	 * Does the actual work of getByIds(), sending the ids in batches of at
+	 * most MAX_IDS_PER_REQUEST and letting any errors through.
+	 */
+	private void fetchByIds(Collection<UUID> ids,
+			final OnStoryRetrievedListener listener)
+			throws ClientProtocolException, IOException {
+		final ArrayList<Story> found = new ArrayList<Story>();
+		OnStoryRetrievedListener collector = new OnStoryRetrievedListener() {
+			@Override
+			public void onStoryRetrieved(Story story) {
+				found.add(story);
+			}
+		};
+		Iterator<UUID> it = ids.iterator();
+		while (it.hasNext()) {
+			ArrayList<String> batch = new ArrayList<String>();
+			while (it.hasNext() && batch.size() < MAX_IDS_PER_REQUEST) {
+				batch.add(it.next().toString());
+			}
+			// the images of a story are downloaded once the response it 
+			// was in has been read
+			repository.getByIds(batch, collector);
+			for (Story story : found) {
+				Set<String> missing = fetchParts(getMedias(story), null);
+				if (missing.isEmpty()) {
+					listener.onStoryRetrieved(story);
+				} else {
+					// can't be saved without them, so it is skipped
+					System.err.println("Story " + story.getId() 
+							+ " is missing parts " + missing);
+				}
+			}
+			found.clear();
+		}
+	}
 
 	/**
 	 * Uses the retrieve method in the ESRetrieval class to get all of the 
 	 * stories available on the server. An empty array list will be returned
 	 * if no stories are available. </br></br>
 	 * 
+	 * Only the headers of the stories (StoryQuery.HEADER_FIELDS) and their
+	 * covers are returned, which is all the story grids show. Use 
+	 * getWholeStory() to get the rest of a story before saving it.
+	 * </br></br>
+	 * 
 	 * Example call: </br>
 	 * ArrayList<Story> stories = getAll(); 
 	 * 
@@ -151,7 +449,7 @@ public class ServerManager {
 	public ArrayList<Story> getAll() {
 		ArrayList<Story> stories = new ArrayList<Story>();
 		try {
-			stories = esRetrieval.retrieve(null, server);
+			stories = fetchList(listQuery(null, 0, PAGE_SIZE));
 		} catch (ClientProtocolException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -161,51 +459,133 @@ public class ServerManager {
 	}
 
 	/**
-	 * Builds a string query to randomly sort stories on the server and 
-	 * retrieves a maximum of one to return (of there are no stories on 
-	 * the server, null will be returned). It also uses the retrieve 
-	 * method from the ESRetrieval class to do so. </br></br>
+	 * Asynchronous version of getAll().
+	 */
+	public ServerTask<ArrayList<Story>> getAll(
+			ServerCallback<ArrayList<Story>> callback) {
+		return submit(new Callable<ArrayList<Story>>() {
+			@Override
+			public ArrayList<Story> call() throws Exception {
+				return fetchList(listQuery(null, 0, PAGE_SIZE));
+			}
+		}, callback);
+	}
+
+	/**
+	 * Same as getAll(callback), but gets the page of at most size stories
+	 * starting at from, for showing the stories a page at a time.
+	 */
+	public ServerTask<ArrayList<Story>> getAll(final int from, final int size,
+			ServerCallback<ArrayList<Story>> callback) {
+		return submit(new Callable<ArrayList<Story>>() {
+			@Override
+			public ArrayList<Story> call() throws Exception {
+				return fetchList(listQuery(null, from, size));
+			}
+		}, callback);
+	}
+
+	/**
+	 * Returns the page of getAll(from, size, callback) kept by the last time
+	 * it was retrieved, fresh or stale, or null if it isn't kept or no 
+	 * QueryCache is used (see setQueryCache()). Doesn't go to the server, 
+	 * so a list can be shown straight away, and then refreshed with 
+	 * getAll(from, size, callback) if the entry isn't fresh. Reads a file,
+	 * so must not be called on the main UI thread. </br></br>
 	 * 
 	 * Example call: </br>
-	 * Story story = getRandom(); </br></br>
+	 * QueryCache.Entry entry = serverMan.getCachedAll(0, 
+	 * 		ServerManager.PAGE_SIZE); </br>
+	 * if (entry != null) { show(entry.getStories()); } </br>
+	 * if (entry == null || !entry.isFresh()) { </br>
+	 * 		serverMan.getAll(0, ServerManager.PAGE_SIZE, callback); </br>
+	 * } </br>
+	 */
+	public QueryCache.Entry getCachedAll(int from, int size) {
+		return getCached(listQuery(null, from, size));
+	}
+
+	/**
+	 * Sets the cache that keeps the stories returned by getAll() and 
+	 * searchByKeywords(). Without one, every call goes to the server. 
+	 * getInstance(context) sets the application's QueryCache, so this is
+	 * only needed to use another one.
+	 */
+	public void setQueryCache(QueryCache cache) {
+		queryCache = cache;
+	}
+
+	/**
+	 * Returns a random story from the server, or null if there are no
+	 * stories on it. The story's id comes from a pool of random ids that is
+	 * kept filled in the background (see RandomStoryPool), so usually only
+	 * the chosen story itself has to be downloaded. </br></br>
 	 * 
-	 * One more thing to note is that this operation is currently done on the
-	 * main UI thread of the android application, which is why the 
-	 * ThreadPolicy code is needed.
-	 *  
+	 * Example call: </br>
+	 * Story story = getRandom(); </br></br>
 	 */
 	public Story getRandom() {
-		StrictMode.ThreadPolicy policy = new StrictMode.ThreadPolicy.Builder()
-		.permitAll().build();
-		StrictMode.setThreadPolicy(policy);
-		
-		String query = "{\"query\": {\"custom_score\" : {\"script\" : "
-				+ "\"random()\", \"query\" : {\"match_all\" : {}}}}, " +
-				"\"sort\" : {\"_score\" : {\"order\" :\"desc\"}}, \"size\" :" 
-				+ " 1 }";
-		ArrayList<Story> stories = new ArrayList<Story>();	
 		try {
-			stories = esRetrieval.retrieve(query, server);
+			return fetchRandom();
 		} catch (ClientProtocolException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
 			e.printStackTrace();
-		}	
-		if (stories.size() != 1) {
-			return null;
-		} else {
-			return stories.get(0);
-		}		
+		}
+		return null;
 	}
 
 	/**
-	 * Builds a query string to find all stories on the server that contain
-	 * the given keywords in their title. This method uses the retrieve
-	 * method in ESRetrieval to actually do the retrieval. </br></br>
-	 * </br> Note also that the titles must contain ALL the keywords
-	 * in their title, not just at least one of them. </br>
-	 * It is also assumes that the string of keywords passed in contains
-	 * the keywords separated by whitespace. </br></br>
+	 * Starts filling the pool of random story ids in the background, so that
+	 * the next call to getRandom() doesn't have to wait for it. Meant to be
+	 * called when a screen offering random stories is shown. Safe to call
+	 * from the main UI thread.
+	 */
+	public void prepareRandom() {
+		randomPool.refillLater(repository);
+	}
+
+	/**
+	 * Asynchronous version of getRandom(). The callback gets null if there
+	 * are no stories on the server.
+	 */
+	public ServerTask<Story> getRandom(ServerCallback<Story> callback) {
+		return submit(new Callable<Story>() {
+			@Override
+			public Story call() throws Exception {
+				return fetchRandom();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Does the actual work of getRandom(), letting any errors through.
+	 */
+	private Story fetchRandom() throws ClientProtocolException, IOException {
+		for (int i = 0; i < MAX_RANDOM_TRIES; ++i) {
+			String id = randomPool.take(repository);
+			if (id == null) {
+				return null;
+			}
+			Story story = fetchById(id, null);
+			if (story != null) {
+				return story;
+			}
+			// the story was removed after its id was pooled
+			randomPool.forget(id);
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the stories on the server that contain all of the given keywords
+	 * in their title, author or description, best matches first (see 
+	 * StoryQuery). Like getAll(), only the headers of the stories are 
+	 * returned. It is assumed that the string of keywords passed in 
+	 * contains the keywords separated by whitespace. </br></br>
+	 * 
+	 * If the same search was made less than QueryCache.TTL_MS ago, its 
+	 * results are returned again without going to the server. </br></br>
 	 * 
 	 * Example Call: </br>
 	 * String keywords = "dog cat blue sky";
@@ -213,19 +593,13 @@ public class ServerManager {
 	 * 
 	 * 
 	 * @param keywords
-	 * 			The keywords that you want appearing in the title of the
-	 * 			stories you are searching. Each keyword must be separated 
-	 * 			by whitespace.
+	 * 			The keywords that you want appearing in the stories you are
+	 * 			searching. Each keyword must be separated by whitespace.
 	 */ 
 	public ArrayList<Story> searchByKeywords(String keywords) {
-		
-		String selection = prepareKeywords(keywords);
-		String query = "{\"query\" : {\"query_string\" : {\"default_field\""
-				+ " : \"title\",\"query\" : \"" + selection + "\"}}}";	
-
 		ArrayList<Story> stories = new ArrayList<Story>();
 		try {
-			stories =  esRetrieval.retrieve(query, server);
+			stories = searchList(listQuery(keywords, 0, PAGE_SIZE));
 		} catch (ClientProtocolException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -235,15 +609,59 @@ public class ServerManager {
 	}
 
 	/**
-	 * This method first checks whether or not the story to be updated exists
-	 * on the server. If it doesn't, then the insert method is called. If it
-	 * does, then it updates the story currently on the server. If the 
-	 * operation is succesful, it returns true, and if it fails, it returns
-	 * false. </br></br>
+	 * Asynchronous version of searchByKeywords(keywords).
+	 */
+	public ServerTask<ArrayList<Story>> searchByKeywords(final String keywords,
+			ServerCallback<ArrayList<Story>> callback) {
+		return submit(new Callable<ArrayList<Story>>() {
+			@Override
+			public ArrayList<Story> call() throws Exception {
+				return searchList(listQuery(keywords, 0, PAGE_SIZE));
+			}
+		}, callback);
+	}
+
+	/**
+	 * Suggests stories for what the user has typed so far: the best max 
+	 * stories containing every word typed, the last of which may not be 
+	 * finished (see StoryQuery.setPrefix()). Only the title and author of 
+	 * each story are returned, so the response stays small enough to send 
+	 * on every key pressed. The caller is expected to cancel the task of a
+	 * suggestion that is no longer wanted (see SearchController). 
+	 * </br></br>
+	 * 
+	 * Example call: </br>
+	 * ServerTask task = suggest("harry pot", 8, callback); </br>
+	 * 
+	 * @param text
+	 * 			What the user has typed.
+	 * @param max
+	 * 			Most stories to suggest.
+	 */
+	public ServerTask<ArrayList<Story>> suggest(String text, int max,
+			ServerCallback<ArrayList<Story>> callback) {
+		final StoryQuery query = new StoryQuery(text);
+		query.setPrefix(true);
+		query.setFields(StoryQuery.SUGGEST_FIELDS);
+		query.setPage(0, max);
+		return submit(new Callable<ArrayList<Story>>() {
+			@Override
+			public ArrayList<Story> call() throws Exception {
+				return repository.search(query);
+			}
+		}, callback);
+	}
+
+	/**
+	 * This method puts the story on the server, replacing the story with the
+	 * same id if there is one. If the operation is succesful, it returns 
+	 * true, and if it fails, it returns false. </br></br>
 	 *  
-	 * Updating is done by first removing the story on the server with the 
-	 * deleteStory() method in ESUpdates, and then by re-inserting it using
-	 * the insert() method in ESUpdates. </br></br>
+	 * Updating is done by inserting the story again with the insertStory()
+	 * method in ESUpdates. Elastic search replaces the old story only once 
+	 * the new one has been received in full, so an update that fails or is
+	 * cancelled part way leaves the old story on the server as it was. 
+	 * </br></br>
 	 * 
 	 * Example call: </br>
 	 * Assuming a story with the id below already exists on the server, </br>
@@ -260,25 +678,368 @@ public class ServerManager {
 	 * 			Story with updates/new data that you want to change.
 	 */
 	public boolean update(Story story) { 
-		String id = story.getId().toString();
+		return update(story, (TransferProgress) null);
+	}	
 
+	/**
+	 * Same as update(story), but counts the chapters and bytes sent in the 
+	 * given progress. Cancelling the progress aborts the update, and false
+	 * is returned.
+	 */
+	public boolean update(Story story, TransferProgress progress) {
 		try {
-			// story already on server
-			if (esRetrieval.searchById(id, server) != null) {
-				try {
-					esUpdates.deleteStory(id, server);
-					esUpdates.insertStory(story, server);
-				} catch (IOException e) {
-					e.printStackTrace();
-				} 
-			} else {
-				insert(story);
-			}
+			replace(story, progress);
 		} catch (Exception e) {
+			e.printStackTrace();
 			return false;
 		}
 		return true;
-	}	
+	}
+
+	/**
+	 * Asynchronous version of update(story). Instead of returning false, the
+	 * callback's onFailure() is called if the update fails.
+	 */
+	public ServerTask<Boolean> update(final Story story,
+			ServerCallback<Boolean> callback) {
+		return submit(new Callable<Boolean>() {
+			@Override
+			public Boolean call() throws Exception {
+				replace(story, null);
+				return true;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Does the actual work of update(), letting any errors through.
+	 */
+	private void replace(Story story, TransferProgress progress)
+			throws ClientProtocolException, IOException {
+		sendParts(story, progress);
+		if (progress != null && progress.isCancelled()) {
+			throw new IOException("Cancelled");
+		}
+		repository.put(story, progress);
+		storiesChanged();
+	}
+
+	/**
+	 * Sends the images of the story that aren't on the server yet, each as
+	 * a part of its own, and gives every media with an image the id of its
+	 * part. Only media with an upload path (see Media.setUploadPath()) are
+	 * sent this way.
+	 */
+	private void sendParts(Story story, TransferProgress progress)
+			throws ClientProtocolException, IOException {
+		Map<String, Media> parts = new LinkedHashMap<String, Media>();
+		for (Media media : getMedias(story)) {
+			String path = media.getUploadPath();
+			if (path == null) {
+				media.setPartId(null);
+				continue;
+			}
+			String id = hashFile(path);
+			media.setPartId(id);
+			parts.put(id, media);
+		}
+		if (parts.isEmpty()) {
+			return;
+		}
+
+		// parts sent before, by a publish that didn't finish or by another
+		// story with the same image
+		ArrayList<String> ids = new ArrayList<String>(parts.keySet());
+		for (int i = 0; i < ids.size(); i += MAX_IDS_PER_REQUEST) {
+			List<String> batch = ids.subList(i, Math.min(ids.size(), 
+					i + MAX_IDS_PER_REQUEST));
+			parts.keySet().removeAll(repository.getParts(batch, false, null)
+					.keySet());
+		}
+		System.out.println("ServerManager: sending " + parts.size() + " of "
+				+ ids.size() + " parts");
+
+		if (progress != null) {
+			long bytes = 0;
+			for (Media media : parts.values()) {
+				bytes += StoryEntity.encodedLength(new File(media.getUploadPath())
+						.length());
+			}
+			progress.startItems("image", parts.size());
+			progress.startBytes(bytes);
+		}
+		for (Map.Entry<String, Media> part : parts.entrySet()) {
+			sendPart(part.getKey(), part.getValue(), progress);
+			if (progress != null) {
+				progress.itemDone();
+			}
+		}
+	}
+
+	/**
+	 * Sends one part, trying again up to MAX_PART_TRIES times if it fails.
+	 */
+	private void sendPart(String id, Media media, TransferProgress progress)
+			throws IOException {
+		for (int tries = 1;; ++tries) {
+			long before = progress == null ? 0 : progress.getBytesDone();
+			try {
+				repository.putPart(id, media.getUploadPath(),
+						media.getFormat(), progress);
+				return;
+			} catch (IOException e) {
+				if (tries >= MAX_PART_TRIES
+						|| (progress != null && progress.isCancelled())) {
+					throw e;
+				}
+				e.printStackTrace();
+				if (progress != null) {
+					// the bytes of the failed try are sent again
+					progress.addBytes(before - progress.getBytesDone());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the whole of a story from the server, with all of its chapters
+	 * and images. Stories from getAll() and searchByKeywords() are only 
+	 * headers, so they are retrieved again by id; any other story just has
+	 * the images still on the server downloaded into it. Returns null if 
+	 * the story could not be retrieved, or if any of its images is missing
+	 * from the server. </br></br>
+	 * 
+	 * This does network I/O, so it must not be called on the main UI thread.
+	 * 
+	 * @param story
+	 * 			Story from the server.
+	 */
+	public Story getWholeStory(Story story) {
+		return getWholeStory(story, null);
+	}
+
+	/**
+	 * Same as getWholeStory(story), but counts the images and bytes 
+	 * received in the given progress. If the progress is cancelled, the 
+	 * request being sent is aborted, no more images are asked for, and null
+	 * is returned.
+	 * 
+	 * @param story
+	 * 			Story from the server.
+	 * @param progress
+	 * 			Receives the progress, and can cancel the download. May be 
+	 * 			null.
+	 */
+	public Story getWholeStory(Story story, TransferProgress progress) {
+		try {
+			if (story.isHeaderOnly()) {
+				return fetchById(story.getId().toString(), progress);
+			}
+			fetchAllParts(story, progress);
+			return story;
+		} catch (IOException e) {
+			if (progress == null || !progress.isCancelled()) {
+				e.printStackTrace();
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Retrieves the headers of the stories matching the query and downloads
+	 * the image of each one's cover, the first illustration of its first
+	 * chapter. The rest of each story is left on the server until 
+	 * getWholeStory() is called.
+	 */
+	private ArrayList<Story> fetchList(StoryQuery query)
+			throws ClientProtocolException, IOException {
+		ArrayList<Story> stories = repository.search(query);
+		for (Story story : stories) {
+			story.setHeaderOnly(true);
+		}
+		ArrayList<Media> covers = new ArrayList<Media>();
+		for (Story story : stories) {
+			for (Chapter chap : story.getChapters()) {
+				if (story.getFirstChapterId() == null
+						|| chap.getId().equals(story.getFirstChapterId())) {
+					if (!chap.getIllustrations().isEmpty()) {
+						covers.add(chap.getIllustrations().get(0));
+					}
+					break;
+				}
+			}
+		}
+		// a story whose cover is missing is still listed, without it
+		fetchParts(covers, null);
+		if (queryCache != null) {
+			queryCache.put(cacheKey(query), stories);
+		}
+		return stories;
+	}
+
+	/**
+	 * Returns the stories matching the query from the QueryCache if they 
+	 * are fresh there, or else from the server with fetchList(). If the 
+	 * server is down, stale stories from the QueryCache are returned 
+	 * rather than nothing.
+	 */
+	private ArrayList<Story> searchList(StoryQuery query)
+			throws ClientProtocolException, IOException {
+		QueryCache.Entry entry = getCached(query);
+		if (entry != null && (entry.isFresh() || !isServerAvailable())) {
+			return entry.getStories();
+		}
+		try {
+			return fetchList(query);
+		} catch (IOException e) {
+			if (entry == null || ServerTask.isCurrentCancelled()) {
+				throw e;
+			}
+			e.printStackTrace();
+			return entry.getStories();
+		}
+	}
+
+	/**
+	 * Returns what the QueryCache keeps for the query, or null. The stories
+	 * kept are only headers, like the ones fetchList() returns.
+	 */
+	private QueryCache.Entry getCached(StoryQuery query) {
+		if (queryCache == null) {
+			return null;
+		}
+		QueryCache.Entry entry = queryCache.get(cacheKey(query));
+		if (entry != null) {
+			for (Story story : entry.getStories()) {
+				story.setHeaderOnly(true);
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns the key the stories found by the query are kept under in the
+	 * QueryCache. The same query on another repository finds other stories,
+	 * so the repository is part of it.
+	 */
+	private static String cacheKey(StoryQuery query) {
+		return repository.getName() + " " + query.toJson();
+	}
+
+	/**
+	 * Returns the query used to list the headers of the stories matching 
+	 * the keywords (or all of them if they are null), a page at a time.
+	 */
+	private static StoryQuery listQuery(String keywords, int from, int size) {
+		StoryQuery query = new StoryQuery(keywords);
+		query.setFields(StoryQuery.HEADER_FIELDS);
+		query.setPage(from, size);
+		return query;
+	}
+
+	/**
+	 * Called after stories on the server have changed. Any search kept in
+	 * the QueryCache could have changed with them, so they are dropped.
+	 */
+	private static void storiesChanged() {
+		if (queryCache != null) {
+			queryCache.clear();
+		}
+		randomPool.storiesChanged();
+	}
+
+	/**
+	 * Downloads every part of the story that isn't in it yet, and throws an
+	 * IOException if any of them isn't on the server, since the story can't
+	 * be saved without them.
+	 */
+	private void fetchAllParts(Story story, TransferProgress progress)
+			throws ClientProtocolException, IOException {
+		Set<String> missing = fetchParts(getMedias(story), progress);
+		if (!missing.isEmpty()) {
+			throw new IOException("Story " + story.getId() 
+					+ " is missing parts " + missing);
+		}
+	}
+
+	/**
+	 * Downloads the parts of the given media that don't have their image yet,
+	 * and puts each one in the bitmapString of every media using it. Returns
+	 * the ids of the parts that aren't on the server; the media using them
+	 * are left without an image. </br></br>
+	 * 
+	 * The parts are counted as images in the progress, if there is one. 
+	 * Once it is cancelled, no more batches are asked for, and an 
+	 * IOException is thrown.
+	 */
+	private Set<String> fetchParts(Collection<Media> medias,
+			TransferProgress progress) throws ClientProtocolException,
+			IOException {
+		Map<String, ArrayList<Media>> wanted = 
+				new HashMap<String, ArrayList<Media>>();
+		for (Media media : medias) {
+			String bitmapString = media.getBitmapString();
+			if (media.getPartId() == null
+					|| (bitmapString != null && !bitmapString.equals(""))) {
+				continue;
+			}
+			ArrayList<Media> users = wanted.get(media.getPartId());
+			if (users == null) {
+				users = new ArrayList<Media>();
+				wanted.put(media.getPartId(), users);
+			}
+			users.add(media);
+		}
+
+		ArrayList<String> ids = new ArrayList<String>(wanted.keySet());
+		Set<String> missing = new HashSet<String>(ids);
+		if (progress != null) {
+			progress.startItems("image", ids.size());
+		}
+		for (int i = 0; i < ids.size(); i += MAX_IDS_PER_REQUEST) {
+			if (progress != null && progress.isCancelled()) {
+				throw new IOException("Cancelled");
+			}
+			List<String> batch = ids.subList(i, Math.min(ids.size(), 
+					i + MAX_IDS_PER_REQUEST));
+			Map<String, String> parts = repository.getParts(batch, true,
+					progress);
+			for (Map.Entry<String, String> part : parts.entrySet()) {
+				for (Media media : wanted.get(part.getKey())) {
+					media.setBitmapString(part.getValue());
+				}
+				missing.remove(part.getKey());
+			}
+			if (progress != null) {
+				progress.setItemsDone(i + batch.size());
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Returns every photo and illustration of the story.
+	 */
+	private static ArrayList<Media> getMedias(Story story) {
+		ArrayList<Media> medias = new ArrayList<Media>();
+		for (Chapter chap : story.getChapters()) {
+			medias.addAll(chap.getPhotos());
+			medias.addAll(chap.getIllustrations());
+		}
+		return medias;
+	}
+
+	/**
+	 * Returns a hash (SHA-1) of the contents of a file, in hexadecimal.
+	 */
+	private static String hashFile(String path) throws IOException {
+		InputStream in = new FileInputStream(path);
+		try {
+			return Utilities.sha1Hex(in);
+		} finally {
+			in.close();
+		}
+	}
 
 	/**
 	 * Removes a story from the server. It calls the deleteStory() method
@@ -296,49 +1057,51 @@ public class ServerManager {
 	 * 			for the valid format of a UUID.
 	 */
 	public void remove(String id) { 
+		randomPool.forget(id);
 		try {
-			esUpdates.deleteStory(id, server);
+			repository.remove(id);
+			storiesChanged();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}		
 	}	
 
 	/**
-	 * This method is a helper method for the searchByKewords() method. It
-	 * takes in a String of keywords, assuming each keyword is separated
-	 * by whitespace, and builds a string to be used in the query string 
-	 * later. </br></br>
-	 * 
-	 * Example call: </br>
-	 * String keywords = "dog cat rain" </br>
-	 * String selection = prepareKeywords(keywords); </br></br>
-	 * 
-	 * The value of selection is: "dog AND cat AND rain" </br>
-	 * 
-	 * </br> If the story's title is null, then an empty selection string
-	 * will be returned, not null.
-	 * 
-	 * @param keywords
-	 * 			They keywords to build the query from. Must be separated by
-	 * 			whitespace.
+	 * Asynchronous version of remove(id). The callback's result is always
+	 * null.
 	 */
-	private String prepareKeywords(String keywords) {
-		String selection = "";
-
-		if (keywords == null) {
-			return selection;
-		}
-
-		// split keywords and clean them
-		List<String> words = Arrays.asList(keywords.split("\\s+"));
-
-		if (words.size() > 0) {
-			selection += words.get(0);
-		}
+	public ServerTask<Void> remove(final String id,
+			ServerCallback<Void> callback) {
+		return submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				randomPool.forget(id);
+				repository.remove(id);
+				storiesChanged();
+				return null;
+			}
+		}, callback);
+	}
 
-		for (int i = 1; i < words.size(); ++i) {
-			selection += " AND " + words.get(i);
+	/**
+	 * Wraps the operation in a ServerTask and queues it to be run on one of
+	 * the I/O threads. If too many operations are already waiting, the task
+	 * fails straight away instead of waiting behind them, and the callback's
+	 * onFailure() is called.
+	 * 
+	 * @param operation
+	 * 			The blocking work to do on the I/O thread.
+	 * @param callback
+	 * 			Receives the result on the main thread. May be null.
+	 */
+	private <T> ServerTask<T> submit(Callable<T> operation,
+			ServerCallback<T> callback) {
+		ServerTask<T> task = new ServerTask<T>(operation, callback);
+		try {
+			ioExecutor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.fail(e);
 		}
-		return selection;
+		return task;
 	}
 }
@@ -0,0 +1,169 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Role: A single server operation that has been handed to the ServerManager's
+ * I/O threads. It is a Future, so the result can be waited on with get(),
+ * and it can also deliver the result to a ServerCallback on the main UI
+ * thread. </br></br>
+ *
+ * Cancelling a ServerTask does more than a plain FutureTask would. Blocking
+ * socket reads ignore thread interrupts, so ESClient.execute() attaches
+ * every request the ESRetrieval and ESUpdates methods make to the task
+ * running them, and
+ * cancel() aborts that request, which closes its connection right away. Once
+ * cancel() has been called, the callback is never called, even if the
+ * result had already arrived and was waiting to be delivered. </br></br>
+ *
+ * Example: </br>
+ * ServerTask<Story> task = serverMan.getRandom(callback); </br>
+ * ... </br>
+ * task.cancel(true); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see ServerManager
+ * @see ServerCallback
+ */
+public class ServerTask<T> extends FutureTask<T> {
+	private static final Handler mainHandler = new Handler(
+			Looper.getMainLooper());
+	private static final ThreadLocal<ServerTask<?>> current =
+			new ThreadLocal<ServerTask<?>>();
+
+	private volatile ServerCallback<T> callback;
+	private volatile HttpUriRequest request = null;
+
+	/**
+	 * Initializes a new ServerTask. The callback may be null if the caller
+	 * only wants to use the task as a Future.
+	 */
+	protected ServerTask(Callable<T> operation, ServerCallback<T> callback) {
+		super(operation);
+		this.callback = callback;
+	}
+
+	/**
+	 * Registers the request about to be executed by the current thread with
+	 * the ServerTask running on it, so that it can be aborted if the task is
+	 * cancelled. Does nothing when not called from a ServerTask (for example,
+	 * from one of the blocking ServerManager methods).
+	 *
+	 * @param request
+	 * 			The request that is about to be sent to the server.
+	 */
+	static void attach(HttpUriRequest request) {
+		ServerTask<?> task = current.get();
+		if (task == null) {
+			return;
+		}
+		task.request = request;
+		if (task.isCancelled()) {
+			request.abort();
+		}
+	}
+
+	/**
+	 * Returns whether the ServerTask running on the current thread has been
+	 * cancelled. Always false when not called from a ServerTask.
+	 */
+	static boolean isCurrentCancelled() {
+		ServerTask<?> task = current.get();
+		return task != null && task.isCancelled();
+	}
+
+	@Override
+	public void run() {
+		current.set(this);
+		try {
+			super.run();
+		} finally {
+			current.remove();
+			request = null;
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		callback = null;
+		boolean cancelled = super.cancel(mayInterruptIfRunning);
+		HttpUriRequest running = request;
+		if (cancelled && running != null) {
+			running.abort();
+		}
+		return cancelled;
+	}
+
+	/**
+	 * Makes the task fail without running it, for example when there are
+	 * too many tasks already waiting.
+	 */
+	void fail(Exception e) {
+		setException(e);
+	}
+
+	/**
+	 * Posts the outcome of the task to the callback on the main thread.
+	 */
+	@Override
+	protected void done() {
+		if (callback == null || isCancelled()) {
+			return;
+		}
+		T result = null;
+		Exception error = null;
+		try {
+			result = get();
+		} catch (InterruptedException e) {
+			error = e;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				error = (Exception) cause;
+			} else {
+				error = e;
+			}
+		}
+		final T finalResult = result;
+		final Exception finalError = error;
+		mainHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				// cancel() may have been called while this was queued
+				ServerCallback<T> receiver = callback;
+				if (receiver == null) {
+					return;
+				}
+				if (finalError == null) {
+					receiver.onSuccess(finalResult);
+				} else {
+					receiver.onFailure(finalError);
+				}
+			}
+		});
+	}
+}
@@ -16,12 +16,15 @@
  */
 package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
 
+import java.util.Map;
 
 /**
  * 
  * Role: A simple elastic search response object. It will hold the response
  * from the server, where _source is the content, in this case, a story
- * object. </br></br>
+ * object. A search asking for only some fields of each story (see 
+ * StoryQuery.setFields()) has them in the partial field 
+ * StoryQuery.PARTIAL instead of _source. </br></br>
  * 
  * CODE REUSE: </br>
  * This code was modified from </br>
@@ -44,9 +47,21 @@ public class SimpleESResponse<T> {
     int _version;
     boolean exists;
     T _source;
+    Map<String, T> fields;
     double max_score;
     
+    /**
+     * Returns the content, or the fields of it asked for. It is null if no
+     * fields were asked for, or the doc was not found.
+     */
     public T getSource() {
+        if (_source == null && fields != null) {
+            return fields.get(StoryQuery.PARTIAL);
+        }
         return _source;
     }
+    
+    public String getId() {
+        return _id;
+    }
 }
@@ -0,0 +1,364 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+import android.util.Base64;
+import android.util.Base64OutputStream;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Chapter;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Media;
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Role: The body of a request that puts a story on the server, written
+ * straight to the connection as JSON. </br></br>
+ *
+ * The JSON is the same as gson.toJson(story) gives, except for media with
+ * an upload path (see Media.setUploadPath()) whose image hasn't been sent
+ * as a part of its own (see ServerManager.update()). For those, the image file is
+ * read a piece at a time, encoded to base 64 as it goes, and written out as
+ * the media's bitmapString. That way, a story full of images never has to
+ * be held in memory as one huge string, and each image only needs a small
+ * buffer no matter how big it is. </br></br>
+ *
+ * Since the length of the body isn't known until it has been written, it is
+ * sent chunked. </br></br>
+ *
+ * If a TransferProgress is given, every byte written is counted in it, and
+ * each chapter is counted as an item as it is written. Writing fails with
+ * an IOException as soon as the progress is cancelled.
+ *
+ * @author Stephanie Gil
+ *
+ * @see ESUpdates
+ */
+public class StoryEntity extends AbstractHttpEntity {
+	private static final int BUFFER_SIZE = 8192;
+	private final Gson gson;
+	private final Story story;
+	private final Map<String, String> uploads = new HashMap<String, String>();
+	private final TransferProgress progress;
+	// set while getLength() goes through the body without reading any file
+	private boolean measuring = false;
+
+	/**
+	 * Initializes a new StoryEntity.
+	 *
+	 * @param story
+	 * 			The complete story to write.
+	 * @param gson
+	 * 			Used to convert everything except the streamed images.
+	 */
+	public StoryEntity(Story story, Gson gson) {
+		this(story, gson, null);
+	}
+
+	/**
+	 * Initializes a new StoryEntity that counts what it writes.
+	 *
+	 * @param story
+	 * 			The complete story to write.
+	 * @param gson
+	 * 			Used to convert everything except the streamed images.
+	 * @param progress
+	 * 			Counts the chapters and bytes written. May be null.
+	 */
+	public StoryEntity(Story story, Gson gson, TransferProgress progress) {
+		this.story = story;
+		this.gson = gson;
+		this.progress = progress;
+		for (Chapter chap : story.getChapters()) {
+			addUploads(chap.getPhotos());
+			addUploads(chap.getIllustrations());
+		}
+		setContentType("application/json; charset=UTF-8");
+		setChunked(true);
+	}
+
+	private void addUploads(Iterable<Media> medias) {
+		for (Media media : medias) {
+			// media whose image was sent as a part of its own don't need it
+			if (media.getUploadPath() != null && media.getPartId() == null) {
+				uploads.put(media.getId().toString(), media.getUploadPath());
+			}
+		}
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * Returns the whole body in memory. Only here because HttpEntity needs
+	 * it; requests are always sent with writeTo().
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writeTo(bytes);
+		return new ByteArrayInputStream(bytes.toByteArray());
+	}
+
+	@Override
+	public synchronized void writeTo(OutputStream out) throws IOException {
+		if (progress != null) {
+			progress.startBytes(getLength());
+			out = new CountingOutputStream(out, progress);
+		}
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+		write(gson.toJsonTree(story), writer, out);
+		writer.flush();
+	}
+
+	/**
+	 * Returns the number of bytes writeTo() writes. The body is gone 
+	 * through without reading the image files, whose encoded length is 
+	 * worked out from their size.
+	 */
+	public synchronized long getLength() throws IOException {
+		CountingOutputStream counter = new CountingOutputStream(
+				new OutputStream() {
+					@Override
+					public void write(int b) {
+					}
+
+					@Override
+					public void write(byte[] buffer, int offset, int count) {
+					}
+				}, null);
+		measuring = true;
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(counter,
+					"UTF-8"));
+			write(gson.toJsonTree(story), writer, counter);
+			writer.flush();
+		} finally {
+			measuring = false;
+		}
+		return counter.count;
+	}
+
+	/**
+	 * Writes a JSON element and everything inside it.
+	 */
+	private void write(JsonElement element, Writer writer, OutputStream out)
+			throws IOException {
+		if (element.isJsonObject()) {
+			writeObject(element.getAsJsonObject(), writer, out);
+		} else if (element.isJsonArray()) {
+			JsonArray array = element.getAsJsonArray();
+			writer.write('[');
+			for (int i = 0; i < array.size(); ++i) {
+				if (i > 0) {
+					writer.write(',');
+				}
+				write(array.get(i), writer, out);
+			}
+			writer.write(']');
+		} else {
+			// primitives and null are small, so gson can do the escaping
+			writer.write(gson.toJson(element));
+		}
+	}
+
+	/**
+	 * Writes a JSON object. If it is a media with an upload path, its
+	 * bitmapString is replaced by the contents of the file.
+	 */
+	private void writeObject(JsonObject object, Writer writer, OutputStream out)
+			throws IOException {
+		String upload = null;
+		JsonElement id = object.get("id");
+		if (id != null && id.isJsonPrimitive()) {
+			upload = uploads.get(id.getAsString());
+		}
+
+		writer.write('{');
+		Iterator<Map.Entry<String, JsonElement>> it = object.entrySet()
+				.iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, JsonElement> member = it.next();
+			writer.write(gson.toJson(member.getKey()));
+			writer.write(':');
+			if (upload != null && member.getKey().equals("bitmapString")) {
+				writer.write('"');
+				writer.flush();
+				writeBase64(upload, out);
+				writer.write('"');
+			} else if (progress != null && member.getKey().equals("chapters")
+					&& member.getValue().isJsonArray()) {
+				writeChapters(member.getValue().getAsJsonArray(), writer, out);
+			} else {
+				write(member.getValue(), writer, out);
+			}
+			if (it.hasNext()) {
+				writer.write(',');
+			}
+		}
+		writer.write('}');
+	}
+
+	/**
+	 * Writes the story's array of chapters, counting each chapter written.
+	 */
+	private void writeChapters(JsonArray chapters, Writer writer,
+			OutputStream out) throws IOException {
+		if (!measuring) {
+			progress.startItems("chapter", chapters.size());
+		}
+		writer.write('[');
+		for (int i = 0; i < chapters.size(); ++i) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			write(chapters.get(i), writer, out);
+			if (!measuring) {
+				progress.setItemsDone(i + 1);
+			}
+		}
+		writer.write(']');
+	}
+
+	/**
+	 * Writes the contents of a file as a base 64 string (without the quotes
+	 * around it). The output stream is left open.
+	 */
+	private void writeBase64(String path, OutputStream out) throws IOException {
+		if (measuring) {
+			((CountingOutputStream) out).count += encodedLength(new File(path)
+					.length());
+			return;
+		}
+		encodeFile(path, out);
+	}
+
+	/**
+	 * Returns the length of the base 64 string for the given number of bytes:
+	 * 4 characters for every 3 bytes, padded, without line breaks.
+	 */
+	static long encodedLength(long bytes) {
+		return (bytes + 2) / 3 * 4;
+	}
+
+	/**
+	 * Writes the contents of a file as a base 64 string, a buffer at a time.
+	 * The output stream is left open.
+	 */
+	static void encodeFile(String path, OutputStream out) throws IOException {
+		InputStream in = new FileInputStream(path);
+		OutputStream encoder = new Base64OutputStream(out, Base64.NO_WRAP
+				| Base64.NO_CLOSE);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				encoder.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+			// writes the final padding, but doesn't close out
+			encoder.close();
+		}
+	}
+
+	/**
+	 * Counts the bytes written through it, and fails once the progress is
+	 * cancelled.
+	 */
+	static class CountingOutputStream extends FilterOutputStream {
+		private final TransferProgress progress;
+		private long count = 0;
+
+		CountingOutputStream(OutputStream out, TransferProgress progress) {
+			super(out);
+			this.progress = progress;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			checkCancelled();
+			out.write(b);
+			counted(1);
+		}
+
+		@Override
+		public void write(byte[] buffer, int offset, int length)
+				throws IOException {
+			checkCancelled();
+			out.write(buffer, offset, length);
+			counted(length);
+		}
+
+		/**
+		 * Doesn't close the stream underneath, like the Base64OutputStream
+		 * writing to it expects.
+		 */
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+
+		long getCount() {
+			return count;
+		}
+
+		private void counted(int length) {
+			count += length;
+			if (progress != null) {
+				progress.addBytes(length);
+			}
+		}
+
+		private void checkCancelled() throws IOException {
+			if (progress != null && progress.isCancelled()) {
+				throw new IOException("Cancelled");
+			}
+		}
+	}
+}
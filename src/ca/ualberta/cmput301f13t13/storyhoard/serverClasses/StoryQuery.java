@@ -0,0 +1,229 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Role: Describes a search for stories on the server, and turns it into the
+ * JSON body elastic search expects. </br></br>
+ *
+ * The text searched for is split into words, and a story matches if every
+ * word appears in its title, author or description. A word found in the
+ * title counts for more than one found in the author, which counts for
+ * more than one in the description, so the best matches come first. With
+ * setPrefix(true), the last word also matches any word it is the start of,
+ * for searching while the user is still typing. </br></br>
+ *
+ * The words are sent as plain JSON strings (escaped by gson) in match
+ * queries, which don't have a query syntax of their own, so quotes,
+ * brackets, "AND" or any other characters the user types are just looked
+ * for like any other text. </br></br>
+ *
+ * By default the whole of every story is returned. setFields() limits the
+ * response to the given fields of each story; HEADER_FIELDS is what the
+ * story grids need. The fields are asked for as a partial field named
+ * PARTIAL, which (unlike "_source" filtering, new in elastic search 1.0)
+ * the pre 1.0 server we use understands, and which keeps nested fields
+ * like "chapters.id" inside their chapters. SimpleESResponse.getSource()
+ * returns it in place of the whole story. </br></br>
+ *
+ * Example call: </br>
+ * StoryQuery query = new StoryQuery("harry pot"); </br>
+ * query.setPrefix(true); </br>
+ * query.setFields(StoryQuery.HEADER_FIELDS); </br>
+ * ArrayList<Story> stories = esRetrieval.retrieve(query.toJson(), server);
+ * </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see ServerManager
+ */
+public class StoryQuery {
+	/**
+	 * The fields searched, with how much a match in each one counts.
+	 */
+	public static final String[] SEARCH_FIELDS = { "title^3", "author^2",
+			"description" };
+
+	/**
+	 * The fields shown in a list of stories: the story itself, and what is
+	 * needed to find its cover (see ServerManager). Only the ids of the
+	 * illustrations are asked for, since old stories keep their images 
+	 * inline in the illustrations' bitmapStrings.
+	 */
+	public static final String[] HEADER_FIELDS = { "id", "title", "author",
+			"description", "firstChapterId", "phoneId", "chapters.id",
+			"chapters.illustrations.id", "chapters.illustrations.partId" };
+
+	/**
+	 * Name of the partial field the fields asked for are returned in.
+	 */
+	public static final String PARTIAL = "story";
+
+	/**
+	 * The fields shown in a suggestion while the user is typing.
+	 */
+	public static final String[] SUGGEST_FIELDS = { "id", "title", "author" };
+
+	private final ArrayList<String> words = new ArrayList<String>();
+	private boolean prefix = false;
+	private String[] fields = null;
+	private int from = 0;
+	private int size = -1;
+
+	/**
+	 * Initializes a new StoryQuery.
+	 *
+	 * @param text
+	 * 			The words to search for, separated by whitespace. If it is
+	 * 			null or blank, every story matches. The words are put in
+	 * 			lower case, as the server does with them anyway, so searches
+	 * 			that only differ in case are the same query (see QueryCache).
+	 * 			Locale.ENGLISH is used so the words (and the keys they are
+	 * 			cached under) don't depend on the phone's language, which
+	 * 			would turn an "I" into a dotless "ı" in Turkish.
+	 */
+	public StoryQuery(String text) {
+		if (text == null) {
+			return;
+		}
+		String lower = text.trim().toLowerCase(Locale.ENGLISH);
+		for (String word : lower.split("\\s+")) {
+			if (word.length() > 0) {
+				words.add(word);
+			}
+		}
+	}
+
+	/**
+	 * Returns the words searched for.
+	 */
+	public List<String> getWords() {
+		return words;
+	}
+
+	/**
+	 * Sets whether the last word also matches the words it is the start of.
+	 */
+	public void setPrefix(boolean prefix) {
+		this.prefix = prefix;
+	}
+
+	public boolean isPrefix() {
+		return prefix;
+	}
+
+	/**
+	 * Limits the response to the given fields of each story. Null means the
+	 * whole story.
+	 */
+	public void setFields(String[] fields) {
+		this.fields = fields;
+	}
+
+	public String[] getFields() {
+		return fields;
+	}
+
+	/**
+	 * Asks for at most size stories, skipping the first from of them. A size
+	 * of -1 leaves it to the server (10 stories).
+	 */
+	public void setPage(int from, int size) {
+		this.from = from;
+		this.size = size;
+	}
+
+	public int getFrom() {
+		return from;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the body of the search request.
+	 */
+	public String toJson() {
+		JsonObject body = new JsonObject();
+		body.add("query", buildQuery());
+		if (fields != null) {
+			JsonObject include = new JsonObject();
+			include.add("include", toArray(fields));
+			JsonObject partial = new JsonObject();
+			partial.add(PARTIAL, include);
+			body.add("partial_fields", partial);
+		}
+		if (from > 0) {
+			body.addProperty("from", from);
+		}
+		if (size >= 0) {
+			body.addProperty("size", size);
+		}
+		return body.toString();
+	}
+
+	@Override
+	public String toString() {
+		return toJson();
+	}
+
+	/**
+	 * Builds the query part of the body: one match over SEARCH_FIELDS for
+	 * each word, all of which must match.
+	 */
+	private JsonObject buildQuery() {
+		JsonObject query = new JsonObject();
+		if (words.isEmpty()) {
+			query.add("match_all", new JsonObject());
+			return query;
+		}
+
+		JsonArray must = new JsonArray();
+		for (int i = 0; i < words.size(); ++i) {
+			JsonObject match = new JsonObject();
+			match.addProperty("query", words.get(i));
+			match.add("fields", toArray(SEARCH_FIELDS));
+			if (prefix && i == words.size() - 1) {
+				match.addProperty("type", "phrase_prefix");
+			}
+			JsonObject clause = new JsonObject();
+			clause.add("multi_match", match);
+			must.add(clause);
+		}
+		JsonObject bool = new JsonObject();
+		bool.add("must", must);
+		query.add("bool", bool);
+		return query;
+	}
+
+	private static JsonArray toArray(String[] values) {
+		JsonArray array = new JsonArray();
+		for (String value : values) {
+			array.add(new JsonPrimitive(value));
+		}
+		return array;
+	}
+}
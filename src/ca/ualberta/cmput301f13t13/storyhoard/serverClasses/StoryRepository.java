@@ -0,0 +1,128 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+
+import ca.ualberta.cmput301f13t13.storyhoard.dataClasses.Story;
+
+/**
+ * Role: Where published stories are kept. ServerManager does everything
+ * through a StoryRepository, so it doesn't depend on how or where the
+ * stories are stored. ESStoryRepository keeps them in an index on the
+ * elastic search server; InMemoryStoryRepository keeps them in memory, for
+ * testing and measuring without a network. </br></br>
+ *
+ * Stories are stored with the images sent as parts of their own (see
+ * ServerManager) left out, and those images are stored apart, by the id of
+ * their part. </br></br>
+ *
+ * Every method may block for as long as the repository takes to answer, so
+ * none of them should be called on the main UI thread. Any of them can
+ * throw an IOException if the repository could not be reached, or a
+ * CircuitBreaker.ServerUnavailableException while it is known to be down.
+ *
+ * @author Stephanie Gil
+ *
+ * @see ServerManager
+ * @see ESStoryRepository
+ * @see InMemoryStoryRepository
+ */
+public interface StoryRepository {
+	/**
+	 * Returns the story with the given id, or null if there is none.
+	 *
+	 * @param progress
+	 * 			Counts what has been received, and can abort it. May be null.
+	 */
+	public Story getById(String id, TransferProgress progress)
+			throws IOException;
+
+	/**
+	 * Gives the listener every story whose id is in the collection, one at
+	 * a time as they are read. Ids with no story are skipped.
+	 */
+	public void getByIds(Collection<String> ids,
+			OnStoryRetrievedListener listener) throws IOException;
+
+	/**
+	 * Returns the stories matching the query, best matches first, with only
+	 * the fields it asks for.
+	 */
+	public ArrayList<Story> search(StoryQuery query) throws IOException;
+
+	/**
+	 * Returns how many stories there are.
+	 */
+	public int count() throws IOException;
+
+	/**
+	 * Returns the ids of at most size stories, skipping the first from of
+	 * them, without the stories themselves.
+	 */
+	public ArrayList<String> getIds(int from, int size) throws IOException;
+
+	/**
+	 * Stores the story, replacing the one with the same id if there is one.
+	 *
+	 * @param progress
+	 * 			Counts what has been sent, and can abort it. May be null.
+	 */
+	public void put(Story story, TransferProgress progress) throws IOException;
+
+	/**
+	 * Removes the story with the given id, if there is one.
+	 */
+	public void remove(String id) throws IOException;
+
+	/**
+	 * Returns a map from the id of every part found to its image, in base
+	 * 64. If withImages is false, only which parts exist is found out, and
+	 * every image in the map is empty.
+	 *
+	 * @param progress
+	 * 			Counts what has been received, and can abort it. May be null.
+	 */
+	public Map<String, String> getParts(Collection<String> ids,
+			boolean withImages, TransferProgress progress) throws IOException;
+
+	/**
+	 * Stores the image in the file at path as the part with the given id.
+	 *
+	 * @param format
+	 * 			Format of the image, Media.JPEG or Media.WEBP.
+	 * @param progress
+	 * 			Counts what has been sent, and can abort it. May be null.
+	 */
+	public void putPart(String id, String path, String format,
+			TransferProgress progress) throws IOException;
+
+	/**
+	 * Returns false while the repository is known to be down. Doesn't send
+	 * anything.
+	 */
+	public boolean isAvailable();
+
+	/**
+	 * Returns a name telling this repository apart from the others, for
+	 * example the location of its index on the server.
+	 */
+	public String getName();
+}
@@ -0,0 +1,232 @@
+/**
+ * Copyright 2013 Alex Wong, Ashley Brown, Josh Tate, Kim Wu, Stephanie Gil
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ *
+ */
+package ca.ualberta.cmput301f13t13.storyhoard.serverClasses;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.client.methods.HttpUriRequest;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Role: Keeps track of how far a publish or a download has got, both in
+ * items (like "chapter 12 of 80") and in bytes (like "3.2 of 18 MB"), and
+ * lets it be cancelled. </br></br>
+ *
+ * The work (StoryController.pushChangesToServer(),
+ * Syncher.syncStoryFromServer(), and the StoryEntity sending a story)
+ * updates the progress from background threads. Every change is passed on
+ * to the listener on the main UI thread; changes made while one is still
+ * waiting to be delivered are delivered together, so a fast transfer
+ * doesn't flood the UI thread. </br></br>
+ *
+ * Calling cancel() makes the work stop at the next point it checks
+ * isCancelled(), and aborts the request currently being sent to the
+ * server, which closes its connection right away. </br></br>
+ *
+ * Example call: </br>
+ * TransferProgress progress = new TransferProgress(listener); </br>
+ * // on a background thread </br>
+ * storyCon.pushChangesToServer(progress); </br>
+ * ... </br>
+ * // on the main UI thread, for example from a Cancel button </br>
+ * progress.cancel(); </br>
+ *
+ * @author Stephanie Gil
+ *
+ * @see StoryEntity
+ */
+public class TransferProgress {
+	private static final Handler mainHandler = new Handler(
+			Looper.getMainLooper());
+	private static final double MB = 1024 * 1024;
+
+	/**
+	 * Receives the progress on the main UI thread.
+	 */
+	public interface Listener {
+		public void onProgress(TransferProgress progress);
+	}
+
+	private final Listener listener;
+	private volatile boolean cancelled = false;
+	private volatile HttpUriRequest request = null;
+	private volatile String itemName = "";
+	private volatile int itemsTotal = 0;
+	private final AtomicInteger itemsDone = new AtomicInteger();
+	private volatile long bytesTotal = 0;
+	private final AtomicLong bytesDone = new AtomicLong();
+	private final AtomicBoolean posted = new AtomicBoolean(false);
+
+	/**
+	 * Initializes a new TransferProgress.
+	 *
+	 * @param listener
+	 * 			Told about every change on the main UI thread. May be null.
+	 */
+	public TransferProgress(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts counting a new kind of item, for example "chapter" or "image".
+	 */
+	public void startItems(String name, int total) {
+		itemName = name;
+		itemsTotal = total;
+		itemsDone.set(0);
+		changed();
+	}
+
+	/**
+	 * Counts one more item as done.
+	 */
+	public void itemDone() {
+		itemsDone.incrementAndGet();
+		changed();
+	}
+
+	/**
+	 * Sets the number of the item being worked on, for work that goes through
+	 * its items in order.
+	 */
+	public void setItemsDone(int done) {
+		itemsDone.set(done);
+		changed();
+	}
+
+	/**
+	 * Starts counting bytes, expecting about total of them.
+	 */
+	public void startBytes(long total) {
+		bytesTotal = total;
+		bytesDone.set(0);
+		changed();
+	}
+
+	/**
+	 * Expects count more bytes than before, without starting over. Used by
+	 * work whose size is only known as it goes, like a download made of 
+	 * several requests.
+	 */
+	public void expectBytes(long count) {
+		bytesTotal += count;
+		changed();
+	}
+
+	/**
+	 * Counts more bytes as done.
+	 */
+	public void addBytes(long count) {
+		bytesDone.addAndGet(count);
+		changed();
+	}
+
+	public String getItemName() {
+		return itemName;
+	}
+
+	public int getItemsDone() {
+		return Math.min(itemsDone.get(), itemsTotal);
+	}
+
+	public int getItemsTotal() {
+		return itemsTotal;
+	}
+
+	public long getBytesDone() {
+		return Math.min(bytesDone.get(), bytesTotal);
+	}
+
+	public long getBytesTotal() {
+		return bytesTotal;
+	}
+
+	/**
+	 * Stops the work, and aborts the request being sent to the server if
+	 * there is one. Can be called from any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+		HttpUriRequest running = request;
+		if (running != null) {
+			running.abort();
+		}
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Registers the request about to be sent, so that cancel() can abort it.
+	 * If the progress was already cancelled, the request is aborted straight
+	 * away.
+	 */
+	void attach(HttpUriRequest request) {
+		this.request = request;
+		if (cancelled) {
+			request.abort();
+		}
+	}
+
+	/**
+	 * Forgets the request once it has been sent.
+	 */
+	void detach() {
+		request = null;
+	}
+
+	/**
+	 * Returns the progress in words, like "chapter 12 of 80, 3.2 of 18.0 MB".
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		if (itemsTotal > 0) {
+			text.append(itemName).append(' ').append(getItemsDone())
+					.append(" of ").append(itemsTotal);
+		}
+		if (bytesTotal > 0) {
+			if (text.length() > 0) {
+				text.append(", ");
+			}
+			text.append(String.format("%.1f of %.1f MB", getBytesDone() / MB,
+					bytesTotal / MB));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Posts the change to the listener, unless a post is already waiting.
+	 */
+	private void changed() {
+		if (listener == null || posted.getAndSet(true)) {
+			return;
+		}
+		mainHandler.post(new Runnable() {
+			@Override
+			public void run() {
+				posted.set(false);
+				listener.onProgress(TransferProgress.this);
+			}
+		});
+	}
+}